@@ -51,6 +51,14 @@ public interface BranchDao extends Crud<Branch> {
      */
     int getCountPostsInBranch(Branch branch);
 
+    /**
+     * Loads last posts of the branches with their authors by a single query, so that showing
+     * the last posts of a list of branches doesn't need a query per branch.
+     *
+     * @param branches branches to load last posts of
+     */
+    void loadLastPosts(List<Branch> branches);
+
     /**
      * Get state of unread posts in the branch.
      *
@@ -67,4 +75,23 @@ public interface BranchDao extends Crud<Branch> {
      * @return subscribers with allowed permission
      */
     Collection<JCUser> getAllowedSubscribers(SubscriptionAwareEntity entity);
+
+    /**
+     * Rebuilds denormalized post counters of topics and topic/post counters of branches
+     * from the actual rows in the database. Only the counters that drifted are updated.
+     *
+     * @return count of topics and branches which counters were fixed
+     */
+    int recalculateCounters();
+
+    /**
+     * Adds the deltas to the topic and post counters of the branch right in the database, so that concurrent
+     * changes of the counters are not lost. The counters aren't written when the branch is saved, and the passed
+     * instance is left as is.
+     *
+     * @param branch      the branch
+     * @param topicsDelta how many topics were added to the branch, negative when they were removed
+     * @param postsDelta  how many posts were added to the branch, negative when they were removed
+     */
+    void updateCounters(Branch branch, int topicsDelta, int postsDelta);
 }
\ No newline at end of file
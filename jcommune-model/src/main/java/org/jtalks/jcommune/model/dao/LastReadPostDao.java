@@ -14,6 +14,7 @@
  */
 package org.jtalks.jcommune.model.dao;
 
+import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.Crud;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
@@ -21,6 +22,8 @@ import org.jtalks.jcommune.model.entity.LastReadPost;
 import org.jtalks.jcommune.model.entity.Topic;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface allows to make basic CRUD operations with the
@@ -58,6 +61,23 @@ public interface LastReadPostDao extends Crud<LastReadPost> {
      */
     List<LastReadPost> getLastReadPosts(JCUser forWhom, List<Topic> sourceTopics);
 
+    /**
+     * Get dates of last read posts of user in all the topics he has ever read.
+     *
+     * @param forWhom for this user it founds dates of last read posts
+     * @return dates of last read posts by ids of topics
+     */
+    Map<Long, DateTime> getLastReadPostDates(JCUser forWhom);
+
+    /**
+     * Saves dates of last read posts of user in the topics, existing last read posts are updated. Topics that were
+     * removed are skipped.
+     *
+     * @param forWhom           the user who read the topics
+     * @param lastReadPostDates dates of last read posts by ids of topics
+     */
+    void saveLastReadPostDates(JCUser forWhom, Map<Long, DateTime> lastReadPostDates);
+
     /**
      * Mark all topics as read.
      *
@@ -65,6 +85,16 @@ public interface LastReadPostDao extends Crud<LastReadPost> {
      * @param branch branch contained topics to mark
      */
     void markAllRead(JCUser forWhom, Branch branch);
+
+    /**
+     * Finds out which of the branches have posts unread by user, all the branches are checked by a single query.
+     * Topics not modified since user marked all the forum as read are considered read.
+     *
+     * @param forWhom  user to check unread posts for
+     * @param branches branches to check
+     * @return ids of the branches with unread posts
+     */
+    Set<Long> getBranchesWithUnreadPosts(JCUser forWhom, List<Branch> branches);
     
     /**
      * Delete all last read post records for given user.
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.Crud;
+import org.jtalks.jcommune.model.entity.NotificationType;
+import org.jtalks.jcommune.model.entity.PendingNotification;
+
+import java.util.List;
+
+/**
+ * DAO for the outbox of e-mail notifications waiting to be sent.
+ */
+public interface PendingNotificationDao extends Crud<PendingNotification> {
+
+    /**
+     * Gets the users that already have a notification of the same kind about the entity in the outbox, so that
+     * repeated updates of the entity are merged into a single notification.
+     *
+     * @param type     kind of notification
+     * @param entityId id of the entity the notification is about
+     * @return ids of the users
+     */
+    List<Long> getPendingRecipientIds(NotificationType type, long entityId);
+
+    /**
+     * @param now   current date
+     * @param limit max count of notifications to return
+     * @return notifications which next attempt date has come, the oldest first
+     */
+    List<PendingNotification> getDue(DateTime now, int limit);
+
+    /**
+     * Postpones the next attempt of the notification unless somebody else has done it since the notification was
+     * read, so that concurrent senders (e.g. other forum instances) never take the same notification.
+     *
+     * @param notification    notification read from the outbox
+     * @param nextAttemptDate new date of the next attempt
+     * @return true if the notification was postponed by this call
+     */
+    boolean claim(PendingNotification notification, DateTime nextAttemptDate);
+}
@@ -54,10 +54,21 @@ public interface PostDao extends Crud<Post> {
      * 
      * @param topic for this topic we will find posts
      * @param pageRequest contains information for pagination: page number, page size
+     *                    and optional cursor of the previous page; when the cursor is set
+     *                    the page is selected by keyset instead of OFFSET
      * @return object that contains posts for one page(note, that one page may contain
      *         all posts) and information for pagination
      */
     Page<Post> getPosts(Topic topic, PageRequest pageRequest);
+
+    /**
+     * Counts posts that go before the given one in its topic, in the order the posts of the topic are paged.
+     * It is the position of the post in the topic counting from zero, found without loading the posts.
+     *
+     * @param post post to find the position of
+     * @return count of the posts of the topic that go before the post
+     */
+    int countPostsBefore(Post post);
     
     /**
      * Get last post that was posted in a topic of branch.
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao;
+
+/**
+ * Forum properties kept in memory, so that {@link org.jtalks.jcommune.model.entity.JCommuneProperty} values are
+ * read without querying the database on every access.
+ */
+public interface PropertyCache {
+
+    /**
+     * @param name name of the property
+     * @return value of the property or {@code null} if there is no such property
+     */
+    String getValue(String name);
+
+    /**
+     * @return name of the forum component or {@code null} if there is no forum component
+     */
+    String getComponentName();
+
+    /**
+     * @return description of the forum component or {@code null} if there is no forum component
+     */
+    String getComponentDescription();
+}
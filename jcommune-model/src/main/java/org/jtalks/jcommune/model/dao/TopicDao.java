@@ -25,6 +25,7 @@ import org.springframework.data.domain.Page;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DAO for the {@link Topic} objects.
@@ -74,6 +75,8 @@ public interface TopicDao extends Crud<Topic> {
      *
      * @param branch      for this branch we will find topics
      * @param pageRequest contains information for pagination: page number, page size
+     *                    and optional cursor of the previous page; when the cursor is set
+     *                    the page is selected by keyset instead of OFFSET
      * @return object that contains topics for one page(note, that one page may contain
      *         all topics) and information for pagination
      */
@@ -110,4 +113,40 @@ public interface TopicDao extends Crud<Topic> {
      * @return
      */
     List<Long> getAllowedBranchesIds(JCUser user);
+
+    /**
+     * Adds views to the topics with batched updates. Topics that were removed are skipped.
+     *
+     * @param viewsByTopicIds numbers of views to add by ids of topics
+     */
+    void addViews(Map<Long, Integer> viewsByTopicIds);
+
+    /**
+     * Get ids of topics in the branch, so that they can be deleted by {@link #deleteTopics(List)} without loading.
+     *
+     * @param branch   the branch
+     * @param maxCount how many ids to return at most
+     * @return ids of topics in the branch
+     */
+    List<Long> getTopicIds(Branch branch, int maxCount);
+
+    /**
+     * Deletes topics with their posts, polls, code reviews, read marks and subscriptions by batched statements
+     * without loading them. Post counts of the authors are decreased once per author. Branches whose last post
+     * belonged to the deleted topics are left without the last post, it should be refreshed by the caller.
+     *
+     * @param topicIds ids of the topics to delete
+     * @return count of deleted posts
+     */
+    int deleteTopics(List<Long> topicIds);
+
+    /**
+     * Adds the delta to the post counters of the topic and of its branch right in the database, so that concurrent
+     * replies are not lost. The counters aren't written when the entities are saved, and the passed instances are
+     * left as is.
+     *
+     * @param topic the topic
+     * @param delta how many posts were added to the topic, negative when they were removed
+     */
+    void updatePostCount(Topic topic, int delta);
 }
@@ -15,12 +15,17 @@
 package org.jtalks.jcommune.model.dao.hibernate;
 
 import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.jcommune.model.dao.BranchDao;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.SubscriptionAwareEntity;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -38,11 +43,15 @@ import java.util.Set;
 public class BranchHibernateDao extends GenericDao<Branch>
         implements BranchDao {
 
+    private final BranchVisibilityIndex visibilityIndex;
+
     /**
-     * @param sessionFactory The SessionFactory.
+     * @param sessionFactory  The SessionFactory.
+     * @param visibilityIndex to find subscribers that can view the branch
      */
-    public BranchHibernateDao(SessionFactory sessionFactory) {
+    public BranchHibernateDao(SessionFactory sessionFactory, BranchVisibilityIndex visibilityIndex) {
         super(sessionFactory, Branch.class);
+        this.visibilityIndex = visibilityIndex;
     }
 
     /**
@@ -69,6 +78,26 @@ public class BranchHibernateDao extends GenericDao<Branch>
         return count.intValue();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void loadLastPosts(List<Branch> branches) {
+        List<Long> lastPostIds = new ArrayList<>(branches.size());
+        for (Branch branch : branches) {
+            // getting id of a post proxy doesn't initialize it
+            if (branch.getLastPost() != null) {
+                lastPostIds.add(branch.getLastPost().getId());
+            }
+        }
+        if (!lastPostIds.isEmpty()) {
+            // loaded posts are put to the session, so the proxies are initialized from it without queries
+            session().getNamedQuery("getPostsWithAuthors")
+                    .setParameterList("ids", lastPostIds)
+                    .list();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -87,12 +116,51 @@ public class BranchHibernateDao extends GenericDao<Branch>
      */
     @Override
     public Collection<JCUser> getAllowedSubscribers(SubscriptionAwareEntity entity){
-        // use set for remove duplicates
+        Branch branch = (Branch) entity;
         @SuppressWarnings("unchecked")
-        Set<JCUser> foundUsers = new HashSet(session()
-                .getNamedQuery("getAllowedSubscribersForBranch")
-                .setParameter("branch", entity)
-                .list());
+        List<JCUser> subscribers = session()
+                .getNamedQuery("getSubscribersWithGroupsForBranch")
+                .setParameter("branch", branch)
+                .list();
+        Set<JCUser> foundUsers = new HashSet<JCUser>();
+        for (JCUser subscriber : subscribers) {
+            if (visibilityIndex.isVisible(subscriber, branch.getId())) {
+                foundUsers.add(subscriber);
+            }
+        }
         return foundUsers;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int recalculateCounters() {
+        int fixedTopics = session().getNamedQuery("recalculateTopicCounters").executeUpdate();
+        int fixedBranches = session().getNamedQuery("recalculateBranchCounters").executeUpdate();
+        return fixedTopics + fixedBranches;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCounters(final Branch branch, final int topicsDelta, final int postsDelta) {
+        final String updateQuery = session().getNamedQuery("updateBranchCounters").getQueryString();
+        session().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(updateQuery);
+                try {
+                    statement.setInt(1, topicsDelta);
+                    statement.setInt(2, postsDelta);
+                    statement.setLong(3, branch.getId());
+                    statement.executeUpdate();
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        CacheEvictor.evictAfterCommit(session().getSessionFactory(), Branch.class, branch.getId());
+    }
 }
\ No newline at end of file
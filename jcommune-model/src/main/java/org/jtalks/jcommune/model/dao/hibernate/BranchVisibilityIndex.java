@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.jcommune.model.dao.BranchVisibilityCache;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of the VIEW_TOPICS permission on branches (the content of {@code BRANCHES_VIEW_TOPICS} view): for
+ * each sid (group id or anonymous user) it keeps bit sets of allowed and restricted branch ids. Branches visible to
+ * a user are the branches allowed to any of the user's groups except the ones restricted to any of them, so DAOs
+ * can filter by a precomputed list of branch ids instead of repeating nested sub-queries to the view on every
+ * request.
+ * <p/>
+ * The index is loaded lazily with a single query and is reloaded after {@link #invalidate()} (called when
+ * permissions are changed within JCommune) or when it gets older than the configured age (to pick up permissions
+ * changed by other applications sharing the database, e.g. Poulpe).
+ */
+public class BranchVisibilityIndex implements BranchVisibilityCache {
+    /**
+     * Sid of anonymous user in the view, compared case-insensitively as the database does.
+     */
+    static final String ANONYMOUS_SID = "anonymoususer";
+
+    private final SessionFactory sessionFactory;
+    private final long maxAgeMillis;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param sessionFactory    to load permissions
+     * @param maxAgeSeconds     how long the loaded permissions may be used before they are reloaded
+     */
+    public BranchVisibilityIndex(SessionFactory sessionFactory, long maxAgeSeconds) {
+        this.sessionFactory = sessionFactory;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+    }
+
+    /**
+     * @param user user to get branches for, may be anonymous
+     * @return ids of branches the user can view topics in, in ascending order
+     */
+    public List<Long> getVisibleBranchIds(JCUser user) {
+        return toIds(getVisibleBranches(user));
+    }
+
+    /**
+     * @param user user to get branches for, may be anonymous
+     * @return ids of branches where viewing topics is restricted to any of the user's groups, in ascending order
+     */
+    public List<Long> getForbiddenBranchIds(JCUser user) {
+        return toIds(getSnapshot().union(getSids(user), false));
+    }
+
+    /**
+     * @param user     user to check, may be anonymous
+     * @param branchId branch to check
+     * @return whether the user can view topics in the branch
+     */
+    public boolean isVisible(JCUser user, long branchId) {
+        return getVisibleBranches(user).get((int) branchId);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Permissions loaded before the call are never used again, even if their loading completes later. If called
+     * within a transaction, permissions are dropped once more after it completes, so that the index doesn't keep
+     * permissions loaded by concurrent requests before the changes were committed.
+     */
+    @Override
+    public void invalidate() {
+        dropSnapshot();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    dropSnapshot();
+                }
+            });
+        }
+    }
+
+    private void dropSnapshot() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    private BitSet getVisibleBranches(JCUser user) {
+        Snapshot current = getSnapshot();
+        Collection<String> sids = getSids(user);
+        BitSet visible = current.union(sids, true);
+        visible.andNot(current.union(sids, false));
+        return visible;
+    }
+
+    /**
+     * @param user user to get sids of
+     * @return sids the permissions of the user are granted to: ids of the user's groups or anonymous sid
+     */
+    private Collection<String> getSids(JCUser user) {
+        if (user.isAnonymous()) {
+            return Collections.singletonList(ANONYMOUS_SID);
+        }
+        List<String> sids = new ArrayList<String>();
+        for (Group group : user.getGroups()) {
+            sids.add(String.valueOf(group.getId()));
+        }
+        return sids;
+    }
+
+    /**
+     * @return permissions loaded after the last invalidation, they are loaded if there are no such ones
+     */
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.generation != generation.get() || current.isOlderThan(maxAgeMillis)) {
+            current = load(generation.get());
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * @param generation count of invalidations before the loading started
+     * @return permissions loaded from the database with a single query
+     */
+    private Snapshot load(long generation) {
+        Snapshot loaded = new Snapshot(generation);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rules = sessionFactory.getCurrentSession()
+                .getNamedQuery("getBranchVisibilityRules")
+                .list();
+        for (Object[] rule : rules) {
+            String sid = ((String) rule[0]).toLowerCase(Locale.ENGLISH);
+            long branchId = (Long) rule[1];
+            boolean granting = (Boolean) rule[2];
+            loaded.add(sid, branchId, granting);
+        }
+        return loaded;
+    }
+
+    private static List<Long> toIds(BitSet branches) {
+        List<Long> ids = new ArrayList<Long>(branches.cardinality());
+        for (int i = branches.nextSetBit(0); i >= 0; i = branches.nextSetBit(i + 1)) {
+            ids.add((long) i);
+        }
+        return ids;
+    }
+
+    /**
+     * Permissions loaded at some moment, not modified after loading.
+     */
+    private static final class Snapshot {
+        private final Map<String, BitSet> allowed = new HashMap<String, BitSet>();
+        private final Map<String, BitSet> restricted = new HashMap<String, BitSet>();
+        private final long loadedAt = System.currentTimeMillis();
+        /** Count of invalidations before the loading started, the snapshot is stale if there were more of them */
+        private final long generation;
+
+        private Snapshot(long generation) {
+            this.generation = generation;
+        }
+
+        private void add(String sid, long branchId, boolean granting) {
+            Map<String, BitSet> target = granting ? allowed : restricted;
+            BitSet branches = target.get(sid);
+            if (branches == null) {
+                branches = new BitSet();
+                target.put(sid, branches);
+            }
+            branches.set((int) branchId);
+        }
+
+        /**
+         * @param sids     sids to unite the branches of
+         * @param granting whether to unite allowed or restricted branches
+         * @return new bit set with branches of all the sids
+         */
+        private BitSet union(Collection<String> sids, boolean granting) {
+            Map<String, BitSet> source = granting ? allowed : restricted;
+            BitSet result = new BitSet();
+            for (String sid : sids) {
+                BitSet branches = source.get(sid);
+                if (branches != null) {
+                    result.or(branches);
+                }
+            }
+            return result;
+        }
+
+        private boolean isOlderThan(long maxAgeMillis) {
+            return System.currentTimeMillis() - loadedAt > maxAgeMillis;
+        }
+    }
+}
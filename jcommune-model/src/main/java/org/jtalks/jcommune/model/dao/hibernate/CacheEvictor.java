@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Evicts entities changed by plain SQL statements from the second level cache. Eviction is done after the commit,
+ * otherwise the old state could be cached again before the change is visible to other transactions, and Hibernate
+ * puts the state of the entities flushed by the current session into read-write regions on completion.
+ */
+final class CacheEvictor {
+
+    private CacheEvictor() {
+    }
+
+    /**
+     * Evicts the entity once the current transaction is committed, or right away when there is no transaction.
+     *
+     * @param sessionFactory session factory which cache to evict the entity from
+     * @param entityClass    class of the entity
+     * @param id             id of the entity
+     */
+    static void evictAfterCommit(SessionFactory sessionFactory, Class<?> entityClass, Serializable id) {
+        evictAfterCommit(sessionFactory, entityClass, Collections.singleton(id));
+    }
+
+    /**
+     * Evicts the entities once the current transaction is committed, or right away when there is no transaction.
+     *
+     * @param sessionFactory session factory which cache to evict the entities from
+     * @param entityClass    class of the entities
+     * @param ids            ids of the entities
+     */
+    static void evictAfterCommit(final SessionFactory sessionFactory, final Class<?> entityClass,
+                                 final Collection<? extends Serializable> ids) {
+        evictAfterCommit(new Runnable() {
+            @Override
+            public void run() {
+                evict(sessionFactory, entityClass, ids);
+            }
+        });
+    }
+
+    /**
+     * Runs the eviction once the current transaction is committed, or right away when there is no transaction.
+     * Used when entities of several classes, their collections or whole regions have to be evicted.
+     *
+     * @param eviction evicts entities from the second level cache
+     */
+    static void evictAfterCommit(final Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eviction.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                eviction.run();
+            }
+        });
+    }
+
+    private static void evict(SessionFactory sessionFactory, Class<?> entityClass,
+                              Collection<? extends Serializable> ids) {
+        for (Serializable id : ids) {
+            sessionFactory.getCache().evictEntity(entityClass, id);
+        }
+    }
+}
@@ -29,12 +29,24 @@ import org.jtalks.jcommune.model.dao.ComponentDao;
  * @author masyan
  */
 public class ComponentHibernateDao extends GenericDao<Component> implements ComponentDao {
+    private final PropertyStore propertyStore;
 
     /**
      * @param sessionFactory The SessionFactory.
+     * @param propertyStore  snapshot of properties to be refreshed when the component is changed
      */
-    public ComponentHibernateDao(SessionFactory sessionFactory) {
+    public ComponentHibernateDao(SessionFactory sessionFactory, PropertyStore propertyStore) {
         super(sessionFactory, Component.class);
+        this.propertyStore = propertyStore;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveOrUpdate(Component component) {
+        super.saveOrUpdate(component);
+        propertyStore.changed();
     }
 
     /**
@@ -14,11 +14,11 @@
  */
 package org.jtalks.jcommune.model.dao.hibernate;
 
+import org.apache.commons.lang.Validate;
 import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.type.DateType;
-import org.hibernate.type.TimestampType;
+import org.hibernate.jdbc.Work;
 import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.jcommune.model.dao.LastReadPostDao;
@@ -27,8 +27,18 @@ import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.LastReadPost;
 import org.jtalks.jcommune.model.entity.Topic;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -42,6 +52,13 @@ import java.util.UUID;
 public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
         implements LastReadPostDao {
 
+    /**
+     * How many marks are sent to the database at once by {@link #markAllRead(JCUser, Branch)} by default
+     */
+    public static final int DEFAULT_MARK_ALL_READ_BATCH_SIZE = 500;
+
+    private int markAllReadBatchSize = DEFAULT_MARK_ALL_READ_BATCH_SIZE;
+
     /**
      * @param sessionFactory The SessionFactory.
      */
@@ -49,6 +66,15 @@ public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
         super(sessionFactory, LastReadPost.class);
     }
 
+    /**
+     * @param markAllReadBatchSize how many marks are sent to the database at once when all the topics of a branch are
+     *                             marked as read
+     */
+    public void setMarkAllReadBatchSize(int markAllReadBatchSize) {
+        Validate.isTrue(markAllReadBatchSize > 0, "Batch size should be positive");
+        this.markAllReadBatchSize = markAllReadBatchSize;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -90,6 +116,80 @@ public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
      * {@inheritDoc}
      */
     @Override
+    public Map<Long, DateTime> getLastReadPostDates(JCUser forWho) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> topicsAndDates = session().getNamedQuery("getLastReadPostDatesOfUser")
+                .setParameter("user", forWho)
+                .list();
+        Map<Long, DateTime> lastReadPostDates = new HashMap<Long, DateTime>(topicsAndDates.size() * 2);
+        for (Object[] topicAndDate : topicsAndDates) {
+            lastReadPostDates.put((Long) topicAndDate[0], (DateTime) topicAndDate[1]);
+        }
+        return lastReadPostDates;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Long> getBranchesWithUnreadPosts(JCUser forWho, List<Branch> branches) {
+        if (branches.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Long> branchIds = new ArrayList<Long>(branches.size());
+        for (Branch branch : branches) {
+            branchIds.add(branch.getId());
+        }
+        DateTime allForumMarkedAsReadTime = forWho.getAllForumMarkedAsReadTime();
+        Date markedAsReadDate = (allForumMarkedAsReadTime == null) ? new Date(0) : allForumMarkedAsReadTime.toDate();
+        @SuppressWarnings("unchecked")
+        List<Long> unreadBranchIds = session().getNamedQuery("getBranchesWithUnreadPosts")
+                .setParameter("user", forWho.getId())
+                .setParameterList("branchIds", branchIds)
+                .setTimestamp("markedAsReadDate", markedAsReadDate)
+                .list();
+        return new HashSet<Long>(unreadBranchIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveLastReadPostDates(JCUser forWho, Map<Long, DateTime> lastReadPostDates) {
+        if (lastReadPostDates.isEmpty()) {
+            return;
+        }
+        Session session = session();
+        Map<Long, DateTime> notSavedYet = new HashMap<Long, DateTime>(lastReadPostDates);
+        @SuppressWarnings("unchecked")
+        List<LastReadPost> existing = session.getNamedQuery("getLastReadPostsInTopicIdsForUser")
+                .setParameterList("topicIds", lastReadPostDates.keySet())
+                .setParameter("user", forWho)
+                .list();
+        for (LastReadPost lastReadPost : existing) {
+            lastReadPost.setPostCreationDate(notSavedYet.remove(lastReadPost.getTopic().getId()));
+            session.saveOrUpdate(lastReadPost);
+        }
+        if (!notSavedYet.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            List<Long> existingTopicIds = session.getNamedQuery("getExistingTopicIds")
+                    .setParameterList("topicIds", notSavedYet.keySet())
+                    .list();
+            for (Long topicId : existingTopicIds) {
+                Topic topic = (Topic) session.load(Topic.class, topicId);
+                session.save(new LastReadPost(forWho, topic, notSavedYet.get(topicId)));
+            }
+        }
+        session.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Marks are inserted with JDBC batches of {@link #setMarkAllReadBatchSize(int)} rows, so that a branch with
+     * thousands of topics doesn't need a round trip to the database for every topic.
+     */
+    @Override
     public void markAllRead(JCUser forWho, Branch branch) {
         Session session = session();
 
@@ -105,17 +205,8 @@ public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
                 .setParameter("branch", branch.getId())
                 .list();
 
-        SQLQuery insertQuery = (SQLQuery) session.getNamedQuery("markAllTopicsRead");
-        insertQuery
-                .addSynchronizedEntityClass(LastReadPost.class);
-
-        for (Object[] o : topicsOfBranch) {
-            insertQuery.setParameter("uuid", UUID.randomUUID().toString())
-                    .setParameter("user", forWho.getId())
-                    .setParameter("lastPostDate", ((DateTime) o[1]).toDate())
-                    .setParameter("topic", o[0])
-                    .executeUpdate();
-        }
+        String insertQuery = session.getNamedQuery("markAllTopicsRead").getQueryString();
+        session.doWork(new MarkAllTopicsReadWork(insertQuery, forWho.getId(), topicsOfBranch, markAllReadBatchSize));
 
         session.flush();
     }
@@ -129,4 +220,58 @@ public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
                 .setParameter("user", user)
                 .executeUpdate();
     }
+
+    /**
+     * Inserts marks of topics read by the user with JDBC batches, Hibernate can't batch native queries.
+     */
+    private static final class MarkAllTopicsReadWork implements Work {
+        private final String insertQuery;
+        private final long userId;
+        private final List<Object[]> topicsOfBranch;
+        private final int batchSize;
+
+        /**
+         * @param insertQuery    query which inserts a mark with uuid, user, last post date and topic parameters
+         * @param userId         id of the user who read the topics
+         * @param topicsOfBranch pairs of topic id and date of the latest post in the topic
+         * @param batchSize      how many marks are sent to the database at once
+         */
+        private MarkAllTopicsReadWork(String insertQuery, long userId, List<Object[]> topicsOfBranch, int batchSize) {
+            this.insertQuery = insertQuery;
+            this.userId = userId;
+            this.topicsOfBranch = topicsOfBranch;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void execute(Connection connection) throws SQLException {
+            PreparedStatement statement = connection.prepareStatement(insertQuery);
+            try {
+                int batched = 0;
+                for (Object[] topicAndLastPostDate : topicsOfBranch) {
+                    DateTime lastPostDate = (DateTime) topicAndLastPostDate[1];
+                    if (lastPostDate == null) {
+                        continue;
+                    }
+                    statement.setString(1, UUID.randomUUID().toString());
+                    statement.setLong(2, userId);
+                    statement.setTimestamp(3, new Timestamp(lastPostDate.getMillis()));
+                    statement.setLong(4, ((Number) topicAndLastPostDate[0]).longValue());
+                    statement.addBatch();
+                    if (++batched == batchSize) {
+                        statement.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    statement.executeBatch();
+                }
+            } finally {
+                statement.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.hibernate.GenericDao;
+import org.jtalks.jcommune.model.dao.PendingNotificationDao;
+import org.jtalks.jcommune.model.entity.NotificationType;
+import org.jtalks.jcommune.model.entity.PendingNotification;
+
+import java.util.List;
+
+/**
+ * Hibernate implementation of {@link PendingNotificationDao}.
+ */
+public class PendingNotificationHibernateDao extends GenericDao<PendingNotification>
+        implements PendingNotificationDao {
+
+    /**
+     * @param sessionFactory The SessionFactory.
+     */
+    public PendingNotificationHibernateDao(SessionFactory sessionFactory) {
+        super(sessionFactory, PendingNotification.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Long> getPendingRecipientIds(NotificationType type, long entityId) {
+        return session().getNamedQuery("getPendingNotificationRecipientIds")
+                .setParameter("type", type)
+                .setParameter("entityId", entityId)
+                .list();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<PendingNotification> getDue(DateTime now, int limit) {
+        return session().getNamedQuery("getDuePendingNotifications")
+                .setParameter("now", now)
+                .setMaxResults(limit)
+                .list();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean claim(PendingNotification notification, DateTime nextAttemptDate) {
+        return session().getNamedQuery("claimPendingNotification")
+                .setParameter("nextAttemptDate", nextAttemptDate)
+                .setParameter("id", notification.getId())
+                .setParameter("seenNextAttemptDate", notification.getNextAttemptDate())
+                .executeUpdate() == 1;
+    }
+}
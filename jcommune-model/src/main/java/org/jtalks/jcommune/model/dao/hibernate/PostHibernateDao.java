@@ -16,8 +16,12 @@ package org.jtalks.jcommune.model.dao.hibernate;
 
 import org.hibernate.Query;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.jcommune.model.dao.PostDao;
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.dto.PageRequest;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
@@ -41,6 +45,8 @@ import java.util.List;
  */
 public class PostHibernateDao extends GenericDao<Post> implements PostDao {
     private static final String TOPIC_PARAMETER_NAME = "topic";
+    private static final String CREATION_DATE = "creationDate";
+    private static final String ID = "id";
 
     /**
      * @param sessionFactory The SessionFactory.
@@ -75,6 +81,19 @@ public class PostHibernateDao extends GenericDao<Post> implements PostDao {
      */
     @Override
     public Page<Post> getPosts(Topic topic, PageRequest pageRequest) {
+        PageCursor cursor = pageRequest.getCursor();
+        if (cursor != null && cursor.isPostCursor()) {
+            int totalCount = topic.getPostCount();
+            int requestedPageNumber = pageRequest.getPageNumber();
+            pageRequest.adjustPageNumber(totalCount);
+            // the cursor is ignored if the page number is out of range, the last page is selected by offset then
+            if (pageRequest.getPageNumber() == requestedPageNumber) {
+                List<Post> posts = getPostsAfter(topic, cursor, pageRequest.getPageSize());
+                if (!posts.isEmpty()) {
+                    return new PageImpl<Post>(posts, pageRequest, totalCount);
+                }
+            }
+        }
         Number totalCount = (Number) session()
                 .getNamedQuery("getCountPostsInTopic")
                 .setParameter(TOPIC_PARAMETER_NAME, topic)
@@ -90,6 +109,50 @@ public class PostHibernateDao extends GenericDao<Post> implements PostDao {
         return new PageImpl<Post>(posts, pageRequest, totalCount.intValue());
     }
 
+    /**
+     * Selects posts of the topic that go after the cursor in the topic sort order
+     * (creationDate, id) without OFFSET scanning.
+     *
+     * @param topic    topic to select posts from
+     * @param cursor   position of the last post of the previous page
+     * @param pageSize maximum count of posts to select
+     * @return posts of the next page, empty if there are no posts after the cursor
+     */
+    private List<Post> getPostsAfter(Topic topic, PageCursor cursor, int pageSize) {
+        @SuppressWarnings("unchecked")
+        List<Post> posts = (List<Post>) session()
+                .createCriteria(Post.class)
+                .add(Restrictions.eq(TOPIC_PARAMETER_NAME, topic))
+                .add(Restrictions.or(
+                        Restrictions.gt(CREATION_DATE, cursor.getDate()),
+                        Restrictions.and(
+                                Restrictions.eq(CREATION_DATE, cursor.getDate()),
+                                Restrictions.gt(ID, cursor.getId()))))
+                .addOrder(Order.asc(CREATION_DATE))
+                .addOrder(Order.asc(ID))
+                .setMaxResults(pageSize)
+                .list();
+        return posts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int countPostsBefore(Post post) {
+        Number count = (Number) session()
+                .createCriteria(Post.class)
+                .add(Restrictions.eq(TOPIC_PARAMETER_NAME, post.getTopic()))
+                .add(Restrictions.or(
+                        Restrictions.lt(CREATION_DATE, post.getCreationDate()),
+                        Restrictions.and(
+                                Restrictions.eq(CREATION_DATE, post.getCreationDate()),
+                                Restrictions.lt(ID, post.getId()))))
+                .setProjection(Projections.rowCount())
+                .uniqueResult();
+        return count.intValue();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.jtalks.jcommune.model.dao.PropertyCache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory snapshot of the forum properties (values of all the rows of {@code PROPERTIES} table plus name and
+ * description of the forum component), so that {@link org.jtalks.jcommune.model.entity.JCommuneProperty} values
+ * are read from memory instead of querying the database on every access.
+ * <p/>
+ * The snapshot is loaded lazily with a single query and is never modified, a new one is loaded instead:
+ * <ul>
+ * <li>after {@link #changed()} is called, i.e. when properties are written by this instance of JCommune;</li>
+ * <li>when the version stored in the database differs from the version of the snapshot, this is checked with a
+ * cheap query not more often than the configured interval, so that other instances of JCommune sharing the database
+ * see the changes as well. The version is kept in {@code JC_PROPERTIES_VERSION} table owned by JCommune, not in
+ * {@code PROPERTIES} which is shared with Poulpe;</li>
+ * <li>when the snapshot gets older than the configured age, to pick up properties changed by other applications,
+ * e.g. Poulpe, which don't update the version.</li>
+ * </ul>
+ */
+public class PropertyStore implements PropertyCache {
+    private final SessionFactory sessionFactory;
+    private final long versionCheckMillis;
+    private final long maxAgeMillis;
+    private volatile Snapshot snapshot;
+    private volatile long versionCheckedAt;
+
+    /**
+     * @param sessionFactory        to load properties
+     * @param versionCheckSeconds   how often the version of the loaded properties is compared to the database one
+     * @param maxAgeSeconds         how long the loaded properties may be used before they are reloaded
+     */
+    public PropertyStore(SessionFactory sessionFactory, long versionCheckSeconds, long maxAgeSeconds) {
+        this.sessionFactory = sessionFactory;
+        this.versionCheckMillis = TimeUnit.SECONDS.toMillis(versionCheckSeconds);
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getValue(String name) {
+        return getSnapshot().values.get(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getComponentName() {
+        return getSnapshot().componentName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getComponentDescription() {
+        return getSnapshot().componentDescription;
+    }
+
+    /**
+     * Should be called within the transaction that changes properties: increases the version of properties, so that
+     * other instances of JCommune reload them, and drops the loaded snapshot.
+     */
+    public void changed() {
+        sessionFactory.getCurrentSession().getNamedQuery("increasePropertiesVersion").executeUpdate();
+        invalidate();
+    }
+
+    /**
+     * Drops the loaded properties, they are loaded again on the next request to the store. If called within a
+     * transaction, properties are dropped once more after it completes, so that the store doesn't keep properties
+     * loaded by concurrent requests before the changes were committed.
+     */
+    public void invalidate() {
+        snapshot = null;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    snapshot = null;
+                }
+            });
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current == null || now - current.loadedAt > maxAgeMillis) {
+            current = load(now);
+        } else if (now - versionCheckedAt >= versionCheckMillis) {
+            versionCheckedAt = now;
+            Long version = loadVersion();
+            if (version != null && !version.equals(current.version)) {
+                current = load(now);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param now current time
+     * @return properties loaded from the database, they are also set as the current snapshot
+     */
+    private Snapshot load(long now) {
+        Session session = sessionFactory.getCurrentSession();
+        // the version is read first, so that changes committed while the values are loaded cause another reload
+        Long version = loadVersion();
+        Map<String, String> values = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        List<Object[]> properties = session.getNamedQuery("getAllPropertyValues").list();
+        for (Object[] property : properties) {
+            values.put((String) property[0], (String) property[1]);
+        }
+        Object[] component = (Object[]) session.getNamedQuery("getForumComponentInfo")
+                .setMaxResults(1)
+                .uniqueResult();
+        Snapshot loaded = component == null
+                ? new Snapshot(values, null, null, version, now)
+                : new Snapshot(values, (String) component[0], (String) component[1], version, now);
+        versionCheckedAt = now;
+        snapshot = loaded;
+        return loaded;
+    }
+
+    /**
+     * @return version of properties stored in the database, {@code null} if there is no version in the database
+     */
+    private Long loadVersion() {
+        return (Long) sessionFactory.getCurrentSession().getNamedQuery("getPropertiesVersion").uniqueResult();
+    }
+
+    /**
+     * Properties loaded at some moment, not modified after loading.
+     */
+    private static final class Snapshot {
+        private final Map<String, String> values;
+        private final String componentName;
+        private final String componentDescription;
+        private final Long version;
+        private final long loadedAt;
+
+        private Snapshot(Map<String, String> values, String componentName, String componentDescription,
+                         Long version, long loadedAt) {
+            this.values = Collections.unmodifiableMap(values);
+            this.componentName = componentName;
+            this.componentDescription = componentDescription;
+            this.version = version;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
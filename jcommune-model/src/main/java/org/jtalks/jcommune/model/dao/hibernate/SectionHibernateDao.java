@@ -14,20 +14,19 @@
  */
 package org.jtalks.jcommune.model.dao.hibernate;
 
-import org.hibernate.Query;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.common.model.entity.Branch;
-import org.jtalks.common.model.entity.Entity;
-import org.jtalks.common.model.entity.Group;
 import org.jtalks.common.model.entity.Section;
 import org.jtalks.jcommune.model.dao.SectionDao;
 import org.jtalks.jcommune.model.entity.JCUser;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Hibernate DAO implementation from the {@link Section}.
@@ -36,12 +35,15 @@ import java.util.List;
  */
 public class SectionHibernateDao extends GenericDao<Section> implements SectionDao {
 
+    private final BranchVisibilityIndex visibilityIndex;
 
     /**
-     * @param sessionFactory The SessionFactory.
+     * @param sessionFactory  The SessionFactory.
+     * @param visibilityIndex to find branches visible to the user
      */
-    public SectionHibernateDao(SessionFactory sessionFactory) {
+    public SectionHibernateDao(SessionFactory sessionFactory, BranchVisibilityIndex visibilityIndex) {
         super(sessionFactory, Section.class);
+        this.visibilityIndex = visibilityIndex;
     }
 
     /**
@@ -65,13 +67,14 @@ public class SectionHibernateDao extends GenericDao<Section> implements SectionD
         if (branches.isEmpty()) {
             return Collections.emptyList();
         }
-        List<Long> branchIds = getEntityIdsLongs(new ArrayList<Entity>(branches));
-        if (!user.isAnonymous()) {
-            return visibleBranchesForLoggedIn(user, branchIds);
+        Set<Long> visibleIds = new HashSet<Long>(visibilityIndex.getVisibleBranchIds(user));
+        List<Long> availableIds = new ArrayList<Long>();
+        for (Branch branch : branches) {
+            if (visibleIds.contains(branch.getId())) {
+                availableIds.add(branch.getId());
+            }
         }
-        Query query = session().getNamedQuery("getAvailableBranchesForAnonymousUser");
-        query.setParameterList("branchIds", branchIds);
-        return query.list();
+        return availableIds;
     }
 
     /**
@@ -81,52 +84,4 @@ public class SectionHibernateDao extends GenericDao<Section> implements SectionD
     public long getCountAvailableBranches(JCUser user, List<Branch> branches) {
         return getAvailableBranchIds(user, branches).size();
     }
-
-    /**
-     * Get visible branches, from branch ids, for logged user
-     *
-     * @param user      user
-     * @param branchIds branch ids
-     * @return visible branch ids list
-     */
-    private List<Long> visibleBranchesForLoggedIn(JCUser user, List<Long> branchIds) {
-        List<Group> groups = user.getGroups();
-        if (groups.isEmpty()) {
-            return Collections.emptyList();
-        }
-        List<String> groupIds = new ArrayList(getEntityIdsStrings(new ArrayList<Entity>(groups)));
-
-        Query query = session().getNamedQuery("getAvailableBranchesByGroupsIds");
-        query.setParameterList("groupIds", groupIds);
-        query.setParameterList("branchIds", branchIds);
-        return query.list();
-    }
-
-    /**
-     * Return entity ids from list entities as strings
-     *
-     * @param entities entities
-     * @return id's entities
-     */
-    private List<String> getEntityIdsStrings(List<Entity> entities) {
-        List<String> ids = new ArrayList<String>();
-        for (Entity e : entities) {
-            ids.add(e.getId() + "");
-        }
-        return ids;
-    }
-
-    /**
-     * Return entity id's from list entities as long numbers
-     *
-     * @param entities entities
-     * @return id's entities
-     */
-    private List<Long> getEntityIdsLongs(List<Entity> entities) {
-        List<Long> ids = new ArrayList<Long>();
-        for (Entity e : entities) {
-            ids.add(e.getId());
-        }
-        return ids;
-    }
 }
@@ -15,24 +15,38 @@
 package org.jtalks.jcommune.model.dao.hibernate;
 
 
+import org.hibernate.Cache;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.common.model.entity.Branch;
-import org.jtalks.common.model.entity.Group;
 import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.entity.CodeReview;
+import org.jtalks.jcommune.model.entity.CodeReviewComment;
 import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.LastReadPost;
+import org.jtalks.jcommune.model.entity.Poll;
+import org.jtalks.jcommune.model.entity.PollItem;
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.model.entity.SubscriptionAwareEntity;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.*;
 
 /**
@@ -46,15 +60,25 @@ import java.util.*;
  */
 public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
     private static final String BRANCH = "branch";
+    private static final String STICKED = "sticked";
+    private static final String MODIFICATION_DATE = "modificationDate";
+    private static final String ID = "id";
     private static final String MAX_MOD_DATE = "maxModDate";
-    private static final String GROUP_IDS = "groupIds";
+    private static final String BRANCH_IDS = "branchIds";
     private static final String UNCHECKED = "unchecked";
+    private static final String TOPIC_IDS = "topicIds";
+    private static final int VIEWS_BATCH_SIZE = 500;
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final BranchVisibilityIndex visibilityIndex;
 
     /**
-     * @param sessionFactory The SessionFactory.
+     * @param sessionFactory  The SessionFactory.
+     * @param visibilityIndex to find branches visible to the user
      */
-    public TopicHibernateDao(SessionFactory sessionFactory) {
+    public TopicHibernateDao(SessionFactory sessionFactory, BranchVisibilityIndex visibilityIndex) {
         super(sessionFactory, Topic.class);
+        this.visibilityIndex = visibilityIndex;
     }
 
     /**
@@ -62,128 +86,45 @@ public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
      */
     @Override
     public Page<Topic> getTopicsUpdatedSince(DateTime timeStamp, PageRequest pageRequest, JCUser user) {
-        if (!user.isAnonymous()) {
-            return getRecentTopicsByGroupIds(getGroupIds(user), timeStamp, pageRequest);
+        List<Long> branchIds = visibilityIndex.getVisibleBranchIds(user);
+        if (branchIds.isEmpty()) {
+            return new PageImpl<Topic>(new ArrayList<Topic>(), pageRequest, 0);
         }
-        return getRecentTopicsForAnonymousUser(timeStamp, pageRequest);
-    }
-
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Page<Topic> getUnansweredTopics(PageRequest pageRequest, JCUser user) {
-        if (!user.isAnonymous()) {
-            return getUnansweredTopicsByGroupIds(getGroupIds(user), pageRequest);
-        }
-        return getUnansweredTopicsForAnonymousUser(pageRequest);
-    }
-
-    /**
-     * Return group ids for select branches with VIEW_TOPICS permission
-     *
-     * @param user current user
-     * @return group ids
-     */
-    private List<String> getGroupIds(JCUser user) {
-        List<Group> groups = user.getGroups();
-        List<String> groupIds = new ArrayList<String>();
-        for (Group g : groups) {
-            groupIds.add(g.getId() + "");
-        }
-        return groupIds;
-    }
-
-    /**
-     * Return unanswered topics with VIEW_TOPICS permission by group ids
-     *
-     * @param groupIds    group ids
-     * @param pageRequest ontains information for pagination: page number, page size
-     * @return unanswered topics
-     */
-    private PageImpl<Topic> getUnansweredTopicsByGroupIds(List<String> groupIds, PageRequest pageRequest) {
-        if (!groupIds.isEmpty()) {
-            Query query = session().getNamedQuery("getCountUnansweredTopicsByGroups");
-            query.setParameterList(GROUP_IDS, groupIds);
-            Number totalCount = (Number) query.uniqueResult();
-            pageRequest.adjustPageNumber(totalCount.intValue());
-
-            query = session().getNamedQuery("getUnansweredTopicsByGroups");
-            query.setParameterList(GROUP_IDS, groupIds);
-            query.setFirstResult(pageRequest.getOffset()).setMaxResults(pageRequest.getPageSize());
-            @SuppressWarnings(UNCHECKED)
-            List<Topic> unansweredTopics = (List<Topic>) query.list();
-            return new PageImpl<Topic>(unansweredTopics, pageRequest, totalCount.intValue());
-        }
-        return new PageImpl<Topic>(new ArrayList<Topic>(), pageRequest, 0);
-    }
-
-    /**
-     * Return unanswered topics with VIEW_TOPICS permission for anonymous user
-     *
-     * @param pageRequest ontains information for pagination: page number, page size
-     * @return unanswered topics
-     */
-    private PageImpl<Topic> getUnansweredTopicsForAnonymousUser(PageRequest pageRequest) {
-        Query query = session().getNamedQuery("getCountUnansweredTopicsForAnonymousUser");
+        Query query = session().getNamedQuery("getCountRecentTopicsInBranches");
+        query.setParameter(MAX_MOD_DATE, timeStamp);
+        query.setParameterList(BRANCH_IDS, branchIds);
         Number totalCount = (Number) query.uniqueResult();
         pageRequest.adjustPageNumber(totalCount.intValue());
 
-        query = session().getNamedQuery("getUnansweredTopicsForAnonymousUser");
+        query = session().getNamedQuery("getRecentTopicsInBranches");
+        query.setParameter(MAX_MOD_DATE, timeStamp);
+        query.setParameterList(BRANCH_IDS, branchIds);
         query.setFirstResult(pageRequest.getOffset()).setMaxResults(pageRequest.getPageSize());
         @SuppressWarnings(UNCHECKED)
-        List<Topic> unansweredTopics = (List<Topic>) query.list();
-        return new PageImpl<Topic>(unansweredTopics, pageRequest, totalCount.intValue());
+        List<Topic> recentTopics = (List<Topic>) query.list();
+        return new PageImpl<Topic>(recentTopics, pageRequest, totalCount.intValue());
     }
 
     /**
-     * Return recent topics with VIEW_TOPICS permission by group ids
-     *
-     * @param groupIds    group ids
-     * @param timeStamp   user's last login date and time
-     * @param pageRequest ontains information for pagination: page number, page size
-     * @return recent topics
+     * {@inheritDoc}
      */
-    private PageImpl<Topic> getRecentTopicsByGroupIds(List<String> groupIds, DateTime timeStamp,
-                                                      PageRequest pageRequest) {
-        if (!groupIds.isEmpty()) {
-            Query query = session().getNamedQuery("getCountRecentTopicsByGroups");
-            query.setParameter(MAX_MOD_DATE, timeStamp);
-            query.setParameterList(GROUP_IDS, groupIds);
-            Number totalCount = (Number) query.uniqueResult();
-            pageRequest.adjustPageNumber(totalCount.intValue());
-
-            query = session().getNamedQuery("getRecentTopicsByGroups");
-            query.setParameter(MAX_MOD_DATE, timeStamp);
-            query.setParameterList(GROUP_IDS, groupIds);
-            query.setFirstResult(pageRequest.getOffset()).setMaxResults(pageRequest.getPageSize());
-            @SuppressWarnings(UNCHECKED)
-            List<Topic> recentTopics = (List<Topic>) query.list();
-            return new PageImpl<Topic>(recentTopics, pageRequest, totalCount.intValue());
+    @Override
+    public Page<Topic> getUnansweredTopics(PageRequest pageRequest, JCUser user) {
+        List<Long> branchIds = visibilityIndex.getVisibleBranchIds(user);
+        if (branchIds.isEmpty()) {
+            return new PageImpl<Topic>(new ArrayList<Topic>(), pageRequest, 0);
         }
-        return new PageImpl<Topic>(new ArrayList<Topic>(), pageRequest, 0);
-    }
-
-    /**
-     * Return recent topics with VIEW_TOPICS permission for anonymous user
-     *
-     * @param timeStamp   user's last login date and time
-     * @param pageRequest ontains information for pagination: page number, page size
-     * @return recent topics
-     */
-    private PageImpl<Topic> getRecentTopicsForAnonymousUser(DateTime timeStamp, PageRequest pageRequest) {
-        Query query = session().getNamedQuery("getCountRecentTopicsForAnonymousUser");
-        query.setParameter(MAX_MOD_DATE, timeStamp);
+        Query query = session().getNamedQuery("getCountUnansweredTopicsInBranches");
+        query.setParameterList(BRANCH_IDS, branchIds);
         Number totalCount = (Number) query.uniqueResult();
         pageRequest.adjustPageNumber(totalCount.intValue());
 
-        query = session().getNamedQuery("getRecentTopicsForAnonymousUser");
-        query.setParameter(MAX_MOD_DATE, timeStamp);
+        query = session().getNamedQuery("getUnansweredTopicsInBranches");
+        query.setParameterList(BRANCH_IDS, branchIds);
         query.setFirstResult(pageRequest.getOffset()).setMaxResults(pageRequest.getPageSize());
         @SuppressWarnings(UNCHECKED)
-        List<Topic> recentTopics = (List<Topic>) query.list();
-        return new PageImpl<Topic>(recentTopics, pageRequest, totalCount.intValue());
+        List<Topic> unansweredTopics = (List<Topic>) query.list();
+        return new PageImpl<Topic>(unansweredTopics, pageRequest, totalCount.intValue());
     }
 
     /**
@@ -213,6 +154,19 @@ public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
      */
     @Override
     public Page<Topic> getTopics(Branch branch, PageRequest pageRequest) {
+        PageCursor cursor = pageRequest.getCursor();
+        if (cursor != null && cursor.isTopicCursor() && branch instanceof org.jtalks.jcommune.model.entity.Branch) {
+            int totalCount = ((org.jtalks.jcommune.model.entity.Branch) branch).getTopicCount();
+            int requestedPageNumber = pageRequest.getPageNumber();
+            pageRequest.adjustPageNumber(totalCount);
+            // the cursor is ignored if the page number is out of range, the last page is selected by offset then
+            if (pageRequest.getPageNumber() == requestedPageNumber) {
+                List<Topic> topics = getTopicsAfter(branch, cursor, pageRequest.getPageSize());
+                if (!topics.isEmpty()) {
+                    return new PageImpl<Topic>(topics, pageRequest, totalCount);
+                }
+            }
+        }
         int totalCount = countTopics(branch);
         Query query = session().getNamedQuery("getTopicsInBranch")
                 .setParameter(BRANCH, branch);
@@ -224,6 +178,39 @@ public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
         return new PageImpl<Topic>(topics, pageRequest, totalCount);
     }
 
+    /**
+     * Selects topics of the branch that go after the cursor in the branch sort order
+     * (sticked DESC, modificationDate DESC, id DESC) without OFFSET scanning.
+     *
+     * @param branch   branch to select topics from
+     * @param cursor   position of the last topic of the previous page
+     * @param pageSize maximum count of topics to select
+     * @return topics of the next page, empty if there are no topics after the cursor
+     */
+    private List<Topic> getTopicsAfter(Branch branch, PageCursor cursor, int pageSize) {
+        Criterion sameStickedAfterCursor = Restrictions.and(
+                Restrictions.eq(STICKED, cursor.isSticked()),
+                Restrictions.or(
+                        Restrictions.lt(MODIFICATION_DATE, cursor.getDate()),
+                        Restrictions.and(
+                                Restrictions.eq(MODIFICATION_DATE, cursor.getDate()),
+                                Restrictions.lt(ID, cursor.getId()))));
+        Criterion afterCursor = cursor.isSticked()
+                ? Restrictions.or(Restrictions.eq(STICKED, false), sameStickedAfterCursor)
+                : sameStickedAfterCursor;
+        @SuppressWarnings(UNCHECKED)
+        List<Topic> topics = (List<Topic>) session()
+                .createCriteria(Topic.class)
+                .add(Restrictions.eq(BRANCH, branch))
+                .add(afterCursor)
+                .addOrder(Order.desc(STICKED))
+                .addOrder(Order.desc(MODIFICATION_DATE))
+                .addOrder(Order.desc(ID))
+                .setMaxResults(pageSize)
+                .list();
+        return topics;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -241,12 +228,18 @@ public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
      */
     @Override
     public Collection<JCUser> getAllowedSubscribers(SubscriptionAwareEntity entity) {
-        // use set for remove duplicates
-        @SuppressWarnings("unchecked")
-        Set<JCUser> foundUsers = new HashSet<JCUser>(session()
-                .getNamedQuery("getAllowedSubscribersForTopic")
-                .setParameter("topic", entity)
-                .list());
+        Topic topic = (Topic) entity;
+        @SuppressWarnings(UNCHECKED)
+        List<JCUser> subscribers = session()
+                .getNamedQuery("getSubscribersWithGroupsForTopic")
+                .setParameter("topic", topic)
+                .list();
+        Set<JCUser> foundUsers = new HashSet<JCUser>();
+        for (JCUser subscriber : subscribers) {
+            if (visibilityIndex.isVisible(subscriber, topic.getBranch().getId())) {
+                foundUsers.add(subscriber);
+            }
+        }
         return foundUsers;
     }
 
@@ -255,46 +248,247 @@ public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
      */
     @Override
     public List<Long> getForbiddenBranchesIds(JCUser user) {
+        return visibilityIndex.getForbiddenBranchIds(user);
+    }
 
-        Query query = session().getNamedQuery("getForbiddenBranchesIds");
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getAllowedBranchesIds(JCUser user) {
+        return visibilityIndex.getVisibleBranchIds(user);
+    }
 
-        if (user.isAnonymous()) {
-            query.setString("sid", user.getClass().getSimpleName());
-        } else {
-            query.setParameterList("sid", getGroupIds(user));
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Only the updated topics are evicted from the second level cache, a bulk update would evict all of them. They
+     * are evicted after the commit, so that the old views aren't cached again by concurrent requests.
+     */
+    @Override
+    public void addViews(final Map<Long, Integer> viewsByTopicIds) {
+        if (viewsByTopicIds.isEmpty()) {
+            return;
         }
+        Session session = session();
+        final String updateQuery = session.getNamedQuery("addTopicViews").getQueryString();
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(updateQuery);
+                try {
+                    int batched = 0;
+                    for (Map.Entry<Long, Integer> topicViews : viewsByTopicIds.entrySet()) {
+                        statement.setInt(1, topicViews.getValue());
+                        statement.setLong(2, topicViews.getKey());
+                        statement.addBatch();
+                        if (++batched == VIEWS_BATCH_SIZE) {
+                            statement.executeBatch();
+                            batched = 0;
+                        }
+                    }
+                    if (batched > 0) {
+                        statement.executeBatch();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        CacheEvictor.evictAfterCommit(session.getSessionFactory(), Topic.class,
+                new ArrayList<>(viewsByTopicIds.keySet()));
+    }
 
-        return query.list();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getTopicIds(Branch branch, int maxCount) {
+        @SuppressWarnings(UNCHECKED)
+        List<Long> topicIds = session().getNamedQuery("getTopicIdsInBranch")
+                .setParameter(BRANCH, branch)
+                .setMaxResults(maxCount)
+                .list();
+        return topicIds;
     }
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Only the deleted entities are evicted from the second level cache, bulk statements would evict all of them.
+     * They are evicted after the commit, so that concurrent requests can't cache them again before they are deleted.
      */
     @Override
-    public List<Long> getAllowedBranchesIds(JCUser user) {
-        List<Long> result = new ArrayList<>();
+    @SuppressWarnings(UNCHECKED)
+    public int deleteTopics(final List<Long> topicIds) {
+        if (topicIds.isEmpty()) {
+            return 0;
+        }
+        final Session session = session();
+        final List<Long> postIds = session.getNamedQuery("getPostIdsOfTopics")
+                .setParameterList(TOPIC_IDS, topicIds)
+                .list();
+        final List<Object[]> postCountsOfAuthors = session.getNamedQuery("getPostCountsOfAuthorsInTopics")
+                .setParameterList(TOPIC_IDS, topicIds)
+                .list();
+        final List<Long> lastReadPostIds = session.getNamedQuery("getLastReadPostIdsOfTopics")
+                .setParameterList(TOPIC_IDS, topicIds)
+                .list();
+        final List<Long> pollIds = session.getNamedQuery("getPollIdsOfTopics")
+                .setParameterList(TOPIC_IDS, topicIds)
+                .list();
+        final List<Long> codeReviewIds = session.getNamedQuery("getCodeReviewIdsOfTopics")
+                .setParameterList(TOPIC_IDS, topicIds)
+                .list();
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                decreasePostCounts(connection, queryString(session, "decreasePostCountOfUser"), postCountsOfAuthors);
+                executeForEach(connection, queryString(session, "clearBranchLastPostInTopic"), topicIds);
+                executeForEach(connection, queryString(session, "deleteLastReadPostsOfTopic"), topicIds);
+                executeForEach(connection, queryString(session, "deleteSubscriptionsOfTopic"), topicIds);
+                executeForEach(connection, queryString(session, "deletePostsOfTopic"), topicIds);
+                executeForEach(connection, queryString(session, "deleteTopic"), topicIds);
+                executeForEach(connection, queryString(session, "deletePollOptionsOfPoll"), pollIds);
+                executeForEach(connection, queryString(session, "deletePoll"), pollIds);
+                executeForEach(connection, queryString(session, "deleteCommentsOfCodeReview"), codeReviewIds);
+                executeForEach(connection, queryString(session, "deleteCodeReview"), codeReviewIds);
+            }
+        });
+
+        final Cache cache = session.getSessionFactory().getCache();
+        CacheEvictor.evictAfterCommit(new Runnable() {
+            @Override
+            public void run() {
+                for (Long topicId : topicIds) {
+                    cache.evictEntity(Topic.class, topicId);
+                    cache.evictCollection(Topic.class.getName() + ".posts", topicId);
+                }
+                for (Long postId : postIds) {
+                    cache.evictEntity(Post.class, postId);
+                }
+                for (Object[] authorAndPostCount : postCountsOfAuthors) {
+                    cache.evictEntity(JCUser.class, (Long) authorAndPostCount[0]);
+                }
+                for (Long lastReadPostId : lastReadPostIds) {
+                    cache.evictEntity(LastReadPost.class, lastReadPostId);
+                }
+                for (Long pollId : pollIds) {
+                    cache.evictEntity(Poll.class, pollId);
+                    cache.evictCollection(Poll.class.getName() + ".pollItems", pollId);
+                }
+                for (Long codeReviewId : codeReviewIds) {
+                    cache.evictEntity(CodeReview.class, codeReviewId);
+                    cache.evictCollection(CodeReview.class.getName() + ".comments", codeReviewId);
+                }
+                // options and comments are rare enough to evict them all instead of selecting their ids
+                if (!pollIds.isEmpty()) {
+                    cache.evictEntityRegion(PollItem.class);
+                }
+                if (!codeReviewIds.isEmpty()) {
+                    cache.evictEntityRegion(CodeReviewComment.class);
+                }
+            }
+        });
+        return postIds.size();
+    }
 
-        Query queryForbidden = session().getNamedQuery("getForbiddenBranchesIds");
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updatePostCount(final Topic topic, final int delta) {
+        Session session = session();
+        final String topicUpdateQuery = queryString(session, "updateTopicPostCount");
+        final String branchUpdateQuery = queryString(session, "updateBranchCounters");
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement topicStatement = connection.prepareStatement(topicUpdateQuery);
+                try {
+                    topicStatement.setInt(1, delta);
+                    topicStatement.setLong(2, topic.getId());
+                    topicStatement.executeUpdate();
+                } finally {
+                    topicStatement.close();
+                }
+                PreparedStatement branchStatement = connection.prepareStatement(branchUpdateQuery);
+                try {
+                    branchStatement.setInt(1, 0);
+                    branchStatement.setInt(2, delta);
+                    branchStatement.setLong(3, topic.getBranch().getId());
+                    branchStatement.executeUpdate();
+                } finally {
+                    branchStatement.close();
+                }
+            }
+        });
+        SessionFactory sessionFactory = session.getSessionFactory();
+        CacheEvictor.evictAfterCommit(sessionFactory, Topic.class, topic.getId());
+        CacheEvictor.evictAfterCommit(sessionFactory, org.jtalks.jcommune.model.entity.Branch.class,
+                topic.getBranch().getId());
+    }
 
-        Query queryAllowed = session().getNamedQuery("getAllowedBranchesIds");
+    private static String queryString(Session session, String queryName) {
+        return session.getNamedQuery(queryName).getQueryString();
+    }
 
-        if (user.isAnonymous()) {
-            queryForbidden.setString("sid", user.getClass().getSimpleName());
-            queryAllowed.setString("sid", user.getClass().getSimpleName());
-        } else {
-            queryForbidden.setParameterList("sid", getGroupIds(user));
-            queryAllowed.setParameterList("sid", getGroupIds(user));
+    /**
+     * Decreases post counts of the users by batched updates.
+     *
+     * @param connection          connection to execute updates with
+     * @param updateQuery         query which decreases post count by the count and user parameters
+     * @param postCountsOfAuthors pairs of user id and count of the deleted posts of the user
+     */
+    private static void decreasePostCounts(Connection connection, String updateQuery,
+                                           List<Object[]> postCountsOfAuthors) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(updateQuery);
+        try {
+            int batched = 0;
+            for (Object[] authorAndPostCount : postCountsOfAuthors) {
+                statement.setInt(1, ((Number) authorAndPostCount[1]).intValue());
+                statement.setLong(2, (Long) authorAndPostCount[0]);
+                statement.addBatch();
+                if (++batched == DELETE_BATCH_SIZE) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                statement.executeBatch();
+            }
+        } finally {
+            statement.close();
         }
+    }
 
-        List<Long> forbidden = queryForbidden.list();
-
-        List<Long> allowed = queryAllowed.list();
-
-        for (Long aLong : allowed) {
-            if (!forbidden.contains(aLong)) {
-                result.add(aLong);
+    /**
+     * Executes the statement for each of the ids by batches.
+     *
+     * @param connection connection to execute the statement with
+     * @param query      statement with a single id parameter
+     * @param ids        ids to execute the statement for
+     */
+    private static void executeForEach(Connection connection, String query, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = connection.prepareStatement(query);
+        try {
+            int batched = 0;
+            for (Long id : ids) {
+                statement.setLong(1, id);
+                statement.addBatch();
+                if (++batched == DELETE_BATCH_SIZE) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                statement.executeBatch();
             }
+        } finally {
+            statement.close();
         }
-        return result;
     }
 }
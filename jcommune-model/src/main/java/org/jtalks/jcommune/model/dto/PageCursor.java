@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+
+/**
+ * Position of the last element of a page, used for keyset pagination: the next page is
+ * selected as "elements which go after this one in the sort order" instead of skipping
+ * a number of rows with OFFSET, which gets slower the deeper the page is.
+ * <p/>
+ * The cursor is passed between requests as an opaque string, see {@link #after(Topic)},
+ * {@link #after(Post)} and {@link #parse(String)}. Topics are ordered by
+ * (sticked, modification date, id) and posts by (creation date, id).
+ */
+public final class PageCursor {
+    private static final char TOPIC_PREFIX = 't';
+    private static final char POST_PREFIX = 'p';
+    private static final String SEPARATOR = "-";
+    private static final int RADIX = Character.MAX_RADIX;
+
+    private final char type;
+    private final boolean sticked;
+    private final DateTime date;
+    private final long id;
+
+    private PageCursor(char type, boolean sticked, DateTime date, long id) {
+        this.type = type;
+        this.sticked = sticked;
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * Creates a cursor pointing to the topic given, so that the next page of the branch
+     * starts with the topic that goes after it.
+     *
+     * @param topic last topic of the page
+     * @return opaque cursor string
+     */
+    public static String after(Topic topic) {
+        return TOPIC_PREFIX + (topic.isSticked() ? "1" : "0")
+                + Long.toString(topic.getModificationDate().getMillis(), RADIX) + SEPARATOR
+                + Long.toString(topic.getId(), RADIX);
+    }
+
+    /**
+     * Creates a cursor pointing to the post given, so that the next page of the topic
+     * starts with the post that goes after it.
+     *
+     * @param post last post of the page
+     * @return opaque cursor string
+     */
+    public static String after(Post post) {
+        return POST_PREFIX + Long.toString(post.getCreationDate().getMillis(), RADIX) + SEPARATOR
+                + Long.toString(post.getId(), RADIX);
+    }
+
+    /**
+     * Parses the cursor string created by {@link #after(Topic)} or {@link #after(Post)}.
+     * Cursors come from user input, so any malformed value is just ignored.
+     *
+     * @param value cursor string, may be {@code null}
+     * @return parsed cursor or {@code null} if the value is empty or malformed
+     */
+    public static PageCursor parse(String value) {
+        if (value == null || value.length() < 2) {
+            return null;
+        }
+        try {
+            char prefix = value.charAt(0);
+            if (prefix == TOPIC_PREFIX) {
+                String[] parts = value.substring(2).split(SEPARATOR);
+                char sticked = value.charAt(1);
+                if (parts.length != 2 || (sticked != '0' && sticked != '1')) {
+                    return null;
+                }
+                return new PageCursor(TOPIC_PREFIX, sticked == '1', parseDate(parts[0]),
+                        Long.parseLong(parts[1], RADIX));
+            } else if (prefix == POST_PREFIX) {
+                String[] parts = value.substring(1).split(SEPARATOR);
+                if (parts.length != 2) {
+                    return null;
+                }
+                return new PageCursor(POST_PREFIX, false, parseDate(parts[0]), Long.parseLong(parts[1], RADIX));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static DateTime parseDate(String millis) {
+        return new DateTime(Long.parseLong(millis, RADIX));
+    }
+
+    /**
+     * @return whether the cursor was created by {@link #after(Topic)}, only such cursors can be used to select topics
+     */
+    public boolean isTopicCursor() {
+        return type == TOPIC_PREFIX;
+    }
+
+    /**
+     * @return whether the cursor was created by {@link #after(Post)}, only such cursors can be used to select posts
+     */
+    public boolean isPostCursor() {
+        return type == POST_PREFIX;
+    }
+
+    /**
+     * @return whether the last topic of the previous page was sticked, always false for posts
+     */
+    public boolean isSticked() {
+        return sticked;
+    }
+
+    /**
+     * @return modification date of the last topic or creation date of the last post of the previous page
+     */
+    public DateTime getDate() {
+        return date;
+    }
+
+    /**
+     * @return id of the last element of the previous page
+     */
+    public long getId() {
+        return id;
+    }
+}
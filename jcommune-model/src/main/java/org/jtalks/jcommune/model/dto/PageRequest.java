@@ -33,6 +33,7 @@ public class PageRequest implements Pageable {
 
     private int pageNumber;
     private final int pageSize;
+    private final PageCursor cursor;
 
     /**
      * Creates a new {@link PageRequest}.
@@ -41,8 +42,21 @@ public class PageRequest implements Pageable {
      * @param pageSize size of page
      */
     public PageRequest(String requestedPageNumber, int pageSize) {
+        this(requestedPageNumber, pageSize, null);
+    }
+
+    /**
+     * Creates a new {@link PageRequest} which may be served with keyset pagination.
+     *
+     * @param requestedPageNumber positive page number (max value is {@link PageRequest#MAX_PAGE}) as a string.
+     * @param pageSize size of page
+     * @param cursor opaque cursor pointing to the last element of the previous page (see {@link PageCursor}),
+     *               may be {@code null} or invalid, in that case the page is selected by its number
+     */
+    public PageRequest(String requestedPageNumber, int pageSize, String cursor) {
         this.pageNumber = preparePageNumber(requestedPageNumber);
         this.pageSize = preparePageSize(pageSize);
+        this.cursor = (this.pageNumber > FIRST_PAGE_NUMBER) ? PageCursor.parse(cursor) : null;
     }
 
     private int preparePageSize(int pageSize) {
@@ -96,6 +110,16 @@ public class PageRequest implements Pageable {
         return getOffset(pageNumber);
     }
 
+    /**
+     * Returns cursor of the last element of the previous page. If it's present, DAOs select
+     * the page with a keyset condition instead of skipping {@link #getOffset()} rows.
+     *
+     * @return cursor of the previous page or {@code null} if the page should be selected by number
+     */
+    public PageCursor getCursor() {
+        return cursor;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -14,7 +14,6 @@
  */
 package org.jtalks.jcommune.model.entity;
 
-import ch.lambdaj.Lambda;
 import org.apache.commons.lang.Validate;
 
 import java.util.ArrayList;
@@ -41,8 +40,8 @@ public class Branch extends org.jtalks.common.model.entity.Branch
     private List<Topic> topics = new ArrayList<Topic>();
     private Set<JCUser> subscribers = new HashSet<JCUser>();
 
-    private Integer topicsCount;
-    private Integer postsCount;
+    private int topicsCount;
+    private int postsCount;
     private boolean unreadPosts;
     private Post lastPost;
 
@@ -133,6 +132,8 @@ public class Branch extends org.jtalks.common.model.entity.Branch
     public void addTopic(Topic topic) {
         topic.setBranch(this);
         this.topics.add(topic);
+        topicsCount++;
+        postsCount += topic.getPostCount();
     }
 
     /**
@@ -141,31 +142,30 @@ public class Branch extends org.jtalks.common.model.entity.Branch
      * @param topic topic
      */
     public void deleteTopic(Topic topic) {
-        this.topics.remove(topic);
+        if (this.topics.remove(topic)) {
+            topicsCount--;
+            postsCount -= topic.getPostCount();
+        }
     }
 
     /**
+     * Returns count of topics in the branch. The value is stored in the branch, so the lazy
+     * collection of topics is not initialized to get it. The stored value is changed only by
+     * {@code BranchDao.updateCounters}, saving the branch doesn't write it.
+     *
      * @return count topics in branch
      */
     public int getTopicCount() {
-        if (topicsCount == null) {
-            return topics.size();
-        }
         return topicsCount;
     }
 
     /**
-     * Returns a sum of all topic's post count for that branch.
-     * <p/>
-     * Value is computed only for the first time (if not set explicitly before),
-     * so it may not take into account the posts added later
+     * Returns a sum of all topic's post count for that branch. The value is stored in the branch
+     * and changed only by {@code BranchDao.updateCounters} and {@code TopicDao.updatePostCount}.
      *
      * @return sum of post count for all the topics in this branch
      */
     public int getPostCount() {
-        if (postsCount == null) {
-            postsCount = Lambda.sumFrom(topics, Topic.class).getPostCount();
-        }
         return postsCount;
     }
 
@@ -197,9 +197,9 @@ public class Branch extends org.jtalks.common.model.entity.Branch
     /**
      * Set count of topics in this branch.
      *
-     * @param topicsCount count of posts in this branch
+     * @param topicsCount count of topics in this branch
      */
-    public void setTopicsCount(Integer topicsCount) {
+    public void setTopicsCount(int topicsCount) {
         this.topicsCount = topicsCount;
     }
 
@@ -208,7 +208,7 @@ public class Branch extends org.jtalks.common.model.entity.Branch
      *
      * @param postsCount count of posts in this branch
      */
-    public void setPostsCount(Integer postsCount) {
+    public void setPostsCount(int postsCount) {
         this.postsCount = postsCount;
     }
 
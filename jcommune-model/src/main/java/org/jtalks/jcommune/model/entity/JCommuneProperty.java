@@ -17,6 +17,7 @@ package org.jtalks.jcommune.model.entity;
 import org.jtalks.common.model.entity.Component;
 import org.jtalks.common.model.entity.Property;
 import org.jtalks.jcommune.model.dao.ComponentDao;
+import org.jtalks.jcommune.model.dao.PropertyCache;
 import org.jtalks.jcommune.model.dao.PropertyDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -113,6 +114,7 @@ public enum JCommuneProperty {
     private String defaultValue;
     private PropertyDao propertyDao;
     private ComponentDao componentDao;
+    private PropertyCache propertyStore;
 
     /**
      * Returns a string value of the property. Property values
@@ -124,8 +126,10 @@ public enum JCommuneProperty {
      * @return a string value of the property
      */
     public String getValue() {
-
-        if (propertyDao != null) {
+        if (propertyStore != null) {
+            String value = propertyStore.getValue(name);
+            return value != null ? value : getDefaultValue();
+        } else if (propertyDao != null) {
             Property property = propertyDao.getByName(name);
             if (property != null) {
                 return property.getValue();
@@ -161,7 +165,12 @@ public enum JCommuneProperty {
      */
     public String getValueOfComponent() {
         try {
-            if (componentDao != null) {
+            if (propertyStore != null) {
+                String value = name.equals("cmp.name")
+                        ? propertyStore.getComponentName()
+                        : propertyStore.getComponentDescription();
+                return value != null ? value : getDefaultValue();
+            } else if (componentDao != null) {
                 Component cmp = componentDao.getComponent();
                 if (cmp != null) {
                     return name.equals("cmp.name") ? cmp.getName() : cmp.getDescription();
@@ -239,4 +248,15 @@ public enum JCommuneProperty {
         this.componentDao = componentDao;
     }
 
+    /**
+     * Set an in-memory snapshot of properties to read values from. If it is set, it is used for reading values
+     * instead of {@link org.jtalks.jcommune.model.dao.PropertyDao} and
+     * {@link org.jtalks.jcommune.model.dao.ComponentDao}.
+     *
+     * @param propertyStore an instance of {@link PropertyCache}
+     */
+    public void setPropertyStore(PropertyCache propertyStore) {
+        this.propertyStore = propertyStore;
+    }
+
 }
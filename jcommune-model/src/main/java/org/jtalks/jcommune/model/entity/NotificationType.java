@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.entity;
+
+/**
+ * Kind of e-mail notification waiting in the outbox to be sent. Defines what the id of the notification's entity
+ * refers to.
+ */
+public enum NotificationType {
+    /**
+     * New posts in the subscribed topic, entity is a {@link Topic}.
+     */
+    TOPIC_UPDATED,
+    /**
+     * Changes in the subscribed branch, entity is a {@link Branch}.
+     */
+    BRANCH_UPDATED,
+    /**
+     * New comments in the subscribed code review, entity is a {@link CodeReview}.
+     */
+    CODE_REVIEW_UPDATED,
+    /**
+     * New topic in the subscribed branch, entity is the created {@link Topic}.
+     */
+    TOPIC_CREATED,
+    /**
+     * User was mentioned in a post, entity is the {@link Post}.
+     */
+    USER_MENTIONED;
+
+    /**
+     * @param entity changed subscribed entity
+     * @return type of notification about updates of the entity
+     */
+    public static NotificationType updateOf(SubscriptionAwareEntity entity) {
+        if (entity instanceof Topic) {
+            return TOPIC_UPDATED;
+        } else if (entity instanceof Branch) {
+            return BRANCH_UPDATED;
+        } else if (entity instanceof CodeReview) {
+            return CODE_REVIEW_UPDATED;
+        }
+        throw new IllegalArgumentException("Unsupported subscription entity: " + entity.getClass().getName());
+    }
+}
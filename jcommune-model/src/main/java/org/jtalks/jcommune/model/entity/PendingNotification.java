@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.entity;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.entity.Entity;
+
+/**
+ * E-mail notification stored in the outbox within the transaction that caused it. Notifications are sent
+ * asynchronously after the transaction is committed and are removed from the outbox once sent. Links in the e-mail
+ * are built from the deployment root captured when the notification was created, as there is no HTTP request
+ * while sending.
+ */
+public class PendingNotification extends Entity {
+    private JCUser recipient;
+    private NotificationType type;
+    private long entityId;
+    private String deploymentRootUrl;
+    private String deploymentRootLabel;
+    private DateTime creationDate;
+    private DateTime nextAttemptDate;
+    private int attempts;
+
+    /**
+     * For hibernate use only
+     */
+    protected PendingNotification() {
+    }
+
+    /**
+     * @param recipient           user to notify
+     * @param type                kind of notification
+     * @param entityId            id of the entity the notification is about, see {@link NotificationType}
+     * @param deploymentRootUrl   forum root to build links, e.g. "http://myhost.com:1234/mycoolforum"
+     * @param deploymentRootLabel forum root to build link labels, e.g. "http://myhost.com/mycoolforum"
+     */
+    public PendingNotification(JCUser recipient, NotificationType type, long entityId,
+                               String deploymentRootUrl, String deploymentRootLabel) {
+        this.recipient = recipient;
+        this.type = type;
+        this.entityId = entityId;
+        this.deploymentRootUrl = deploymentRootUrl;
+        this.deploymentRootLabel = deploymentRootLabel;
+        this.creationDate = new DateTime();
+        this.nextAttemptDate = creationDate;
+    }
+
+    /**
+     * @return user to notify
+     */
+    public JCUser getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * @param recipient user to notify
+     */
+    protected void setRecipient(JCUser recipient) {
+        this.recipient = recipient;
+    }
+
+    /**
+     * @return kind of notification
+     */
+    public NotificationType getType() {
+        return type;
+    }
+
+    /**
+     * @param type kind of notification
+     */
+    protected void setType(NotificationType type) {
+        this.type = type;
+    }
+
+    /**
+     * @return id of the entity the notification is about, see {@link NotificationType}
+     */
+    public long getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * @param entityId id of the entity the notification is about
+     */
+    protected void setEntityId(long entityId) {
+        this.entityId = entityId;
+    }
+
+    /**
+     * @return forum root to build links, e.g. "http://myhost.com:1234/mycoolforum"
+     */
+    public String getDeploymentRootUrl() {
+        return deploymentRootUrl;
+    }
+
+    /**
+     * @param deploymentRootUrl forum root to build links
+     */
+    protected void setDeploymentRootUrl(String deploymentRootUrl) {
+        this.deploymentRootUrl = deploymentRootUrl;
+    }
+
+    /**
+     * @return forum root to build link labels, e.g. "http://myhost.com/mycoolforum"
+     */
+    public String getDeploymentRootLabel() {
+        return deploymentRootLabel;
+    }
+
+    /**
+     * @param deploymentRootLabel forum root to build link labels
+     */
+    protected void setDeploymentRootLabel(String deploymentRootLabel) {
+        this.deploymentRootLabel = deploymentRootLabel;
+    }
+
+    /**
+     * @return when the notification was put to the outbox
+     */
+    public DateTime getCreationDate() {
+        return creationDate;
+    }
+
+    /**
+     * @param creationDate when the notification was put to the outbox
+     */
+    protected void setCreationDate(DateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    /**
+     * @return the notification shouldn't be sent before this date
+     */
+    public DateTime getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    /**
+     * @param nextAttemptDate the notification shouldn't be sent before this date
+     */
+    public void setNextAttemptDate(DateTime nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+    }
+
+    /**
+     * @return count of failed attempts to send the notification
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts count of failed attempts to send the notification
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
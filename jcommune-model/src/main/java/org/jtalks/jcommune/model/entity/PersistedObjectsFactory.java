@@ -170,15 +170,18 @@ public final class PersistedObjectsFactory {
 
     public static List<Post> createAndSavePostList(int size) {
         List<Post> posts = new ArrayList<Post>();
-        Topic topic = PersistedObjectsFactory.getDefaultTopic();
-        JCUser author = topic.getTopicStarter();
+        JCUser author = persist(ObjectsFactory.getDefaultUser());
+        Topic topic = new Topic(author, "topic title");
+        topic.addPost(new Post(author, "post content"));
         for (int i = 0; i < size - 1; i++) {
             Post newPost = new Post(author, "content " + i);
             topic.addPost(newPost);
             posts.add(newPost);
-            session.save(newPost);
         }
-        session.save(topic);
+        // the post counter isn't updated when a topic is saved, so the posts are added before the topic is persisted
+        Branch branch = ObjectsFactory.getDefaultBranch();
+        branch.addTopic(topic);
+        persist(branch);
         return posts;
     }
 
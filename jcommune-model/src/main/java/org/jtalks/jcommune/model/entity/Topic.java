@@ -127,6 +127,7 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
     private boolean closed;
     private Branch branch;
     private int views;
+    private int postCount;
     @Valid
     private Poll poll;
     private CodeReview codeReview;    
@@ -183,6 +184,7 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
         post.setTopic(this);
         updateModificationDate();
         this.posts.add(post);
+        postCount++;
     }
 
     /**
@@ -191,7 +193,9 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
      * @param postToRemove post to remove
      */
     public void removePost(Post postToRemove) {
-        posts.remove(postToRemove);
+        if (posts.remove(postToRemove)) {
+            postCount--;
+        }
     }
 
     /**
@@ -398,12 +402,24 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
     }
 
     /**
-     * Get count of post in topic.
+     * Get count of post in topic. The value is stored in the topic itself, so the lazy
+     * collection of posts is not initialized to get it. {@link #addPost(Post)} and
+     * {@link #removePost(Post)} change it in memory only, the stored value is changed
+     * by {@code TopicDao.updatePostCount}.
      *
      * @return count of post
      */
     public int getPostCount() {
-        return posts.size();
+        return postCount;
+    }
+
+    /**
+     * For Hibernate use only, the counter is maintained by the topic itself.
+     *
+     * @param postCount count of posts in the topic
+     */
+    protected void setPostCount(int postCount) {
+        this.postCount = postCount;
     }
 
     /**
@@ -39,7 +39,7 @@ public abstract class StatefullPlugin implements Plugin {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StatefullPlugin.class);
 
-    private State state = State.LOADED;
+    private volatile State state = State.LOADED;
 
     /**
      * {@inheritDoc}
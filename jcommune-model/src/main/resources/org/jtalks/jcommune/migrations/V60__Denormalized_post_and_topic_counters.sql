@@ -0,0 +1,10 @@
+-- denormalized counters, so that branch and topic lists don't have to count posts of every topic
+ALTER TABLE TOPIC ADD(POST_COUNT INT NOT NULL DEFAULT 0);
+ALTER TABLE BRANCHES ADD(TOPIC_COUNT INT NOT NULL DEFAULT 0);
+ALTER TABLE BRANCHES ADD(POST_COUNT INT NOT NULL DEFAULT 0);
+
+UPDATE TOPIC SET POST_COUNT = (SELECT COUNT(*) FROM POST WHERE POST.TOPIC_ID = TOPIC.TOPIC_ID);
+
+UPDATE BRANCHES SET
+  TOPIC_COUNT = (SELECT COUNT(*) FROM TOPIC WHERE TOPIC.BRANCH_ID = BRANCHES.BRANCH_ID),
+  POST_COUNT = (SELECT COALESCE(SUM(TOPIC.POST_COUNT), 0) FROM TOPIC WHERE TOPIC.BRANCH_ID = BRANCHES.BRANCH_ID);
@@ -0,0 +1,3 @@
+-- indexes matching the sort order of branch topics and topic posts, so that pages are selected by keyset
+CREATE INDEX TOPIC_BRANCH_ORDER_IDX ON TOPIC (BRANCH_ID, STICKED, MODIFICATION_DATE, TOPIC_ID);
+CREATE INDEX POST_TOPIC_ORDER_IDX ON POST (TOPIC_ID, POST_DATE, POST_ID);
@@ -0,0 +1,20 @@
+-- e-mail notifications written within the transaction that caused them and sent asynchronously after commit
+CREATE TABLE `NOTIFICATION_OUTBOX` (
+  `ID` BIGINT(20) NOT NULL AUTO_INCREMENT,
+  `UUID` VARCHAR(255) NOT NULL,
+  `RECIPIENT_ID` BIGINT(20) NOT NULL,
+  `TYPE` VARCHAR(32) NOT NULL,
+  `ENTITY_ID` BIGINT(20) NOT NULL,
+  `ROOT_URL` VARCHAR(255) NOT NULL,
+  `ROOT_LABEL` VARCHAR(255) NOT NULL,
+  `CREATION_DATE` DATETIME NOT NULL,
+  `NEXT_ATTEMPT_DATE` DATETIME NOT NULL,
+  `ATTEMPTS` INT(11) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`ID`),
+  UNIQUE INDEX `UUID` (`UUID`),
+  KEY `NOTIFICATION_OUTBOX_ENTITY_IDX` (`TYPE`, `ENTITY_ID`),
+  KEY `NOTIFICATION_OUTBOX_NEXT_ATTEMPT_IDX` (`NEXT_ATTEMPT_DATE`),
+  CONSTRAINT `FK_NOTIFICATION_RECIPIENT` FOREIGN KEY (`RECIPIENT_ID`) REFERENCES `USERS` (`ID`) ON DELETE CASCADE
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8;
@@ -0,0 +1,11 @@
+-- version of JCommune properties, changed whenever JCommune writes them so that other nodes reload their snapshot;
+-- kept apart from PROPERTIES, which is shared with Poulpe
+CREATE TABLE `JC_PROPERTIES_VERSION` (
+  `ID` INT(11) NOT NULL,
+  `VERSION` BIGINT(20) NOT NULL,
+  PRIMARY KEY (`ID`)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8;
+
+INSERT INTO `JC_PROPERTIES_VERSION` (`ID`, `VERSION`) VALUES (1, 0);
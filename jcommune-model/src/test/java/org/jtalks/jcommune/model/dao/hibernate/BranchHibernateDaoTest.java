@@ -14,6 +14,7 @@
  */
 package org.jtalks.jcommune.model.dao.hibernate;
 
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.jtalks.common.model.entity.Section;
@@ -49,6 +50,8 @@ public class BranchHibernateDaoTest extends AbstractTransactionalTestNGSpringCon
     @Autowired
     private SessionFactory sessionFactory;
     @Autowired
+    private BranchVisibilityIndex visibilityIndex;
+    @Autowired
     private BranchDao dao;
     @Autowired
     private LastReadPostDao lastReadPostDao;
@@ -59,6 +62,7 @@ public class BranchHibernateDaoTest extends AbstractTransactionalTestNGSpringCon
     public void setUp() throws Exception {
         session = sessionFactory.getCurrentSession();
         PersistedObjectsFactory.setSession(session);
+        visibilityIndex.invalidate();
         branch = ObjectsFactory.getDefaultBranch();
     }
 
@@ -219,6 +223,89 @@ public class BranchHibernateDaoTest extends AbstractTransactionalTestNGSpringCon
         assertEquals(actualCount, expectedCount, "Count of posts in the branch is wrong");
     }
 
+    @Test
+    public void testRecalculateCountersFixesDriftedCounters() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        Branch branch = topic.getBranch();
+        //posts are added bypassing the DAO, so the counters drift
+        topic.addPost(new Post(topic.getTopicStarter(), "Second post"));
+        topic.addPost(new Post(topic.getTopicStarter(), "Third post"));
+        session.save(branch);
+        session.flush();
+
+        int fixed = dao.recalculateCounters();
+        session.clear();
+        Branch result = (Branch) session.get(Branch.class, branch.getId());
+
+        assertEquals(fixed, 2);
+        assertEquals(result.getTopicCount(), 1);
+        assertEquals(result.getPostCount(), 3);
+    }
+
+    @Test
+    public void testUpdateCountersAddsDeltasToStoredCounters() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        Branch branch = topic.getBranch();
+        session.flush();
+
+        dao.updateCounters(branch, 2, -1);
+        session.clear();
+        Branch result = (Branch) session.get(Branch.class, branch.getId());
+
+        assertEquals(result.getTopicCount(), 3);
+        assertEquals(result.getPostCount(), 0);
+    }
+
+    @Test
+    public void testSavedBranchDoesNotOverwriteCounters() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        Branch branch = topic.getBranch();
+        session.flush();
+        dao.updateCounters(branch, 1, 1);
+
+        branch.setName("new name");
+        dao.saveOrUpdate(branch);
+        session.flush();
+        session.clear();
+        Branch result = (Branch) session.get(Branch.class, branch.getId());
+
+        assertEquals(result.getTopicCount(), 2);
+        assertEquals(result.getPostCount(), 2);
+    }
+
+    @Test
+    public void testLoadLastPostsInitializesLastPostsOfBranches() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        Branch branch = topic.getBranch();
+        branch.setLastPost(topic.getLastPost());
+        Branch branchWithoutPosts = new Branch("empty", "empty");
+        branchWithoutPosts.setSection(branch.getSection());
+        session.save(branch);
+        session.save(branchWithoutPosts);
+        session.flush();
+        session.clear();
+        List<Branch> branches = new ArrayList<Branch>();
+        branches.add((Branch) session.get(Branch.class, branch.getId()));
+        branches.add((Branch) session.get(Branch.class, branchWithoutPosts.getId()));
+
+        dao.loadLastPosts(branches);
+
+        Post lastPost = branches.get(0).getLastPost();
+        assertTrue(Hibernate.isInitialized(lastPost));
+        assertTrue(Hibernate.isInitialized(lastPost.getUserCreated()));
+        assertEquals(lastPost.getId(), topic.getLastPost().getId());
+        assertNull(branches.get(1).getLastPost());
+    }
+
+    @Test
+    public void testRecalculateCountersDoesNothingWhenCountersAreInSync() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        session.save(topic.getBranch());
+        session.flush();
+
+        assertEquals(dao.recalculateCounters(), 0);
+    }
+
     @Test
     @Rollback(false)
     /**
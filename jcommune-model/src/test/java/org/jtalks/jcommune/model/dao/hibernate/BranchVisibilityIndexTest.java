@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.jtalks.jcommune.model.entity.AnonymousUser;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.ObjectsFactory;
+import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.test.context.transaction.TransactionConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.*;
+
+@ContextConfiguration(locations = {"classpath:/org/jtalks/jcommune/model/entity/applicationContext-dao.xml"})
+@TransactionConfiguration(transactionManager = "transactionManager", defaultRollback = true)
+@Transactional
+public class BranchVisibilityIndexTest extends AbstractTransactionalTestNGSpringContextTests {
+    @Autowired
+    private SessionFactory sessionFactory;
+    @Autowired
+    private BranchVisibilityIndex index;
+    private JCUser user;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        PersistedObjectsFactory.setSession(sessionFactory.getCurrentSession());
+        index.invalidate();
+        user = new JCUser("username", null, null);
+        user.setGroups(ObjectsFactory.getDefaultGroupList());
+    }
+
+    @Test
+    public void branchAllowedToAnyGroupShouldBeVisible() {
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "13", true);
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(2L, "11", true);
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(3L, "42", true);
+
+        assertEquals(index.getVisibleBranchIds(user), Arrays.asList(1L, 2L));
+        assertTrue(index.isVisible(user, 2L));
+        assertFalse(index.isVisible(user, 3L));
+    }
+
+    @Test
+    public void branchRestrictedToAnyGroupShouldNotBeVisible() {
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "13", true);
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "12", false);
+
+        assertTrue(index.getVisibleBranchIds(user).isEmpty());
+        assertEquals(index.getForbiddenBranchIds(user), Collections.singletonList(1L));
+    }
+
+    @Test
+    public void anonymousSidShouldBeComparedIgnoringCase() {
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "anonymousUser", true);
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(2L, "AnonymousUser", true);
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(2L, "anonymousUser", false);
+
+        assertEquals(index.getVisibleBranchIds(new AnonymousUser()), Collections.singletonList(1L));
+    }
+
+    @Test
+    public void changesShouldBeSeenOnlyAfterInvalidation() {
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "13", true);
+        assertTrue(index.isVisible(user, 1L));
+
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "13", false);
+        assertTrue(index.isVisible(user, 1L));
+
+        index.invalidate();
+        assertFalse(index.isVisible(user, 1L));
+    }
+
+    @Test
+    public void userWithoutGroupsShouldSeeNothing() {
+        PersistedObjectsFactory.createAndSaveViewTopicsBranchesEntity(1L, "13", true);
+
+        assertTrue(index.getVisibleBranchIds(new JCUser("username", null, null)).isEmpty());
+    }
+}
@@ -110,6 +110,16 @@ public class ComponentHibernateDaoTest extends AbstractTransactionalTestNGSpring
     
     /*===== End of common methods =====*/
 
+    @Test
+    public void saveOrUpdateShouldChangeVersionOfProperties() {
+        Component component = PersistedObjectsFactory.getDefaultComponent();
+        long version = getPropertiesVersion();
+
+        componentDao.saveOrUpdate(component);
+
+        assertEquals(getPropertiesVersion(), version + 1);
+    }
+
     @Test
     public void testGetComponent() {
         session.save(cmp);
@@ -119,4 +129,8 @@ public class ComponentHibernateDaoTest extends AbstractTransactionalTestNGSpring
         assertNotNull(result, "Property is not found by name.");
         assertEquals(result.getId(), cmp.getId(), "Property not found");
     }
+
+    private long getPropertiesVersion() {
+        return (Long) session.getNamedQuery("getPropertiesVersion").uniqueResult();
+    }
 }
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.LastReadPost;
+import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares marking all the topics of a big branch as read with an insert per topic and with JDBC batches of
+ * {@link LastReadPostHibernateDao}. Uses the in-memory database of tests, isn't run with tests, to run it execute
+ * {@link #main(String[])} with test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LastReadPostHibernateDaoBenchmark {
+    @Param({"1000", "10000"})
+    private int topicsInBranch;
+
+    private ClassPathXmlApplicationContext context;
+    private SessionFactory sessionFactory;
+    private TransactionTemplate transactionTemplate;
+    private LastReadPostHibernateDao dao;
+    private JCUser user;
+    private Branch branch;
+
+    @Setup
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("/org/jtalks/jcommune/model/entity/applicationContext-dao.xml");
+        sessionFactory = context.getBean("sessionFactory", SessionFactory.class);
+        PlatformTransactionManager transactionManager =
+                context.getBean("transactionManager", PlatformTransactionManager.class);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        dao = new LastReadPostHibernateDao(sessionFactory);
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                PersistedObjectsFactory.setSession(sessionFactory.getCurrentSession());
+                List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(topicsInBranch);
+                branch = topics.get(0).getBranch();
+                user = PersistedObjectsFactory.getDefaultUser();
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void insertPerTopic() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                markAllReadWithInsertPerTopic(sessionFactory.getCurrentSession());
+            }
+        });
+    }
+
+    @Benchmark
+    public void batchedInsert() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                dao.markAllRead(user, branch);
+            }
+        });
+    }
+
+    /**
+     * The way topics were marked as read before they were inserted with batches.
+     */
+    private void markAllReadWithInsertPerTopic(Session session) {
+        ((SQLQuery) session.getNamedQuery("deleteAllMarksReadToUser"))
+                .addSynchronizedEntityClass(LastReadPost.class)
+                .setParameter("user", user.getId())
+                .setParameter("branch", branch.getId())
+                .executeUpdate();
+        @SuppressWarnings("unchecked")
+        List<Object[]> topicsOfBranch = session.getNamedQuery("getTopicAndLatestPostDateInBranch")
+                .setParameter("branch", branch.getId())
+                .list();
+        SQLQuery insertQuery = (SQLQuery) session.getNamedQuery("markAllTopicsRead");
+        insertQuery.addSynchronizedEntityClass(LastReadPost.class);
+        for (Object[] o : topicsOfBranch) {
+            insertQuery.setParameter(0, UUID.randomUUID().toString())
+                    .setParameter(1, user.getId())
+                    .setParameter(2, ((DateTime) o[1]).toDate())
+                    .setParameter(3, o[0])
+                    .executeUpdate();
+        }
+        session.flush();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LastReadPostHibernateDaoBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
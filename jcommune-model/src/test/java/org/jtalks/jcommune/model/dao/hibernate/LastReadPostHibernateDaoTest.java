@@ -20,6 +20,7 @@ import org.hibernate.SessionFactory;
 import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
 import org.jtalks.jcommune.model.dao.LastReadPostDao;
+import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.LastReadPost;
 import org.jtalks.jcommune.model.entity.Topic;
@@ -97,6 +98,77 @@ public class LastReadPostHibernateDaoTest extends AbstractTransactionalTestNGSpr
         assertEquals(actualCountPostsToTopics, listCountPostsToTopics);
     }
 
+    @Test
+    public void markAllReadShouldMarkEveryTopicOfBranch() {
+        LastReadPostHibernateDao dao = new LastReadPostHibernateDao(sessionFactory);
+        dao.setMarkAllReadBatchSize(3);
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(10);
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+
+        dao.markAllRead(user, topics.get(0).getBranch());
+
+        assertEquals(getActualListCountPostsToTopics(topics, user), getTopicAndLatestPostDateInBranch(topics));
+    }
+
+    @Test
+    public void markAllReadShouldReplacePreviousMarksOfBranch() {
+        LastReadPostHibernateDao dao = new LastReadPostHibernateDao(sessionFactory);
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(5);
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        markAllTopicsASRead(topics, user);
+
+        dao.markAllRead(user, topics.get(0).getBranch());
+
+        assertEquals(dao.getLastReadPosts(user, topics).size(), topics.size());
+        assertEquals(getActualListCountPostsToTopics(topics, user), getTopicAndLatestPostDateInBranch(topics));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void markAllReadBatchSizeShouldBePositive() {
+        new LastReadPostHibernateDao(sessionFactory).setMarkAllReadBatchSize(0);
+    }
+
+    @Test
+    public void lastReadPostDatesShouldBeReturnedForAllTopicsReadByUser() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(5);
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        Map<Long, DateTime> expected = markAllTopicsASRead(topics, user);
+
+        assertEquals(lastReadPostDao.getLastReadPostDates(user), expected);
+    }
+
+    @Test
+    public void savedLastReadPostDatesShouldUpdateExistingAndCreateNewLastReadPosts() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(4);
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        markAllTopicsASRead(topics.subList(0, 2), user);
+        Map<Long, DateTime> dates = new HashMap<Long, DateTime>();
+        for (Topic topic : topics.subList(1, 4)) {
+            dates.put(topic.getId(), topic.getFirstPost().getCreationDate().minusDays(1));
+        }
+
+        lastReadPostDao.saveLastReadPostDates(user, dates);
+        session.clear();
+
+        Map<Long, DateTime> expected = new HashMap<Long, DateTime>(dates);
+        expected.put(topics.get(0).getId(), topics.get(0).getLastPost().getCreationDate());
+        assertEquals(lastReadPostDao.getLastReadPostDates(user), expected);
+    }
+
+    @Test
+    public void savedLastReadPostDatesShouldSkipRemovedTopics() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(1);
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        Map<Long, DateTime> dates = new HashMap<Long, DateTime>();
+        dates.put(topics.get(0).getId(), topics.get(0).getLastPost().getCreationDate());
+        dates.put(-1L, new DateTime());
+
+        lastReadPostDao.saveLastReadPostDates(user, dates);
+
+        assertEquals(lastReadPostDao.getLastReadPostDates(user),
+                Collections.singletonMap(topics.get(0).getId(), topics.get(0).getLastPost().getCreationDate()));
+    }
+
     @Test
     public void testDeleteMarksTopicsToUser() {
         List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(10);
@@ -158,6 +230,51 @@ public class LastReadPostHibernateDaoTest extends AbstractTransactionalTestNGSpr
         assertEquals(listCountPostsToTopicsInFBranch, actualCountPostsToTopicsInFBranch);
     }
 
+    @Test
+    public void branchesWithUnreadPostsShouldBeFoundAmongAllTheGivenOnes() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        List<Topic> readTopics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(3);
+        List<Topic> unreadTopics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(3);
+        markAllTopicsASRead(readTopics, user);
+        markAllTopicsASRead(unreadTopics.subList(0, 2), user);
+
+        Set<Long> result = lastReadPostDao.getBranchesWithUnreadPosts(user,
+                Arrays.asList(readTopics.get(0).getBranch(), unreadTopics.get(0).getBranch()));
+
+        assertEquals(result, Collections.singleton(unreadTopics.get(0).getBranch().getId()));
+    }
+
+    @Test
+    public void branchShouldHaveUnreadPostsWhenPostsWereAddedAfterTheLastReadOne() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(1);
+        DateTime readBeforeLastPost = topics.get(0).getLastPost().getCreationDate().minusDays(1);
+        lastReadPostDao.saveLastReadPostDates(user,
+                Collections.singletonMap(topics.get(0).getId(), readBeforeLastPost));
+
+        Set<Long> result = lastReadPostDao.getBranchesWithUnreadPosts(user, Arrays.asList(topics.get(0).getBranch()));
+
+        assertEquals(result, Collections.singleton(topics.get(0).getBranch().getId()));
+    }
+
+    @Test
+    public void branchesShouldNotHaveUnreadPostsWhenForumWasMarkedAsReadAfterTheirModification() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        user.setAllForumMarkedAsReadTime(new DateTime().plusDays(1));
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(3);
+
+        Set<Long> result = lastReadPostDao.getBranchesWithUnreadPosts(user, Arrays.asList(topics.get(0).getBranch()));
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void branchesWithUnreadPostsShouldNotBeLookedForWhenNoBranchesGiven() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+
+        assertTrue(lastReadPostDao.getBranchesWithUnreadPosts(user, Collections.<Branch>emptyList()).isEmpty());
+    }
+
     /*===== Specific methods =====*/
     @Test
     public void testListLastReadPostsForTopic() {
@@ -235,10 +352,10 @@ public class LastReadPostHibernateDaoTest extends AbstractTransactionalTestNGSpr
         Map<Long, DateTime> listCountPostsToTopics = new HashMap<Long, DateTime>();
 
         for (Topic tp : topics) {
-            insertQuery.setParameter("uuid", UUID.randomUUID().toString())
-                    .setParameter("user", user.getId())
-                    .setParameter("lastPostDate", ((DateTime) tp.getLastPost().getCreationDate()).toDate())
-                    .setParameter("topic", tp.getId())
+            insertQuery.setParameter(0, UUID.randomUUID().toString())
+                    .setParameter(1, user.getId())
+                    .setParameter(2, ((DateTime) tp.getLastPost().getCreationDate()).toDate())
+                    .setParameter(3, tp.getId())
                     .executeUpdate();
             listCountPostsToTopics.put(tp.getId(), tp.getLastPost().getCreationDate());
         }
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.PendingNotificationDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.NotificationType;
+import org.jtalks.jcommune.model.entity.PendingNotification;
+import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.test.context.transaction.TransactionConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+@ContextConfiguration(locations = {"classpath:/org/jtalks/jcommune/model/entity/applicationContext-dao.xml"})
+@TransactionConfiguration(transactionManager = "transactionManager", defaultRollback = true)
+@Transactional
+public class PendingNotificationHibernateDaoTest extends AbstractTransactionalTestNGSpringContextTests {
+    @Autowired
+    private PendingNotificationDao dao;
+    @Autowired
+    private SessionFactory sessionFactory;
+    private Session session;
+    private JCUser user;
+
+    @BeforeMethod
+    public void setUp() {
+        session = sessionFactory.getCurrentSession();
+        PersistedObjectsFactory.setSession(session);
+        user = PersistedObjectsFactory.getDefaultUser();
+    }
+
+    @Test
+    public void testSaveAndGet() {
+        PendingNotification notification = notification(user, NotificationType.TOPIC_UPDATED, 1L);
+        dao.saveOrUpdate(notification);
+        session.flush();
+        session.clear();
+
+        PendingNotification actual = dao.get(notification.getId());
+
+        assertEquals(actual.getRecipient().getId(), user.getId());
+        assertEquals(actual.getType(), NotificationType.TOPIC_UPDATED);
+        assertEquals(actual.getEntityId(), 1L);
+        assertEquals(actual.getDeploymentRootUrl(), "http://host:8080/forum");
+        assertEquals(actual.getAttempts(), 0);
+    }
+
+    @Test
+    public void pendingRecipientsShouldBeFoundByTypeAndEntity() {
+        JCUser another = PersistedObjectsFactory.getUser("another", "another@user.org");
+        session.save(notification(user, NotificationType.TOPIC_UPDATED, 1L));
+        session.save(notification(another, NotificationType.TOPIC_UPDATED, 2L));
+        session.save(notification(another, NotificationType.TOPIC_CREATED, 1L));
+
+        List<Long> recipientIds = dao.getPendingRecipientIds(NotificationType.TOPIC_UPDATED, 1L);
+
+        assertEquals(recipientIds, Collections.singletonList(user.getId()));
+    }
+
+    @Test
+    public void dueNotificationsShouldBeReturnedOldestFirst() {
+        DateTime now = new DateTime();
+        PendingNotification later = notification(user, NotificationType.TOPIC_UPDATED, 1L);
+        later.setNextAttemptDate(now.minusMinutes(1));
+        PendingNotification earlier = notification(user, NotificationType.TOPIC_UPDATED, 2L);
+        earlier.setNextAttemptDate(now.minusMinutes(2));
+        PendingNotification postponed = notification(user, NotificationType.TOPIC_UPDATED, 3L);
+        postponed.setNextAttemptDate(now.plusMinutes(1));
+        session.save(later);
+        session.save(earlier);
+        session.save(postponed);
+
+        assertEquals(dao.getDue(now, 10), Arrays.asList(earlier, later));
+        assertEquals(dao.getDue(now, 1), Collections.singletonList(earlier));
+    }
+
+    @Test
+    public void notificationShouldBeClaimedOnlyOnce() {
+        DateTime now = new DateTime();
+        PendingNotification notification = notification(user, NotificationType.TOPIC_UPDATED, 1L);
+        notification.setNextAttemptDate(now.minusMinutes(1));
+        session.save(notification);
+        session.flush();
+        session.clear();
+        PendingNotification seenByFirst = dao.get(notification.getId());
+        session.clear();
+        PendingNotification seenBySecond = dao.get(notification.getId());
+        session.clear();
+
+        assertTrue(dao.claim(seenByFirst, now.plusMinutes(10)));
+        assertFalse(dao.claim(seenBySecond, now.plusMinutes(10)));
+        assertTrue(dao.getDue(now, 10).isEmpty());
+    }
+
+    private PendingNotification notification(JCUser recipient, NotificationType type, long entityId) {
+        return new PendingNotification(recipient, type, entityId, "http://host:8080/forum", "http://host/forum");
+    }
+}
@@ -19,6 +19,7 @@ import org.hibernate.SessionFactory;
 import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
 import org.jtalks.jcommune.model.dao.PostDao;
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.dto.PageRequest;
 import org.jtalks.jcommune.model.entity.*;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -253,6 +254,83 @@ public class PostHibernateDaoTest extends AbstractTransactionalTestNGSpringConte
         assertEquals(postsPage.getTotalPages(), pageCount, "Incorrect count of pages.");
     }
 
+    @Test
+    public void testGetPostsAfterCursorReturnsSameAsOffsetPaging() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Post> posts = PersistedObjectsFactory.createAndSavePostList(totalSize);
+        Topic topic = posts.get(0).getTopic();
+        List<Post> firstPage = dao.getPosts(topic, new PageRequest("1", pageSize)).getContent();
+        String cursor = PageCursor.after(firstPage.get(firstPage.size() - 1));
+
+        Page<Post> keysetPage = dao.getPosts(topic, new PageRequest("2", pageSize, cursor));
+
+        Page<Post> offsetPage = dao.getPosts(topic, new PageRequest("2", pageSize));
+        assertEquals(keysetPage.getContent(), offsetPage.getContent());
+        assertEquals(keysetPage.getTotalElements(), totalSize);
+        assertEquals(keysetPage.getNumber(), 2);
+    }
+
+    @Test
+    public void testGetPostsWithCursorClampsTooBigPageNumber() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Post> posts = PersistedObjectsFactory.createAndSavePostList(totalSize);
+        Topic topic = posts.get(0).getTopic();
+        List<Post> firstPage = dao.getPosts(topic, new PageRequest("1", pageSize)).getContent();
+        String cursor = PageCursor.after(firstPage.get(firstPage.size() - 1));
+
+        Page<Post> postsPage = dao.getPosts(topic, new PageRequest("100", pageSize, cursor));
+
+        assertEquals(postsPage.getNumber(), 3);
+        assertEquals(postsPage.getContent(), dao.getPosts(topic, new PageRequest("3", pageSize)).getContent());
+    }
+
+    @Test
+    public void testGetPostsWithTopicCursorFallsBackToOffsetPaging() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Post> posts = PersistedObjectsFactory.createAndSavePostList(totalSize);
+        Topic topic = posts.get(0).getTopic();
+        String cursor = PageCursor.after(topic);
+
+        Page<Post> postsPage = dao.getPosts(topic, new PageRequest("2", pageSize, cursor));
+
+        assertEquals(postsPage.getContent(), dao.getPosts(topic, new PageRequest("2", pageSize)).getContent());
+    }
+
+    @Test
+    public void testCountPostsBeforeMatchesPositionOnPages() {
+        int totalSize = 10;
+        List<Post> posts = PersistedObjectsFactory.createAndSavePostList(totalSize);
+        Topic topic = posts.get(0).getTopic();
+        List<Post> orderedPosts = dao.getPosts(topic, new PageRequest("1", totalSize)).getContent();
+
+        for (int i = 0; i < orderedPosts.size(); i++) {
+            assertEquals(dao.countPostsBefore(orderedPosts.get(i)), i);
+        }
+    }
+
+    @Test
+    public void testCountPostsBeforeOrdersPostsOfSameDateById() {
+        List<Post> posts = PersistedObjectsFactory.createAndSavePostList(3);
+        DateTime sameDate = new DateTime(2100, 1, 1, 0, 0, 0, 0);
+        for (Post post : posts) {
+            ReflectionTestUtils.setField(post, "creationDate", sameDate);
+            session.save(post);
+        }
+        session.flush();
+        // the first post of the topic is created earlier than these two
+        Post lastById = posts.get(0);
+        for (Post post : posts) {
+            if (post.getId() > lastById.getId()) {
+                lastById = post;
+            }
+        }
+
+        assertEquals(dao.countPostsBefore(lastById), 2);
+    }
+
     @Test
     public void testGetPostsWithEnabledPagingPageTooLow() {
         int totalSize = 50;
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.jtalks.common.model.entity.Component;
+import org.jtalks.common.model.entity.ComponentType;
+import org.jtalks.common.model.entity.Property;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.test.context.transaction.TransactionConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@ContextConfiguration(locations = {"classpath:/org/jtalks/jcommune/model/entity/applicationContext-dao.xml"})
+@TransactionConfiguration(transactionManager = "transactionManager", defaultRollback = true)
+@Transactional
+public class PropertyStoreTest extends AbstractTransactionalTestNGSpringContextTests {
+    private static final String PROPERTY_NAME = "property_name";
+    @Autowired
+    private SessionFactory sessionFactory;
+    @Autowired
+    private PropertyStore store;
+    private Session session;
+
+    @BeforeMethod
+    public void setUp() {
+        session = sessionFactory.getCurrentSession();
+        store.invalidate();
+    }
+
+    @Test
+    public void valuesShouldBeLoadedFromDatabase() {
+        session.save(new Property(PROPERTY_NAME, "value"));
+        session.save(new Component("forum", "description", ComponentType.FORUM));
+
+        assertEquals(store.getValue(PROPERTY_NAME), "value");
+        assertNull(store.getValue("absent_property"));
+        assertEquals(store.getComponentName(), "forum");
+        assertEquals(store.getComponentDescription(), "description");
+    }
+
+    @Test
+    public void componentInfoShouldBeNullIfThereIsNoForumComponent() {
+        assertNull(store.getComponentName());
+        assertNull(store.getComponentDescription());
+    }
+
+    @Test
+    public void loadedValuesShouldBeUsedUntilInvalidated() {
+        Property property = new Property(PROPERTY_NAME, "value");
+        session.save(property);
+        store.getValue(PROPERTY_NAME);
+
+        changeValue(property, "new value");
+
+        assertEquals(store.getValue(PROPERTY_NAME), "value");
+        store.invalidate();
+        assertEquals(store.getValue(PROPERTY_NAME), "new value");
+    }
+
+    @Test
+    public void changedShouldIncreaseVersionAndReloadValues() {
+        Property property = new Property(PROPERTY_NAME, "value");
+        session.save(property);
+        store.getValue(PROPERTY_NAME);
+        changeValue(property, "new value");
+        long version = getVersion();
+
+        store.changed();
+
+        assertEquals(getVersion(), version + 1);
+        assertEquals(store.getValue(PROPERTY_NAME), "new value");
+    }
+
+    @Test
+    public void changedShouldNotWriteToPropertiesTable() {
+        store.changed();
+
+        assertEquals(session.createQuery("SELECT count(p) FROM Property p").uniqueResult(), 0L);
+    }
+
+    @Test
+    public void valuesShouldBeReloadedWhenVersionInDatabaseIsChanged() {
+        PropertyStore checkingEveryTime = new PropertyStore(sessionFactory, 0, 60);
+        Property property = new Property(PROPERTY_NAME, "value");
+        session.save(property);
+        checkingEveryTime.getValue(PROPERTY_NAME);
+
+        changeValue(property, "new value");
+        increaseVersionByAnotherNode();
+
+        assertEquals(checkingEveryTime.getValue(PROPERTY_NAME), "new value");
+    }
+
+    @Test
+    public void valuesShouldNotBeReloadedBeforeVersionCheckInterval() {
+        PropertyStore checkingRarely = new PropertyStore(sessionFactory, 60, 60);
+        Property property = new Property(PROPERTY_NAME, "value");
+        session.save(property);
+        checkingRarely.getValue(PROPERTY_NAME);
+
+        changeValue(property, "new value");
+        increaseVersionByAnotherNode();
+
+        assertEquals(checkingRarely.getValue(PROPERTY_NAME), "value");
+    }
+
+    private long getVersion() {
+        return (Long) session.getNamedQuery("getPropertiesVersion").uniqueResult();
+    }
+
+    private void increaseVersionByAnotherNode() {
+        session.createSQLQuery("UPDATE JC_PROPERTIES_VERSION SET VERSION = VERSION + 1")
+                .addSynchronizedQuerySpace("JC_PROPERTIES_VERSION")
+                .executeUpdate();
+    }
+
+    private void changeValue(Property property, String value) {
+        property.setValue(value);
+        session.flush();
+    }
+}
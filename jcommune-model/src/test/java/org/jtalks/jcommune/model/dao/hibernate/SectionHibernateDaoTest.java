@@ -49,6 +49,8 @@ public class SectionHibernateDaoTest extends AbstractTransactionalTestNGSpringCo
     @Autowired
     private SessionFactory sessionFactory;
     @Autowired
+    private BranchVisibilityIndex visibilityIndex;
+    @Autowired
     private SectionDao dao;
     @Autowired
     private BranchDao branchDao;
@@ -58,6 +60,7 @@ public class SectionHibernateDaoTest extends AbstractTransactionalTestNGSpringCo
     public void setUp() throws Exception {
         session = sessionFactory.getCurrentSession();
         PersistedObjectsFactory.setSession(session);
+        visibilityIndex.invalidate();
     }
 
     /*===== Common methods =====*/
@@ -19,6 +19,7 @@ import org.hibernate.SessionFactory;
 import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
 import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.dto.PageRequest;
 import org.jtalks.jcommune.model.entity.*;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,7 +33,10 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.not;
@@ -50,6 +54,8 @@ public class TopicHibernateDaoTest extends AbstractTransactionalTestNGSpringCont
     @Autowired
     private SessionFactory sessionFactory;
     @Autowired
+    private BranchVisibilityIndex visibilityIndex;
+    @Autowired
     private TopicDao dao;
     private Session session;
 
@@ -57,6 +63,7 @@ public class TopicHibernateDaoTest extends AbstractTransactionalTestNGSpringCont
     public void setUp() throws Exception {
         session = sessionFactory.getCurrentSession();
         PersistedObjectsFactory.setSession(session);
+        visibilityIndex.invalidate();
     }
 
     /*===== Common methods =====*/
@@ -94,6 +101,118 @@ public class TopicHibernateDaoTest extends AbstractTransactionalTestNGSpringCont
         assertEquals(result.getTitle(), newTitle);
     }
 
+    @Test
+    public void viewsShouldBeAddedToTopics() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        topic.setViews(3);
+        session.save(topic);
+        session.flush();
+        Map<Long, Integer> views = new HashMap<Long, Integer>();
+        views.put(topic.getId(), 2);
+        views.put(-1L, 5);
+
+        dao.addViews(views);
+        session.evict(topic);
+        Topic result = (Topic) session.get(Topic.class, topic.getId());
+
+        assertEquals(result.getViews(), 5);
+    }
+
+    @Test
+    public void postCountShouldBeUpdatedInTopicAndItsBranch() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        session.flush();
+
+        dao.updatePostCount(topic, 2);
+        session.clear();
+        Topic result = (Topic) session.get(Topic.class, topic.getId());
+
+        assertEquals(result.getPostCount(), 3);
+        assertEquals(result.getBranch().getPostCount(), 3);
+    }
+
+    @Test
+    public void savedTopicShouldNotOverwritePostCount() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        session.flush();
+        dao.updatePostCount(topic, 1);
+
+        topic.setTitle("new title");
+        dao.saveOrUpdate(topic);
+        session.flush();
+        session.clear();
+        Topic result = (Topic) session.get(Topic.class, topic.getId());
+
+        assertEquals(result.getPostCount(), 2);
+    }
+
+    @Test
+    public void testGetTopicIds() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicList(3);
+        Branch branch = topics.get(0).getBranch();
+        List<Long> expected = new ArrayList<Long>();
+        for (Topic topic : topics) {
+            expected.add(topic.getId());
+        }
+        Collections.sort(expected);
+
+        assertEquals(dao.getTopicIds(branch, 10), expected);
+        assertEquals(dao.getTopicIds(branch, 2), expected.subList(0, 2));
+    }
+
+    @Test
+    public void deleteTopicsShouldDeleteTopicsWithAllTheirData() {
+        Poll poll = PersistedObjectsFactory.createDefaultVoting();
+        Topic topic = poll.getTopic();
+        Post post = topic.getFirstPost();
+        JCUser author = post.getUserCreated();
+        author.setPostCount(3);
+        Branch branch = topic.getBranch();
+        branch.setLastPost(post);
+        session.save(new LastReadPost(author, topic, new DateTime()));
+        session.flush();
+
+        int deletedPosts = dao.deleteTopics(Collections.singletonList(topic.getId()));
+        session.clear();
+
+        assertEquals(deletedPosts, 1);
+        assertNull(session.get(Topic.class, topic.getId()));
+        assertNull(session.get(Post.class, post.getId()));
+        assertNull(session.get(Poll.class, poll.getId()));
+        assertEquals(((JCUser) session.get(JCUser.class, author.getId())).getPostCount(), 2);
+        assertNull(((Branch) session.get(Branch.class, branch.getId())).getLastPost());
+    }
+
+    @Test
+    public void deleteTopicsShouldDeleteCodeReviews() {
+        Topic topic = PersistedObjectsFactory.getCodeReviewTopic();
+        long reviewId = topic.getCodeReview().getId();
+        session.flush();
+
+        dao.deleteTopics(Collections.singletonList(topic.getId()));
+        session.clear();
+
+        assertNull(session.get(Topic.class, topic.getId()));
+        assertNull(session.get(CodeReview.class, reviewId));
+    }
+
+    @Test
+    public void deleteTopicsShouldNotTouchOtherTopics() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicList(2);
+        session.flush();
+
+        dao.deleteTopics(Collections.singletonList(topics.get(0).getId()));
+        session.clear();
+
+        assertNull(session.get(Topic.class, topics.get(0).getId()));
+        assertNotNull(session.get(Topic.class, topics.get(1).getId()));
+    }
+
+    @Test
+    public void deleteTopicsShouldDoNothingForEmptyList() {
+        assertEquals(dao.deleteTopics(Collections.<Long>emptyList()), 0);
+    }
+
     @Test(expectedExceptions = Exception.class)
     public void testUpdateNotNullViolation() {
         Topic topic = ObjectsFactory.getDefaultTopic();
@@ -424,6 +543,66 @@ public class TopicHibernateDaoTest extends AbstractTransactionalTestNGSpringCont
         assertEquals(topicsPage.getNumber(), pageCount);
     }
 
+    @Test
+    public void testGetTopicsAfterCursorReturnsSameTopicsAsOffsetPaging() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Topic> topicList = PersistedObjectsFactory.createAndSaveTopicList(totalSize);
+        Branch branch = topicList.get(0).getBranch();
+        topicList.get(7).setSticked(true);
+        topicList.get(33).setSticked(true);
+        session.flush();
+        List<Topic> firstPage = dao.getTopics(branch, new PageRequest("1", pageSize)).getContent();
+        String cursor = PageCursor.after(firstPage.get(firstPage.size() - 1));
+
+        Page<Topic> keysetPage = dao.getTopics(branch, new PageRequest("2", pageSize, cursor));
+
+        Page<Topic> offsetPage = dao.getTopics(branch, new PageRequest("2", pageSize));
+        assertEquals(keysetPage.getContent(), offsetPage.getContent());
+        assertEquals(keysetPage.getTotalElements(), totalSize);
+        assertEquals(keysetPage.getNumber(), 2);
+    }
+
+    @Test
+    public void testGetTopicsWithCursorClampsTooBigPageNumber() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Topic> topicList = PersistedObjectsFactory.createAndSaveTopicList(totalSize);
+        Branch branch = topicList.get(0).getBranch();
+        List<Topic> firstPage = dao.getTopics(branch, new PageRequest("1", pageSize)).getContent();
+        String cursor = PageCursor.after(firstPage.get(firstPage.size() - 1));
+
+        Page<Topic> topicsPage = dao.getTopics(branch, new PageRequest("100", pageSize, cursor));
+
+        assertEquals(topicsPage.getNumber(), 3);
+        assertEquals(topicsPage.getContent(), dao.getTopics(branch, new PageRequest("3", pageSize)).getContent());
+    }
+
+    @Test
+    public void testGetTopicsWithPostCursorFallsBackToOffsetPaging() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Topic> topicList = PersistedObjectsFactory.createAndSaveTopicList(totalSize);
+        Branch branch = topicList.get(0).getBranch();
+        String cursor = PageCursor.after(topicList.get(0).getFirstPost());
+
+        Page<Topic> topicsPage = dao.getTopics(branch, new PageRequest("2", pageSize, cursor));
+
+        assertEquals(topicsPage.getContent(), dao.getTopics(branch, new PageRequest("2", pageSize)).getContent());
+    }
+
+    @Test
+    public void testGetTopicsWithMalformedCursorFallsBackToOffsetPaging() {
+        int totalSize = 50;
+        int pageSize = 20;
+        List<Topic> topicList = PersistedObjectsFactory.createAndSaveTopicList(totalSize);
+        Branch branch = topicList.get(0).getBranch();
+
+        Page<Topic> topicsPage = dao.getTopics(branch, new PageRequest("2", pageSize, "garbage"));
+
+        assertEquals(topicsPage.getContent(), dao.getTopics(branch, new PageRequest("2", pageSize)).getContent());
+    }
+
     @Test
     public void testAddCodeReview() {
         Topic topic = PersistedObjectsFactory.getDefaultTopic();
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class PageCursorTest {
+    private final JCUser user = new JCUser("username", "email@mail.com", "password");
+
+    @Test
+    public void topicCursorShouldPointToTopic() {
+        Topic topic = new Topic(user, "title");
+        topic.setId(123456L);
+        topic.setSticked(true);
+
+        PageCursor cursor = PageCursor.parse(PageCursor.after(topic));
+
+        assertTrue(cursor.isTopicCursor());
+        assertFalse(cursor.isPostCursor());
+        assertTrue(cursor.isSticked());
+        assertEquals(cursor.getDate().getMillis(), topic.getModificationDate().getMillis());
+        assertEquals(cursor.getId(), topic.getId());
+    }
+
+    @Test
+    public void postCursorShouldPointToPost() {
+        Post post = new Post(user, "content");
+        post.setId(42L);
+
+        PageCursor cursor = PageCursor.parse(PageCursor.after(post));
+
+        assertTrue(cursor.isPostCursor());
+        assertFalse(cursor.isTopicCursor());
+        assertFalse(cursor.isSticked());
+        assertEquals(cursor.getDate().getMillis(), post.getCreationDate().getMillis());
+        assertEquals(cursor.getId(), post.getId());
+    }
+
+    @Test(dataProvider = "malformedCursors")
+    public void malformedCursorShouldBeIgnored(String value) {
+        assertNull(PageCursor.parse(value));
+    }
+
+    @DataProvider
+    public Object[][] malformedCursors() {
+        return new Object[][]{
+                {null}, {""}, {"t"}, {"garbage"}, {"t2abc-1"}, {"t1abc"}, {"t1abc-1-2"},
+                {"t1-abc-1"}, {"p!!-1"}, {"pabc-"}, {"xabc-1"}
+        };
+    }
+
+    @Test
+    public void cursorShouldBeIgnoredOnFirstPage() {
+        Post post = new Post(user, "content");
+
+        PageRequest pageRequest = new PageRequest("1", 10, PageCursor.after(post));
+
+        assertNull(pageRequest.getCursor());
+    }
+}
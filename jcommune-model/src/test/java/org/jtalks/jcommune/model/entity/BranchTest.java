@@ -75,17 +75,49 @@ public class BranchTest {
 
     @Test
     public void testPostCount() {
-        first.addPost(new Post());
-        second.addPost(new Post());
-        third.addPost(new Post());
-        assertEquals(branch.getPostCount(), 3);
+        Branch branch = new Branch("branch", "branch");
+        Topic topic = new Topic(null, null);
+        topic.addPost(new Post());
+        topic.addPost(new Post());
+
+        branch.addTopic(topic);
+
+        assertEquals(branch.getTopicCount(), 1);
+        assertEquals(branch.getPostCount(), 2);
     }
 
     @Test
     public void testPostCountWithoutTopics() {
-        branch.setTopics(new ArrayList<Topic>());
+        Branch branch = new Branch("branch", "branch");
+        assertEquals(branch.getTopicCount(), 0);
         assertEquals(branch.getPostCount(), 0);
     }
+
+    @Test
+    public void testDeleteTopicDecreasesCounters() {
+        Branch branch = new Branch("branch", "branch");
+        Topic topic = new Topic(null, null);
+        topic.addPost(new Post());
+        branch.addTopic(topic);
+
+        branch.deleteTopic(topic);
+
+        assertEquals(branch.getTopicCount(), 0);
+        assertEquals(branch.getPostCount(), 0);
+    }
+
+    @Test
+    public void testDeleteForeignTopicDoesNotChangeCounters() {
+        Branch branch = new Branch("branch", "branch");
+        Topic topic = new Topic(null, null);
+        topic.addPost(new Post());
+        branch.addTopic(topic);
+
+        branch.deleteTopic(new Topic(null, null));
+
+        assertEquals(branch.getTopicCount(), 1);
+        assertEquals(branch.getPostCount(), 1);
+    }
     
     @Test
     public void testIsLastPostWhenBranchIsEmpty() {
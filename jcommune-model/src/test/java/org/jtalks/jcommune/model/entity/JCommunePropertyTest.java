@@ -18,6 +18,7 @@ import org.jtalks.common.model.entity.Component;
 import org.jtalks.common.model.entity.ComponentType;
 import org.jtalks.common.model.entity.Property;
 import org.jtalks.jcommune.model.dao.ComponentDao;
+import org.jtalks.jcommune.model.dao.PropertyCache;
 import org.jtalks.jcommune.model.dao.PropertyDao;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -27,8 +28,7 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import static org.mockito.Mockito.when;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.*;
 
 /**
  * @author Anuar Nurmakanov
@@ -191,4 +191,51 @@ public class JCommunePropertyTest {
         verify(cmp).setProperty(PROPERTY_NAME, PROPERTY_VALUE);
     }
 
+    @Test
+    public void getValueShouldBeReadFromPropertyStoreIfItIsSet() {
+        PropertyDao propertyDao = mock(PropertyDao.class);
+        PropertyCache propertyStore = mock(PropertyCache.class);
+        JCommuneProperty property = JCommuneProperty.LOGO_TOOLTIP;
+        property.setName(PROPERTY_NAME);
+        property.setPropertyDao(propertyDao);
+        property.setPropertyStore(propertyStore);
+        when(propertyStore.getValue(PROPERTY_NAME)).thenReturn(PROPERTY_VALUE);
+        try {
+            Assert.assertEquals(property.getValue(), PROPERTY_VALUE);
+            verify(propertyDao, never()).getByName(PROPERTY_NAME);
+        } finally {
+            property.setPropertyStore(null);
+        }
+    }
+
+    @Test
+    public void getValueShouldBeDefaultIfPropertyIsNotInPropertyStore() {
+        JCommuneProperty property = JCommuneProperty.LOGO_TOOLTIP;
+        property.setName("absent.property");
+        property.setDefaultValue(PROPERTY_VALUE);
+        property.setPropertyStore(mock(PropertyCache.class));
+        try {
+            Assert.assertEquals(property.getValue(), PROPERTY_VALUE);
+        } finally {
+            property.setPropertyStore(null);
+        }
+    }
+
+    @Test
+    public void getValueOfComponentShouldBeReadFromPropertyStoreIfItIsSet() {
+        ComponentDao componentDao = mock(ComponentDao.class);
+        PropertyCache propertyStore = mock(PropertyCache.class);
+        JCommuneProperty property = JCommuneProperty.CMP_DESCRIPTION;
+        property.setName("cmp.description");
+        property.setComponentDao(componentDao);
+        property.setPropertyStore(propertyStore);
+        when(propertyStore.getComponentDescription()).thenReturn(PROPERTY_VALUE);
+        try {
+            Assert.assertEquals(property.getValueOfComponent(), PROPERTY_VALUE);
+            verify(componentDao, never()).getComponent();
+        } finally {
+            property.setPropertyStore(null);
+        }
+    }
+
 }
@@ -155,6 +155,16 @@ public class TopicTest {
         assertFalse(topic.getPosts().contains(post1), "The post isn't removed from the topic");
     }
 
+    @Test
+    public void postCountShouldFollowAddedAndRemovedPosts() {
+        assertEquals(topic.getPostCount(), 2);
+
+        topic.removePost(post1);
+        topic.removePost(new Post());
+
+        assertEquals(topic.getPostCount(), 1);
+    }
+
     @Test
     public void setSubscribersShouldSubscribeUserToTheTopic() {
         JCUser subscribedUser = new JCUser();
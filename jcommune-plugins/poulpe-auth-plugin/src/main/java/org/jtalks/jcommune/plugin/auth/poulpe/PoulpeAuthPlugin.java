@@ -31,10 +31,12 @@ import org.springframework.context.support.ReloadableResourceBundleMessageSource
 
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.bind.JAXBException;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
 import java.util.regex.Pattern;
 
+import static org.jtalks.jcommune.model.entity.PluginProperty.Type.INT;
 import static org.jtalks.jcommune.model.entity.PluginProperty.Type.STRING;
 
 /**
@@ -43,16 +45,17 @@ import static org.jtalks.jcommune.model.entity.PluginProperty.Type.STRING;
  * @author Andrey Pogorelov
  */
 public class PoulpeAuthPlugin extends StatefullPlugin
-        implements AuthenticationPlugin, RegistrationPlugin {
+        implements AuthenticationPlugin, RegistrationPlugin, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PoulpeAuthPlugin.class);
     private static final String URL_PROPERTY = "Url";
     private static final String LOGIN_PROPERTY = "Login";
     private static final String PASSWORD_PROPERTY = "Password";
+    private static final String MAX_CONNECTIONS_PROPERTY = "MaxConnections";
     private static final String URL_PATTERN = "(((http|https)://)?" +
             "([\\w\\-_]+(\\.[\\w\\-_]+)+|localhost)+([\\w\\-\\.,@?^=%&amp;:/~\\+#]*[\\w\\-\\@?^=%&amp;/~\\+#])?)";
-    private PoulpeAuthService service;
-    private List<PluginProperty> pluginProperties;
+    private volatile PoulpeAuthService service;
+    private volatile List<PluginProperty> pluginProperties;
 
     /**
      * {@inheritDoc}
@@ -136,7 +139,9 @@ public class PoulpeAuthPlugin extends StatefullPlugin
         PluginProperty url = new PluginProperty(URL_PROPERTY, STRING, "http://localhost:8080");
         PluginProperty login = new PluginProperty(LOGIN_PROPERTY, STRING, "user");
         PluginProperty password = new PluginProperty(PASSWORD_PROPERTY, STRING, "1234");
-        return Arrays.asList(url, login, password);
+        PluginProperty maxConnections = new PluginProperty(MAX_CONNECTIONS_PROPERTY, INT,
+                String.valueOf(PoulpeAuthService.DEFAULT_MAX_CONNECTIONS));
+        return Arrays.asList(url, login, password, maxConnections);
     }
 
     @Override
@@ -145,6 +150,7 @@ public class PoulpeAuthPlugin extends StatefullPlugin
         String url = null;
         String login = null;
         String password = null;
+        int maxConnections = PoulpeAuthService.DEFAULT_MAX_CONNECTIONS;
         for (PluginProperty property : properties) {
             if (URL_PROPERTY.equalsIgnoreCase(property.getName())) {
                 url = property.getValue() == null ? null : property.getValue().trim();
@@ -152,6 +158,8 @@ public class PoulpeAuthPlugin extends StatefullPlugin
                 login = property.getValue() == null ? null : property.getValue().trim();
             } else if (PASSWORD_PROPERTY.equalsIgnoreCase(property.getName())) {
                 password = property.getValue();
+            } else if (MAX_CONNECTIONS_PROPERTY.equalsIgnoreCase(property.getName())) {
+                maxConnections = parseMaxConnections(property.getValue());
             }
         }
         if (url == null || url.isEmpty()) {
@@ -160,16 +168,51 @@ public class PoulpeAuthPlugin extends StatefullPlugin
         } else if (!validateUrl(url)) {
             throw new RuntimeException("Can't apply configuration: Incorrect format for Url value.");
         }
-        service = new PoulpeAuthService(url, login, password);
+        PoulpeAuthService previousService = service;
+        // keep connections, cached authentication results and state of the circuit breaker if nothing has changed
+        if (previousService == null || !previousService.hasSettings(url, login, password, maxConnections)) {
+            service = new PoulpeAuthService(url, login, password, maxConnections);
+            if (previousService != null) {
+                previousService.close();
+            }
+        }
         pluginProperties = properties;
         return new HashMap<>();
     }
 
+    private int parseMaxConnections(String value) {
+        // configurations saved before the property was added don't have it
+        if (value == null || value.trim().isEmpty()) {
+            return PoulpeAuthService.DEFAULT_MAX_CONNECTIONS;
+        }
+        try {
+            int maxConnections = Integer.parseInt(value.trim());
+            if (maxConnections > 0) {
+                return maxConnections;
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Max connections is not a number: {}", value);
+        }
+        throw new RuntimeException("Can't apply configuration: Max connections should be a positive number.");
+    }
+
     private boolean validateUrl(String url) {
         Pattern pattern = Pattern.compile(URL_PATTERN, Pattern.DOTALL);
         return pattern.matcher(url).matches();
     }
 
+    /**
+     * Closes connections to Poulpe once requests in progress are finished. Called when the plugin is replaced with a
+     * newly configured instance.
+     */
+    @Override
+    public void close() {
+        PoulpeAuthService currentService = service;
+        if (currentService != null) {
+            currentService.close();
+        }
+    }
+
     @VisibleForTesting
     void setPluginService(PoulpeAuthService service) {
         this.service = service;
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.plugin.auth.poulpe.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Protects request threads of the forum from a slow or unavailable Poulpe. Limits the number of
+ * concurrent requests to Poulpe and stops sending them for a while after several consecutive
+ * connection failures. When the limit is reached, a call waits a short time for a finished one. While the
+ * circuit is open, calls fail fast instead of waiting for Poulpe.
+ * <p/>
+ * Usage: call {@link #tryAcquire()} before a request, and if it's allowed, report its result with
+ * {@link #succeeded()} or {@link #failed()} and always call {@link #release()} after it.
+ */
+public class CircuitBreaker {
+    private final Semaphore permits;
+    private final int maxConcurrentCalls;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long acquireTimeoutMillis;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openUntil;
+
+    /**
+     * @param maxConcurrentCalls   how many requests may be sent at the same time
+     * @param failureThreshold     how many consecutive failures open the circuit
+     * @param openMillis           for how long requests are not sent once the circuit is open
+     * @param acquireTimeoutMillis how long a request waits for a place when too many requests are in progress
+     */
+    public CircuitBreaker(int maxConcurrentCalls, int failureThreshold, long openMillis, long acquireTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Checks whether a request may be sent now. When the open period is over, requests are allowed
+     * again, but the first failure opens the circuit once more. If too many requests are in progress,
+     * waits for one of them to finish, but not longer than the configured timeout.
+     *
+     * @return true if the request may be sent, false if the circuit is open or too many requests are still
+     *         in progress after the timeout
+     */
+    public boolean tryAcquire() {
+        if (isOpen()) {
+            return false;
+        }
+        try {
+            return permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Frees the place of a request allowed by {@link #tryAcquire()}.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Waits until requests in progress are finished and doesn't allow new requests after that.
+     *
+     * @param timeoutMillis how long to wait for requests in progress
+     * @return true if requests were finished, false if the time is out
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        return permits.tryAcquire(maxConcurrentCalls, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reports that Poulpe has answered the request.
+     */
+    public void succeeded() {
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * Reports that Poulpe hasn't answered the request.
+     */
+    public void failed() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+
+    /**
+     * @return true if requests are not sent at the moment because of previous failures
+     */
+    public boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+}
@@ -21,8 +21,10 @@ import org.jtalks.jcommune.model.plugins.exceptions.UnexpectedErrorException;
 import org.jtalks.jcommune.plugin.auth.poulpe.dto.Authentication;
 import org.jtalks.jcommune.plugin.auth.poulpe.dto.Errors;
 import org.jtalks.jcommune.plugin.auth.poulpe.dto.User;
+import org.restlet.Client;
 import org.restlet.Context;
 import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Reference;
 import org.restlet.data.Status;
 import org.restlet.engine.header.Header;
 import org.restlet.engine.header.HeaderConstants;
@@ -38,30 +40,120 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class contains method needed for communicate with Poulpe rest service.
+ * <p/>
+ * Requests are sent through one client with a pool of keep-alive connections. The number of concurrent
+ * requests is limited, and requests are not sent for a while when Poulpe doesn't answer, see
+ * {@link CircuitBreaker}. Results of authentication are cached for a short time, so repeated logins
+ * don't need Poulpe at all.
  *
  * @author Andrey Pogorelov
  */
 public class PoulpeAuthService {
 
     private static final int CONNECTION_TIMEOUT = 5000;
+    /** How long closing waits for requests in progress */
+    private static final long CLOSE_TIMEOUT_MILLIS = 2 * CONNECTION_TIMEOUT;
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final int FAILURES_TO_STOP_REQUESTS = 5;
+    private static final long STOP_REQUESTS_MILLIS = 30000;
+    /** How long a request waits for a connection when all of them are busy, should not exceed connection timeout */
+    private static final long WAIT_CONNECTION_MILLIS = 1000;
+    private static final long SUCCESSFUL_AUTH_TTL_MILLIS = 60000;
+    private static final long FAILED_AUTH_TTL_MILLIS = 10000;
+    private static final int MAX_CACHED_AUTH_RESULTS = 10000;
+    private static final JAXBContext AUTHENTICATION_CONTEXT = createJaxbContext(Authentication.class);
+    private static final JAXBContext ERRORS_CONTEXT = createJaxbContext(Errors.class);
     public static final String DRY_RUN_PARAM = "dryRun";
     public static final String TRUE = "true";
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private String url;
+    private int maxConnections;
     private String regUrl;
     private String authUrl;
     private String login;
     private String password;
+    private final Client client;
+    private final CircuitBreaker circuitBreaker;
+    private final ConcurrentMap<String, CachedAuthResult> authResults = new ConcurrentHashMap<>();
 
     public PoulpeAuthService(String url, String login, String password) {
+        this(url, login, password, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param url            Poulpe url
+     * @param login          login to use for registration of users in Poulpe
+     * @param password       password to use for registration of users in Poulpe
+     * @param maxConnections how many requests may be sent to Poulpe at the same time
+     */
+    public PoulpeAuthService(String url, String login, String password, int maxConnections) {
+        this.url = url;
+        this.maxConnections = maxConnections;
         this.regUrl = url + "/rest/private/user";
         this.authUrl = url + "/rest/authenticate";
         this.login = login;
         this.password = password;
+        this.client = createClient(url, maxConnections);
+        this.circuitBreaker = new CircuitBreaker(maxConnections, FAILURES_TO_STOP_REQUESTS, STOP_REQUESTS_MILLIS,
+                WAIT_CONNECTION_MILLIS);
+    }
+
+    private static JAXBContext createJaxbContext(Class<?> type) {
+        try {
+            return JAXBContext.newInstance(type);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Can't create JAXB context for " + type.getName(), e);
+        }
+    }
+
+    private static Client createClient(String url, int maxConnections) {
+        Context context = new Context();
+        context.getParameters().add("socketConnectTimeoutMs", String.valueOf(CONNECTION_TIMEOUT));
+        context.getParameters().add("maxIoIdleTimeMs", String.valueOf(CONNECTION_TIMEOUT));
+        context.getParameters().add("persistingConnections", TRUE);
+        context.getParameters().add("maxConnectionsPerHost", String.valueOf(maxConnections));
+        context.getParameters().add("maxTotalConnections", String.valueOf(maxConnections));
+        return new Client(context, new Reference(url).getSchemeProtocol());
+    }
+
+    /**
+     * Checks whether the service sends requests the same way as a new one with the given settings would do.
+     *
+     * @param url            Poulpe url
+     * @param login          login to use for registration of users in Poulpe
+     * @param password       password to use for registration of users in Poulpe
+     * @param maxConnections how many requests may be sent to Poulpe at the same time
+     * @return true if the service was created with the same settings
+     */
+    public boolean hasSettings(String url, String login, String password, int maxConnections) {
+        return this.url.equals(url) && Objects.equals(this.login, login) && Objects.equals(this.password, password)
+                && this.maxConnections == maxConnections;
+    }
+
+    /**
+     * Closes connections to Poulpe once requests in progress are finished, new requests are not sent after
+     * this method is called. The service can't be used after that.
+     */
+    public void close() {
+        try {
+            if (!circuitBreaker.drain(CLOSE_TIMEOUT_MILLIS)) {
+                logger.warn("Requests to Poulpe weren't finished in {} ms, closing connections anyway",
+                        CLOSE_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            client.stop();
+        } catch (Exception e) {
+            logger.warn("Failed to stop Poulpe client", e);
+        }
     }
 
     /**
@@ -75,8 +167,22 @@ public class PoulpeAuthService {
     public Map<String, String> registerUser(UserDto userDto, Boolean dryRun)
             throws IOException, NoConnectionException, JAXBException, UnexpectedErrorException {
         User user = createUser(userDto.getUsername(), userDto.getPassword(), userDto.getEmail());
-        ClientResource clientResource = sendRegistrationRequest(user, dryRun);
-        return getRegistrationResult(clientResource, userDto.getLanguage().getLocale());
+        acquireConnection();
+        Map<String, String> errors;
+        try {
+            ClientResource clientResource = sendRegistrationRequest(user, dryRun);
+            errors = getRegistrationResult(clientResource, userDto.getLanguage().getLocale());
+            circuitBreaker.succeeded();
+        } catch (NoConnectionException e) {
+            circuitBreaker.failed();
+            throw e;
+        } finally {
+            circuitBreaker.release();
+        }
+        if (!dryRun && errors.isEmpty()) {
+            authResults.remove(authResultKey(user.getUsername(), user.getPasswordHash()));
+        }
+        return errors;
     }
 
     /**
@@ -89,8 +195,49 @@ public class PoulpeAuthService {
      */
     public Map<String, String> authenticate(String username, String passwordHash)
             throws JAXBException, IOException, NoConnectionException {
-        ClientResource clientResource = sendAuthRequest(username, passwordHash);
-        return getAuthResult(clientResource);
+        String key = authResultKey(username, passwordHash);
+        CachedAuthResult cached = authResults.get(key);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return new HashMap<>(cached.result);
+        }
+        acquireConnection();
+        Map<String, String> result;
+        try {
+            ClientResource clientResource = sendAuthRequest(username, passwordHash);
+            result = getAuthResult(clientResource);
+            circuitBreaker.succeeded();
+        } catch (NoConnectionException e) {
+            circuitBreaker.failed();
+            throw e;
+        } finally {
+            circuitBreaker.release();
+        }
+        cacheAuthResult(key, result);
+        return result;
+    }
+
+    /**
+     * Takes a place for a request to Poulpe.
+     *
+     * @throws NoConnectionException if Poulpe doesn't answer or is too busy to send one more request to it
+     */
+    private void acquireConnection() throws NoConnectionException {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new NoConnectionException(circuitBreaker.isOpen()
+                    ? "Poulpe doesn't answer, requests are suspended" : "Too many concurrent requests to Poulpe");
+        }
+    }
+
+    private String authResultKey(String username, String passwordHash) {
+        return username + '\n' + passwordHash;
+    }
+
+    private void cacheAuthResult(String key, Map<String, String> result) {
+        if (authResults.size() >= MAX_CACHED_AUTH_RESULTS) {
+            authResults.clear();
+        }
+        long ttl = result.isEmpty() ? FAILED_AUTH_TTL_MILLIS : SUCCESSFUL_AUTH_TTL_MILLIS;
+        authResults.put(key, new CachedAuthResult(new HashMap<>(result), System.currentTimeMillis() + ttl));
     }
 
     /**
@@ -114,8 +261,7 @@ public class PoulpeAuthService {
     }
 
     private Map<String, String> parseUserDetails(Representation repr) throws JAXBException, IOException {
-        JAXBContext context = JAXBContext.newInstance(Authentication.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
+        Unmarshaller unmarshaller = AUTHENTICATION_CONTEXT.createUnmarshaller();
         Authentication auth = (Authentication) unmarshaller.unmarshal(repr.getStream());
 
         Map<String, String> authInfo = new HashMap<>();
@@ -160,8 +306,7 @@ public class PoulpeAuthService {
      * @throws java.io.IOException
      */
     private Map<String, String> parseErrors(Representation repr, Locale locale) throws IOException, JAXBException {
-        JAXBContext context = JAXBContext.newInstance(Errors.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
+        Unmarshaller unmarshaller = ERRORS_CONTEXT.createUnmarshaller();
         Errors errorsRepr = (Errors) unmarshaller.unmarshal(repr.getStream());
 
         Map<String, String> errors = new HashMap<>();
@@ -268,8 +413,10 @@ public class PoulpeAuthService {
      * @return ClientResource result
      */
     protected ClientResource sendAuthRequest(String username, String passwordHash) {
-        String url = authUrl + "?username=" + username + "&passwordHash=" + passwordHash;
-        ClientResource clientResource = createClientResource(url, false);
+        Reference url = new Reference(authUrl);
+        url.addQueryParameter("username", username);
+        url.addQueryParameter("passwordHash", passwordHash);
+        ClientResource clientResource = createClientResource(url.toString(), false);
         if (login != null && !login.isEmpty() && password != null && !password.isEmpty()) {
             clientResource.setChallengeResponse(ChallengeScheme.HTTP_BASIC, login, password);
         }
@@ -282,10 +429,24 @@ public class PoulpeAuthService {
     }
 
     private ClientResource createClientResource(String url, boolean buffering) {
-        ClientResource clientResource = new ClientResource(new Context(), url);
-        clientResource.getContext().getParameters().add("socketConnectTimeoutMs", String.valueOf(CONNECTION_TIMEOUT));
-        clientResource.getContext().getParameters().add("maxIoIdleTimeMs", String.valueOf(CONNECTION_TIMEOUT));
+        ClientResource clientResource = new ClientResource(url);
+        clientResource.setNext(client);
+        // retries would keep request threads waiting for a slow Poulpe, circuit breaker handles failures instead
+        clientResource.setRetryOnError(false);
         clientResource.setEntityBuffering(buffering);
         return clientResource;
     }
+
+    /**
+     * Result of authentication request and the time it shouldn't be used after.
+     */
+    private static final class CachedAuthResult {
+        private final Map<String, String> result;
+        private final long expiresAt;
+
+        private CachedAuthResult(Map<String, String> result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
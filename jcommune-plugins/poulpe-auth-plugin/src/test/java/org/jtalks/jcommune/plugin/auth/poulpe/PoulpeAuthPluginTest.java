@@ -31,6 +31,8 @@ import java.io.IOException;
 import java.util.*;
 
 import static org.jtalks.jcommune.model.entity.PluginProperty.Type.STRING;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.assertEquals;
@@ -97,6 +99,50 @@ public class PoulpeAuthPluginTest {
         plugin.configure(configuration);
     }
 
+    @Test
+    public void reconfiguredPluginShouldCloseConnectionsOfPreviousService() throws Exception {
+        PluginConfiguration configuration = createConfiguration("http://localhost", "user", "1234");
+        plugin.configure(configuration);
+
+        verify(service).close();
+    }
+
+    @Test
+    public void pluginReconfiguredWithSameSettingsShouldKeepService() throws Exception {
+        PluginConfiguration configuration = createConfiguration("http://localhost", "user", "1234");
+        when(service.hasSettings("http://localhost", "user", "1234", PoulpeAuthService.DEFAULT_MAX_CONNECTIONS))
+                .thenReturn(true);
+        Map<String, String> authInfo = new HashMap<>();
+        when(service.authenticate("user", "password")).thenReturn(authInfo);
+
+        plugin.configure(configuration);
+
+        verify(service, never()).close();
+        assertEquals(plugin.authenticate("user", "password"), authInfo);
+    }
+
+    @Test
+    public void closedPluginShouldCloseConnectionsOfService() {
+        plugin.close();
+
+        verify(service).close();
+    }
+
+    @Test
+    public void pluginWithIncorrectMaxConnectionsShouldNotBeConfigured() throws Exception {
+        PluginConfiguration configuration = createConfiguration("http://localhost", "user", "1234");
+        List<PluginProperty> properties = new ArrayList<>(configuration.getProperties());
+        properties.add(new PluginProperty("MaxConnections", PluginProperty.Type.INT, "0"));
+        configuration.setProperties(properties);
+        try {
+            plugin.configure(configuration);
+        } catch (UnexpectedErrorException ex) {
+        }
+
+        assertTrue(plugin.getState() == Plugin.State.IN_ERROR,
+                "Plugin with not positive max connections shouldn't be configured.");
+    }
+
     @Test
     public void userShouldNotBeRegisteredIfSomeErrorOccurred()
             throws JAXBException, IOException, NoConnectionException, UnexpectedErrorException {
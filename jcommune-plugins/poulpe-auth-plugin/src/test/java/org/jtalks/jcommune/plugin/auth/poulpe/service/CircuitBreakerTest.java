@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.plugin.auth.poulpe.service;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void callsShouldBeAllowedUntilConcurrencyLimitIsReached() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 5, 1000, 0);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.release();
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void waitingCallShouldGetReleasedPlace() throws InterruptedException {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 5, 1000, 10000);
+        assertTrue(circuitBreaker.tryAcquire());
+        Thread call = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // finish the call anyway
+                }
+                circuitBreaker.release();
+            }
+        });
+        call.start();
+
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void waitingCallShouldFailWhenNoPlaceIsReleasedInTime() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 5, 1000, 10);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void openCircuitShouldFailWithoutWaiting() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 1, 60000, 60000);
+        circuitBreaker.failed();
+        long start = System.currentTimeMillis();
+
+        assertFalse(circuitBreaker.tryAcquire());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void circuitShouldBeOpenedAfterConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 60000, 0);
+
+        circuitBreaker.failed();
+        assertFalse(circuitBreaker.isOpen());
+        circuitBreaker.failed();
+
+        assertTrue(circuitBreaker.isOpen());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void successShouldResetConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 60000, 0);
+
+        circuitBreaker.failed();
+        circuitBreaker.succeeded();
+        circuitBreaker.failed();
+
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void callsShouldBeAllowedWhenOpenPeriodIsOver() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 1, 1, 0);
+
+        circuitBreaker.failed();
+        Thread.sleep(10);
+
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void drainShouldWaitForCallsInProgressAndForbidNewCalls() throws InterruptedException {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(2, 5, 1000, 0);
+        assertTrue(circuitBreaker.tryAcquire());
+        Thread call = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // finish the call anyway
+                }
+                circuitBreaker.release();
+            }
+        });
+        call.start();
+
+        assertTrue(circuitBreaker.drain(10000));
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void drainShouldFailWhenCallsAreNotFinishedInTime() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 5, 1000, 0);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        assertFalse(circuitBreaker.drain(10));
+    }
+}
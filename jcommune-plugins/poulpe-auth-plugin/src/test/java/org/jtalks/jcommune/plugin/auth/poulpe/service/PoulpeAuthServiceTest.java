@@ -39,6 +39,8 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.*;
 
@@ -142,6 +144,56 @@ public class PoulpeAuthServiceTest {
         service.authenticate("user", "password");
     }
 
+    @Test
+    public void authResultShouldBeCachedForRepeatedAuthentication() throws Exception {
+        Authentication auth = createAuth("username", "password", "email");
+        ClientResource clientResource = createClientResource(Status.SUCCESS_OK, new JaxbRepresentation<>(auth));
+        doReturn(clientResource).when(service).sendAuthRequest("username", "password");
+
+        Map<String, String> first = service.authenticate("username", "password");
+        Map<String, String> second = service.authenticate("username", "password");
+
+        assertEquals(second, first);
+        verify(service, times(1)).sendAuthRequest("username", "password");
+    }
+
+    @Test
+    public void failedAuthResultShouldBeCachedForRepeatedAuthentication() throws Exception {
+        ClientResource clientResource = createClientResource(Status.CLIENT_ERROR_NOT_FOUND, null);
+        doReturn(clientResource).when(service).sendAuthRequest("username", "wrong");
+
+        service.authenticate("username", "wrong");
+        Map<String, String> result = service.authenticate("username", "wrong");
+
+        assertTrue(result.isEmpty());
+        verify(service, times(1)).sendAuthRequest("username", "wrong");
+    }
+
+    @Test
+    public void requestsShouldNotBeSentWhenPoulpeRepeatedlyDoesNotAnswer() throws Exception {
+        ClientResource clientResource = createClientResource(Status.CLIENT_ERROR_REQUEST_TIMEOUT, null);
+        doReturn(clientResource).when(service).sendAuthRequest("user", "password");
+
+        for (int i = 0; i < 10; i++) {
+            try {
+                service.authenticate("user", "password");
+            } catch (NoConnectionException e) {
+                // expected
+            }
+        }
+
+        verify(service, times(5)).sendAuthRequest("user", "password");
+    }
+
+    @Test
+    public void serviceShouldHaveSettingsItWasCreatedWith() {
+        assertTrue(service.hasSettings(url, "user", "1234", PoulpeAuthService.DEFAULT_MAX_CONNECTIONS));
+        assertFalse(service.hasSettings("http://localhost:8081", "user", "1234",
+                PoulpeAuthService.DEFAULT_MAX_CONNECTIONS));
+        assertFalse(service.hasSettings(url, "user", "12345", PoulpeAuthService.DEFAULT_MAX_CONNECTIONS));
+        assertFalse(service.hasSettings(url, "user", "1234", PoulpeAuthService.DEFAULT_MAX_CONNECTIONS + 1));
+    }
+
     private Authentication createAuth(String username, String password, String email) {
         Authentication auth = new Authentication();
         auth.setProfile(new Profile(new PoulpeUser(username, email, password, null)));
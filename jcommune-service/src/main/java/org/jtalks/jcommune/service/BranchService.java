@@ -50,23 +50,15 @@ public interface BranchService extends EntityService<Branch> {
     List<Branch> getAvailableBranchesInSection(long sectionId, long currentTopicId) throws NotFoundException;
     
     /**
-     * Fills the statistical information for each branch from the list:
-     * 1)count of topics in the branch
-     * 2)count of posts in the branch
+     * Prepares the statistical information for each branch from the list to be shown:
+     * counts of topics and posts are kept in the branches themselves, the last posts
+     * of all the branches are loaded together and the branches with posts unread by
+     * the current user are marked.
      *  
      * @param branches list of branches
      */
     void fillStatisticInfo(List<org.jtalks.common.model.entity.Branch> branches);
     
-    /**
-     * Deletes all topics in this branch and recalculates user posts.
-     *
-     * @param branchId branch id
-     * @throws NotFoundException when branch not found
-     * @return branch for the id given
-     */
-    Branch deleteAllTopics(long branchId) throws NotFoundException;
-
     /**
      * Sets new title and description for the branch with specified ID
      * @param componentId ID of the component of the branch
@@ -91,4 +83,12 @@ public interface BranchService extends EntityService<Branch> {
      * @throws NotFoundException if branch does not exist
      */
     void checkIfBranchExists(long branchId) throws NotFoundException;
+
+    /**
+     * This method will be called automatically every night to rebuild
+     * denormalized topic and post counters of topics and branches in case
+     * they drifted from the actual data, e.g. after concurrent updates
+     * or manual changes in the database.
+     */
+    void recalculateCountersByTimer();
 }
\ No newline at end of file
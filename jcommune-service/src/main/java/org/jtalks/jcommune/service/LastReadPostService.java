@@ -73,4 +73,20 @@ public interface LastReadPostService {
      */
     List<Topic> fillLastReadPostForTopics(List<Topic> topics);
 
+    /**
+     * Marks branches having posts unread by the current user, all the branches
+     * are checked at once. No data will be set for anonymous users.
+     *
+     * @param branches branches to find unread posts in
+     */
+    void fillUnreadPostsForBranches(List<Branch> branches);
+
+    /**
+     * Writes topics marked as read by the user since the previous write to the database, if marks of read topics are
+     * kept in memory. The marks are kept in memory again if the transaction is not committed.
+     *
+     * @param userId id of the user to write the marks of
+     */
+    void flushReadMarks(long userId);
+
 }
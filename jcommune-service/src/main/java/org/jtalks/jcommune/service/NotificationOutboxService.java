@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service;
+
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.NotificationType;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbox of e-mail notifications. Notifications are stored within the transaction that caused them, so that the
+ * request doesn't wait for the mail server, and are sent later in batches by
+ * {@link org.jtalks.jcommune.service.nontransactional.NotificationDispatcher}.
+ */
+public interface NotificationOutboxService {
+
+    /**
+     * Puts notifications for the recipients to the outbox. Recipients that already have a notification of the same
+     * kind about the same entity waiting to be sent are skipped, so that repeated updates of e.g. a topic result
+     * in a single e-mail. Must be called within HTTP request as links are built from its URL.
+     *
+     * @param recipients users to notify
+     * @param type       kind of notification
+     * @param entityId   id of the entity the notification is about
+     */
+    void enqueue(Collection<JCUser> recipients, NotificationType type, long entityId);
+
+    /**
+     * Takes notifications which time to be sent has come and postpones their next attempt for the lease time, so
+     * that they are not taken again while being sent. If sending never completes (e.g. the server was stopped),
+     * notifications are taken again after the lease expires. Notifications taken concurrently by another call, e.g.
+     * on another forum instance, are skipped.
+     *
+     * @param limit max count of notifications to take
+     * @return ids of the notifications to send
+     */
+    List<Long> claimDue(int limit);
+
+    /**
+     * Sends the notifications using a single connection to the mail server. Sent notifications are removed from
+     * the outbox, failed ones are retried later with increasing delay until the max count of attempts is reached.
+     *
+     * @param ids ids of the notifications taken with {@link #claimDue(int)}
+     */
+    void deliver(List<Long> ids);
+}
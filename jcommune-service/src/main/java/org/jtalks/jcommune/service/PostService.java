@@ -62,7 +62,8 @@ public interface PostService extends EntityService<Post> {
 
     /**
      * Calculates page number for post based on the current user
-     * paging settings and total post amount in the topic
+     * paging settings and position of the post in the topic. Posts
+     * of the topic are not loaded to find the position.
      *
      * @param post post to find a page for
      * @return number of the page where the post will actually be
@@ -74,10 +75,13 @@ public interface PostService extends EntityService<Post> {
      *
      * @param topic for this topic we will find posts
      * @param page  page number, for which we will find posts
+     * @param cursor position of the last post of the previous page as returned by
+     *               {@link org.jtalks.jcommune.model.dto.PageCursor#after(Post)},
+     *               may be null, then the page is found by its number only
      * @return object that contains posts for one page(note, that one page may contain
      *         all posts) and information for pagination
      */
-    Page<Post> getPosts(Topic topic, String page);
+    Page<Post> getPosts(Topic topic, String page, String cursor);
 
     /**
      * Get the last post, that was posted in a topic of branch.
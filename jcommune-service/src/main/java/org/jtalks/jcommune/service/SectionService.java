@@ -45,20 +45,13 @@ public interface SectionService extends EntityService<Section> {
     void prepareSectionsForView(List<Section> sections);
 
     /**
-     * Deletes all topics in the session given, causing post count updates.
+     * Gets ids of the branches of the section.
      *
      * @param sectionId section id
-     * @return section without branches
+     * @return ids of the branches in the order they are shown in the section
      * @throws NotFoundException when section not found
      */
-    Section deleteAllTopicsInSection(long sectionId) throws NotFoundException;
-
-    /**
-     *  Deletes all topics in all the sections, causing post count updates.
-     *
-     * @throws org.jtalks.jcommune.service.exceptions.NotFoundException if object for deletion has not been found
-     */
-    void deleteAllTopicsInForum() throws NotFoundException;
+    List<Long> getBranchIds(long sectionId) throws NotFoundException;
 
     /**
      * Checks permission VIEW_TOPICS for access
@@ -32,10 +32,13 @@ public interface TopicFetchService extends EntityService<Topic>{
      *                      The final validation of provided input will be at DAO level.
      *                      That allow as to exclude additional DAO call,
      *                      as for input validation we need the total count of page elements.
+     * @param cursor        position of the last topic of the previous page as returned by
+     *                      {@link org.jtalks.jcommune.model.dto.PageCursor#after(Topic)},
+     *                      may be null, then the page is found by its number only
      * @return object that contains topics for one page(note, that one page may contain
      *         all topics) and information for pagination
      */
-    Page<Topic> getTopics(Branch branch, String page);
+    Page<Topic> getTopics(Branch branch, String page, String cursor);
 
     /**
      * Get topics that have been updated in the last 24 hours.
@@ -76,6 +79,21 @@ public interface TopicFetchService extends EntityService<Topic>{
      */
     Page<Topic> searchByTitleAndContent(String phrase, String page);
 
+    /**
+     * Counts a view of the topic page. Views are accumulated in memory and are
+     * added to the topics by {@link #flushViewsByTimer()}.
+     *
+     * @param topic viewed topic
+     */
+    void countView(Topic topic);
+
+    /**
+     * This method is called automatically to add views counted since the
+     * previous call to the topics in the database. If the transaction is
+     * not committed, the views are kept in memory for the next call.
+     */
+    void flushViewsByTimer();
+
     /**
      * Indexing topics from the database.
      * This functionality is required either when data exists in the database,
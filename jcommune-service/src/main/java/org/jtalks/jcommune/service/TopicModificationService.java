@@ -99,6 +99,18 @@ public interface TopicModificationService {
      */
     void deleteTopicSilent(long topicId) throws NotFoundException;
 
+    /**
+     * Deletes a chunk of topics of the branch with set-based statements. Does not send any notification or log
+     * messages. The chunk is deleted in a transaction of its own, so purging a large branch is done by calling
+     * this method until it deletes less topics than asked.
+     *
+     * @param branchId id of the branch to delete topics of
+     * @param maxCount maximum count of topics to delete
+     * @return count of the deleted topics
+     * @throws NotFoundException when branch not found
+     */
+    int deleteTopicsSilent(long branchId, int maxCount) throws NotFoundException;
+
     /**
      * Moves topic to another branch.
      *
@@ -153,9 +153,11 @@ public interface UserService extends EntityService<JCUser> {
      * Parses the input of some post which contains [user] bb code,
      * and replace this bb codes with user profile links
      *
+     * @param postContent content of the post
+     * @param contextPath context path of the forum application links to user profiles should start with
      * @return string with BB codes replaced by user profile links
      */
-    String processUserBbCodesInPost(String postContent);
+    String processUserBbCodesInPost(String postContent, String contextPath);
 
     /**
      * Sends email to user that was mentioned in the post
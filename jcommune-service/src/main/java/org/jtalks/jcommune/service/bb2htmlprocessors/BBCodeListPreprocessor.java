@@ -12,14 +12,9 @@
  * License along with this library; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
  */
-
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.BitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.kefirsf.bb.TextProcessor;
@@ -27,81 +22,41 @@ import org.kefirsf.bb.TextProcessor;
 /**
  * Preprocessor for bb2html encoding which replaces all list items like [*]
  * with [*]...[/*] tags. This allows create formatted text in list items.
+ * <p/>
+ * Text is processed in a single pass: tags [list], [list=...], [*] and [/list] are found one after another
+ * and the text is copied to the result with closing [/*] tags added. If lists are not balanced (a list isn't closed,
+ * an item is out of any list, a nested list isn't inside an item), the text is returned as is. The preprocessor
+ * keeps no state between invocations, so a single instance may be used concurrently.
  *
  * @author Vyacheslav Mishcheryakov
  */
-public class BBCodeListPreprocessor implements TextProcessor {
+public class BBCodeListPreprocessor implements TextProcessor, TextPreProcessor {
     
     private static final String LIST_TAG_OPEN = "[list";
     private static final String LIST_TAG_CLOSE = "[/list]";
     private static final String LIST_ITEM_TAG_OPEN = "[*]";
     private static final String LIST_ITEM_CLOSE = "[/*]";
-        
-    /** Matches one of the following tags: [list],[/list],[*] */
-    private static final String TAG_PATTERN = "\\[list([^\\]\\[]+)?]|\\[\\*\\]|\\[\\/list\\]";
-    /** TAG + everything before next tag */
-    private static final String LIST_REGEX = "("+ TAG_PATTERN + ")(.*?)?(?=" + TAG_PATTERN + "|$)";    
-    
-    private final Logger logger = LoggerFactory.getLogger(getClass());
-    
-    private RootElement root;
 
-    private enum TagType {
-        LIST,
-        LIST_CLOSE,
-        ITEM;
-        
-        /**
-         * @param tagString 
-         * @return appropriate tag for specified string
-         */
-        static TagType fromString(String tagString) {
-            if (tagString.equalsIgnoreCase(LIST_ITEM_TAG_OPEN)) {
-                return TagType.ITEM;
-            }
-            if (tagString.equalsIgnoreCase(LIST_TAG_CLOSE)) {
-                return TagType.LIST_CLOSE;
-            }
-            if (tagString.startsWith(LIST_TAG_OPEN)) {
-                return TagType.LIST;
-            }
-            throw new BBCodeListParsingException("unknow tag type: " + tagString);
-        }
-    }    
-   
-    private final Pattern listPattern = Pattern.compile(LIST_REGEX, Pattern.DOTALL);
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final Stack<ListElement> listStack = new Stack<>();
-    
     /**
-     * Process incoming text with replacing [*] tags by [*]...[/*]
-     *
-     * @param bbEncodedText BB encoded text to process
-     * @return processed text
+     * {@inheritDoc}
      */
     @Override
-    public String process(String bbEncodedText) {
-        return process(new StringBuilder(bbEncodedText)).toString();
+    public String preProcess(String source, RenderingContext context) {
+        return process(source);
     }
 
     /**
      * Process incoming text with replacing [*] tags by [*]...[/*]
      *
-     * @param bbEncodedText bb encoded text to process
+     * @param bbEncodedText BB encoded text to process
      * @return processed text
      */
-    private StringBuilder preprocessLists(String bbEncodedText) {
-        try {
-            root = createRootElement(bbEncodedText);
-            Matcher matcher = listPattern.matcher(bbEncodedText);
-            while (matcher.find()) {
-                processMatch(matcher);
-            }
-            return new StringBuilder(root.toBBString());
-        } catch (BBCodeListParsingException lpe) {
-            logger.info("Ignored invalid [list] tag:" + bbEncodedText);
-            return new StringBuilder(bbEncodedText);
-        }
+    @Override
+    public String process(String bbEncodedText) {
+        StringBuilder result = preprocessLists(bbEncodedText);
+        return result != null ? result.toString() : bbEncodedText;
     }
 
     /**
@@ -112,8 +67,8 @@ public class BBCodeListPreprocessor implements TextProcessor {
      */
     @Override
     public CharSequence process(CharSequence bbEncodedText) {
-        StringBuilder result = process(new StringBuilder(bbEncodedText));
-        return result.subSequence(0, result.length());
+        StringBuilder result = preprocessLists(bbEncodedText);
+        return result != null ? result.toString() : bbEncodedText;
     }
 
     /**
@@ -124,7 +79,8 @@ public class BBCodeListPreprocessor implements TextProcessor {
      */
     @Override
     public StringBuilder process(StringBuilder bbEncodedText) {
-        return preprocessLists(bbEncodedText.toString());
+        StringBuilder result = preprocessLists(bbEncodedText);
+        return result != null ? result : new StringBuilder(bbEncodedText);
     }
 
     /**
@@ -135,192 +91,119 @@ public class BBCodeListPreprocessor implements TextProcessor {
      */
     @Override
     public StringBuffer process(StringBuffer bbEncodedText) {
-        return new StringBuffer(process(bbEncodedText.toString()));
-    }
-    
-    /**
-     * Create root element of the tags tree.
-     * @param str
-     * @return root element
-     */
-    private RootElement createRootElement(String str) {
-        RootElement newRoot = new RootElement();
-        int firstListPos = str.indexOf(LIST_TAG_OPEN);
-        if (firstListPos < 0) {
-            newRoot.text = str;
-        } else {
-            newRoot.text = str.substring(0, firstListPos);
-        }
-        return newRoot;
+        StringBuilder result = preprocessLists(bbEncodedText);
+        return result != null ? new StringBuffer(result) : new StringBuffer(bbEncodedText);
     }
-    
-    /**
-     * Process matched tag.
-     * @param matcher 
-     */
-    private void processMatch(Matcher matcher) {
-        TagType tag = TagType.fromString(matcher.group(1));
-        if (tag == TagType.LIST) {
-            ListElement list = new ListElement();
-            list.params = matcher.group(2);
-            list.text = matcher.group(3);
-            getCurrentElement().addChild(list);
-            listStack.push(list);
-        }
-        if (tag == TagType.LIST_CLOSE) {
-            ListElement lastList = listStack.pop();
-            lastList.endText = matcher.group(3);
-            lastList.close();
-        }
-        if (tag == TagType.ITEM) {
-            ItemElement item = new ItemElement();
-            item.text = matcher.group(3);
-            getCurrentList().addChild(item);
-        }
-    }    
-    
-    private ListElement getCurrentList() {
-        if (listStack.isEmpty()) {
-            throw new BBCodeListParsingException("List not found.");
-        }
-        return listStack.peek();
-    }
-    
-    private TreeElement getCurrentElement() {
-        if (listStack.isEmpty()) {
-            return root;
-        }
-        return listStack.peek().getLastChild();
-    }
-    
+
     /**
-     * Represents one element of the tags tree.
+     * Process incoming text with replacing [*] tags by [*]...[/*]
+     *
+     * @param text bb encoded text to process
+     * @return processed text or {@code null} if the text should be left as is: there are no list tags in it or
+     *         lists are not balanced
      */
-    private class TreeElement {
-        String text = "";
-        List<TreeElement> children = new LinkedList<>();
-        
-        /**
-         * @return last element child
-         */
-        TreeElement getLastChild() {
-            if (children.isEmpty()) {
-                throw new BBCodeListParsingException("Children elements not found");
+    private StringBuilder preprocessLists(CharSequence text) {
+        int tagStart = findTag(text, 0);
+        if (tagStart < 0) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(text.length() + text.length() / 8);
+        result.append(text, 0, tagStart);
+        /* bit per open list, set if the list has an open item */
+        BitSet openItems = new BitSet();
+        int depth = 0;
+        while (tagStart >= 0) {
+            int tagEnd = getTagEnd(text, tagStart);
+            char tag = text.charAt(tagStart + 1);
+            if (tag == 'l') {
+                if (depth > 0 && !openItems.get(depth - 1)) {
+                    return invalid(text, "a nested list must be inside a list item");
+                }
+                openItems.clear(depth);
+                depth++;
+            } else if (tag == '*') {
+                if (depth == 0) {
+                    return invalid(text, "list item is out of a list");
+                }
+                if (openItems.get(depth - 1)) {
+                    result.append(LIST_ITEM_CLOSE);
+                }
+                openItems.set(depth - 1);
+            } else {
+                if (depth == 0) {
+                    return invalid(text, "list close tag without open one");
+                }
+                depth--;
+                if (openItems.get(depth)) {
+                    result.append(LIST_ITEM_CLOSE);
+                }
             }
-            return children.get(children.size() - 1);
-        }    
-        
-        /**
-         * @param newEl new sub-element
-         */
-        void addChild(TreeElement newEl) {
-            children.add(newEl);
+            int nextTagStart = findTag(text, tagEnd);
+            result.append(text, tagStart, nextTagStart < 0 ? text.length() : nextTagStart);
+            tagStart = nextTagStart;
         }
-        
-        /**
-         * Return string representation of this element with tags and all children.
-         * @return BB-string
-         */
-        String toBBString() {
-            String rs = getOpenTag() + text;
-            for (TreeElement e : children) {
-                rs += e.toBBString();
-            }
-            return rs + getCloseTag();
-        }
-        
-        /**
-         * @return open tag
-         */
-        protected String getOpenTag() {
-            return "";
-        }
-        
-        /**
-         * @return close tag
-         */
-        protected String getCloseTag() {
-            return "";
+        if (depth > 0) {
+            return invalid(text, "list is not closed");
         }
+        return result;
     }
 
-    /**
-     * Root of the tags tree. Contains all lists or just text.
-     */
-    private class RootElement extends TreeElement {
-        @Override
-        TreeElement getLastChild() {
-            return this;
-        }
+    private StringBuilder invalid(CharSequence text, String reason) {
+        logger.info("Ignored invalid [list] tag ({}): {}", reason, text);
+        return null;
     }
 
     /**
-     * List item element,[*]
+     * @param text text to search in
+     * @param from index to start search from
+     * @return index of the first tag [list], [list...], [*] or [/list] at or after the given index, -1 if there
+     *         are no more tags
      */
-    private class ItemElement extends TreeElement {
-
-        @Override
-        protected String getOpenTag() {
-            return LIST_ITEM_TAG_OPEN;
-        }
-
-        @Override
-        protected String getCloseTag() {
-            return LIST_ITEM_CLOSE;
+    private static int findTag(CharSequence text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == '[' && getTagEnd(text, i) > 0) {
+                return i;
+            }
         }
+        return -1;
     }
-    
+
     /**
-     * List tag, [list].
+     * @param text  text to check
+     * @param start index of '[' character
+     * @return index after the tag starting at the given index, -1 if there is no tag there
      */
-    private class ListElement extends TreeElement {
-        /** list params */
-        String params;
-        /** text after list close tag */
-        String endText;
-        /** true if closed tag was found */
-        private boolean closed = false;
-
-        @Override
-        protected String getOpenTag() {
-            return LIST_TAG_OPEN + getParams() + "]";
-        }
-
-        @Override
-        protected String getCloseTag() {
-            return LIST_TAG_CLOSE + getEndText();
-        }
-
-        public String getParams() {
-            return params != null ? params : "";
+    private static int getTagEnd(CharSequence text, int start) {
+        if (startsWith(text, start, LIST_ITEM_TAG_OPEN)) {
+            return start + LIST_ITEM_TAG_OPEN.length();
+        }
+        if (startsWith(text, start, LIST_TAG_CLOSE)) {
+            return start + LIST_TAG_CLOSE.length();
+        }
+        if (startsWith(text, start, LIST_TAG_OPEN)) {
+            /* [list] or [list...] with parameters which contain no square brackets */
+            for (int i = start + LIST_TAG_OPEN.length(); i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == ']') {
+                    return i + 1;
+                }
+                if (c == '[') {
+                    return -1;
+                }
+            }
         }
+        return -1;
+    }
 
-        public String getEndText() {
-            return endText != null ? endText : "";
+    private static boolean startsWith(CharSequence text, int start, String prefix) {
+        if (start + prefix.length() > text.length()) {
+            return false;
         }
-        
-        /**
-         * Mark the list as closed (valid).
-         */
-        public void close() {
-            closed = true;
-        }
-
-        @Override
-        String toBBString() {
-            if (!closed) {
-                throw new BBCodeListParsingException("toBBString() invocation isn't allowed for unclosed list");
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
             }
-            return super.toBBString();
-        }
-    }    
-    
-    /**
-     * Thrown in the case of parsing error.
-     */
-    private static class BBCodeListParsingException extends RuntimeException {
-        private BBCodeListParsingException(String string) {
-            super(string);
         }
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -16,11 +16,7 @@
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.springframework.web.context.request.RequestAttributes;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
 
-import javax.servlet.http.HttpServletRequest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,7 +33,12 @@ import java.util.regex.Pattern;
  */
 public class BBForeignLinksPostprocessor implements TextPostProcessor {
 
-    private static final String URL_PATTERN = "<a .*?href=(\"|').*?(\"|')";
+    /** Beginning of a link up to the end of its address, may contain other attributes before the address */
+    private static final Pattern LINK_PATTERN = Pattern.compile("<a .*?href=(\"|').*?(\"|')", Pattern.DOTALL);
+    private static final String LINK_START = "<a ";
+    private static final String HREF = "href=\"";
+    private static final String NOFOLLOW_HREF = "rel=\"nofollow\" href=\"";
+    private static final String[] FOREIGN_PROTOCOLS = {"http://", "https://", "ftp://"};
 
     /**
      * Process incoming text with adding prefix "/out" to foreign links. This prefix
@@ -46,37 +47,79 @@ public class BBForeignLinksPostprocessor implements TextPostProcessor {
      * @return resultant text
      */
     @Override
-    public String postProcess(String bbDecodedText) {
-        HttpServletRequest httpServletRequest = getServletRequest();
-        return addPrefixToForeignLinks(bbDecodedText, httpServletRequest.getServerName());
+    public String postProcess(String bbDecodedText, RenderingContext context) {
+        return addPrefixToForeignLinks(bbDecodedText, context.getServerName());
     }
 
-
+    /**
+     * Copies the text to the buffer link by link in a single pass instead of replacing every link in the whole text.
+     *
+     * @param decodedText text with HTML links
+     * @param serverName  links containing the name of the server aren't foreign
+     * @return the same text if there are no foreign links in it or the text with foreign links marked
+     */
     private String addPrefixToForeignLinks(String decodedText, String serverName) {
-        Pattern linkPattern = Pattern.compile(URL_PATTERN, Pattern.DOTALL);
-        Matcher linkMatcher = linkPattern.matcher(decodedText);
-        String href;
-
-        while (linkMatcher.find()) {
-            href = linkMatcher.group();
-            if (!href.contains(serverName) && href.split("(http|ftp|https)://", 2).length == 2) {
-                decodedText = decodedText
-                        .replace(href, href.replace("href=\"", "rel=\"nofollow\" href=\"" + getHrefPrefix()));
+        if (!decodedText.contains(LINK_START)) {
+            return decodedText;
+        }
+        Matcher linkMatcher = LINK_PATTERN.matcher(decodedText);
+        StringBuilder result = null;
+        String nofollowHref = null;
+        int copied = 0;
+        int from = 0;
+        while (linkMatcher.find(from)) {
+            String link = linkMatcher.group();
+            if (!isForeign(link, serverName)) {
+                // the match may contain other links if the tag where it starts has no address
+                from = linkMatcher.start() + LINK_START.length();
+                continue;
             }
+            if (result == null) {
+                result = new StringBuilder(decodedText.length() + 64);
+                nofollowHref = NOFOLLOW_HREF + getHrefPrefix();
+            }
+            result.append(decodedText, copied, linkMatcher.start());
+            appendWithNofollowHref(result, link, nofollowHref);
+            copied = linkMatcher.end();
+            from = copied;
+        }
+        if (result == null) {
+            return decodedText;
         }
+        return result.append(decodedText, copied, decodedText.length()).toString();
+    }
 
-        return decodedText;
+    /**
+     * @param link       beginning of a link up to the end of its address
+     * @param serverName name of the server the forum is available at
+     * @return whether the link leads to other server
+     */
+    private boolean isForeign(String link, String serverName) {
+        if (link.contains(serverName)) {
+            return false;
+        }
+        for (String protocol : FOREIGN_PROTOCOLS) {
+            if (link.contains(protocol)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Gets current request
+     * Appends the beginning of the link with rel="nofollow" and the prefix added before the address.
      *
-     * @return native {@link javax.servlet.http.HttpServletRequest}
+     * @param result       buffer to append to
+     * @param link         beginning of a link up to the end of its address
+     * @param nofollowHref replacement of href attribute
      */
-    @VisibleForTesting
-    protected HttpServletRequest getServletRequest() {
-        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
-        return ((ServletRequestAttributes) attributes).getRequest();
+    private void appendWithNofollowHref(StringBuilder result, String link, String nofollowHref) {
+        int copied = 0;
+        for (int href = link.indexOf(HREF); href >= 0; href = link.indexOf(HREF, copied)) {
+            result.append(link, copied, href).append(nofollowHref);
+            copied = href + HREF.length();
+        }
+        result.append(link, copied, link.length());
     }
 
     /**
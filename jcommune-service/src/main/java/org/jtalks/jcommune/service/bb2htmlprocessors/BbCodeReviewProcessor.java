@@ -19,13 +19,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.jtalks.jcommune.service.TopicModificationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.context.request.RequestAttributes;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
-import org.kefirsf.bb.TextProcessor;
-import org.kefirsf.bb.TextProcessorAdapter;
 
-import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -37,22 +31,22 @@ import java.util.regex.Pattern;
  * this stuff is treated as bb codes and is replaced with HTML.<br/> Consider such situation: <ul> <li>User creates code
  * review which itself means that all the text is surrounded with [code]. This results in {@code
  * [code][-code][/code][/code]}</li> <li>We replace internal [/code] with [-code] inside of this pre-processor and place
- * that information inside of the {@link #REPLACE_HISTORY_LIST_ATTRIBUTE} attribute like this {@code false, true} which
- * means that internal [-code] is user input and not the work of our pre-processor [/code]</li> <li>In the {@link
- * #postProcess(String)} we find this attribute and we know what second [-code] should be replaced back to [/code]</li>
- * </ul>
+ * that information inside of the {@link #REPLACE_HISTORY_LIST_ATTRIBUTE} attribute of the rendering context like this
+ * {@code false, true} which means that internal [-code] is user input and not the work of our pre-processor
+ * [/code]</li> <li>In the {@link #postProcess(String, RenderingContext)} we find this attribute and we know what second
+ * [-code] should be replaced back to [/code]</li> </ul>
  *
  * @author Evgeny Kapinos
  * @see <a href="http://jira.jtalks.org/browse/JC-1261">JIRA</a> for high-level details.
  */
-public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextProcessor, TextPostProcessor {
+public class BbCodeReviewProcessor implements TextPreProcessor, TextPostProcessor {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private static final String CODE_JAVA_BBCODE_END_REPLACEMENT = "[-code]";
     private static final String CODE_JAVA_BBCODE_END_REPLACEMENT_PATTERN = "\\[-code\\]";
     /**
-     * This is an attribute in the http request which contains a list of bb-codes that should or should not be replaced
-     * back.
+     * This is an attribute in the rendering context which contains a list of bb-codes that should or should not be
+     * replaced back.
      */
     @VisibleForTesting
     protected static final String REPLACE_HISTORY_LIST_ATTRIBUTE = "BBCodeReviewPreprocessor_replaceHistoryList";
@@ -61,14 +55,14 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
      * Process incoming encoded text and replacing [/code] tags to [-code]
      *
      * @param bbEncodedText BB encoded text to process
+     * @param context       parameters of the current rendering
      * @return processed text
      */
     @Override
-    public String process(String bbEncodedText) {
-        HttpServletRequest httpServletRequest = getServletRequest();
-        httpServletRequest.removeAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
+    public String preProcess(String bbEncodedText, RenderingContext context) {
+        context.removeAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
 
-        if (!isCodeReviewPost(httpServletRequest) || !isValidCodeReviewBbCodeString(bbEncodedText)) {
+        if (!context.isCodeReview() || !isValidCodeReviewBbCodeString(bbEncodedText)) {
             return bbEncodedText;
         }
 
@@ -77,70 +71,35 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
             return bbEncodedText;
         }
 
-        httpServletRequest.setAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
+        context.setAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
 
         return substituteCloseCodeTagsWithTemporaryReplacementInEncodedText(bbEncodedText);
     }
 
-    /**
-     * Process incoming encoded text with replacing [/code] tags to [-code]
-     *
-     * @param bbEncodedText BB encoded text to process
-     * @return processed text
-     */
-    @Override
-    public CharSequence process(CharSequence bbEncodedText) {
-        String result = process(bbEncodedText.toString());
-        return new StringBuilder(result).subSequence(0, result.length());
-    }
-
     /**
      * Process incoming decoded text by replacing [-code] tags to [/code].
      *
      * @param bbDecodedText text returned after to BBCode processor
+     * @param context       parameters of the current rendering
      * @return resultant text
      */
     @Override
-    public String postProcess(String bbDecodedText) {
-        HttpServletRequest httpServletRequest = getServletRequest();
-
-        if (!isCodeReviewPost(httpServletRequest)) {
+    public String postProcess(String bbDecodedText, RenderingContext context) {
+        if (!context.isCodeReview()) {
             return bbDecodedText;
         }
 
         @SuppressWarnings("unchecked")
-        List<Boolean> replaceHistoryList =
-                (List<Boolean>) httpServletRequest.getAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
+        List<Boolean> replaceHistoryList = (List<Boolean>) context.getAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
         if (replaceHistoryList == null) {
             return bbDecodedText;
         }
 
-        httpServletRequest.removeAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
+        context.removeAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
 
         return removeTemporaryReplacementSubstitutionFromDecodedText(bbDecodedText, replaceHistoryList);
     }
 
-    /**
-     * Gets current request
-     *
-     * @return native {@link HttpServletRequest}
-     */
-    @VisibleForTesting
-    protected HttpServletRequest getServletRequest() {
-        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
-        return ((ServletRequestAttributes) attributes).getRequest();
-    }
-
-    /**
-     * Checks in current request attributes Code Review token
-     *
-     * @return {@code true, false}
-     */
-    private boolean isCodeReviewPost(HttpServletRequest httpServletRequest) {
-        String isCodeReviewPost = (String) httpServletRequest.getAttribute("isCodeReviewPost");
-        return (isCodeReviewPost != null);
-    }
-
     /**
      * Checks regular wrap [code]...[/code] in Code Review text
      *
@@ -155,7 +114,7 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
             logger.warn("BbCodeReviewProcessor called, but target encoded text \"" + bbEncodedText
                     + "\" doesn't wrapped with " + TopicModificationService.CODE_JAVA_BBCODE_START + "..."
                     + TopicModificationService.CODE_JAVA_BBCODE_END
-                    + " BBCodes. Check \"isCodeReviewPost\" request attribute");
+                    + " BBCodes. Check code review flag of the rendering context");
             return false;
         }
         return true;
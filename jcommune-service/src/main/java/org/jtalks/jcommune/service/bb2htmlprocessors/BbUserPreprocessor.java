@@ -16,7 +16,6 @@
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
 import org.jtalks.jcommune.service.UserService;
-import org.kefirsf.bb.TextProcessorAdapter;
 
 /**
  * Process for [user][/user] code. It adds link to user mentioned in tag before starting
@@ -25,7 +24,7 @@ import org.kefirsf.bb.TextProcessorAdapter;
  * @author Anuar_Nurmakanov
  *
  */
-public class BbUserPreprocessor extends TextProcessorAdapter {
+public class BbUserPreprocessor implements TextPreProcessor {
     private final UserService userService;
 
     /**
@@ -39,9 +38,8 @@ public class BbUserPreprocessor extends TextProcessorAdapter {
      * {@inheritDoc}
      */
     @Override
-    public CharSequence process(CharSequence source) {
-        String notProcessedSource = source.toString();
-        return userService.processUserBbCodesInPost(notProcessedSource);
+    public String preProcess(String source, RenderingContext context) {
+        return userService.processUserBbCodesInPost(source, context.getContextPath());
     }
 
 }
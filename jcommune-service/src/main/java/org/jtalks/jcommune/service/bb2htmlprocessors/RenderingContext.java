@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parameters of converting BB codes to HTML the result depends on: server name (links to other servers are marked as
+ * foreign), context path (links to profiles of mentioned users contain it) and whether the text is a code review.
+ * Processors take them from the context instead of the current request, so that texts can be rendered outside of
+ * requests, e.g. in background threads.
+ * <p/>
+ * The context also keeps attributes, the state pre-processors pass to post-processors of the same rendering.
+ * {@link org.jtalks.jcommune.service.nontransactional.BBCodeService} gives each rendering its own copy of the context
+ * (see {@link #newRendering()}), so the same context may be used to render several texts concurrently.
+ */
+public class RenderingContext {
+    private final String serverName;
+    private final String contextPath;
+    private final boolean codeReview;
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    /**
+     * @param serverName  name of the server the forum is available at, links to other servers are foreign
+     * @param contextPath context path of the forum application, empty string for the root context
+     * @param codeReview  whether the rendered text is a code review
+     */
+    public RenderingContext(String serverName, String contextPath, boolean codeReview) {
+        this.serverName = serverName;
+        this.contextPath = contextPath;
+        this.codeReview = codeReview;
+    }
+
+    /**
+     * @return name of the server the forum is available at
+     */
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * @return context path of the forum application, empty string for the root context
+     */
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    /**
+     * @return whether the rendered text is a code review
+     */
+    public boolean isCodeReview() {
+        return codeReview;
+    }
+
+    /**
+     * @param codeReview whether the rendered text is a code review
+     * @return context with the same server name and context path
+     */
+    public RenderingContext forCodeReview(boolean codeReview) {
+        return new RenderingContext(serverName, contextPath, codeReview);
+    }
+
+    /**
+     * @return context with the same parameters and without attributes to be used for a single rendering
+     */
+    public RenderingContext newRendering() {
+        return new RenderingContext(serverName, contextPath, codeReview);
+    }
+
+    /**
+     * @param name name of the attribute
+     * @return value of the attribute set during the current rendering or {@code null} if there is no such attribute
+     */
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * @param name  name of the attribute
+     * @param value value of the attribute
+     */
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    /**
+     * @param name name of the attribute to remove
+     */
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+}
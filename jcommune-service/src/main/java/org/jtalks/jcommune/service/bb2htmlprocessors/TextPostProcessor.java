@@ -25,8 +25,9 @@ public interface TextPostProcessor {
     /**
      * Processes HTML text.
      *
-     * @param source the HTML to be processed
+     * @param source  the HTML to be processed
+     * @param context parameters of the current rendering
      * @return the result of text processing
      */
-    String postProcess(String source);
+    String postProcess(String source, RenderingContext context);
 }
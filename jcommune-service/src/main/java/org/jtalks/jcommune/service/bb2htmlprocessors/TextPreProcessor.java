@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+/**
+ * bb2html pre processor. It's applied to the BB encoded text before it's converted to HTML, e.g. to fix up tags which
+ * the converter can't process as is.
+ */
+public interface TextPreProcessor {
+
+    /**
+     * Processes BB encoded text.
+     *
+     * @param source  the BB encoded text to be processed
+     * @param context parameters of the current rendering
+     * @return the result of text processing
+     */
+    String preProcess(String source, RenderingContext context);
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps avatars of the recently shown users in memory, so that rendering an avatar doesn't need the database.
+ * Avatars are addressed by the hash of their content: users with the same avatar (most often the default one)
+ * share a single copy of its bytes, and the hash serves as a strong ETag of the avatar.
+ * <p/>
+ * Avatars of at most {@code maxUsers} users are kept, the least recently used ones are forgotten and loaded
+ * again when needed.
+ */
+public class AvatarStore {
+    private final int maxUsers;
+    private final Map<Long, Avatar> avatars;
+    /** Contents of the avatars by their hashes, kept while some avatar refers to them */
+    private final Map<String, WeakReference<byte[]>> contents = new HashMap<String, WeakReference<byte[]>>();
+
+    /**
+     * @param maxUsers how many users avatars are kept in memory
+     */
+    public AvatarStore(final int maxUsers) {
+        this.maxUsers = maxUsers;
+        this.avatars = new LinkedHashMap<Long, Avatar>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Avatar> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * @param userId  id of the user
+     * @param version last modification time of the avatar the caller needs, in millis, 0 if any version fits
+     * @return avatar of the user or {@code null} if it isn't stored with {@link #put(long, byte[], long)}
+     *         or a newer version is needed
+     */
+    public synchronized Avatar get(long userId, long version) {
+        Avatar avatar = avatars.get(userId);
+        if (avatar == null || avatar.getLastModified() < version) {
+            return null;
+        }
+        return avatar;
+    }
+
+    /**
+     * Remembers the avatar of the user loaded from the database. If the same content is already stored
+     * for some other user, it's shared instead of keeping one more copy.
+     *
+     * @param userId       id of the user
+     * @param content      avatar image
+     * @param lastModified last modification time of the avatar in millis
+     * @return stored avatar
+     */
+    public synchronized Avatar put(long userId, byte[] content, long lastModified) {
+        String hash = DigestUtils.shaHex(content);
+        WeakReference<byte[]> stored = contents.get(hash);
+        byte[] shared = stored == null ? null : stored.get();
+        if (shared == null) {
+            shared = content;
+            if (contents.size() >= 2 * maxUsers) {
+                removeUnusedContents();
+            }
+            contents.put(hash, new WeakReference<byte[]>(shared));
+        }
+        Avatar avatar = new Avatar(shared, hash, lastModified);
+        avatars.put(userId, avatar);
+        return avatar;
+    }
+
+    private void removeUnusedContents() {
+        Iterator<WeakReference<byte[]>> iterator = contents.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Avatar of a user. Its content is shared and must not be modified.
+     */
+    public static final class Avatar {
+        private final byte[] content;
+        private final String hash;
+        private final long lastModified;
+
+        private Avatar(byte[] content, String hash, long lastModified) {
+            this.content = content;
+            this.hash = hash;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return avatar image, must not be modified
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return hex-encoded SHA-1 hash of the avatar image
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return last modification time of the avatar in millis
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -16,10 +16,20 @@ package org.jtalks.jcommune.service.nontransactional;
 
 import org.apache.commons.lang.Validate;
 import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.jtalks.jcommune.service.bb2htmlprocessors.RenderingContext;
 import org.jtalks.jcommune.service.bb2htmlprocessors.TextPostProcessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.TextPreProcessor;
 import org.kefirsf.bb.BBProcessorFactory;
 import org.kefirsf.bb.TextProcessor;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,8 +44,13 @@ public class BBCodeService {
     private final TextProcessor processor = BBProcessorFactory.getInstance().create();
     /** Processor to strip bb-codes */
     private final TextProcessor stripBBCodesProcessor = BBProcessorFactory.getInstance().createFromResource("kefirbb-strip-config.xml");
+    /**
+     * Context used when there is no request, links to profiles of mentioned users are relative to the root and no
+     * links are recognized as foreign
+     */
+    private static final RenderingContext NO_REQUEST_CONTEXT = new RenderingContext("", "", false);
     /** Preprocessors of BB encoded text used before actual BB2HTML converter */
-    private final List<TextProcessor> preprocessors = new ArrayList<TextProcessor>();
+    private final List<TextPreProcessor> preprocessors = new ArrayList<TextPreProcessor>();
 
     /**
      * Postprocessors of BB decoded text used after actual BB2HTML converter. This is needed for instance in case of
@@ -43,6 +58,8 @@ public class BBCodeService {
      * codes has been processed.
      */
     private final List<TextPostProcessor> postprocessors = new ArrayList<TextPostProcessor>();
+    /** Rendered posts, if not set posts are rendered every time */
+    private RenderedPostCache renderedPostCache;
 
     /**
      * Quotes text given as a valid BB-coded quote. Such a quotes are rendered automatically in posts or forum messages.
@@ -63,25 +80,146 @@ public class BBCodeService {
      * configuration and the CSS styles mentioned in it's patterns. Uses pre-processors to do some work on input text,
      * like closing un-closed tags. Also it uses post-processors e.g. for code reviews to return back [code] tag after
      * it was removed in the pre-processors.</p> If input text contains <i>no</i> BB-compatible tags it's returned as
-     * is.
+     * is. Rendered links depend on the current request, see {@link #convertBbToHtml(String, RenderingContext)}.
      *
      * @param bbEncodedText string with BB-style markup
      * @return the same text with HTML markup to be shown
      */
     public String convertBbToHtml(String bbEncodedText) {
-        for (TextProcessor preprocessor : preprocessors) {
-            bbEncodedText = preprocessor.process(bbEncodedText);
+        RenderingContext context = getRequestContext();
+        return convertBbToHtml(bbEncodedText, context != null ? context : NO_REQUEST_CONTEXT);
+    }
+
+    /**
+     * Converts BB-encoded text into HTML-encoded one the same way as {@link #convertBbToHtml(String)} does, but doesn't
+     * depend on the current request, so it can be used in any thread.
+     *
+     * @param bbEncodedText string with BB-style markup
+     * @param context       server name and context path rendered links depend on and whether the text is a code
+     *                      review
+     * @return the same text with HTML markup to be shown
+     */
+    public String convertBbToHtml(String bbEncodedText, RenderingContext context) {
+        long start = System.nanoTime();
+        RenderingContext rendering = context.newRendering();
+        for (TextPreProcessor preprocessor : preprocessors) {
+            bbEncodedText = preprocessor.preProcess(bbEncodedText, rendering);
         }
         bbEncodedText = processor.process(bbEncodedText);
         for (TextPostProcessor postpreprocessor : postprocessors) {
-            bbEncodedText = postpreprocessor.postProcess(bbEncodedText);
+            bbEncodedText = postpreprocessor.postProcess(bbEncodedText, rendering);
+        }
+        if (renderedPostCache != null) {
+            renderedPostCache.recordRenderTime(System.nanoTime() - start);
         }
         return bbEncodedText;
     }
 
+    /**
+     * Converts content of the post the same way as {@link #convertBbToHtml(String)} does, but takes the result from
+     * the {@link RenderedPostCache} if the post wasn't changed since it was rendered last time.
+     *
+     * @param post post to be shown
+     * @return content of the post with HTML markup to be shown
+     */
+    public String convertBbToHtml(Post post) {
+        RenderingContext context = getRequestContext();
+        if (context == null) {
+            return convertBbToHtml(post.getPostContent(), NO_REQUEST_CONTEXT.forCodeReview(isCodeReview(post)));
+        }
+        return convertBbToHtml(post, context);
+    }
+
+    /**
+     * Converts content of the post the same way as {@link #convertBbToHtml(Post)} does, but doesn't depend on the
+     * current request, so it can be used in any thread, e.g. to render posts of a page in parallel.
+     *
+     * @param post    post to be shown
+     * @param context server name and context path rendered links depend on, whether the post is a code review is
+     *                determined by the post itself
+     * @return content of the post with HTML markup to be shown
+     */
+    public String convertBbToHtml(Post post, RenderingContext context) {
+        context = context.forCodeReview(isCodeReview(post));
+        if (renderedPostCache == null) {
+            return convertBbToHtml(post.getPostContent(), context);
+        }
+        String cacheKey = getCacheKey(context);
+        String html = renderedPostCache.get(post, cacheKey);
+        if (html == null) {
+            html = renderAndCache(post, context, cacheKey);
+        }
+        return html;
+    }
+
+    /**
+     * Renders the saved post and puts it to the {@link RenderedPostCache}, so that the first view of the post doesn't
+     * need to render it. If called within a transaction, the post is rendered after the transaction is committed.
+     *
+     * @param post created or edited post
+     */
+    public void warmUp(final Post post) {
+        final RenderingContext requestContext = getRequestContext();
+        if (renderedPostCache == null || requestContext == null) {
+            return;
+        }
+        final RenderingContext context = requestContext.forCodeReview(isCodeReview(post));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    renderAndCache(post, context, getCacheKey(context));
+                }
+            });
+        } else {
+            renderAndCache(post, context, getCacheKey(context));
+        }
+    }
+
+    private String renderAndCache(Post post, RenderingContext context, String cacheKey) {
+        int configVersion = renderedPostCache.getConfigVersion();
+        String html = convertBbToHtml(post.getPostContent(), context);
+        renderedPostCache.put(post, cacheKey, configVersion, html);
+        return html;
+    }
+
+    /**
+     * Rendered links depend on the current request: links to profiles of mentioned users contain the context path,
+     * and links to other servers are recognized by the server name.
+     *
+     * @return server name and context path of the current request or {@code null} if there is no request
+     */
+    private RenderingContext getRequestContext() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        return new RenderingContext(request.getServerName(), request.getContextPath(), false);
+    }
+
+    /**
+     * @param context context the post is rendered in
+     * @return key rendered posts are cached by in addition to the post itself
+     */
+    private static String getCacheKey(RenderingContext context) {
+        return context.getServerName() + context.getContextPath();
+    }
+
+    /**
+     * The first post of a code review topic contains the code under review and is rendered differently.
+     *
+     * @param post post to be rendered
+     * @return whether the post is a code review
+     */
+    private static boolean isCodeReview(Post post) {
+        Topic topic = post.getTopic();
+        return topic != null && topic.getCodeReview() != null && post.equals(topic.getFirstPost());
+    }
+
     /** @param preprocessors objects that process input text from users post before the actual bb-converting is
      *                       started */
-    public void setPreprocessors(List<TextProcessor> preprocessors) {
+    public void setPreprocessors(List<TextPreProcessor> preprocessors) {
         this.preprocessors.addAll(preprocessors);
     }
 
@@ -94,6 +232,13 @@ public class BBCodeService {
         this.postprocessors.addAll(postprocessors);
     }
 
+    /**
+     * @param renderedPostCache storage of rendered posts, without it posts are rendered every time they are shown
+     */
+    public void setRenderedPostCache(RenderedPostCache renderedPostCache) {
+        this.renderedPostCache = renderedPostCache;
+    }
+
     /**
      * Remove bb-codes from the specified string.
      * It remove ONLY VALID bb-codes. So, something like [zzz][/zzz] is unchanged.
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the current user for the duration of the current request, so that the user is looked up once per request
+ * however many services ask for it. Outside of requests (e.g. in scheduled jobs) nothing is kept and the user is
+ * looked up every time. The user should be {@link #invalidate() invalidated} when the profile or the authentication
+ * changes within the request.
+ */
+public class CurrentUserHolder implements CurrentUserHolderMXBean {
+    static final String USER_ATTRIBUTE = CurrentUserHolder.class.getName() + ".user";
+    static final String LOOKUPS_ATTRIBUTE = CurrentUserHolder.class.getName() + ".lookups";
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong lookupsWithinRequests = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger maxLookupsPerRequest = new AtomicInteger();
+
+    /**
+     * @return user kept for the current request or {@code null} if it wasn't looked up yet
+     */
+    public JCUser get() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return (JCUser) attributes.getAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Keeps the user that was just looked up until the end of the current request and counts the lookup.
+     *
+     * @param user the current user
+     */
+    public void put(JCUser user) {
+        lookups.incrementAndGet();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return;
+        }
+        attributes.setAttribute(USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        lookupsWithinRequests.incrementAndGet();
+        Integer previousLookups = (Integer) attributes.getAttribute(LOOKUPS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        int requestLookups = previousLookups == null ? 1 : previousLookups + 1;
+        attributes.setAttribute(LOOKUPS_ATTRIBUTE, requestLookups, RequestAttributes.SCOPE_REQUEST);
+        if (requestLookups == 1) {
+            requests.incrementAndGet();
+        }
+        int max = maxLookupsPerRequest.get();
+        while (requestLookups > max && !maxLookupsPerRequest.compareAndSet(max, requestLookups)) {
+            max = maxLookupsPerRequest.get();
+        }
+    }
+
+    /**
+     * Drops the user kept for the current request, so that it's looked up again.
+     */
+    public void invalidate() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.removeAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageLookupsPerRequest() {
+        long requestCount = requests.get();
+        return requestCount == 0 ? 0 : (double) lookupsWithinRequests.get() / requestCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxLookupsPerRequest() {
+        return maxLookupsPerRequest.get();
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+/**
+ * Exposes how many times the current user is looked up in the database via JMX, so that it's visible when something
+ * starts to look the user up more than once per request.
+ */
+public interface CurrentUserHolderMXBean {
+    /**
+     * @return how many times the current user was looked up since the application start
+     */
+    long getLookupCount();
+
+    /**
+     * @return how many requests looked up the current user since the application start
+     */
+    long getRequestCount();
+
+    /**
+     * @return average count of lookups of the current user per request which looked it up
+     */
+    double getAverageLookupsPerRequest();
+
+    /**
+     * @return maximum count of lookups of the current user made by a single request
+     */
+    int getMaxLookupsPerRequest();
+}
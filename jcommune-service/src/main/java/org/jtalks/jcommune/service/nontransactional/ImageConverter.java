@@ -18,12 +18,14 @@ import net.sf.image4j.codec.ico.ICODecoder;
 import net.sf.image4j.codec.ico.ICOEncoder;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.Validate;
-import org.apache.tika.Tika;
 import org.jtalks.jcommune.service.exceptions.ImageProcessException;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.*;
 
 /**
@@ -42,14 +44,15 @@ public class ImageConverter {
      * of IMG HTML tag. Used in AJAX avatar preview.
      */
     protected static final String HTML_SRC_TAG_PREFIX = "data:image/%s;base64,";
-    private static final int ALPHA_CHANNEL_MASK = 0xFF000000;
-    private static final int RED_CHANNEL_MASK = 0x00FF0000;
-    private static final int GREEN_CHANNEL_MASK = 0x0000FF00;
-    private static final int BLUE_CHANNEL_MASK = 0x000000FF;
-    private static final int BIT = 8;
-    private static final int TWO_BITS = BIT * 2;
-    private static final int THREE_BITS = BIT * 3;
-    private static final int ARGB_BITS_COUNT = BIT * 4;
+    private static final int ARGB_BITS_COUNT = 32;
+    private static final int OPAQUE_ALPHA = 0xFF000000;
+    private static final int RGB_MASK = 0x00FFFFFF;
+    /** Masks of red and blue channels, and of alpha and green channels shifted right by 8 bits */
+    private static final int EVEN_CHANNELS_MASK = 0x00FF00FF;
+    private static final int ODD_CHANNELS_MASK = 0xFF00FF00;
+    /** Fixed-point interpolation weights have 8 fraction bits, so that two weighted channels fit in 16 bits */
+    private static final int FRACTION_BITS = 8;
+    private static final int FRACTION_ONE = 1 << FRACTION_BITS;
 
     /** In some cases (e.g. {@link ICOEncoder write() method}) we can't work with images
      * having width < 8, default accessing kept for testing
@@ -150,9 +153,8 @@ public class ImageConverter {
     public BufferedImage convertByteArrayToImage(byte[] bytes) throws ImageProcessException {
         BufferedImage result;
         BufferedInputStream bis = new BufferedInputStream(new ByteArrayInputStream(bytes));
-        Tika tika = new Tika();
         try {
-            String type = tika.detect(bis);
+            String type = ImageService.TIKA.detect(bis);
             if (type.contains(ImageService.ICO_TYPE)) {
                 result = ICODecoder.read(bis).get(0);
             } else {
@@ -240,6 +242,10 @@ public class ImageConverter {
      * function on a completely headless system. This especially includes Linux and Unix systems
      * that do not have the X11 libraries installed, which are required for the AWT subsystem to
      * operate. The resulting image will be smoothly scaled using bilinear filtering.
+     * <p/>
+     * Pixels are processed as an array of ARGB integers with fixed-point arithmetic instead of
+     * getting and setting every pixel through the color model. Images more than twice as big as
+     * needed are halved first, as bilinear filtering alone would skip most of their pixels.
      *
      * @param source    The image to convert
      * @param width     The desired image width
@@ -248,70 +254,161 @@ public class ImageConverter {
      * @return bufferedImage The resized image
      */
     private BufferedImage createBufferedImage(BufferedImage source, int imageType, int width, int height) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int[] pixels = getArgbPixels(source);
+        while (sourceWidth >= width * 2 && sourceHeight >= height * 2) {
+            pixels = halve(pixels, sourceWidth, sourceHeight);
+            sourceWidth /= 2;
+            sourceHeight /= 2;
+        }
+        int[] resized = scaleBilinear(pixels, sourceWidth, sourceHeight, width, height);
+
         BufferedImage bufferedImage = new BufferedImage(width, height, imageType);
+        if (imageType == BufferedImage.TYPE_INT_ARGB) {
+            System.arraycopy(resized, 0, getPackedData(bufferedImage), 0, resized.length);
+        } else if (imageType == BufferedImage.TYPE_INT_RGB) {
+            int[] data = getPackedData(bufferedImage);
+            for (int i = 0; i < resized.length; i++) {
+                data[i] = resized[i] & RGB_MASK;
+            }
+        } else {
+            bufferedImage.setRGB(0, 0, width, height, resized, 0, width);
+        }
+        return bufferedImage;
+    }
 
-        int sourceX;
-        int sourceY;
+    /**
+     * Gets pixels of the image in the ARGB color model, row by row. Pixels of the images with
+     * integer ARGB or RGB pixels are read directly from their raster.
+     *
+     * @param image image to get pixels of
+     * @return array of ARGB pixels
+     */
+    private static int[] getArgbPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) && isPacked(image)) {
+            int[] data = getPackedData(image);
+            int[] pixels = new int[width * height];
+            if (type == BufferedImage.TYPE_INT_ARGB) {
+                System.arraycopy(data, 0, pixels, 0, pixels.length);
+            } else {
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = data[i] | OPAQUE_ALPHA;
+                }
+            }
+            return pixels;
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
 
-        double scaleX = (double) width / source.getWidth();
-        double scaleY = (double) height / source.getHeight();
+    /**
+     * @param image image with integer pixels
+     * @return true if the raster of the image keeps exactly its pixels row by row without gaps
+     */
+    private static boolean isPacked(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        return raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == image.getWidth()
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0;
+    }
 
-        int x1;
-        int y1;
+    private static int[] getPackedData(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
 
-        double xDiff;
-        double yDiff;
+    /**
+     * Halves the image, every pixel of the result is the average of 2x2 source pixels.
+     *
+     * @param pixels ARGB pixels of the image
+     * @param width  width of the image
+     * @param height height of the image
+     * @return ARGB pixels of the image with halved width and height
+     */
+    private static int[] halve(int[] pixels, int width, int height) {
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        int[] result = new int[halfWidth * halfHeight];
+        for (int y = 0; y < halfHeight; y++) {
+            int sourceRow = 2 * y * width;
+            int row = y * halfWidth;
+            for (int x = 0; x < halfWidth; x++) {
+                int i = sourceRow + 2 * x;
+                result[row + x] = average(pixels[i], pixels[i + 1], pixels[i + width], pixels[i + width + 1]);
+            }
+        }
+        return result;
+    }
 
-        int rgb;
-        int rgb1;
-        int rgb2;
+    /**
+     * Averages four ARGB pixels. Two channels are summed at once, as a sum of four channels fits in 16 bits.
+     */
+    private static int average(int pixel1, int pixel2, int pixel3, int pixel4) {
+        int evenChannels = (pixel1 & EVEN_CHANNELS_MASK) + (pixel2 & EVEN_CHANNELS_MASK)
+                + (pixel3 & EVEN_CHANNELS_MASK) + (pixel4 & EVEN_CHANNELS_MASK);
+        int oddChannels = ((pixel1 >>> 8) & EVEN_CHANNELS_MASK) + ((pixel2 >>> 8) & EVEN_CHANNELS_MASK)
+                + ((pixel3 >>> 8) & EVEN_CHANNELS_MASK) + ((pixel4 >>> 8) & EVEN_CHANNELS_MASK);
+        return (((evenChannels + 0x00020002) >>> 2) & EVEN_CHANNELS_MASK)
+                | ((((oddChannels + 0x00020002) >>> 2) & EVEN_CHANNELS_MASK) << 8);
+    }
 
-        for (int y = 0; y < height; y++) {
-            sourceY = y * source.getHeight() / bufferedImage.getHeight();
-            yDiff = y / scaleY - sourceY;
+    /**
+     * Scales the image with bilinear filtering.
+     *
+     * @param pixels       ARGB pixels of the image
+     * @param sourceWidth  width of the image
+     * @param sourceHeight height of the image
+     * @param width        width of the result
+     * @param height       height of the result
+     * @return ARGB pixels of the scaled image
+     */
+    private static int[] scaleBilinear(int[] pixels, int sourceWidth, int sourceHeight, int width, int height) {
+        int[] sourceXs = new int[width];
+        int[] nextSourceXs = new int[width];
+        int[] xFractions = new int[width];
+        for (int x = 0; x < width; x++) {
+            long position = ((long) x * sourceWidth << FRACTION_BITS) / width;
+            sourceXs[x] = (int) (position >> FRACTION_BITS);
+            nextSourceXs[x] = Math.min(sourceWidth - 1, sourceXs[x] + 1);
+            xFractions[x] = (int) (position & (FRACTION_ONE - 1));
+        }
 
+        int[] result = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            long position = ((long) y * sourceHeight << FRACTION_BITS) / height;
+            int sourceY = (int) (position >> FRACTION_BITS);
+            int yFraction = (int) (position & (FRACTION_ONE - 1));
+            int row = sourceY * sourceWidth;
+            int nextRow = Math.min(sourceHeight - 1, sourceY + 1) * sourceWidth;
+            int resultRow = y * width;
             for (int x = 0; x < width; x++) {
-                sourceX = x * source.getWidth() / bufferedImage.getWidth();
-                xDiff = x / scaleX - sourceX;
-
-                x1 = Math.min(source.getWidth() - 1, sourceX + 1);
-                y1 = Math.min(source.getHeight() - 1, sourceY + 1);
-
-                rgb1 = getRGBInterpolation(source.getRGB(sourceX, sourceY), source.getRGB(x1, sourceY), xDiff);
-                rgb2 = getRGBInterpolation(source.getRGB(sourceX, y1), source.getRGB(x1, y1), xDiff);
-
-                rgb = getRGBInterpolation(rgb1, rgb2, yDiff);
-
-                bufferedImage.setRGB(x, y, rgb);
+                int top = interpolate(pixels[row + sourceXs[x]], pixels[row + nextSourceXs[x]], xFractions[x]);
+                int bottom = interpolate(
+                        pixels[nextRow + sourceXs[x]], pixels[nextRow + nextSourceXs[x]], xFractions[x]);
+                result[resultRow + x] = interpolate(top, bottom, yFraction);
             }
         }
-
-        return bufferedImage;
+        return result;
     }
 
     /**
-     * Makes rgb interpolation.
+     * Makes linear interpolation of ARGB pixels. Two channels are interpolated at once, as a channel
+     * multiplied by a weight fits in 16 bits.
      *
-     * @param value1   first known value
-     * @param value2   second known value
-     * @param distance distance between values
+     * @param pixel1   first known value
+     * @param pixel2   second known value
+     * @param fraction distance between values, from 0 to {@link #FRACTION_ONE} exclusive
      * @return rgb an integer pixel in the ARGB color model
      */
-    private int getRGBInterpolation(int value1, int value2, double distance) {
-        int alpha1 = (value1 & ALPHA_CHANNEL_MASK) >>> THREE_BITS;
-        int red1 = (value1 & RED_CHANNEL_MASK) >> TWO_BITS;
-        int green1 = (value1 & GREEN_CHANNEL_MASK) >> BIT;
-        int blue1 = (value1 & BLUE_CHANNEL_MASK);
-
-        int alpha2 = (value2 & ALPHA_CHANNEL_MASK) >>> THREE_BITS;
-        int red2 = (value2 & RED_CHANNEL_MASK) >> TWO_BITS;
-        int green2 = (value2 & GREEN_CHANNEL_MASK) >> BIT;
-        int blue2 = (value2 & BLUE_CHANNEL_MASK);
-
-        return ((int) (alpha1 * (1.0 - distance) + alpha2 * distance) << THREE_BITS)
-                | ((int) (red1 * (1.0 - distance) + red2 * distance) << TWO_BITS)
-                | ((int) (green1 * (1.0 - distance) + green2 * distance) << BIT)
-                | (int) (blue1 * (1.0 - distance) + blue2 * distance);
+    private static int interpolate(int pixel1, int pixel2, int fraction) {
+        int weight1 = FRACTION_ONE - fraction;
+        int evenChannels = (pixel1 & EVEN_CHANNELS_MASK) * weight1 + (pixel2 & EVEN_CHANNELS_MASK) * fraction;
+        int oddChannels = ((pixel1 >>> 8) & EVEN_CHANNELS_MASK) * weight1
+                + ((pixel2 >>> 8) & EVEN_CHANNELS_MASK) * fraction;
+        return ((evenChannels >>> FRACTION_BITS) & EVEN_CHANNELS_MASK) | (oddChannels & ODD_CHANNELS_MASK);
     }
-
 }
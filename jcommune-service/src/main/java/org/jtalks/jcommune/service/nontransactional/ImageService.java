@@ -42,6 +42,8 @@ import java.util.List;
  */
 public class ImageService {
     public static final String ICO_TYPE = "image/x-icon";
+    /** Detects types of images, is thread-safe and expensive to create */
+    static final Tika TIKA = new Tika();
     private static final List<String> VALID_IMAGE_TYPES =
             Arrays.asList("image/jpeg", "image/png", "image/gif", ICO_TYPE);
     /**
@@ -53,6 +55,7 @@ public class ImageService {
     private Base64Wrapper base64Wrapper;
     private JCommuneProperty imageSizeProperty;
     private String defaultImagePath;
+    private volatile byte[] defaultImage;
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageService.class);
 
     /**
@@ -75,17 +78,21 @@ public class ImageService {
     }
 
     /**
-     * Returns default image to be used when custom image is not set
+     * Returns default image to be used when custom image is not set. The image is loaded once
+     * and shared by all the callers, so it must not be modified.
      *
      * @return byte array-stored image
      */
     public byte[] getDefaultImage() {
-        byte[] result;
-        try {
-            result = getFileBytes(defaultImagePath);
-        } catch (IOException e) {
-            result = new byte[0];
-            LOGGER.error("Failed to load default image", e);
+        byte[] result = defaultImage;
+        if (result == null) {
+            try {
+                result = getFileBytes(defaultImagePath);
+                defaultImage = result;
+            } catch (IOException e) {
+                result = new byte[0];
+                LOGGER.error("Failed to load default image", e);
+            }
         }
         return result;
     }
@@ -132,10 +139,9 @@ public class ImageService {
      */
     public void validateImageFormat(byte[] bytes) throws ImageFormatException {
         Validate.notNull(bytes, "Incoming byte array cannot be null");
-        Tika tika = new Tika();
         InputStream input = new ByteArrayInputStream(bytes);
         try {
-            String type = tika.detect(input);
+            String type = TIKA.detect(input);
             if (!VALID_IMAGE_TYPES.contains(type)) {
                 LOGGER.debug("Wrong file extension. May be only {}", VALID_IMAGE_EXTENSIONS);
                 throw new ImageFormatException(VALID_IMAGE_EXTENSIONS);
@@ -15,6 +15,7 @@
 
 package org.jtalks.jcommune.service.nontransactional;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.jtalks.common.model.entity.Entity;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.service.UserService;
@@ -22,29 +23,54 @@ import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Stores and tracks user's location on the forum.
  * As for now  is mostly used to show who's browsing the topic/branch/etc.
+ * <p/>
+ * Besides the location of every user, users are indexed by the location, so that
+ * finding viewers of a page depends on the number of its viewers only, not on the
+ * number of users online. The index is maintained without locks: a location of a user
+ * is the source of truth and the viewers of an entity that moved elsewhere, logged out
+ * or were idle for too long are removed from the index when the viewers are requested.
+ * Entities are removed from the index as soon as they have no viewers left.
  *
  * @author Andrey Kluev
  */
 @Component
 public class LocationService {
+    /** Users are shown as viewers for half an hour since their last page view by default */
+    private static final long DEFAULT_MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
     private UserService userService;
     private SessionRegistry sessionRegistry;
-    private Map<JCUser, String> registerUserMap = new ConcurrentHashMap<JCUser, String>();
+    private final long maxIdleMillis;
+    private final ConcurrentMap<JCUser, Location> locations = new ConcurrentHashMap<JCUser, Location>();
+    private final ConcurrentMap<String, Set<JCUser>> viewers = new ConcurrentHashMap<String, Set<JCUser>>();
 
     /**
      * @param userService     to figure out the current user
      * @param sessionRegistry session registry to get all the users logged in
      */
     public LocationService(UserService userService, SessionRegistry sessionRegistry) {
+        this(userService, sessionRegistry, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * @param userService     to figure out the current user
+     * @param sessionRegistry session registry to get all the users logged in
+     * @param maxIdleMillis   for how long users are shown as viewers since their last page view
+     */
+    public LocationService(UserService userService, SessionRegistry sessionRegistry, long maxIdleMillis) {
         this.userService = userService;
         this.sessionRegistry = sessionRegistry;
+        this.maxIdleMillis = maxIdleMillis;
     }
 
     /**
@@ -57,21 +83,34 @@ public class LocationService {
      *         there are no viewers or view tracking is not supported for this entity type
      */
     public List<JCUser> getUsersViewing(Entity entity) {
-        List<JCUser> viewList = new ArrayList<JCUser>();
+        String uuid = entity.getUuid();
+        long now = System.currentTimeMillis();
         JCUser currentUser = userService.getCurrentUser();
         /**
          * This condition does not allow Anonymous add to the map of active users.
          */
         if (!currentUser.isAnonymous()) {
-            registerUserMap.put(currentUser, entity.getUuid());
+            moveUser(currentUser, new Location(uuid, now));
         }
 
-        for (Object o : sessionRegistry.getAllPrincipals()) {
-            JCUser user = (JCUser) o;
-            if (entity.getUuid().equals(registerUserMap.get(user))) {
+        Set<JCUser> entityViewers = viewers.get(uuid);
+        if (entityViewers == null) {
+            return new ArrayList<JCUser>();
+        }
+        List<JCUser> viewList = new ArrayList<JCUser>(entityViewers.size());
+        for (JCUser user : entityViewers) {
+            Location location = locations.get(user);
+            if (location == null || !location.uuid.equals(uuid)) {
+                removeViewer(user, uuid, entityViewers);
+            } else if (now - location.lastSeenMillis > maxIdleMillis
+                    || sessionRegistry.getAllSessions(user, false).isEmpty()) {
+                locations.remove(user, location);
+                removeViewer(user, uuid, entityViewers);
+            } else {
                 viewList.add(user);
             }
         }
+        removeIfEmpty(uuid, entityViewers);
         return viewList;
     }
 
@@ -81,6 +120,101 @@ public class LocationService {
      * topic/branch viewer's list until explicitly added
      */
     public void clearUserLocation() {
-        registerUserMap.remove(userService.getCurrentUser());
+        JCUser currentUser = userService.getCurrentUser();
+        Location location = locations.remove(currentUser);
+        if (location != null) {
+            leave(currentUser, location.uuid);
+        }
+    }
+
+    /**
+     * Changes location of the user and adds him to the viewers of the new location.
+     *
+     * @param user     the user who opened a page
+     * @param location the entity of the page
+     */
+    private void moveUser(JCUser user, Location location) {
+        Location previous = locations.put(user, location);
+        if (previous != null && !previous.uuid.equals(location.uuid)) {
+            leave(user, previous.uuid);
+        }
+        addViewer(user, location.uuid);
+    }
+
+    /**
+     * Adds the user to the viewers of the entity.
+     */
+    private void addViewer(JCUser user, String uuid) {
+        while (true) {
+            Set<JCUser> entityViewers = viewers.get(uuid);
+            if (entityViewers == null) {
+                Set<JCUser> created = Collections.newSetFromMap(new ConcurrentHashMap<JCUser, Boolean>());
+                entityViewers = viewers.putIfAbsent(uuid, created);
+                if (entityViewers == null) {
+                    entityViewers = created;
+                }
+            }
+            entityViewers.add(user);
+            // empty viewers are removed from the index, then the user has to be added to the new ones
+            if (viewers.get(uuid) == entityViewers) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the user from the viewers of the entity he has left.
+     */
+    private void leave(JCUser user, String uuid) {
+        Set<JCUser> entityViewers = viewers.get(uuid);
+        if (entityViewers != null) {
+            entityViewers.remove(user);
+            removeIfEmpty(uuid, entityViewers);
+        }
+    }
+
+    /**
+     * Removes the viewers of the entity from the index if there are none. Users added to them before they were
+     * removed are added to the index again, users added after that see the removal themselves in
+     * {@link #addViewer(JCUser, String)}.
+     */
+    private void removeIfEmpty(String uuid, Set<JCUser> entityViewers) {
+        if (entityViewers.isEmpty() && viewers.remove(uuid, entityViewers)) {
+            for (JCUser user : entityViewers) {
+                addViewer(user, uuid);
+            }
+        }
+    }
+
+    /**
+     * Removes the user from the viewers of the entity unless he has returned to it concurrently.
+     */
+    private void removeViewer(JCUser user, String uuid, Set<JCUser> entityViewers) {
+        entityViewers.remove(user);
+        Location location = locations.get(user);
+        if (location != null && location.uuid.equals(uuid)) {
+            entityViewers.add(user);
+        }
+    }
+
+    /**
+     * @return number of entities having viewers in the index
+     */
+    @VisibleForTesting
+    int getViewedEntitiesCount() {
+        return viewers.size();
+    }
+
+    /**
+     * The entity the user has viewed last time and when.
+     */
+    private static final class Location {
+        private final String uuid;
+        private final long lastSeenMillis;
+
+        private Location(String uuid, long lastSeenMillis) {
+            this.uuid = uuid;
+            this.lastSeenMillis = lastSeenMillis;
+        }
     }
 }
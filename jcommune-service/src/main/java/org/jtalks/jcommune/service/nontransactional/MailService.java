@@ -14,6 +14,8 @@
  */
 package org.jtalks.jcommune.service.nontransactional;
 
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.velocity.app.VelocityEngine;
 import org.jtalks.common.model.entity.Entity;
 import org.jtalks.jcommune.model.entity.*;
@@ -22,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.MessageSource;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.ui.velocity.VelocityEngineUtils;
@@ -32,9 +35,16 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * This service is focused on sending e-mail to forum users.
@@ -60,6 +70,10 @@ public class MailService {
     private static final String MESSAGE_SOURCE = "messageSource";
     private static final String RECIPIENT_LOCALE = "locale";
     private static final String NO_ARGS = "noArgs";
+    /**
+     * Substituted instead of recipient's username when a template is rendered once for many recipients.
+     */
+    private static final String RECIPIENT_PLACEHOLDER = "recipient-" + UUID.randomUUID();
     private final JavaMailSender mailSender;
     private final String from;
     private final VelocityEngine velocityEngine;
@@ -125,17 +139,8 @@ public class MailService {
      */
     public void sendUpdatesOnSubscription(JCUser recipient, SubscriptionAwareEntity entity) {
         try {
-            String urlSuffix = entity.prepareUrlSuffix();
-            String url = this.getDeploymentRootUrl() + urlSuffix;
-            Locale locale = recipient.getLanguage().getLocale();
-            Map<String, Object> model = new HashMap<String, Object>();
-            model.put(LINK, url);
-            model.put(LINK_LABEL, getDeploymentRootUrlWithoutPort() + urlSuffix);
-            if (entity instanceof Branch) {
-                model.put(LINK_UNSUBSCRIBE, this.getDeploymentRootUrl() + getUnsubscribeBranchLink(entity));
-            }
-            sendEmailOnForumUpdates(recipient, model, locale, (Entity) entity,
-                    "subscriptionNotification.subject", "subscriptionNotification.vm");
+            this.send(createUpdatesOnSubscriptionMail(recipient, entity,
+                    getDeploymentRootUrl(), getDeploymentRootUrlWithoutPort()));
         } catch (MailingFailedException e) {
             LOGGER.error(String.format(LOG_TEMPLATE,
                     entity.getClass().getCanonicalName(),
@@ -145,22 +150,111 @@ public class MailService {
     }
 
     /**
-     * Sends email on forum updates.
+     * Prepares the same message as {@link #sendUpdatesOnSubscription(JCUser, SubscriptionAwareEntity)} does,
+     * but doesn't send it. Doesn't need HTTP request, so may be used outside of it.
+     *
+     * @param recipient a person to be notified about updates by email
+     * @param entity    changed subscribed entity.
+     * @param rootUrl   deployment root to build links, see {@link #getDeploymentRootUrl()}
+     * @param rootLabel deployment root to build link labels, see {@link #getDeploymentRootUrlWithoutPort()}
+     * @return message ready to be sent
+     * @throws MailingFailedException when message can't be created
+     */
+    public MimeMessage createUpdatesOnSubscriptionMail(JCUser recipient, SubscriptionAwareEntity entity,
+                                                       String rootUrl, String rootLabel)
+            throws MailingFailedException {
+        Locale locale = recipient.getLanguage().getLocale();
+        return createEmailOnForumUpdates(recipient, getUpdatesModel(entity, rootUrl, rootLabel), locale,
+                (Entity) entity, "subscriptionNotification.subject", "subscriptionNotification.vm");
+    }
+
+    /**
+     * Prepares the same messages as {@link #createUpdatesOnSubscriptionMail} does for every recipient, but renders
+     * templates only once per recipient locale.
+     *
+     * @param recipients persons to be notified about updates by email
+     * @param entity     changed subscribed entity.
+     * @param rootUrl    deployment root to build links, see {@link #getDeploymentRootUrl()}
+     * @param rootLabel  deployment root to build link labels, see {@link #getDeploymentRootUrlWithoutPort()}
+     * @return messages ready to be sent, in the same order as recipients
+     * @throws MailingFailedException when messages can't be created
+     */
+    public List<MimeMessage> createUpdatesOnSubscriptionMails(List<JCUser> recipients, SubscriptionAwareEntity entity,
+                                                              String rootUrl, String rootLabel)
+            throws MailingFailedException {
+        return createEmailsOnForumUpdates(recipients, getUpdatesModel(entity, rootUrl, rootLabel), (Entity) entity,
+                "subscriptionNotification.subject", "subscriptionNotification.vm");
+    }
+
+    private Map<String, Object> getUpdatesModel(SubscriptionAwareEntity entity, String rootUrl, String rootLabel) {
+        String urlSuffix = entity.prepareUrlSuffix();
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put(LINK, rootUrl + urlSuffix);
+        model.put(LINK_LABEL, rootLabel + urlSuffix);
+        if (entity instanceof Branch) {
+            model.put(LINK_UNSUBSCRIBE, rootUrl + getUnsubscribeBranchLink(entity));
+        }
+        return model;
+    }
+
+    /**
+     * Creates email on forum updates.
      *
      * @param recipient a person to be notified about updates by email
      * @param model     template params to be substituted in velocity template
      * @param locale    recipient locale
-     * @throws MailingFailedException when mailing failed
+     * @return message ready to be sent
+     * @throws MailingFailedException when message can't be created
      */
-    private void sendEmailOnForumUpdates(JCUser recipient, Map<String, Object> model, Locale locale,
-                                         Entity entity, String subject, String nameTemplate) throws MailingFailedException {
+    private MimeMessage createEmailOnForumUpdates(JCUser recipient, Map<String, Object> model, Locale locale,
+                                                  Entity entity, String subject, String nameTemplate)
+            throws MailingFailedException {
         model.put(USER, recipient);
         model.put(RECIPIENT_LOCALE, locale);
         String titleEntity = this.getTitleName(entity);
-        this.sendEmail(recipient.getEmail(), messageSource.getMessage(subject,
+        return this.createEmail(recipient.getEmail(), messageSource.getMessage(subject,
                 new Object[]{}, locale) + titleEntity, model, nameTemplate);
     }
 
+    /**
+     * Creates emails on forum updates for many recipients. Templates are rendered once per recipient locale with
+     * a placeholder instead of recipient's username, so such templates shouldn't use other recipient's fields.
+     *
+     * @param recipients persons to be notified about updates by email
+     * @param model      template params to be substituted in velocity template, the same for all recipients
+     * @return messages ready to be sent, in the same order as recipients
+     * @throws MailingFailedException when messages can't be created
+     */
+    private List<MimeMessage> createEmailsOnForumUpdates(List<JCUser> recipients, Map<String, Object> model,
+                                                         Entity entity, String subject, String nameTemplate)
+            throws MailingFailedException {
+        String titleEntity = this.getTitleName(entity);
+        Map<Locale, RenderedEmail> renderedByLocale = new HashMap<Locale, RenderedEmail>();
+        List<MimeMessage> messages = new ArrayList<MimeMessage>(recipients.size());
+        for (JCUser recipient : recipients) {
+            Locale locale = recipient.getLanguage().getLocale();
+            RenderedEmail rendered = renderedByLocale.get(locale);
+            if (rendered == null) {
+                Map<String, Object> localeModel = new HashMap<String, Object>(model);
+                localeModel.put(USER, new JCUser(RECIPIENT_PLACEHOLDER, null, null));
+                localeModel.put(RECIPIENT_LOCALE, locale);
+                localeModel.put(MESSAGE_SOURCE, messageSource);
+                localeModel.put(NO_ARGS, new Object[]{});
+                rendered = new RenderedEmail(
+                        messageSource.getMessage(subject, new Object[]{}, locale) + titleEntity,
+                        this.mergePlainTextTemplate(nameTemplate, localeModel),
+                        this.mergeHtmlTemplate(nameTemplate, localeModel));
+                renderedByLocale.put(locale, rendered);
+            }
+            String username = recipient.getUsername();
+            messages.add(this.createEmail(recipient.getEmail(), rendered.subject,
+                    StringUtils.replace(rendered.plainText, RECIPIENT_PLACEHOLDER, username),
+                    StringUtils.replace(rendered.htmlText, RECIPIENT_PLACEHOLDER,
+                            StringEscapeUtils.escapeHtml(username))));
+        }
+        return messages;
+    }
+
     /**
      * Sends notification to user about received private message.
      *
@@ -267,23 +361,46 @@ public class MailService {
      */
     public void sendUserMentionedNotification(JCUser recipient, long postId) {
         if (notificationsEnabledProperty.booleanValue()) {
-            String urlSuffix = "/posts/" + postId;
-            String url = this.getDeploymentRootUrl() + urlSuffix;
-            Locale locale = recipient.getLanguage().getLocale();
-            Map<String, Object> model = new HashMap<String, Object>();
-            model.put(NAME, recipient.getUsername());
-            model.put(LINK, url);
-            model.put(LINK_LABEL, getDeploymentRootUrlWithoutPort() + urlSuffix);
-            model.put(RECIPIENT_LOCALE, locale);
             try {
-                this.sendEmail(recipient.getEmail(), messageSource.getMessage("userMentioning.subject",
-                        new Object[]{}, locale), model, "userMentioning.vm");
+                this.send(createUserMentionedMail(recipient, postId,
+                        getDeploymentRootUrl(), getDeploymentRootUrlWithoutPort()));
             } catch (MailingFailedException e) {
                 LOGGER.error("Failed to sent activation mail for user: " + recipient.getUsername());
             }
         }
     }
 
+    /**
+     * Prepares the same message as {@link #sendUserMentionedNotification(JCUser, long)} does, but doesn't send it
+     * and doesn't check whether notifications are enabled. Doesn't need HTTP request, so may be used outside of it.
+     *
+     * @param recipient mentioned user who will receive notification
+     * @param postId    id of post where user was mentioned
+     * @param rootUrl   deployment root to build links, see {@link #getDeploymentRootUrl()}
+     * @param rootLabel deployment root to build link labels, see {@link #getDeploymentRootUrlWithoutPort()}
+     * @return message ready to be sent
+     * @throws MailingFailedException when message can't be created
+     */
+    public MimeMessage createUserMentionedMail(JCUser recipient, long postId, String rootUrl, String rootLabel)
+            throws MailingFailedException {
+        String urlSuffix = "/posts/" + postId;
+        Locale locale = recipient.getLanguage().getLocale();
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put(NAME, recipient.getUsername());
+        model.put(LINK, rootUrl + urlSuffix);
+        model.put(LINK_LABEL, rootLabel + urlSuffix);
+        model.put(RECIPIENT_LOCALE, locale);
+        return this.createEmail(recipient.getEmail(), messageSource.getMessage("userMentioning.subject",
+                new Object[]{}, locale), model, "userMentioning.vm");
+    }
+
+    /**
+     * @return whether email notifications are enabled in the forum
+     */
+    public boolean isNotificationsEnabled() {
+        return notificationsEnabledProperty.booleanValue();
+    }
+
     /**
      * Just a convenience method for message sending to encapsulate
      * boilerplate error handling code.
@@ -296,24 +413,95 @@ public class MailService {
      */
     private void sendEmail(String to, String subject, Map<String, Object> model,
                            String templateName) throws MailingFailedException {
+        this.send(this.createEmail(to, subject, model, templateName));
+    }
+
+    /**
+     * Creates a message from the templates without sending it.
+     *
+     * @param to           destination email address
+     * @param subject      message headline
+     * @param model        template params to be substituted in velocity template
+     * @param templateName template file name, like "template.vm"
+     * @return message ready to be sent
+     * @throws MailingFailedException exception with error message specified ic case of some error
+     */
+    private MimeMessage createEmail(String to, String subject, Map<String, Object> model,
+                                    String templateName) throws MailingFailedException {
+        model.put(MESSAGE_SOURCE, messageSource);
+        model.put(NO_ARGS, new Object[]{});
+        String plainText = this.mergePlainTextTemplate(templateName, model);
+        String htmlText = this.mergeHtmlTemplate(templateName, model);
+        return this.createEmail(to, subject, plainText, htmlText);
+    }
+
+    /**
+     * Creates a message from the already rendered texts.
+     *
+     * @param to        destination email address
+     * @param subject   message headline
+     * @param plainText plain text version of the message
+     * @param htmlText  html version of the message
+     * @return message ready to be sent
+     * @throws MailingFailedException exception with error message specified ic case of some error
+     */
+    private MimeMessage createEmail(String to, String subject, String plainText, String htmlText)
+            throws MailingFailedException {
         try {
-            model.put(MESSAGE_SOURCE, messageSource);
-            model.put(NO_ARGS, new Object[]{});
-            String plainText = this.mergePlainTextTemplate(templateName, model);
-            String htmlText = this.mergeHtmlTemplate(templateName, model);
             MimeMessage message = mailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(message, true);
             helper.setTo(to);
             helper.setFrom(from);
             helper.setSubject(subject);
             helper.setText(plainText, htmlText);
+            return message;
+        } catch (MessagingException e) {
+            LOGGER.error("Mail sending failed", e);
+            throw new MailingFailedException(e);
+        }
+    }
+
+    /**
+     * @param message message to send
+     * @throws MailingFailedException exception with error message specified ic case of some error
+     */
+    private void send(MimeMessage message) throws MailingFailedException {
+        try {
             mailSender.send(message);
-        } catch (MailException | MessagingException e) {
+        } catch (MailException e) {
             LOGGER.error("Mail sending failed", e);
             throw new MailingFailedException(e);
         }
     }
 
+    /**
+     * Sends the messages using a single connection to the mail server instead of connecting for every message.
+     * Errors are logged only.
+     *
+     * @param messages messages to send
+     * @return messages that were not sent, empty if all of them were sent
+     */
+    public Collection<MimeMessage> sendAll(List<MimeMessage> messages) {
+        if (messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            mailSender.send(messages.toArray(new MimeMessage[messages.size()]));
+            return Collections.emptyList();
+        } catch (MailSendException e) {
+            LOGGER.error("Sending of " + e.getFailedMessages().size() + " mails out of " + messages.size()
+                    + " failed", e);
+            Set<MimeMessage> failed = new HashSet<MimeMessage>();
+            for (Object message : e.getFailedMessages().keySet()) {
+                failed.add((MimeMessage) message);
+            }
+            return failed.isEmpty() ? messages : failed;
+        } catch (MailException e) {
+            LOGGER.error("Mail sending failed", e);
+            return messages;
+        }
+    }
+
     /**
      * Creates a html text message from templates and param given.
      * Template should be located in org/jtalks/jcommune/service/templates/html/
@@ -343,7 +531,7 @@ public class MailService {
     /**
      * @return current deployment root, e.g. "http://myhost.com:1234/mycoolforum"
      */
-    private String getDeploymentRootUrl() {
+    public String getDeploymentRootUrl() {
         HttpServletRequest request = getServletRequest();
         return request.getScheme()
                 + "://" + request.getServerName()
@@ -356,7 +544,7 @@ public class MailService {
      *
      * @return current deployment root without port, e.g. "http://myhost.com/mycoolforum"
      */
-    private String getDeploymentRootUrlWithoutPort() {
+    public String getDeploymentRootUrlWithoutPort() {
         HttpServletRequest request = getServletRequest();
         return request.getScheme()
                 + "://" + request.getServerName()
@@ -466,21 +654,58 @@ public class MailService {
      */
     void sendTopicCreationMail(JCUser subscriber, Topic topic) {
         try {
-            String urlSuffix = "/topics/" + topic.getId();
-            String url = this.getDeploymentRootUrl() + urlSuffix;
-            Locale locale = subscriber.getLanguage().getLocale();
-            Map<String, Object> model = new HashMap<String, Object>();
-            model.put(LINK, url);
-            model.put(LINK_UNSUBSCRIBE, this.getDeploymentRootUrl()
-                    + getUnsubscribeBranchLink(topic.getBranch()));
-            model.put(LINK_LABEL, getDeploymentRootUrlWithoutPort() + urlSuffix);
-            sendEmailOnForumUpdates(subscriber, model, locale, topic.getBranch(),
-                    "subscriptionNotification.subject", "branchSubscriptionNotification.vm");
+            this.send(createTopicCreationMail(subscriber, topic,
+                    getDeploymentRootUrl(), getDeploymentRootUrlWithoutPort()));
         } catch (MailingFailedException e) {
             LOGGER.error("Failed to sent mail about creation topic for user: " + subscriber.getUsername());
         }
     }
 
+    /**
+     * Prepares the same message as {@link #sendTopicCreationMail(JCUser, Topic)} does, but doesn't send it.
+     * Doesn't need HTTP request, so may be used outside of it.
+     *
+     * @param subscriber recipient
+     * @param topic      newly created topic
+     * @param rootUrl    deployment root to build links, see {@link #getDeploymentRootUrl()}
+     * @param rootLabel  deployment root to build link labels, see {@link #getDeploymentRootUrlWithoutPort()}
+     * @return message ready to be sent
+     * @throws MailingFailedException when message can't be created
+     */
+    public MimeMessage createTopicCreationMail(JCUser subscriber, Topic topic, String rootUrl, String rootLabel)
+            throws MailingFailedException {
+        Locale locale = subscriber.getLanguage().getLocale();
+        return createEmailOnForumUpdates(subscriber, getTopicCreationModel(topic, rootUrl, rootLabel), locale,
+                topic.getBranch(), "subscriptionNotification.subject", "branchSubscriptionNotification.vm");
+    }
+
+    /**
+     * Prepares the same messages as {@link #createTopicCreationMail} does for every subscriber, but renders
+     * templates only once per subscriber locale.
+     *
+     * @param subscribers recipients
+     * @param topic       newly created topic
+     * @param rootUrl     deployment root to build links, see {@link #getDeploymentRootUrl()}
+     * @param rootLabel   deployment root to build link labels, see {@link #getDeploymentRootUrlWithoutPort()}
+     * @return messages ready to be sent, in the same order as subscribers
+     * @throws MailingFailedException when messages can't be created
+     */
+    public List<MimeMessage> createTopicCreationMails(List<JCUser> subscribers, Topic topic,
+                                                      String rootUrl, String rootLabel)
+            throws MailingFailedException {
+        return createEmailsOnForumUpdates(subscribers, getTopicCreationModel(topic, rootUrl, rootLabel),
+                topic.getBranch(), "subscriptionNotification.subject", "branchSubscriptionNotification.vm");
+    }
+
+    private Map<String, Object> getTopicCreationModel(Topic topic, String rootUrl, String rootLabel) {
+        String urlSuffix = "/topics/" + topic.getId();
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put(LINK, rootUrl + urlSuffix);
+        model.put(LINK_UNSUBSCRIBE, rootUrl + getUnsubscribeBranchLink(topic.getBranch()));
+        model.put(LINK_LABEL, rootLabel + urlSuffix);
+        return model;
+    }
+
     private String getUnsubscribeBranchLink(SubscriptionAwareEntity entity) {
         String result = "/branches/{0}/unsubscribe_link";
         if (entity instanceof Branch) {
@@ -497,4 +722,19 @@ public class MailService {
         }
         return null;
     }
+
+    /**
+     * Subject and texts of an email rendered for all recipients with the same locale.
+     */
+    private static class RenderedEmail {
+        private final String subject;
+        private final String plainText;
+        private final String htmlText;
+
+        private RenderedEmail(String subject, String plainText, String htmlText) {
+            this.subject = subject;
+            this.plainText = plainText;
+            this.htmlText = htmlText;
+        }
+    }
 }
@@ -22,17 +22,8 @@ import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Post;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.context.request.RequestAttributes;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
-
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-import javax.servlet.http.HttpServletRequest;
+
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static java.lang.String.format;
 
@@ -50,14 +41,22 @@ public class MentionedUsers {
     public static final String MENTIONED_AND_NOTIFIED_USER_TEMPLATE = "[user notified=true]%s[/user]";
     public static final String USER_WITH_LINK_TO_PROFILE_TEMPLATE = "[user=%s]%s[/user]";
     private static final Logger LOGGER = LoggerFactory.getLogger(MentionedUsers.class);
-    private static final Pattern ALL_MENTIONED_USERS_PATTERN =
-            Pattern.compile("\\[user\\].*?\\[/user\\]|\\[user notified=true\\].*?\\[/user\\]");
-    private static final Pattern MENTIONED_AND_NOT_NOTIFIED_USERS_PATTERN =
-            Pattern.compile("\\[user\\].*?\\[/user\\]");
+    private static final String USER_TAG_PREFIX = "[user";
+    private static final String NOT_NOTIFIED_OPEN_TAG = "[user]";
+    private static final String NOTIFIED_OPEN_TAG = "[user notified=true]";
+    private static final String CLOSE_TAG = "[/user]";
+    /**
+     * Characters which are left encoded by JavaScript decodeURI
+     */
+    private static final String URI_RESERVED_CHARS = ";/?:@&=+$,#";
     private static final String CLOSE_BRACKET_CODE_PLACEHOLDER = "@w0956756wo@";
     private static final String OPEN_BRACKET_CODE_PLACEHOLDER = "@ywdffgg434y@";
     private static final String SLASH_CODE_PLACEHOLDER = "14@123435vggv4f";
     private static final String LOWER_THEN_PLACEHOLDER = "gertfgertgf@@@@@#4324234";
+    /**
+     * All the placeholders contain this character, so names without it don't need to be checked for them
+     */
+    private static final char PLACEHOLDERS_COMMON_CHAR = '@';
     private static final Map<String, String> CHARS_PLACEHOLDERS = new HashMap<>();
 
     static {
@@ -67,7 +66,6 @@ public class MentionedUsers {
         CHARS_PLACEHOLDERS.put("<", LOWER_THEN_PLACEHOLDER);
     }
 
-    private final Map<String, String> encodedUserNames = new HashMap<>();
     /**
      * Content of the post
      */
@@ -135,26 +133,39 @@ public class MentionedUsers {
             throw new IllegalStateException("To call this method you should create class with Post type parameter");
         }
 
-        Set<String> mentionedUsersNames = extractNotNotifiedMentionedUsers(postContent);
-        if (!CollectionUtils.isEmpty(mentionedUsersNames)) {
-            markUsersAsAlreadyNotified(mentionedUsersNames, postDao);
+        StringBuilder newPostContent = null;
+        int copiedTill = 0;
+        for (Mention mention : findMentions(postContent)) {
+            if (!mention.notified) {
+                if (newPostContent == null) {
+                    newPostContent = new StringBuilder(postContent.length() + NOTIFIED_OPEN_TAG.length());
+                }
+                newPostContent.append(postContent, copiedTill, mention.start).append(NOTIFIED_OPEN_TAG);
+                copiedTill = mention.start + NOT_NOTIFIED_OPEN_TAG.length();
+            }
+        }
+        if (newPostContent != null) {
+            newPostContent.append(postContent, copiedTill, postContent.length());
+            post.setPostContent(newPostContent.toString());
+            postDao.saveOrUpdate(post);
         }
     }
 
     /**
      * Returns post text with BB codes replaced by user profile links
      *
-     * @param userDao service for working with user objects
+     * @param userDao     service for working with user objects
+     * @param contextPath context path of the forum application links to user profiles should start with
      * @return text with BB codes replaced by user profile links
      */
-    public String getTextWithProcessedUserTags(UserDao userDao) {
-        Set<String> mentionedUsers = extractAllMentionedUsers(postContent);
-        Map<String, String> userToUserProfileLinkMap = new HashMap<>();
-        for (String mentionedUser : mentionedUsers) {
-            String mentionedUserProfileLink = getLinkToUserProfile(mentionedUser, userDao);
-            userToUserProfileLinkMap.put(mentionedUser, mentionedUserProfileLink);
+    public String getTextWithProcessedUserTags(UserDao userDao, String contextPath) {
+        List<Mention> mentions = findMentions(postContent);
+        if (mentions.isEmpty()) {
+            return postContent;
         }
-        return addLinksToUserProfileForMentionedUsers(postContent, userToUserProfileLinkMap);
+        Map<String, String> userToUserProfileLinkMap =
+                getLinksToUserProfiles(getUsernames(mentions, true), userDao, contextPath);
+        return addLinksToUserProfileForMentionedUsers(postContent, mentions, userToUserProfileLinkMap);
     }
 
     /**
@@ -163,7 +174,7 @@ public class MentionedUsers {
      * @return extracted users' names
      */
     public Set<String> extractAllMentionedUsers(String canContainMentionedUsers) {
-        return extractMentionedUsers(canContainMentionedUsers, ALL_MENTIONED_USERS_PATTERN);
+        return getUsernames(findMentions(canContainMentionedUsers), true);
     }
 
     /**
@@ -172,74 +183,211 @@ public class MentionedUsers {
      * @return names of users that were mentioned but not notified yet
      */
     private Set<String> extractNotNotifiedMentionedUsers(String canContainMentionedUsers) {
-        return extractMentionedUsers(canContainMentionedUsers, MENTIONED_AND_NOT_NOTIFIED_USERS_PATTERN);
+        return getUsernames(findMentions(canContainMentionedUsers), false);
     }
 
     /**
-     * Extract names of users that were mentioned in passed text.
+     * @param mentions        users mentioning
+     * @param includeNotified whether names of already notified users should be included
+     * @return decoded names of mentioned users
+     */
+    private static Set<String> getUsernames(List<Mention> mentions, boolean includeNotified) {
+        Set<String> mentionedUsernames = new HashSet<>();
+        for (Mention mention : mentions) {
+            if (includeNotified || !mention.notified) {
+                mentionedUsernames.add(mention.username);
+            }
+        }
+        return mentionedUsernames;
+    }
+
+    /**
+     * Finds [user]...[/user] and [user notified=true]...[/user] BB codes in a single pass through the text. BB code
+     * can't span several lines, other BB codes inside of it are ignored, so that it's the same as
+     * "\\[user\\].*?\\[/user\\]|\\[user notified=true\\].*?\\[/user\\]" regular expression.
      *
      * @param canContainMentionedUsers can contain users mentioning
-     * @param mentionedUserPattern     pattern to extract mentioned user in given text
-     * @return extracted users' names
+     * @return found users mentioning in order of their position in text
      */
-    private Set<String> extractMentionedUsers(String canContainMentionedUsers, Pattern mentionedUserPattern) {
-        if (!StringUtils.isEmpty(canContainMentionedUsers)) {
-            Matcher matcher = mentionedUserPattern.matcher(canContainMentionedUsers);
-            Set<String> mentionedUsernames = new HashSet<>();
-            while (matcher.find()) {
-                String userBBCode = matcher.group();
-                String mentionedUser = userBBCode.replaceAll("\\[.*?\\]", StringUtils.EMPTY);
-                mentionedUsernames.add(decodeUsername(mentionedUser));
+    private static List<Mention> findMentions(String canContainMentionedUsers) {
+        if (StringUtils.isEmpty(canContainMentionedUsers)) {
+            return Collections.emptyList();
+        }
+        String text = canContainMentionedUsers;
+        List<Mention> mentions = new ArrayList<>();
+        int from = 0;
+        int start;
+        while ((start = text.indexOf(USER_TAG_PREFIX, from)) >= 0) {
+            boolean notified;
+            int contentStart;
+            if (text.startsWith(NOT_NOTIFIED_OPEN_TAG, start)) {
+                notified = false;
+                contentStart = start + NOT_NOTIFIED_OPEN_TAG.length();
+            } else if (text.startsWith(NOTIFIED_OPEN_TAG, start)) {
+                notified = true;
+                contentStart = start + NOTIFIED_OPEN_TAG.length();
+            } else {
+                from = start + 1;
+                continue;
+            }
+            int closeTag = text.indexOf(CLOSE_TAG, contentStart);
+            if (closeTag < 0) {
+                break;
             }
-            return mentionedUsernames;
+            if (containsLineTerminator(text, contentStart, closeTag)) {
+                from = start + 1;
+                continue;
+            }
+            int end = closeTag + CLOSE_TAG.length();
+            mentions.add(new Mention(start, end, notified, removeBbCodes(text, start, end)));
+            from = end;
         }
-        return Collections.emptySet();
+        return mentions;
     }
 
-    private String decodeUsername(String encodedUsername) {
-        String decodeUserName = encodedUsername;
-
-        Object jsDecodedName = invokeJavaScript("decodeURI", encodedUsername.replace("\\", "\\\\"));
-        if (jsDecodedName != null) {
-            decodeUserName = jsDecodedName.toString();
+    /**
+     * Removes everything in square brackets from the part of the text, the same as "\\[.*?\\]" replaced with empty
+     * string.
+     *
+     * @param text  text with users mentioning
+     * @param start beginning of the BB code with mentioned user
+     * @param end   end of the BB code with mentioned user
+     * @return text of BB code without tags
+     */
+    private static String removeBbCodes(String text, int start, int end) {
+        StringBuilder result = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char current = text.charAt(i);
+            if (current == '[') {
+                int closingBracket = text.indexOf(']', i + 1);
+                if (closingBracket >= 0 && closingBracket < end) {
+                    i = closingBracket + 1;
+                    continue;
+                }
+            }
+            result.append(current);
+            i++;
         }
+        return result.toString();
+    }
 
-        for (Map.Entry<String, String> decodeEntry : CHARS_PLACEHOLDERS.entrySet()) {
-            decodeUserName = decodeUserName.replace(decodeEntry.getValue(), decodeEntry.getKey());
+    /**
+     * @return whether there is a character in the part of the text which isn't matched by "." in regular expressions
+     */
+    private static boolean containsLineTerminator(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char current = text.charAt(i);
+            if (current == '\n' || current == '\r' || current == '\u0085'
+                    || current == '\u2028' || current == '\u2029') {
+                return true;
+            }
         }
-        encodedUserNames.put(decodeUserName, encodedUsername);
-        return decodeUserName;
+        return false;
     }
 
-    private String encodeUsername(String decodedUsername) {
-        return encodedUserNames.get(decodedUsername);
+    /**
+     * Decodes username the same way as it was encoded by the client side.
+     *
+     * @param encodedUsername username as it is in BB code
+     * @return decoded username
+     */
+    private static String decodeUsername(String encodedUsername) {
+        String decodeUserName = decodeUri(encodedUsername);
+        if (decodeUserName.indexOf(PLACEHOLDERS_COMMON_CHAR) >= 0) {
+            for (Map.Entry<String, String> decodeEntry : CHARS_PLACEHOLDERS.entrySet()) {
+                decodeUserName = StringUtils.replace(decodeUserName, decodeEntry.getValue(), decodeEntry.getKey());
+            }
+        }
+        return decodeUserName;
     }
 
     /**
-     * Invokes JavaScript function via built-in JavaScript engine
+     * Works the same as decodeURI function of JavaScript: decodes UTF-8 escape sequences except the ones of
+     * reserved URI characters.
      *
-     * @param functionName name of the function to be invoked
-     * @param arguments    arguments of the function joined in one string
-     * @return result of the invocation or null if some error happened
+     * @param encoded string to be decoded
+     * @return decoded string or passed string as is if it contains malformed escape sequences
      */
-    private Object invokeJavaScript(String functionName, String arguments) {
-        Object result = null;
-
-        ScriptEngineManager factory = new ScriptEngineManager();
-        ScriptEngine engine = factory.getEngineByName("JavaScript");
-
-        if (engine == null) {
-            LOGGER.error("JavaScript engige was not found.");
-            return result;
+    static String decodeUri(String encoded) {
+        int firstEscape = encoded.indexOf('%');
+        if (firstEscape < 0) {
+            return encoded;
         }
-
-        try {
-            result = engine.eval(functionName + "('" + arguments + "')").toString();
-        } catch (ScriptException e) {
-            LOGGER.error("Error while invoking JavaScript function.", e);
+        StringBuilder decoded = new StringBuilder(encoded.length());
+        decoded.append(encoded, 0, firstEscape);
+        int i = firstEscape;
+        while (i < encoded.length()) {
+            char current = encoded.charAt(i);
+            if (current != '%') {
+                decoded.append(current);
+                i++;
+                continue;
+            }
+            int firstByte = decodeHexByte(encoded, i);
+            if (firstByte < 0) {
+                return encoded;
+            }
+            if (firstByte < 0x80) {
+                char decodedChar = (char) firstByte;
+                if (URI_RESERVED_CHARS.indexOf(decodedChar) >= 0) {
+                    decoded.append(encoded, i, i + 3);
+                } else {
+                    decoded.append(decodedChar);
+                }
+                i += 3;
+                continue;
+            }
+            int bytesCount;
+            int codePoint;
+            int minCodePoint;
+            if ((firstByte & 0xE0) == 0xC0) {
+                bytesCount = 2;
+                codePoint = firstByte & 0x1F;
+                minCodePoint = 0x80;
+            } else if ((firstByte & 0xF0) == 0xE0) {
+                bytesCount = 3;
+                codePoint = firstByte & 0x0F;
+                minCodePoint = 0x800;
+            } else if ((firstByte & 0xF8) == 0xF0) {
+                bytesCount = 4;
+                codePoint = firstByte & 0x07;
+                minCodePoint = 0x10000;
+            } else {
+                return encoded;
+            }
+            for (int j = 1; j < bytesCount; j++) {
+                int nextByte = decodeHexByte(encoded, i + 3 * j);
+                if (nextByte < 0 || (nextByte & 0xC0) != 0x80) {
+                    return encoded;
+                }
+                codePoint = (codePoint << 6) | (nextByte & 0x3F);
+            }
+            if (codePoint < minCodePoint || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                return encoded;
+            }
+            decoded.appendCodePoint(codePoint);
+            i += 3 * bytesCount;
         }
+        return decoded.toString();
+    }
 
-        return result;
+    /**
+     * @param encoded  string with escape sequences
+     * @param position position of the escape sequence like %5C
+     * @return decoded byte or -1 if there is no valid escape sequence at the position
+     */
+    private static int decodeHexByte(String encoded, int position) {
+        if (position + 2 >= encoded.length() || encoded.charAt(position) != '%') {
+            return -1;
+        }
+        int high = Character.digit(encoded.charAt(position + 1), 16);
+        int low = Character.digit(encoded.charAt(position + 2), 16);
+        if (high < 0 || low < 0) {
+            return -1;
+        }
+        return (high << 4) | low;
     }
 
     /**
@@ -274,86 +422,78 @@ public class MentionedUsers {
     }
 
     /**
-     * Mark user tags as already notified
+     * Get links to profiles of mentioned users with a single query.
      *
-     * @param mentionedUsernames the set of names of mentioned users
-     * @param postDao            service for working with Post objects
+     * @param usernames   names of mentioned users
+     * @param contextPath context path of the forum application
+     * @return user name to link of profile map, users that don't exist are absent in it
      */
-    private void markUsersAsAlreadyNotified(Set<String> mentionedUsernames, PostDao postDao) {
-        for (String user : mentionedUsernames) {
-            markUserAsAlreadyNotified(user, postDao);
+    private Map<String, String> getLinksToUserProfiles(Set<String> usernames, UserDao userDao, String contextPath) {
+        Map<String, String> userToUserProfileLinkMap = new HashMap<>();
+        for (JCUser user : userDao.getByUsernames(usernames)) {
+            String username = user.getUsername();
+            // database may compare names case insensitively
+            if (usernames.contains(username)) {
+                String userProfileLink = contextPath + "/users/" + user.getId();
+                userToUserProfileLinkMap.put(username, userProfileLink);
+                LOGGER.trace("{} has the following url of profile - {}", username, userProfileLink);
+            }
         }
+        return userToUserProfileLinkMap;
     }
 
     /**
-     * Change BB user tag to mark user as already notified
-     *
-     * @param username this user was mentioned
-     * @param postDao  service for working with Post objects
-     */
-    private void markUserAsAlreadyNotified(String username, PostDao postDao) {
-        String initialUserMentioning = format(MENTIONED_NOT_NOTIFIED_USER_TEMPLATE, username);
-        String notifiedUserMentioning = format(MENTIONED_AND_NOTIFIED_USER_TEMPLATE, username);
-
-        String newPostContent =
-                post.getPostContent().replace(initialUserMentioning, notifiedUserMentioning);
-        post.setPostContent(newPostContent);
-        postDao.saveOrUpdate(post);
-    }
-
-    /**
-     * Get link to user's profile.
+     * Add links to users' profiles for mentioned users.
      *
-     * @param username user's name
-     * @return null when user doesn't exist, otherwise link to user's profile
+     * @param source                   all mentioned users in it will contain links to their profiles
+     * @param mentions                 users mentioning found in the source
+     * @param userToUserProfileLinkMap user to it links of profile map
+     * @return source with users with attached links to profiles
      */
-    private String getLinkToUserProfile(String username, UserDao userDao) {
-        String userPofileLink = null;
-
-        JCUser user = userDao.getByUsername(username);
-        if (user != null && user.getUsername().equals(username)) {
-            userPofileLink = getApplicationNameAsContextPath() + "/users/" + user.getId();
-            LOGGER.trace("{} has the following url of profile - {}", username, userPofileLink);
-        } else {
-            LOGGER.trace("Mentioned user wasn't find: {}", username);
+    private String addLinksToUserProfileForMentionedUsers(String source, List<Mention> mentions,
+                                                          Map<String, String> userToUserProfileLinkMap) {
+        StringBuilder changedSource = new StringBuilder(source.length() + mentions.size() * CLOSE_TAG.length());
+        int copiedTill = 0;
+        for (Mention mention : mentions) {
+            changedSource.append(source, copiedTill, mention.start);
+            String userProfileLink = userToUserProfileLinkMap.get(mention.username);
+            if (userProfileLink == null) {
+                LOGGER.trace("Mentioned user wasn't find: {}", mention.username);
+                changedSource.append(mention.encodedUsername);
+            } else {
+                changedSource.append(format(USER_WITH_LINK_TO_PROFILE_TEMPLATE, userProfileLink,
+                        mention.encodedUsername));
+            }
+            copiedTill = mention.end;
         }
-
-        return userPofileLink;
-    }
-
-    /**
-     * Get the name of application as context path.
-     *
-     * @return forum application name
-     */
-    private String getApplicationNameAsContextPath() {
-        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
-        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
-        return request.getContextPath();
+        return changedSource.append(source, copiedTill, source.length()).toString();
     }
 
     /**
-     * Add links to users' profiles for mentioned users.
-     *
-     * @param source                   will be changed and all mentioned users in it will contain links to their
-     *                                 profiles
-     * @param userToUserProfileLinkMap user to it links of profile map
-     * @return source with users with attached links to profiles
+     * User mentioning found in text.
      */
-    private String addLinksToUserProfileForMentionedUsers(
-            String source, Map<String, String> userToUserProfileLinkMap) {
-        String changedSource = source;
-        for (Map.Entry<String, String> userToLinkMap : userToUserProfileLinkMap.entrySet()) {
-            String username = encodeUsername(userToLinkMap.getKey());
-            String userNotNotifiedBBCode = format(MENTIONED_NOT_NOTIFIED_USER_TEMPLATE, username);
-            String userNotifiedBBCode = format(MENTIONED_AND_NOTIFIED_USER_TEMPLATE, username);
-            String userBBCodeWithLink = username;
-            if (userToLinkMap.getValue() != null) {
-                userBBCodeWithLink = format(USER_WITH_LINK_TO_PROFILE_TEMPLATE, userToLinkMap.getValue(), username);
-            }
-            changedSource = changedSource.replace(userNotNotifiedBBCode, userBBCodeWithLink);
-            changedSource = changedSource.replace(userNotifiedBBCode, userBBCodeWithLink);
+    private static class Mention {
+        /**
+         * Position of the BB code in text
+         */
+        private final int start;
+        /**
+         * Position right after the BB code in text
+         */
+        private final int end;
+        private final boolean notified;
+        /**
+         * Name of the user as it's written in BB code
+         */
+        private final String encodedUsername;
+        private final String username;
+
+        private Mention(int start, int end, boolean notified, String encodedUsername) {
+            this.start = start;
+            this.end = end;
+            this.notified = notified;
+            this.encodedUsername = encodedUsername;
+            this.username = decodeUsername(encodedUsername);
         }
-        return changedSource;
     }
 }
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.NotificationType;
+import org.jtalks.jcommune.service.NotificationOutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Puts e-mail notifications to the {@link NotificationOutboxService outbox} and sends them asynchronously.
+ * Sending starts right after the transaction that created notifications is committed and is also repeated by timer
+ * to retry failed notifications. Notifications are sent by a bounded pool of workers, each worker sends a batch of
+ * notifications over a single connection to the mail server.
+ */
+public class NotificationDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+    /**
+     * How many batches are taken from the outbox at once, the rest are taken by the next dispatch.
+     */
+    static final int BATCHES_PER_DISPATCH = 10;
+
+    private final NotificationOutboxService outboxService;
+    private final TaskExecutor executor;
+    private final int batchSize;
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    /**
+     * @param outboxService to store and send notifications
+     * @param executor      bounded pool of workers to send notifications
+     * @param batchSize     max count of notifications sent over a single connection to the mail server
+     */
+    public NotificationDispatcher(NotificationOutboxService outboxService, TaskExecutor executor, int batchSize) {
+        this.outboxService = outboxService;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Puts notifications to the outbox within the current transaction and starts sending them after it's committed.
+     *
+     * @param recipients users to notify
+     * @param type       kind of notification
+     * @param entityId   id of the entity the notification is about
+     */
+    public void enqueue(Collection<JCUser> recipients, NotificationType type, long entityId) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+        outboxService.enqueue(recipients, type, entityId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Schedules dispatching to the workers unless it's already scheduled. Doesn't block the caller.
+     */
+    public void wakeUp() {
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatchScheduled.set(false);
+                        dispatch();
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                dispatchScheduled.set(false);
+                LOGGER.warn("All notification workers are busy, notifications will be sent by timer");
+            }
+        }
+    }
+
+    /**
+     * Sends notifications which are due, including the ones to be retried.
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void dispatchByTimer() {
+        dispatch();
+    }
+
+    /**
+     * Takes due notifications from the outbox and hands them to the workers in batches. Synchronized so that
+     * concurrent dispatches don't take the same notifications.
+     */
+    synchronized void dispatch() {
+        int limit = batchSize * BATCHES_PER_DISPATCH;
+        List<Long> ids = outboxService.claimDue(limit);
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = new ArrayList<Long>(ids.subList(from, Math.min(from + batchSize, ids.size())));
+            try {
+                executor.execute(new DeliveryTask(batch));
+            } catch (TaskRejectedException e) {
+                LOGGER.warn("All notification workers are busy, {} notifications will be retried after the lease",
+                        batch.size());
+            }
+        }
+        if (ids.size() == limit) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Sends a batch of notifications.
+     */
+    private class DeliveryTask implements Runnable {
+        private final List<Long> ids;
+
+        private DeliveryTask(List<Long> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public void run() {
+            try {
+                outboxService.deliver(ids);
+            } catch (RuntimeException e) {
+                LOGGER.error("Sending of notifications " + ids + " failed, they will be retried after the lease", e);
+            }
+        }
+    }
+}
@@ -14,13 +14,16 @@
  */
 package org.jtalks.jcommune.service.nontransactional;
 
+import org.jtalks.common.model.entity.Entity;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.JCommuneProperty;
+import org.jtalks.jcommune.model.entity.NotificationType;
 import org.jtalks.jcommune.model.entity.SubscriptionAwareEntity;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.SubscriptionService;
 import org.jtalks.jcommune.service.UserService;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -33,6 +36,9 @@ import java.util.Set;
  * Errors occurred while sending emails are suppressed (logged only) as updates
  * notifications are themselves a kind of a side effect, so they should not prevent
  * the whole operation from being completed.
+ * <p/>
+ * Notifications about updates and new topics are put to the outbox and sent asynchronously
+ * by {@link NotificationDispatcher}, so that the request doesn't wait for the mail server.
  *
  * @author Evgeniy Naumenko
  * @author Vitaliy Kravchenko
@@ -43,21 +49,25 @@ public class NotificationService {
     private UserService userService;
     private MailService mailService;
     private JCommuneProperty notificationsEnabledProperty;
+    private NotificationDispatcher dispatcher;
 
     /**
      * @param userService                  to determine the update author
      * @param mailService                  to perform actual email notifications
      * @param notificationsEnabledProperty lets us know whether we can send notifications
+     * @param dispatcher                   to send update notifications asynchronously
      */
     public NotificationService(
             UserService userService,
             MailService mailService,
             SubscriptionService subscriptionService,
-            JCommuneProperty notificationsEnabledProperty) {
+            JCommuneProperty notificationsEnabledProperty,
+            NotificationDispatcher dispatcher) {
         this.userService = userService;
         this.mailService = mailService;
         this.subscriptionService = subscriptionService;
         this.notificationsEnabledProperty = notificationsEnabledProperty;
+        this.dispatcher = dispatcher;
     }
 
     /**
@@ -73,10 +83,7 @@ public class NotificationService {
             Collection<JCUser> subscribers = subscriptionService.getAllowedSubscribers(entity);
             subscribers.remove(userService.getCurrentUser());
 
-            for (JCUser user : subscribers) {
-                mailService.sendUpdatesOnSubscription(user, entity);
-            }
-
+            dispatcher.enqueue(subscribers, NotificationType.updateOf(entity), ((Entity) entity).getId());
         }
     }
 
@@ -92,11 +99,13 @@ public class NotificationService {
             Collection<JCUser> subscribers = subscriptionService.getAllowedSubscribers(entity);
             subscribers.remove(userService.getCurrentUser());
 
+            Collection<JCUser> recipients = new ArrayList<>();
             for (JCUser user : subscribers) {
                 if (!topicSubscribers.contains(user)) {
-                    mailService.sendUpdatesOnSubscription(user, entity);
+                    recipients.add(user);
                 }
             }
+            dispatcher.enqueue(recipients, NotificationType.updateOf(entity), ((Entity) entity).getId());
         }
     }
 
@@ -165,9 +174,7 @@ public class NotificationService {
     public void sendNotificationAboutTopicCreated(Topic topic) {
         Collection<JCUser> branchSubscribers = subscriptionService.getAllowedSubscribers(topic.getBranch());
         this.filterSubscribers(branchSubscribers);
-        for (JCUser subscriber : branchSubscribers) {
-            mailService.sendTopicCreationMail(subscriber, topic);
-        }
+        dispatcher.enqueue(branchSubscribers, NotificationType.TOPIC_CREATED, topic.getId());
     }
 }
 
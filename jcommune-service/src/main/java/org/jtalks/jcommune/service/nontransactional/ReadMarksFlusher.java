@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.service.LastReadPostService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Writes marks of read topics kept in the {@link ReadStateStore} to the database by timer. Marks of each user are
+ * written in a transaction of its own, so that a failure affects only the marks of one user and the rows of all
+ * the active users aren't locked at once. Marks which failed to be written are kept in memory till the next time.
+ */
+public class ReadMarksFlusher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadMarksFlusher.class);
+
+    private final ReadStateStore readStateStore;
+    private final LastReadPostService lastReadPostService;
+
+    /**
+     * @param readStateStore      to find users who have marks not written yet
+     * @param lastReadPostService to write marks of a user within a transaction
+     */
+    public ReadMarksFlusher(ReadStateStore readStateStore, LastReadPostService lastReadPostService) {
+        this.readStateStore = readStateStore;
+        this.lastReadPostService = lastReadPostService;
+    }
+
+    /**
+     * Writes topics marked as read since the previous call to the database.
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void flushByTimer() {
+        for (Long userId : readStateStore.getUsersWithPendingMarks()) {
+            try {
+                lastReadPostService.flushReadMarks(userId);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Marks of read topics of user with id " + userId + " will be written later", e);
+            }
+        }
+    }
+}
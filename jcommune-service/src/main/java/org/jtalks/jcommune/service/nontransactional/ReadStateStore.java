@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.joda.time.DateTime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps in memory which topics and up to what post were read by the recently active users, so that unread topics
+ * are found with a hash lookup instead of a query for every list of topics. Marks of read topics are not written to
+ * the database right away: they are coalesced per user and topic and taken by {@link #drainPendingMarks(long)} to be
+ * written later, so several page views of a topic result in a single write.
+ * <p/>
+ * Read states of at most {@code maxUsers} users are kept, the least recently used ones are forgotten and loaded again
+ * when needed. Pending marks are kept till they are drained regardless of that limit.
+ */
+public class ReadStateStore {
+    private final Map<Long, UserReadState> states;
+    /** Marks not written to the database yet: user id -> topic id -> date of the last read post in millis */
+    private final Map<Long, Map<Long, Long>> pendingMarks = new HashMap<Long, Map<Long, Long>>();
+
+    /**
+     * @param maxUsers how many users read states are kept in memory
+     */
+    public ReadStateStore(final int maxUsers) {
+        this.states = new LinkedHashMap<Long, UserReadState>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UserReadState> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * @param userId id of the user
+     * @return read state of the user or {@code null} if it isn't loaded with {@link #load(long, Map)} yet
+     */
+    public synchronized UserReadState get(long userId) {
+        return states.get(userId);
+    }
+
+    /**
+     * Remembers read state of the user loaded from the database. Marks of the user that are not written to the
+     * database yet are applied over it.
+     *
+     * @param userId            id of the user
+     * @param lastReadPostDates dates of last read posts by topic ids saved in the database
+     * @return read state of the user
+     */
+    public synchronized UserReadState load(long userId, Map<Long, DateTime> lastReadPostDates) {
+        UserReadState state = new UserReadState(lastReadPostDates.size());
+        for (Map.Entry<Long, DateTime> lastReadPostDate : lastReadPostDates.entrySet()) {
+            state.put(lastReadPostDate.getKey(), lastReadPostDate.getValue().getMillis());
+        }
+        Map<Long, Long> pending = pendingMarks.get(userId);
+        if (pending != null) {
+            for (Map.Entry<Long, Long> mark : pending.entrySet()) {
+                state.put(mark.getKey(), mark.getValue());
+            }
+        }
+        states.put(userId, state);
+        return state;
+    }
+
+    /**
+     * Marks the topic as read by the user up to the post with the given date. The mark is visible in the read state
+     * of the user right away and is written to the database after it's taken by {@link #drainPendingMarks(long)}.
+     *
+     * @param userId       id of the user who read the topic
+     * @param topicId      id of the read topic
+     * @param lastReadPost creation date of the last post read by the user
+     */
+    public void markRead(long userId, long topicId, DateTime lastReadPost) {
+        long millis = lastReadPost.getMillis();
+        UserReadState state;
+        synchronized (this) {
+            Map<Long, Long> pending = pendingMarks.get(userId);
+            if (pending == null) {
+                pending = new HashMap<Long, Long>();
+                pendingMarks.put(userId, pending);
+            }
+            pending.put(topicId, millis);
+            state = states.get(userId);
+        }
+        if (state != null) {
+            state.put(topicId, millis);
+        }
+    }
+
+    /**
+     * Takes the marks of the user that are not written to the database yet.
+     *
+     * @param userId id of the user
+     * @return dates of last read posts by topic ids
+     */
+    public Map<Long, DateTime> drainPendingMarks(long userId) {
+        Map<Long, Long> drained;
+        synchronized (this) {
+            drained = pendingMarks.remove(userId);
+        }
+        return (drained == null) ? Collections.<Long, DateTime>emptyMap() : toDates(drained);
+    }
+
+    /**
+     * Puts back the marks taken by {@link #drainPendingMarks(long)} which were not written to the database, e.g.
+     * because the transaction was rolled back, so that they are written later. Marks of the same topics made after
+     * the marks were taken are newer, they are kept.
+     *
+     * @param userId id of the user
+     * @param marks  dates of last read posts by topic ids
+     */
+    public synchronized void restorePendingMarks(long userId, Map<Long, DateTime> marks) {
+        if (marks.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> pending = pendingMarks.get(userId);
+        if (pending == null) {
+            pending = new HashMap<Long, Long>();
+            pendingMarks.put(userId, pending);
+        }
+        for (Map.Entry<Long, DateTime> mark : marks.entrySet()) {
+            if (!pending.containsKey(mark.getKey())) {
+                pending.put(mark.getKey(), mark.getValue().getMillis());
+            }
+        }
+    }
+
+    /**
+     * @return ids of the users who have marks not written to the database yet
+     */
+    public synchronized Set<Long> getUsersWithPendingMarks() {
+        return new HashSet<Long>(pendingMarks.keySet());
+    }
+
+    /**
+     * Forgets read state of the user and marks of the user that are not written to the database yet, should be
+     * used when read state of the user is changed in the database directly.
+     *
+     * @param userId id of the user
+     */
+    public synchronized void evict(long userId) {
+        states.remove(userId);
+        pendingMarks.remove(userId);
+    }
+
+    private static Map<Long, DateTime> toDates(Map<Long, Long> marks) {
+        Map<Long, DateTime> dates = new HashMap<Long, DateTime>(marks.size() * 2);
+        for (Map.Entry<Long, Long> mark : marks.entrySet()) {
+            dates.put(mark.getKey(), new DateTime(mark.getValue()));
+        }
+        return dates;
+    }
+
+    /**
+     * Dates of last read posts of a user by topic ids. It's an open addressing hash table of primitives, since an
+     * active user may have read thousands of topics and boxed map entries would take several times more memory.
+     */
+    public static final class UserReadState {
+        private static final long FREE = 0;
+
+        /** Topic ids, {@link #FREE} marks a free slot since topic ids start from 1 */
+        private long[] topicIds;
+        private long[] lastReadMillis;
+        private int size;
+
+        private UserReadState(int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            topicIds = new long[capacity];
+            lastReadMillis = new long[capacity];
+        }
+
+        /**
+         * @param topicId id of the topic
+         * @return creation date of the last read post of the topic or {@code null} if the topic was never read
+         */
+        public synchronized DateTime getLastReadPostDate(long topicId) {
+            int slot = findSlot(topicIds, topicId);
+            return (topicIds[slot] == FREE) ? null : new DateTime(lastReadMillis[slot]);
+        }
+
+        /**
+         * @return how many topics were read
+         */
+        public synchronized int size() {
+            return size;
+        }
+
+        private synchronized void put(long topicId, long millis) {
+            int slot = findSlot(topicIds, topicId);
+            if (topicIds[slot] == FREE) {
+                if ((size + 1) * 2 > topicIds.length) {
+                    grow();
+                    slot = findSlot(topicIds, topicId);
+                }
+                topicIds[slot] = topicId;
+                size++;
+            }
+            lastReadMillis[slot] = millis;
+        }
+
+        private void grow() {
+            long[] oldTopicIds = topicIds;
+            long[] oldLastReadMillis = lastReadMillis;
+            topicIds = new long[oldTopicIds.length * 2];
+            lastReadMillis = new long[oldTopicIds.length * 2];
+            for (int i = 0; i < oldTopicIds.length; i++) {
+                if (oldTopicIds[i] != FREE) {
+                    int slot = findSlot(topicIds, oldTopicIds[i]);
+                    topicIds[slot] = oldTopicIds[i];
+                    lastReadMillis[slot] = oldLastReadMillis[i];
+                }
+            }
+        }
+
+        /**
+         * @return slot of the topic or the free slot where it should be placed
+         */
+        private static int findSlot(long[] topicIds, long topicId) {
+            int mask = topicIds.length - 1;
+            int slot = (int) (topicId ^ (topicId >>> 32)) * 0x9E3779B9 & mask;
+            while (topicIds[slot] != FREE && topicIds[slot] != topicId) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
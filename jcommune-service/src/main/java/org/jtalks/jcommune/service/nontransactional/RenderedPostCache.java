@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.entity.Post;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps HTML of rendered posts, because rendering of BB codes is the most expensive part of showing a topic page
+ * while posts are rarely changed. Rendered post is identified by the post id and is used only if the post wasn't
+ * modified since it was rendered, was rendered with the same version of BB codes configuration and for the same
+ * rendering context (server name and context path which rendered links depend on).
+ * <p/>
+ * The cache is bounded by the underlying {@link Ehcache} configuration.
+ */
+public class RenderedPostCache implements RenderedPostCacheMXBean {
+    private static final long[] RENDER_TIME_BUCKET_BOUNDS_MILLIS = {1, 5, 20, 100, 500};
+
+    private final Ehcache cache;
+    private final AtomicInteger configVersion;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong totalRenderNanos = new AtomicLong();
+    private final AtomicLongArray renderTimeHistogram =
+            new AtomicLongArray(RENDER_TIME_BUCKET_BOUNDS_MILLIS.length + 1);
+
+    /**
+     * @param cache         storage of the rendered posts
+     * @param configVersion version of BB codes configuration, should be changed when kefirbb.xml or BB processors
+     *                      are changed if the storage survives restarts
+     */
+    public RenderedPostCache(Ehcache cache, int configVersion) {
+        this.cache = cache;
+        this.configVersion = new AtomicInteger(configVersion);
+    }
+
+    /**
+     * @param post             post to be shown
+     * @param renderingContext server name and context path of the current request
+     * @return HTML of the post or {@code null} if it has to be rendered
+     */
+    public String get(Post post, String renderingContext) {
+        Element element = cache.get(post.getId());
+        if (element != null) {
+            RenderedPost rendered = (RenderedPost) element.getObjectValue();
+            if (rendered.isActualFor(post, configVersion.get(), renderingContext)) {
+                hits.incrementAndGet();
+                return rendered.html;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param post             rendered post
+     * @param renderingContext server name and context path the post was rendered for
+     * @param configVersion    version taken by {@link #getConfigVersion()} before the rendering started
+     * @param html             rendered post
+     */
+    public void put(Post post, String renderingContext, int configVersion, String html) {
+        if (configVersion == this.configVersion.get()) {
+            RenderedPost rendered = new RenderedPost(getModificationMillis(post), post.getPostContent().hashCode(),
+                    configVersion, renderingContext, html);
+            cache.put(new Element(post.getId(), rendered));
+        }
+    }
+
+    /**
+     * @param nanos how long rendering of a text took
+     */
+    public void recordRenderTime(long nanos) {
+        renders.incrementAndGet();
+        totalRenderNanos.addAndGet(nanos);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < RENDER_TIME_BUCKET_BOUNDS_MILLIS.length && millis >= RENDER_TIME_BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        renderTimeHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getConfigVersion() {
+        return configVersion.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] getRenderTimeBucketBoundsMillis() {
+        return Arrays.copyOf(RENDER_TIME_BUCKET_BOUNDS_MILLIS, RENDER_TIME_BUCKET_BOUNDS_MILLIS.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] getRenderTimeHistogram() {
+        long[] histogram = new long[renderTimeHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = renderTimeHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageRenderTimeMillis() {
+        long count = renders.get();
+        return (count == 0) ? 0 : (double) totalRenderNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate() {
+        configVersion.incrementAndGet();
+        cache.removeAll();
+    }
+
+    private static long getModificationMillis(Post post) {
+        DateTime modificationDate = post.getModificationDate();
+        return (modificationDate == null) ? 0 : modificationDate.getMillis();
+    }
+
+    /**
+     * HTML of the post together with everything it depends on.
+     */
+    private static final class RenderedPost {
+        private final long modificationMillis;
+        /**
+         * Content may be changed without changing the modification date, e.g. when mentioned users are notified
+         */
+        private final int contentHash;
+        private final int configVersion;
+        private final String renderingContext;
+        private final String html;
+
+        private RenderedPost(long modificationMillis, int contentHash, int configVersion, String renderingContext,
+                             String html) {
+            this.modificationMillis = modificationMillis;
+            this.contentHash = contentHash;
+            this.configVersion = configVersion;
+            this.renderingContext = renderingContext;
+            this.html = html;
+        }
+
+        private boolean isActualFor(Post post, int currentConfigVersion, String currentRenderingContext) {
+            return modificationMillis == getModificationMillis(post) && configVersion == currentConfigVersion
+                    && renderingContext.equals(currentRenderingContext)
+                    && contentHash == post.getPostContent().hashCode();
+        }
+    }
+}
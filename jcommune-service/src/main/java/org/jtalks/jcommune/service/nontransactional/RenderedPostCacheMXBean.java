@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+/**
+ * Exposes statistics of the {@link RenderedPostCache} via JMX, so that it's possible to see whether the cache is big
+ * enough and how much time rendering of posts takes.
+ */
+public interface RenderedPostCacheMXBean {
+    /**
+     * @return how many posts were taken from the cache since the application start
+     */
+    long getHitCount();
+
+    /**
+     * @return how many posts had to be rendered since the application start
+     */
+    long getMissCount();
+
+    /**
+     * @return share of posts taken from the cache, from 0 to 1
+     */
+    double getHitRatio();
+
+    /**
+     * @return count of posts currently in the cache
+     */
+    int getSize();
+
+    /**
+     * @return version of BB codes configuration, posts rendered with other versions are not taken from the cache
+     */
+    int getConfigVersion();
+
+    /**
+     * @return upper bounds of the render time histogram buckets in milliseconds, the last bucket has no bound
+     */
+    long[] getRenderTimeBucketBoundsMillis();
+
+    /**
+     * @return counts of renders which took less than the corresponding bound of
+     *         {@link #getRenderTimeBucketBoundsMillis()}, the last element counts the renders longer than all bounds
+     */
+    long[] getRenderTimeHistogram();
+
+    /**
+     * @return average time of rendering a text with BB codes to HTML in milliseconds
+     */
+    double getAverageRenderTimeMillis();
+
+    /**
+     * Drops all the rendered posts, e.g. after BB codes configuration was changed.
+     */
+    void invalidate();
+}
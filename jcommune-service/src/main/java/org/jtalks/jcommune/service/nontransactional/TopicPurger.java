@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.common.model.entity.Section;
+import org.jtalks.jcommune.service.SectionService;
+import org.jtalks.jcommune.service.TopicModificationService;
+import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes all topics of branches, sections or of the whole forum. Topics are deleted by chunks, each chunk in a
+ * transaction of its own, so that purging a large branch neither holds locks on the whole branch nor keeps all its
+ * topics in memory. As a consequence an interrupted purge leaves a part of topics, it may be just started again.
+ */
+public class TopicPurger {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TopicPurger.class);
+
+    private final TopicModificationService topicService;
+    private final SectionService sectionService;
+    private final int chunkSize;
+
+    /**
+     * @param topicService   to delete chunks of topics
+     * @param sectionService to find branches of sections
+     * @param chunkSize      max count of topics deleted in a single transaction
+     */
+    public TopicPurger(TopicModificationService topicService, SectionService sectionService, int chunkSize) {
+        this.topicService = topicService;
+        this.sectionService = sectionService;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Deletes all topics of the branch. Branch itself is left.
+     *
+     * @param branchId id of the branch to delete topics of
+     * @return count of deleted topics
+     * @throws NotFoundException when branch not found
+     */
+    public int purgeBranch(long branchId) throws NotFoundException {
+        int deleted = 0;
+        int deletedInChunk;
+        do {
+            deletedInChunk = topicService.deleteTopicsSilent(branchId, chunkSize);
+            deleted += deletedInChunk;
+            if (deletedInChunk > 0) {
+                LOGGER.info("Deleted {} topics of branch with id {}", deleted, branchId);
+            }
+        } while (deletedInChunk == chunkSize);
+        return deleted;
+    }
+
+    /**
+     * Deletes all topics of all branches of the section. Section and branches are left.
+     *
+     * @param sectionId id of the section to delete topics of
+     * @return count of deleted topics
+     * @throws NotFoundException when section not found
+     */
+    public int purgeSection(long sectionId) throws NotFoundException {
+        int deleted = 0;
+        for (Long branchId : sectionService.getBranchIds(sectionId)) {
+            deleted += purgeBranch(branchId);
+        }
+        LOGGER.info("All topics of section with id {} were deleted, {} topics in total", sectionId, deleted);
+        return deleted;
+    }
+
+    /**
+     * Deletes all topics of the forum. Sections and branches are left.
+     *
+     * @return count of deleted topics
+     * @throws NotFoundException if a section or branch was deleted concurrently
+     */
+    public int purgeForum() throws NotFoundException {
+        int deleted = 0;
+        for (Section section : sectionService.getAll()) {
+            deleted += purgeSection(section.getId());
+        }
+        LOGGER.info("All topics of the forum were deleted, {} topics in total", deleted);
+        return deleted;
+    }
+}
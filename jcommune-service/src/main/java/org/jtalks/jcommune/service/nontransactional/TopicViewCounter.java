@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accumulates views of topic pages in memory, so that a view doesn't need a write to the database. Views of
+ * different topics are counted without contention, accumulated views are taken by {@link #drain()} to be written to
+ * the database periodically.
+ */
+public class TopicViewCounter {
+    /** Value of a counter removed by {@link #drain()}, views can't be counted by it anymore */
+    private static final int REMOVED = -1;
+
+    private final ConcurrentMap<Long, AtomicInteger> views = new ConcurrentHashMap<Long, AtomicInteger>();
+
+    /**
+     * @param topicId id of the viewed topic
+     */
+    public void countView(long topicId) {
+        addViews(topicId, 1);
+    }
+
+    /**
+     * Adds back the views taken by {@link #drain()} that couldn't be written to the database, so that they are
+     * written by the next flush.
+     *
+     * @param viewsByTopicIds numbers of views by ids of topics
+     */
+    public void restore(Map<Long, Integer> viewsByTopicIds) {
+        for (Map.Entry<Long, Integer> topicViews : viewsByTopicIds.entrySet()) {
+            addViews(topicViews.getKey(), topicViews.getValue());
+        }
+    }
+
+    private void addViews(long topicId, int delta) {
+        while (true) {
+            AtomicInteger counter = views.get(topicId);
+            if (counter == null) {
+                AtomicInteger created = new AtomicInteger();
+                counter = views.putIfAbsent(topicId, created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            int count = counter.get();
+            if (count == REMOVED) {
+                views.remove(topicId, counter);
+            } else if (counter.compareAndSet(count, count + delta)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the views counted since the previous call. Counters of topics that weren't viewed since the previous call
+     * are removed.
+     *
+     * @return numbers of views by ids of viewed topics
+     */
+    public Map<Long, Integer> drain() {
+        Map<Long, Integer> drained = new HashMap<Long, Integer>();
+        for (Map.Entry<Long, AtomicInteger> topicViews : views.entrySet()) {
+            AtomicInteger counter = topicViews.getValue();
+            int count = counter.getAndSet(0);
+            if (count > 0) {
+                drained.put(topicViews.getKey(), count);
+            } else if (counter.compareAndSet(0, REMOVED)) {
+                views.remove(topicViews.getKey(), counter);
+            }
+        }
+        return drained;
+    }
+}
@@ -18,17 +18,28 @@ import org.apache.commons.lang.Validate;
 import org.jtalks.common.service.exceptions.NotFoundException;
 import org.jtalks.jcommune.model.dao.PluginConfigurationDao;
 import org.jtalks.jcommune.model.entity.PluginConfiguration;
+import org.jtalks.jcommune.model.entity.PluginProperty;
 import org.jtalks.jcommune.model.plugins.Plugin;
 import org.jtalks.jcommune.model.plugins.exceptions.UnexpectedErrorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URLClassLoader;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
@@ -37,34 +48,51 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 /**
  * Load plugins from path and save configuration for them.
  * Also load plugin for class name.
+ * <p/>
+ * Loaded and configured plugins are kept as an immutable snapshot, so getting plugins never
+ * blocks and never touches the database. The snapshot is rebuilt by a background thread
+ * when the plugins folder changes, and configurations are reloaded by it periodically to pick up
+ * ones changed by other forum instances. Configurations changed by this instance are applied
+ * with {@link #reloadConfiguration()}. Plugins of the snapshot are never reconfigured: when the
+ * configuration of a plugin changes, a new instance of it is configured and published in a new
+ * snapshot, and the previous instance is closed if it's {@link Closeable}.
  *
  * @author Anuar_Nurmakanov
  * @author Evgeny Naumenko
  */
 public class PluginLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(PluginLoader.class);
+    /** How often plugin configurations are reloaded from the database if the plugins folder didn't change */
+    private static final long CONFIGURATION_RELOAD_INTERVAL_SECONDS = 60;
 
     private URLClassLoader classLoader;
-    private WatchKey watchKey;
     private String folder;
-    private List<Plugin> plugins;
+    private final AtomicReference<List<Plugin>> plugins =
+            new AtomicReference<List<Plugin>>(Collections.<Plugin>emptyList());
+    /** Configurations applied to plugins of the snapshot by plugin name, see {@link #describe} */
+    private Map<String, String> appliedConfigurations = new HashMap<>();
     private WatchService watchService;
+    private Thread watcher;
     private PluginConfigurationDao pluginConfigurationDao;
+    private TransactionTemplate transactionTemplate;
 
     /**
      * Constructs an instance for loading plugins from passed path to plugins directory.
      *
      * @param pluginsFolderPath      a path to a folder that contains plugins
      * @param pluginConfigurationDao to load and save configuration for loaded plugins
+     * @param transactionManager     to load configuration for plugins outside of user requests
      * @throws java.io.IOException when it's impossible to start tracking changes in plugins folder
      */
-    public PluginLoader(String pluginsFolderPath, PluginConfigurationDao pluginConfigurationDao) throws IOException {
+    public PluginLoader(String pluginsFolderPath, PluginConfigurationDao pluginConfigurationDao,
+                        PlatformTransactionManager transactionManager) throws IOException {
         this.pluginConfigurationDao = pluginConfigurationDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         Validate.notEmpty(pluginsFolderPath);
         this.folder = this.resolveUserHome(pluginsFolderPath);
         Path path = Paths.get(folder);
         watchService = FileSystems.getDefault().newWatchService();
-        watchKey = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
     }
 
     private String resolveUserHome(String path) {
@@ -80,7 +108,10 @@ public class PluginLoader {
      * Will be called by container after bean creation.
      */
     public void init() {
-        this.initPluginList();
+        this.reloadPlugins();
+        watcher = new Thread(new PluginsFolderWatcher(), "jcommune-plugins-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
     }
 
     /**
@@ -90,11 +121,11 @@ public class PluginLoader {
      *
      * @return list of plugins available at the moment
      */
-    public synchronized List<Plugin> getPlugins(PluginFilter... filters) {
-        this.synchronizePluginList();
-        List<Plugin> filtered = new ArrayList<>(plugins.size());
+    public List<Plugin> getPlugins(PluginFilter... filters) {
+        List<Plugin> snapshot = plugins.get();
+        List<Plugin> filtered = new ArrayList<>(snapshot.size());
         plugins:
-        for (Plugin plugin : plugins) {
+        for (Plugin plugin : snapshot) {
             for (PluginFilter filter : filters) {
                 if (!filter.accept(plugin)) {
                     continue plugins;
@@ -103,31 +134,99 @@ public class PluginLoader {
             filtered.add(plugin);
         }
         LOGGER.trace("JCommune forum has {} plugins now.", filtered.size());
-        loadConfigurationFor(filtered);
         return filtered;
     }
 
-    private void synchronizePluginList() {
-        List events = watchKey.pollEvents();
-        if (!events.isEmpty()) {
-            watchKey.reset();
+    /**
+     * Loads plugins from the plugins folder with a new class loader, configures them and
+     * publishes them instead of previously loaded ones.
+     */
+    private synchronized void reloadPlugins() {
+        URLClassLoader previousClassLoader = classLoader;
+        classLoader = new PluginClassLoader(folder);
+        ServiceLoader<Plugin> pluginLoader = ServiceLoader.load(Plugin.class, classLoader);
+        final List<Plugin> loaded = new ArrayList<>();
+        for (Plugin plugin : pluginLoader) {
+            loaded.add(plugin);
+        }
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Map<String, String> applied = new HashMap<>();
+                for (Plugin plugin : loaded) {
+                    PluginConfiguration configuration = loadConfigurationFor(plugin);
+                    configure(plugin, configuration);
+                    applied.put(plugin.getName(), describe(configuration));
+                }
+                appliedConfigurations = applied;
+            }
+        });
+        List<Plugin> previousPlugins = plugins.getAndSet(Collections.unmodifiableList(loaded));
+        close(previousPlugins);
+        if (previousClassLoader != null) {
             try {
-                classLoader.close();
+                previousClassLoader.close();
             } catch (IOException e) {
                 LOGGER.error("Failed to close plugin class loader", e);
             }
-            this.initPluginList();
         }
     }
 
-    private synchronized void initPluginList() {
-        classLoader = new PluginClassLoader(folder);
-        ServiceLoader<Plugin> pluginLoader = ServiceLoader.load(Plugin.class, classLoader);
-        List<Plugin> plugins = new ArrayList<>();
-        for (Plugin plugin : pluginLoader) {
-            plugins.add(plugin);
+    /**
+     * Loads configurations of the plugins available from the database and publishes newly configured
+     * instances of the plugins which configurations differ from applied ones. Should be called after
+     * plugin configurations are changed, joins the current transaction if any.
+     */
+    public synchronized void reloadConfiguration() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                List<Plugin> current = plugins.get();
+                List<Plugin> reconfigured = new ArrayList<>(current.size());
+                List<Plugin> retired = new ArrayList<>();
+                for (Plugin plugin : current) {
+                    PluginConfiguration configuration = loadConfigurationFor(plugin);
+                    String description = describe(configuration);
+                    Plugin newInstance = null;
+                    if (!description.equals(appliedConfigurations.get(plugin.getName()))) {
+                        newInstance = newInstanceOf(plugin);
+                    }
+                    if (newInstance == null) {
+                        reconfigured.add(plugin);
+                        continue;
+                    }
+                    configure(newInstance, configuration);
+                    appliedConfigurations.put(plugin.getName(), description);
+                    reconfigured.add(newInstance);
+                    retired.add(plugin);
+                }
+                if (!retired.isEmpty()) {
+                    plugins.set(Collections.unmodifiableList(reconfigured));
+                    close(retired);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks the configuration by applying it to a new instance of the plugin, which is dropped afterwards. Plugins
+     * of the snapshot are never configured in place, since other threads use them.
+     *
+     * @param plugin        loaded plugin the configuration is meant for
+     * @param configuration configuration to check
+     * @throws UnexpectedErrorException if the plugin can't be configured with it
+     */
+    public void validateConfiguration(Plugin plugin, PluginConfiguration configuration)
+            throws UnexpectedErrorException {
+        Plugin candidate = newInstanceOf(plugin);
+        if (candidate == null) {
+            throw new UnexpectedErrorException();
+        }
+        try {
+            candidate.configure(configuration);
+        } finally {
+            close(Collections.singletonList(candidate));
         }
-        this.plugins = plugins;
     }
 
     /**
@@ -142,21 +241,68 @@ public class PluginLoader {
         return !plugins.isEmpty() ? plugins.get(0) : null;
     }
 
-    private void loadConfigurationFor(List<Plugin> plugins) {
-        for (Plugin plugin : plugins) {
-            String name = plugin.getName();
-            PluginConfiguration configuration;
-            try {
-                configuration = pluginConfigurationDao.get(name);
-            } catch (NotFoundException e) {
-                configuration = new PluginConfiguration(name, false, plugin.getDefaultConfiguration());
-                pluginConfigurationDao.saveOrUpdate(configuration);
+    private PluginConfiguration loadConfigurationFor(Plugin plugin) {
+        String name = plugin.getName();
+        try {
+            return pluginConfigurationDao.get(name);
+        } catch (NotFoundException e) {
+            PluginConfiguration configuration = new PluginConfiguration(name, false, plugin.getDefaultConfiguration());
+            pluginConfigurationDao.saveOrUpdate(configuration);
+            return configuration;
+        }
+    }
+
+    private void configure(Plugin plugin, PluginConfiguration configuration) {
+        try {
+            plugin.configure(configuration);
+        } catch (UnexpectedErrorException e) {
+            LOGGER.error("Can't configure plugin during loading. Plugin name = " + plugin.getName());
+        }
+    }
+
+    /**
+     * Describes the configuration, so that changed configurations can be found by comparing descriptions.
+     *
+     * @param configuration configuration of a plugin
+     * @return whether the plugin is active and its properties as a string
+     */
+    private static String describe(PluginConfiguration configuration) {
+        StringBuilder description = new StringBuilder().append(configuration.isActive());
+        if (configuration.getProperties() != null) {
+            for (PluginProperty property : configuration.getProperties()) {
+                description.append('\n').append(property.getName()).append(':').append(property.getType())
+                        .append('=').append(property.getValue());
             }
+        }
+        return description.toString();
+    }
 
-            try {
-                plugin.configure(configuration);
-            } catch (UnexpectedErrorException e) {
-                LOGGER.error("Can't configure plugin during loading. Plugin name = " + plugin.getName());
+    /**
+     * @param plugin loaded plugin
+     * @return not configured instance of the same plugin or {@code null} if it can't be created
+     */
+    private Plugin newInstanceOf(Plugin plugin) {
+        try {
+            return plugin.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            LOGGER.error("Can't create new instance of plugin " + plugin.getName() + " to reconfigure it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Releases resources of plugins that are no longer in the snapshot.
+     *
+     * @param retired plugins replaced by new instances
+     */
+    private void close(List<Plugin> retired) {
+        for (Plugin plugin : retired) {
+            if (plugin instanceof Closeable) {
+                try {
+                    ((Closeable) plugin).close();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Failed to close plugin " + plugin.getName(), e);
+                }
             }
         }
     }
@@ -165,12 +311,43 @@ public class PluginLoader {
      * Will be called by container to release resource before bean destroying.
      */
     public void destroy() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
         try {
-            classLoader.close();
             watchService.close();
+            synchronized (this) {
+                close(plugins.getAndSet(Collections.<Plugin>emptyList()));
+                classLoader.close();
+            }
         } catch (IOException e1) {
             LOGGER.error("Failed to close plugin class loader", e1);
         }
     }
 
+    /**
+     * Waits for changes in the plugins folder and reloads plugins when they happen.
+     * Reloads plugin configurations when there were no changes for a while.
+     */
+    private class PluginsFolderWatcher implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    WatchKey key = watchService.poll(CONFIGURATION_RELOAD_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                    if (key == null) {
+                        reloadConfiguration();
+                    } else {
+                        key.pollEvents();
+                        key.reset();
+                        reloadPlugins();
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to reload plugins", e);
+                }
+            }
+        }
+    }
 }
@@ -67,6 +67,7 @@ public class AclGroupPermissionEvaluator implements PermissionEvaluator {
     private final JtalksSidFactory sidFactory;
     private final JdbcMutableAclService mutableAclService;
     private final UserDao userDao;
+    private final PermissionDecisionCache decisionCache;
 
     /**
      * @param aclManager        for getting permissions on object indentity
@@ -74,19 +75,23 @@ public class AclGroupPermissionEvaluator implements PermissionEvaluator {
      * @param groupDao          dao for user group getting
      * @param sidFactory        factory to work with principals
      * @param mutableAclService for checking existing of sids
+     * @param userDao           to get the actual groups of the user
+     * @param decisionCache     to not evaluate the same permission check several times
      */
     public AclGroupPermissionEvaluator(@Nonnull org.jtalks.common.security.acl.AclManager aclManager,
                                        @Nonnull AclUtil aclUtil,
                                        @Nonnull GroupDao groupDao,
                                        @Nonnull JtalksSidFactory sidFactory,
                                        @Nonnull JdbcMutableAclService mutableAclService,
-                                       @Nonnull UserDao userDao) {
+                                       @Nonnull UserDao userDao,
+                                       @Nonnull PermissionDecisionCache decisionCache) {
         this.aclManager = aclManager;
         this.aclUtil = aclUtil;
         this.sidFactory = sidFactory;
         this.mutableAclService = mutableAclService;
         this.userDao = userDao;
         this.groupDao = groupDao;
+        this.decisionCache = decisionCache;
     }
 
     /**
@@ -108,12 +113,44 @@ public class AclGroupPermissionEvaluator implements PermissionEvaluator {
     @Override
     public boolean hasPermission(Authentication authentication, Serializable targetId,
                                  String targetType, Object permission) {
-        boolean result = false;
         Long id = parseTargetId(targetId);
 
         ObjectIdentity objectIdentity = aclUtil.createIdentity(id, targetType);
         Permission jtalksPermission = getPermission(permission);
         Sid sid = sidFactory.createPrincipal(authentication);
+
+        if (permission == ProfilePermission.EDIT_OWN_PROFILE &&
+                ((JCUser) authentication.getPrincipal()).getId() != id) {
+            return false;
+        }
+
+        JCUser actualUser = getActualUser(authentication);
+
+        PermissionDecisionCache.Key key = new PermissionDecisionCache.Key(
+                sid.getSidId(), getGroupIds(actualUser), objectIdentity, jtalksPermission);
+        Boolean cachedDecision = decisionCache.get(key);
+        if (cachedDecision != null) {
+            return cachedDecision;
+        }
+        long generation = decisionCache.getGeneration();
+        boolean decision = hasPermission(authentication, actualUser, objectIdentity, sid, jtalksPermission);
+        decisionCache.put(key, decision, generation);
+        return decision;
+    }
+
+    /**
+     * Evaluates the permission check against ACL.
+     *
+     * @param authentication   authentication to check permission for it
+     * @param actualUser       user from authentication with actual groups, {@code null} for anonymous or not found
+     * @param objectIdentity   object to check permission on
+     * @param sid              sid of the principal
+     * @param jtalksPermission permission to check
+     * @return <code>true</code> if this permission is allowed
+     */
+    private boolean hasPermission(Authentication authentication, JCUser actualUser,
+                                  ObjectIdentity objectIdentity, Sid sid, Permission jtalksPermission) {
+        boolean result = false;
         List<AccessControlEntry> aces;
         List<GroupAce> controlEntries;
 
@@ -125,23 +162,51 @@ public class AclGroupPermissionEvaluator implements PermissionEvaluator {
             controlEntries = new ArrayList<GroupAce>();
         }
 
-        if (permission == ProfilePermission.EDIT_OWN_PROFILE &&
-                ((JCUser) authentication.getPrincipal()).getId() != id) {
-            return false;
-        }
-
         if (isRestrictedForSid(sid, aces, jtalksPermission) ||
                 isRestrictedForGroup(controlEntries, authentication, jtalksPermission) ||
-                isRestrictedPersonalPermission(authentication, jtalksPermission)) {
+                isRestrictedPersonalPermission(authentication, actualUser, jtalksPermission)) {
             return false;
         } else if (isAllowedForSid(sid, aces, jtalksPermission) ||
                 isAllowedForGroup(controlEntries, authentication, jtalksPermission) ||
-                isAllowedPersonalPermission(authentication, jtalksPermission)) {
+                isAllowedPersonalPermission(authentication, actualUser, jtalksPermission)) {
             return true;
         }
         return result;
     }
 
+    /**
+     * @param authentication authentication to get the user from
+     * @return user with replicated groups from EhCache or {@code null} if principal is not a user or
+     *         the user was not found
+     */
+    private JCUser getActualUser(Authentication authentication) {
+        if (authentication.getPrincipal() instanceof JCUser) {
+            JCUser storedUser = (JCUser) authentication.getPrincipal();
+            JCUser actualUser = userDao.get(storedUser.getId());
+            if (actualUser == null) {
+                LOGGER.warn("{} : User #{} not found",
+                        this.getClass().getCanonicalName(),
+                        storedUser.getId());
+            }
+            return actualUser;
+        }
+        return null;
+    }
+
+    /**
+     * @param actualUser user to get the groups of, may be {@code null}
+     * @return ids of the groups the user belongs to
+     */
+    private List<Long> getGroupIds(JCUser actualUser) {
+        List<Long> groupIds = new ArrayList<Long>();
+        if (actualUser != null) {
+            for (Group group : actualUser.getGroups()) {
+                groupIds.add(group.getId());
+            }
+        }
+        return groupIds;
+    }
+
     /**
      * Parses targetId parameter
      *
@@ -163,20 +228,24 @@ public class AclGroupPermissionEvaluator implements PermissionEvaluator {
      * Check if this <tt>personal permission</tt> is allowed for groups of user from authentication
      *
      * @param authentication authentication to check permission for it
+     * @param actualUser     user from authentication with actual groups
      * @return <code>true</code> if this permission is allowed
      */
-    private boolean isAllowedPersonalPermission(Authentication authentication, Permission permission) {
-        return isGrantedPersonalPermission(authentication, permission, true);
+    private boolean isAllowedPersonalPermission(Authentication authentication, JCUser actualUser,
+                                                Permission permission) {
+        return isGrantedPersonalPermission(authentication, actualUser, permission, true);
     }
 
     /**
      * Check if this <tt>personal permission</tt> is restricted for groups of user from authentication
      *
      * @param authentication authentication to check permission for it
+     * @param actualUser     user from authentication with actual groups
      * @return <code>true</code> if this permission is restricted
      */
-    private boolean isRestrictedPersonalPermission(Authentication authentication, Permission permission) {
-        return isGrantedPersonalPermission(authentication, permission, false);
+    private boolean isRestrictedPersonalPermission(Authentication authentication, JCUser actualUser,
+                                                   Permission permission) {
+        return isGrantedPersonalPermission(authentication, actualUser, permission, false);
     }
 
 
@@ -247,22 +316,17 @@ public class AclGroupPermissionEvaluator implements PermissionEvaluator {
      * Check if this <tt>permission</tt> is granted for groups of user from authentication
      *
      * @param authentication      authentication to check permission for it
+     * @param actualUser          user from authentication with replicated groups from EhCache
      * @param permission          permission to check
      * @param isCheckAllowedGrant flag that indicates what type of grant need to
      *                            be checked  - 'allowed' (true) or 'restricted' (false)
      * @return <code>true</code> if this permission was found with specified
      *         type of grant.
      */
-    private boolean isGrantedPersonalPermission(Authentication authentication, Permission permission,
-                                                boolean isCheckAllowedGrant) {
+    private boolean isGrantedPersonalPermission(Authentication authentication, JCUser actualUser,
+                                                Permission permission, boolean isCheckAllowedGrant) {
         if (authentication.getPrincipal() instanceof JCUser) {
-            JCUser storedUser = (JCUser) authentication.getPrincipal();
-            // retriev user with replicated groups from EhCache
-            JCUser actualUser = userDao.get(storedUser.getId());
             if (actualUser == null) {
-                LOGGER.warn("{} : User #{} not found",
-                        this.getClass().getCanonicalName(),
-                        storedUser.getId());
                 return !isCheckAllowedGrant;
             }
             List<Group> groups = actualUser.getGroups();
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.security;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers decisions of {@link AclGroupPermissionEvaluator}, because a single page asks for the same permissions
+ * dozens of times (security annotations of services and {@code hasPermission} checks of JSP) and each check reads
+ * several ACLs and the user with groups.
+ * <p/>
+ * Decisions are remembered only till the end of the current HTTP request and are never shared between requests:
+ * ACLs, groups and bans are also changed by Poulpe and by other nodes of the cluster, which can't notify this cache.
+ * Any permission change made via {@link PermissionManager} drops the decisions of the requests in progress, see
+ * {@link #invalidate()}.
+ * <p/>
+ * Decisions are keyed by the principal sid together with ids of the groups the user belongs to, so changes of the
+ * group membership don't need any invalidation.
+ */
+public class PermissionDecisionCache implements PermissionDecisionCacheMXBean {
+    static final String REQUEST_ATTRIBUTE = PermissionDecisionCache.class.getName();
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Should be taken before the decision is evaluated and then passed to {@link #put(Key, boolean, long)}, so that
+     * decisions evaluated concurrently with a permission change are not remembered.
+     *
+     * @return current version of the permissions
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param key permission check
+     * @return remembered decision or {@code null} if the permission has to be evaluated
+     */
+    public Boolean get(Key key) {
+        Map<Key, Boolean> requestDecisions = getRequestDecisions();
+        Boolean decision = (requestDecisions == null) ? null : requestDecisions.get(key);
+        if (decision == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return decision;
+    }
+
+    /**
+     * @param key        permission check
+     * @param decision   evaluated decision
+     * @param generation version of permissions taken by {@link #getGeneration()} before the evaluation started
+     */
+    public void put(Key key, boolean decision, long generation) {
+        if (generation != this.generation.get()) {
+            return;
+        }
+        Map<Key, Boolean> requestDecisions = getRequestDecisions();
+        if (requestDecisions != null) {
+            requestDecisions.put(key, decision);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return decisions of the current request or {@code null} if there is no request bound to the thread (e.g. in
+     *         scheduled jobs), decisions made before the last invalidation are dropped
+     */
+    @VisibleForTesting
+    Map<Key, Boolean> getRequestDecisions() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        RequestDecisions decisions =
+                (RequestDecisions) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        long currentGeneration = generation.get();
+        if (decisions == null || decisions.generation != currentGeneration) {
+            decisions = new RequestDecisions(currentGeneration);
+            attributes.setAttribute(REQUEST_ATTRIBUTE, decisions, RequestAttributes.SCOPE_REQUEST);
+        }
+        return decisions.decisions;
+    }
+
+    /**
+     * Identifies permission check: who asks (principal and its groups), on which object and for which permission.
+     */
+    public static final class Key {
+        private final String principal;
+        private final List<Long> groupIds;
+        private final ObjectIdentity objectIdentity;
+        private final Permission permission;
+
+        /**
+         * @param principal      id of the principal sid
+         * @param groupIds       ids of the groups the user belongs to, empty for anonymous
+         * @param objectIdentity object to check the permission on
+         * @param permission     permission to check
+         */
+        public Key(String principal, Collection<Long> groupIds, ObjectIdentity objectIdentity,
+                   Permission permission) {
+            this.principal = principal;
+            List<Long> sortedGroupIds = new ArrayList<Long>(groupIds);
+            Collections.sort(sortedGroupIds);
+            this.groupIds = sortedGroupIds;
+            this.objectIdentity = objectIdentity;
+            this.permission = permission;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return principal.equals(key.principal) && groupIds.equals(key.groupIds)
+                    && objectIdentity.equals(key.objectIdentity) && permission.equals(key.permission);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            int result = principal.hashCode();
+            result = 31 * result + groupIds.hashCode();
+            result = 31 * result + objectIdentity.hashCode();
+            result = 31 * result + permission.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * Decisions of a single request, dropped when permissions change during the request.
+     */
+    private static final class RequestDecisions {
+        private final long generation;
+        private final Map<Key, Boolean> decisions = new HashMap<Key, Boolean>();
+
+        private RequestDecisions(long generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.security;
+
+/**
+ * Exposes statistics of the {@link PermissionDecisionCache} via JMX, so that it's possible to see how many ACL lookups
+ * the cache saves.
+ */
+public interface PermissionDecisionCacheMXBean {
+    /**
+     * @return how many permission checks were answered from the cache since the application start
+     */
+    long getHitCount();
+
+    /**
+     * @return how many permission checks had to be evaluated against ACL since the application start
+     */
+    long getMissCount();
+
+    /**
+     * @return share of permission checks answered from the cache, from 0 to 1
+     */
+    double getHitRatio();
+
+    /**
+     * @return how many times the cached decisions were dropped because of permission changes
+     */
+    long getInvalidationCount();
+
+    /**
+     * Drops the cached decisions of the requests in progress.
+     */
+    void invalidate();
+}
@@ -30,6 +30,7 @@ import org.jtalks.common.security.acl.AclUtil;
 import org.jtalks.common.security.acl.GroupAce;
 import org.jtalks.common.security.acl.builders.AclBuilders;
 import org.jtalks.common.security.acl.sids.UserSid;
+import org.jtalks.jcommune.model.dao.BranchVisibilityCache;
 import org.jtalks.jcommune.model.dto.GroupsPermissions;
 import org.jtalks.jcommune.model.dto.PermissionChanges;
 import org.jtalks.jcommune.model.entity.AnonymousGroup;
@@ -51,19 +52,26 @@ public class PermissionManager {
     private final AclManager aclManager;
     private final AclUtil aclUtil;
     private final GroupDao groupDao;
+    private final PermissionDecisionCache decisionCache;
+    private final BranchVisibilityCache visibilityCache;
 
     /**
      * Constructs {@link org.jtalks.jcommune.service.security.PermissionManager} with given
      * {@link org.jtalks.common.security.acl.AclManager} and {@link GroupDao}
      *
-     * @param aclManager manager instance
-     * @param groupDao   group dao instance
+     * @param aclManager    manager instance
+     * @param groupDao      group dao instance
+     * @param decisionCache   cache of permission decisions to drop when permissions change
+     * @param visibilityCache branches visible to groups to drop when permissions change
      */
     public PermissionManager(@Nonnull AclManager aclManager, @Nonnull GroupDao groupDao,
-                             @Nonnull AclUtil aclUtil) {
+                             @Nonnull AclUtil aclUtil, @Nonnull PermissionDecisionCache decisionCache,
+                             @Nonnull BranchVisibilityCache visibilityCache) {
         this.aclManager = aclManager;
         this.groupDao = groupDao;
         this.aclUtil = aclUtil;
+        this.decisionCache = decisionCache;
+        this.visibilityCache = visibilityCache;
     }
 
     /**
@@ -82,6 +90,8 @@ public class PermissionManager {
         for (Group group : changes.getRemovedGroupsAsArray()) {
             deleteGrantsOfGroup(group, changes.getPermission(), entity);
         }
+        decisionCache.invalidate();
+        visibilityCache.invalidate();
     }
 
     /**
@@ -100,6 +110,8 @@ public class PermissionManager {
         for (Group group : changes.getRemovedGroupsAsArray()) {
             deleteGrantsOfGroup(group, changes.getPermission(), entity);
         }
+        decisionCache.invalidate();
+        visibilityCache.invalidate();
     }
 
     /**
@@ -25,12 +25,13 @@ import org.jtalks.jcommune.model.dto.PermissionChanges;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.BranchService;
-import org.jtalks.jcommune.service.TopicModificationService;
+import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.jtalks.jcommune.service.security.PermissionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
 
 import java.util.*;
@@ -51,8 +52,8 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
     private SectionDao sectionDao;
     private GroupDao groupDao;
     private TopicDao topicDao;
-    private TopicModificationService topicService;
     private PermissionService permissionService;
+    private LastReadPostService lastReadPostService;
 
     /**
      * Create an instance of entity based service
@@ -60,22 +61,22 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
      * @param branchDao         data access object, which should be able do all CRUD operations.
      * @param sectionDao        used for checking branch existence.
      * @param topicDao          data access object for operations with topics
-     * @param topicService      service to perform complex operations with topics
      * @param permissionService service to perform permissions operations
+     * @param lastReadPostService service to find branches with unread posts
      */
     public TransactionalBranchService(
             BranchDao branchDao,
             SectionDao sectionDao,
             TopicDao topicDao,
             GroupDao groupDao,
-            TopicModificationService topicService,
-            PermissionService permissionService) {
+            PermissionService permissionService,
+            LastReadPostService lastReadPostService) {
         super(branchDao);
         this.sectionDao = sectionDao;
         this.topicDao = topicDao;
-        this.topicService = topicService;
         this.permissionService = permissionService;
         this.groupDao = groupDao;
+        this.lastReadPostService = lastReadPostService;
     }
 
     /**
@@ -122,20 +123,13 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
      */
     @Override
     public void fillStatisticInfo(List<org.jtalks.common.model.entity.Branch> branches) {
-
+        // counts of topics and posts are kept in the branches, only the last posts are left to load
+        List<Branch> jcommuneBranches = new ArrayList<>(branches.size());
         for (org.jtalks.common.model.entity.Branch commonBranch : branches) {
-            Branch jcommuneBranch = (Branch) commonBranch;
-            int postsCount = getDao().getCountPostsInBranch(jcommuneBranch);
-            jcommuneBranch.setPostsCount(postsCount);
-            int topicsCount = topicDao.countTopics(jcommuneBranch);
-            jcommuneBranch.setTopicsCount(topicsCount);
-            //TODO Was removed till milestone 2 due to performance issues
-//            JCUser user = userService.getCurrentUser();
-//            if (!user.isAnonymous()) {
-//                boolean isUnreadPosts = getDao().isUnreadPostsInBranch(jcommuneBranch, user);
-//                jcommuneBranch.setUnreadPosts(isUnreadPosts);
-//            }
+            jcommuneBranches.add((Branch) commonBranch);
         }
+        getDao().loadLastPosts(jcommuneBranches);
+        lastReadPostService.fillUnreadPostsForBranches(jcommuneBranches);
     }
 
     /**
@@ -147,24 +141,6 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
         return super.get(id);
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Branch deleteAllTopics(long branchId) throws NotFoundException {
-        Branch branch = get(branchId);
-
-        // Create tmp list to avoid ConcurrentModificationException
-        List<Topic> loopList = new ArrayList<Topic>(branch.getTopics());
-        for (Topic topic : loopList) {
-            topicService.deleteTopicSilent(topic.getId());
-        }
-
-        logger.info("All topics for branch \"{}\" were deleted. " +
-                "Branch id: {}", branch.getName(), branch.getId());
-        return branch;
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -204,4 +180,16 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
     public void checkIfBranchExists(long branchId) throws NotFoundException {
         super.get(branchId);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Scheduled(cron = "0 30 3 * * *") // cron expression: invoke every day at 03:30
+    public void recalculateCountersByTimer() {
+        int fixed = getDao().recalculateCounters();
+        if (fixed > 0) {
+            logger.warn("Denormalized counters of {} topics and branches were out of sync and have been fixed", fixed);
+        }
+    }
 }
@@ -108,6 +108,7 @@ public class TransactionalComponentService extends AbstractTransactionalEntitySe
         DateTime now = new DateTime();
         now = now.withMillisOfSecond(0);
         forumComponent.setProperty(COMPONENT_INFO_CHANGE_DATE_PROPERTY, String.valueOf(now.getMillis()));
+        getDao().saveOrUpdate(forumComponent);
     }
 
     /**
@@ -21,10 +21,17 @@ import org.jtalks.jcommune.model.dao.UserDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.ReadStateStore;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Performs last read posts management to track topic updates
@@ -38,9 +45,10 @@ public class TransactionalLastReadPostService implements LastReadPostService {
     private final UserService userService;
     private final LastReadPostDao lastReadPostDao;
     private final UserDao userDao;
+    private final ReadStateStore readStateStore;
 
     /**
-     * Constructs an instance with required fields.
+     * Constructs an instance which reads and writes last read posts directly from/to a database.
      *
      * @param userService     to figure out the current user logged in
      * @param lastReadPostDao to save/read last read post information from a database
@@ -50,9 +58,27 @@ public class TransactionalLastReadPostService implements LastReadPostService {
             UserService userService,
             LastReadPostDao lastReadPostDao,
             UserDao userDao) {
+        this(userService, lastReadPostDao, userDao, null);
+    }
+
+    /**
+     * Constructs an instance which keeps last read posts of active users in memory.
+     *
+     * @param userService     to figure out the current user logged in
+     * @param lastReadPostDao to save/read last read post information from a database
+     * @param userDao         to save an information about user of forum
+     * @param readStateStore  to keep last read posts of active users in memory and to write them in the background,
+     *                        if {@code null} they are read and written directly
+     */
+    public TransactionalLastReadPostService(
+            UserService userService,
+            LastReadPostDao lastReadPostDao,
+            UserDao userDao,
+            ReadStateStore readStateStore) {
         this.userService = userService;
         this.lastReadPostDao = lastReadPostDao;
         this.userDao = userDao;
+        this.readStateStore = readStateStore;
     }
 
     /**
@@ -77,6 +103,24 @@ public class TransactionalLastReadPostService implements LastReadPostService {
         return topics;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fillUnreadPostsForBranches(List<Branch> branches) {
+        JCUser currentUser = userService.getCurrentUser();
+        if (!currentUser.isAnonymous()) {
+            if (readStateStore != null) {
+                // topics read recently must not be found as unread by the query
+                lastReadPostDao.saveLastReadPostDates(currentUser, drainPendingMarks(currentUser));
+            }
+            Set<Long> unreadBranchIds = lastReadPostDao.getBranchesWithUnreadPosts(currentUser, branches);
+            for (Branch branch : branches) {
+                branch.setUnreadPosts(unreadBranchIds.contains(branch.getId()));
+            }
+        }
+    }
+
     /**
      * Extract topics that don't have modifications after marking all forum as read.
      *
@@ -106,9 +150,23 @@ public class TransactionalLastReadPostService implements LastReadPostService {
      * @param currentUser    the current user of application
      */
     private void fillLastReadPostsForModifiedTopics(List<Topic> modifiedTopics, JCUser currentUser) {
+        if (readStateStore != null) {
+            ReadStateStore.UserReadState readState = getReadState(currentUser);
+            for (Topic topic : modifiedTopics) {
+                DateTime lastReadPostDate = readState.getLastReadPostDate(topic.getId());
+                if (lastReadPostDate != null) {
+                    topic.setLastReadPostDate(lastReadPostDate);
+                }
+            }
+            return;
+        }
         List<LastReadPost> lastReadPosts = lastReadPostDao.getLastReadPosts(currentUser, modifiedTopics);
+        Map<Long, LastReadPost> lastReadPostsByTopics = new HashMap<Long, LastReadPost>(lastReadPosts.size() * 2);
+        for (LastReadPost lastReadPost : lastReadPosts) {
+            lastReadPostsByTopics.put(lastReadPost.getTopic().getId(), lastReadPost);
+        }
         for (Topic topic : modifiedTopics) {
-            LastReadPost lastReadPost = findLastReadPost(lastReadPosts, topic.getId());
+            LastReadPost lastReadPost = lastReadPostsByTopics.get(topic.getId());
             if (lastReadPost != null) {
                 topic.setLastReadPostDate(lastReadPost.getPostCreationDate());
             }
@@ -116,19 +174,15 @@ public class TransactionalLastReadPostService implements LastReadPostService {
     }
 
     /**
-     * Find last read post in the list for given topic.
-     *
-     * @param lastReadPosts the list of last read posts where we are going to search
-     * @param topicId       an identifier of topic for which we find last read post in list
-     * @return last read post for given topic
+     * @param user the user whose read state is needed
+     * @return read state of the user kept in memory, it's loaded from the database if isn't kept yet
      */
-    private LastReadPost findLastReadPost(List<LastReadPost> lastReadPosts, long topicId) {
-        for (LastReadPost lastReadPost : lastReadPosts) {
-            if (lastReadPost.getTopic().getId() == topicId) {
-                return lastReadPost;
-            }
+    private ReadStateStore.UserReadState getReadState(JCUser user) {
+        ReadStateStore.UserReadState readState = readStateStore.get(user.getId());
+        if (readState == null) {
+            readState = readStateStore.load(user.getId(), lastReadPostDao.getLastReadPostDates(user));
         }
-        return null;
+        return readState;
     }
 
     /**
@@ -183,6 +237,10 @@ public class TransactionalLastReadPostService implements LastReadPostService {
         DateTime lastTimeForumWasMarkedRead = user.getAllForumMarkedAsReadTime();
         DateTime topicModifiedDate = topic.getModificationDate();
         if (lastTimeForumWasMarkedRead == null || topicModifiedDate.isAfter(lastTimeForumWasMarkedRead)) {
+            if (readStateStore != null) {
+                readStateStore.markRead(user.getId(), topic.getId(), lastPost.getCreationDate());
+                return;
+            }
             LastReadPost lastReadPost = lastReadPostDao.getLastReadPost(user, topic);
             if (lastReadPost == null) {
                 lastReadPost = new LastReadPost(user, topic, lastPost.getCreationDate());
@@ -201,7 +259,14 @@ public class TransactionalLastReadPostService implements LastReadPostService {
     public void markAllTopicsAsRead(Branch branch) {
         JCUser user = userService.getCurrentUser();
         if (!user.isAnonymous()) {
+            if (readStateStore != null) {
+                // pending marks must not overwrite the ones saved for the branch later
+                lastReadPostDao.saveLastReadPostDates(user, drainPendingMarks(user));
+            }
             lastReadPostDao.markAllRead(user, branch);
+            if (readStateStore != null) {
+                readStateStore.evict(user.getId());
+            }
         }
     }
 
@@ -216,6 +281,48 @@ public class TransactionalLastReadPostService implements LastReadPostService {
         userDao.saveOrUpdate(currentUser);
 
         lastReadPostDao.deleteLastReadPostsFor(currentUser);
+        if (readStateStore != null) {
+            readStateStore.evict(currentUser.getId());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushReadMarks(long userId) {
+        if (readStateStore == null) {
+            return;
+        }
+        JCUser user = userDao.get(userId);
+        if (user == null) {
+            readStateStore.evict(userId);
+            return;
+        }
+        lastReadPostDao.saveLastReadPostDates(user, drainPendingMarks(user));
+    }
+
+    /**
+     * Takes the marks of the user kept in memory to write them within the current transaction. They are put back
+     * to the memory if the transaction is not committed, otherwise they would be lost.
+     *
+     * @param user the user to take the marks of
+     * @return dates of last read posts by topic ids
+     */
+    private Map<Long, DateTime> drainPendingMarks(JCUser user) {
+        final long userId = user.getId();
+        final Map<Long, DateTime> marks = readStateStore.drainPendingMarks(userId);
+        if (!marks.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        readStateStore.restorePendingMarks(userId, marks);
+                    }
+                }
+            });
+        }
+        return marks;
     }
 
 }
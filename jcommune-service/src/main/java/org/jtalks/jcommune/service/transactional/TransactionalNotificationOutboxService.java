@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.Crud;
+import org.jtalks.jcommune.model.dao.BranchDao;
+import org.jtalks.jcommune.model.dao.PendingNotificationDao;
+import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.entity.*;
+import org.jtalks.jcommune.service.NotificationOutboxService;
+import org.jtalks.jcommune.service.exceptions.MailingFailedException;
+import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.internet.MimeMessage;
+import java.util.*;
+
+/**
+ * Stores notifications in the database table and sends them with {@link MailService}.
+ */
+public class TransactionalNotificationOutboxService implements NotificationOutboxService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalNotificationOutboxService.class);
+
+    private final PendingNotificationDao dao;
+    private final MailService mailService;
+    private final TopicDao topicDao;
+    private final BranchDao branchDao;
+    private final Crud<CodeReview> codeReviewDao;
+    private final int leaseSeconds;
+    private final int retryDelaySeconds;
+    private final int maxAttempts;
+
+    /**
+     * @param dao               to store notifications
+     * @param mailService       to create and send e-mails
+     * @param topicDao          to load topics notifications are about
+     * @param branchDao         to load branches notifications are about
+     * @param codeReviewDao     to load code reviews notifications are about
+     * @param leaseSeconds      how long taken notifications are not taken again, should be more than sending takes
+     * @param retryDelaySeconds delay before the first retry, it's doubled for every next one
+     * @param maxAttempts       count of attempts after which the notification is dropped
+     */
+    public TransactionalNotificationOutboxService(PendingNotificationDao dao,
+                                                  MailService mailService,
+                                                  TopicDao topicDao,
+                                                  BranchDao branchDao,
+                                                  Crud<CodeReview> codeReviewDao,
+                                                  int leaseSeconds,
+                                                  int retryDelaySeconds,
+                                                  int maxAttempts) {
+        this.dao = dao;
+        this.mailService = mailService;
+        this.topicDao = topicDao;
+        this.branchDao = branchDao;
+        this.codeReviewDao = codeReviewDao;
+        this.leaseSeconds = leaseSeconds;
+        this.retryDelaySeconds = retryDelaySeconds;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void enqueue(Collection<JCUser> recipients, NotificationType type, long entityId) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+        String rootUrl = mailService.getDeploymentRootUrl();
+        String rootLabel = mailService.getDeploymentRootUrlWithoutPort();
+        Set<Long> alreadyPending = new HashSet<Long>(dao.getPendingRecipientIds(type, entityId));
+        for (JCUser recipient : recipients) {
+            if (alreadyPending.add(recipient.getId())) {
+                dao.saveOrUpdate(new PendingNotification(recipient, type, entityId, rootUrl, rootLabel));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> claimDue(int limit) {
+        DateTime now = new DateTime();
+        List<Long> ids = new ArrayList<Long>();
+        DateTime leaseEnd = now.plusSeconds(leaseSeconds);
+        for (PendingNotification notification : dao.getDue(now, limit)) {
+            if (dao.claim(notification, leaseEnd)) {
+                ids.add(notification.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deliver(List<Long> ids) {
+        Map<List<Object>, List<PendingNotification>> groups =
+                new LinkedHashMap<List<Object>, List<PendingNotification>>();
+        for (Long id : ids) {
+            PendingNotification notification = dao.get(id);
+            if (notification == null) {
+                continue;
+            }
+            List<Object> key = Arrays.<Object>asList(notification.getType(), notification.getEntityId(),
+                    notification.getDeploymentRootUrl(), notification.getDeploymentRootLabel());
+            List<PendingNotification> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<PendingNotification>();
+                groups.put(key, group);
+            }
+            group.add(notification);
+        }
+        Map<MimeMessage, PendingNotification> messages = new LinkedHashMap<MimeMessage, PendingNotification>();
+        for (List<PendingNotification> group : groups.values()) {
+            try {
+                List<MimeMessage> created = createMails(group);
+                for (int i = 0; i < group.size(); i++) {
+                    if (created == null) {
+                        dao.delete(group.get(i));
+                    } else {
+                        messages.put(created.get(i), group.get(i));
+                    }
+                }
+            } catch (MailingFailedException | RuntimeException e) {
+                // e.g. a template error, the group is retried and then dropped without affecting other groups
+                LOGGER.error("Notifications about " + group.get(0).getType() + " " + group.get(0).getEntityId()
+                        + " can't be created", e);
+                for (PendingNotification notification : group) {
+                    postpone(notification);
+                }
+            }
+        }
+        Collection<MimeMessage> failed;
+        try {
+            failed = mailService.sendAll(new ArrayList<MimeMessage>(messages.keySet()));
+        } catch (RuntimeException e) {
+            LOGGER.error("Sending of " + messages.size() + " notifications failed", e);
+            failed = messages.keySet();
+        }
+        for (Map.Entry<MimeMessage, PendingNotification> entry : messages.entrySet()) {
+            if (failed.contains(entry.getKey())) {
+                postpone(entry.getValue());
+            } else {
+                dao.delete(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Creates e-mails for notifications about the same entity, so that templates are rendered once for all
+     * recipients with the same locale.
+     *
+     * @param group notifications of the same type about the same entity with the same deployment root
+     * @return e-mails in the same order as notifications or null if they shouldn't be sent anymore, e.g. the entity
+     *         was removed
+     * @throws MailingFailedException when e-mails can't be created
+     */
+    private List<MimeMessage> createMails(List<PendingNotification> group) throws MailingFailedException {
+        PendingNotification first = group.get(0);
+        String rootUrl = first.getDeploymentRootUrl();
+        String rootLabel = first.getDeploymentRootLabel();
+        long entityId = first.getEntityId();
+        List<JCUser> recipients = new ArrayList<JCUser>(group.size());
+        for (PendingNotification notification : group) {
+            recipients.add(notification.getRecipient());
+        }
+        switch (first.getType()) {
+            case TOPIC_UPDATED:
+                return createUpdatesMails(recipients, topicDao.get(entityId), rootUrl, rootLabel);
+            case BRANCH_UPDATED:
+                return createUpdatesMails(recipients, branchDao.get(entityId), rootUrl, rootLabel);
+            case CODE_REVIEW_UPDATED:
+                return createUpdatesMails(recipients, codeReviewDao.get(entityId), rootUrl, rootLabel);
+            case TOPIC_CREATED:
+                Topic topic = topicDao.get(entityId);
+                return topic == null ? null
+                        : mailService.createTopicCreationMails(recipients, topic, rootUrl, rootLabel);
+            case USER_MENTIONED:
+                if (!mailService.isNotificationsEnabled()) {
+                    return null;
+                }
+                List<MimeMessage> messages = new ArrayList<MimeMessage>(recipients.size());
+                for (JCUser recipient : recipients) {
+                    messages.add(mailService.createUserMentionedMail(recipient, entityId, rootUrl, rootLabel));
+                }
+                return messages;
+            default:
+                throw new IllegalStateException("Unknown notification type: " + first.getType());
+        }
+    }
+
+    private List<MimeMessage> createUpdatesMails(List<JCUser> recipients, SubscriptionAwareEntity entity,
+                                                 String rootUrl, String rootLabel) throws MailingFailedException {
+        if (entity == null) {
+            return null;
+        }
+        return mailService.createUpdatesOnSubscriptionMails(recipients, entity, rootUrl, rootLabel);
+    }
+
+    /**
+     * Schedules the next attempt to send the notification with exponential backoff or drops the notification if
+     * there were too many attempts.
+     *
+     * @param notification notification that wasn't sent
+     */
+    private void postpone(PendingNotification notification) {
+        int attempts = notification.getAttempts() + 1;
+        if (attempts >= maxAttempts) {
+            LOGGER.error("Notification {} about {} {} to {} was dropped after {} attempts", new Object[]{
+                    notification.getId(), notification.getType(), notification.getEntityId(),
+                    notification.getRecipient().getUsername(), attempts});
+            dao.delete(notification);
+            return;
+        }
+        notification.setAttempts(attempts);
+        notification.setNextAttemptDate(new DateTime().plusSeconds(retryDelaySeconds << (attempts - 1)));
+        dao.saveOrUpdate(notification);
+    }
+}
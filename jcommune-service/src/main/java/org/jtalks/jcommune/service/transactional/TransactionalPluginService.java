@@ -79,12 +79,13 @@ public class TransactionalPluginService extends AbstractTransactionalEntityServi
         if (willBeConfigured == null) {
             throw new NotFoundException("Plugin " + name + " is not loaded");
         }
-        willBeConfigured.configure(pluginConfiguration);
+        pLuginLoader.validateConfiguration(willBeConfigured, pluginConfiguration);
         try {
             saveNewPluginConfiguration(pluginConfiguration);
         } catch (RuntimeException ex) {
             throw new UnexpectedErrorException(ex);
         }
+        pLuginLoader.reloadConfiguration();
     }
 
     @Override
@@ -168,5 +169,6 @@ public class TransactionalPluginService extends AbstractTransactionalEntityServi
             configuration.setActive(isActivated);
             pluginConfigurationDao.saveOrUpdate(configuration);
         }
+        pLuginLoader.reloadConfiguration();
     }
 }
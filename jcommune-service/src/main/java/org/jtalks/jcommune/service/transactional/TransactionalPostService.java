@@ -26,6 +26,7 @@ import org.jtalks.jcommune.service.BranchLastPostService;
 import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.PostService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +56,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
     private LastReadPostService lastReadPostService;
     private UserService userService;
     private BranchLastPostService branchLastPostService;
+    private BBCodeService bbCodeService;
 
     /**
      * Create an instance of Post entity based service
@@ -66,6 +68,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
      * @param lastReadPostService   to modify last read post information when topic structure is changed
      * @param userService           to get current user
      * @param branchLastPostService to refresh the last post of the branch
+     * @param bbCodeService         to render edited posts in advance
      */
     public TransactionalPostService(
             PostDao dao,
@@ -74,7 +77,8 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
             NotificationService notificationService,
             LastReadPostService lastReadPostService,
             UserService userService,
-            BranchLastPostService branchLastPostService) {
+            BranchLastPostService branchLastPostService,
+            BBCodeService bbCodeService) {
         super(dao);
         this.topicDao = topicDao;
         this.securityService = securityService;
@@ -82,6 +86,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
         this.lastReadPostService = lastReadPostService;
         this.userService = userService;
         this.branchLastPostService = branchLastPostService;
+        this.bbCodeService = bbCodeService;
     }
 
     /**
@@ -109,6 +114,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
 
         this.getDao().saveOrUpdate(post);
         userService.notifyAndMarkNewlyMentionedUsers(post);
+        bbCodeService.warmUp(post);
 
         logger.debug("Post id={} updated.", post.getId());
     }
@@ -138,6 +144,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
 
         // todo: event API?
         topicDao.saveOrUpdate(topic);
+        topicDao.updatePostCount(topic, -1);
         securityService.deleteFromAcl(post);
         notificationService.subscribedEntityChanged(topic);
         if (deletedPostIsLastPostInBranch) {
@@ -169,8 +176,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
      */
     @Override
     public int calculatePageForPost(Post post) {
-        Topic topic = post.getTopic();
-        int index = topic.getPosts().indexOf(post) + 1;
+        int index = getDao().countPostsBefore(post) + 1;
         int pageSize = userService.getCurrentUser().getPageSize();
         int pageNum = index / pageSize;
         if (index % pageSize == 0) {
@@ -184,8 +190,8 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
      * {@inheritDoc}
      */
     @Override
-    public Page<Post> getPosts(Topic topic, String page) {
-        PageRequest pageRequest = new PageRequest(page, userService.getCurrentUser().getPageSize());
+    public Page<Post> getPosts(Topic topic, String page, String cursor) {
+        PageRequest pageRequest = new PageRequest(page, userService.getCurrentUser().getPageSize(), cursor);
         return getDao().getPosts(topic, pageRequest);
     }
 
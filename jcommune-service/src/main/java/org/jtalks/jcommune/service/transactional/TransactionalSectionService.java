@@ -26,8 +26,6 @@ import org.jtalks.jcommune.service.BranchService;
 import org.jtalks.jcommune.service.SectionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.security.access.AccessDeniedException;
 
 import java.util.ArrayList;
@@ -41,8 +39,6 @@ import java.util.List;
 public class TransactionalSectionService extends AbstractTransactionalEntityService<Section, SectionDao>
         implements SectionService {
 
-    private final Logger logger = LoggerFactory.getLogger(getClass());
-
     private BranchService branchService;
 
     private UserService userService;
@@ -105,38 +101,23 @@ public class TransactionalSectionService extends AbstractTransactionalEntityServ
      * {@inheritDoc}
      */
     public void prepareSectionsForView(List<Section> sections) {
+        List<Branch> branches = new ArrayList<>();
         for (Section section : sections) {
-            List<Branch> branches = section.getBranches();
-            branchService.fillStatisticInfo(branches);
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Section deleteAllTopicsInSection(long sectionId) throws NotFoundException {
-        Section section = get(sectionId);
-
-        //Create tmp list to avoid ConcurrentModificationException
-        List<Branch> loopList = new ArrayList<Branch>(section.getBranches());
-        for (Branch branch : loopList) {
-            branchService.deleteAllTopics(branch.getId());
+            branches.addAll(section.getBranches());
         }
-
-        logger.info("All branches for sections \"{}\" were deleted. " +
-                "Section id: {}", section.getName(), section.getId());
-        return section;
+        branchService.fillStatisticInfo(branches);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void deleteAllTopicsInForum() throws NotFoundException {
-        for (Section section : this.getAll()) {
-            this.deleteAllTopicsInSection(section.getId());
+    public List<Long> getBranchIds(long sectionId) throws NotFoundException {
+        List<Long> branchIds = new ArrayList<>();
+        for (Branch branch : get(sectionId).getBranches()) {
+            branchIds.add(branch.getId());
         }
+        return branchIds;
     }
 
     /**
@@ -24,13 +24,18 @@ import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.TopicFetchService;
 import org.jtalks.jcommune.service.UserService;
-import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.TopicViewCounter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Performs load operations on topic based on various
@@ -41,27 +46,48 @@ public class TransactionalTopicFetchService extends AbstractTransactionalEntityS
 
     private UserService userService;
     private TopicSearchDao searchDao;
+    private TopicViewCounter viewCounter;
 
     /**
      * @param dao         topic dao for database manipulations
      * @param userService to get current user and his preferences
      * @param searchDao   for search index access
+     * @param viewCounter to accumulate views of topics in memory
      */
-    public TransactionalTopicFetchService(TopicDao dao, UserService userService, TopicSearchDao searchDao) {
+    public TransactionalTopicFetchService(TopicDao dao, UserService userService, TopicSearchDao searchDao,
+                                          TopicViewCounter viewCounter) {
         super(dao);
         this.userService = userService;
         this.searchDao = searchDao;
+        this.viewCounter = viewCounter;
     }
 
     /**
      * {@inheritDoc}
      */
-    @Override    
-    public Topic get(Long id) throws NotFoundException {
-        Topic topic = super.get(id);
-        topic.setViews(topic.getViews() + 1);
-        this.getDao().saveOrUpdate(topic);
-        return topic;
+    @Override
+    public void countView(Topic topic) {
+        viewCounter.countView(topic.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Scheduled(fixedDelay = 30000)
+    public void flushViewsByTimer() {
+        final Map<Long, Integer> views = viewCounter.drain();
+        if (!views.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        viewCounter.restore(views);
+                    }
+                }
+            });
+        }
+        getDao().addViews(views);
     }
 
     /**
@@ -89,9 +115,9 @@ public class TransactionalTopicFetchService extends AbstractTransactionalEntityS
      * {@inheritDoc}
      */
     @Override
-    public Page<Topic> getTopics(Branch branch, String page) {
+    public Page<Topic> getTopics(Branch branch, String page, String cursor) {
         int pageSize = userService.getCurrentUser().getPageSize();
-        PageRequest pageRequest = new PageRequest(page, pageSize);
+        PageRequest pageRequest = new PageRequest(page, pageSize, cursor);
         return getDao().getTopics(branch, pageRequest);
     }
 
@@ -22,6 +22,7 @@ import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.*;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +62,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
     private PermissionEvaluator permissionEvaluator;
     private SecurityContextFacade securityContextFacade;
     private BranchLastPostService branchLastPostService;
+    private BBCodeService bbCodeService;
 
     /**
      * Create an instance of User entity based service.
@@ -76,6 +78,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
      * @param securityContextFacade authentication object retrieval
      * @param permissionEvaluator   for authorization purposes
      * @param branchLastPostService to refresh the last post of the branch
+     * @param bbCodeService         to render new posts in advance
      */
     public TransactionalTopicModificationService(TopicDao dao, SecurityService securityService,
                                                  BranchDao branchDao,
@@ -86,7 +89,8 @@ public class TransactionalTopicModificationService implements TopicModificationS
                                                  TopicFetchService topicFetchService,
                                                  SecurityContextFacade securityContextFacade,
                                                  PermissionEvaluator permissionEvaluator,
-                                                 BranchLastPostService branchLastPostService) {
+                                                 BranchLastPostService branchLastPostService,
+                                                 BBCodeService bbCodeService) {
         this.dao = dao;
         this.securityService = securityService;
         this.branchDao = branchDao;
@@ -98,6 +102,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         this.securityContextFacade = securityContextFacade;
         this.permissionEvaluator = permissionEvaluator;
         this.branchLastPostService = branchLastPostService;
+        this.bbCodeService = bbCodeService;
     }
 
     /**
@@ -119,6 +124,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
             topicSubscribers.add(currentUser);
         }
         dao.saveOrUpdate(topic);
+        dao.updatePostCount(topic, 1);
 
         Branch branch = topic.getBranch();
         branch.setLastPost(answer);
@@ -128,6 +134,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         notificationService.subscribedEntityChanged(topic);
 
         userService.notifyAndMarkNewlyMentionedUsers(answer);
+        bbCodeService.warmUp(answer);
 
         logger.debug("New post in topic. Topic id={}, Post id={}, Post author={}",
                 new Object[]{topicId, answer.getId(), currentUser.getUsername()});
@@ -169,6 +176,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         branch.addTopic(topic);
         branch.setLastPost(first);
         branchDao.saveOrUpdate(branch);
+        branchDao.updateCounters(branch, 1, topic.getPostCount());
 
         JCUser user = userService.getCurrentUser();
         securityService.createAclBuilder().grant(GeneralPermission.WRITE).to(user).on(topic).flush();
@@ -181,6 +189,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
 
         dao.saveOrUpdate(topic);
         userService.notifyAndMarkNewlyMentionedUsers(topic.getFirstPost());
+        bbCodeService.warmUp(topic.getFirstPost());
         
         logger.debug("Created new topic id={}, branch id={}, author={}",
                 new Object[]{topic.getId(), branch.getId(), currentUser.getUsername()});
@@ -207,6 +216,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         branch.addTopic(topic);
         branch.setLastPost(first);
         branchDao.saveOrUpdate(branch);
+        branchDao.updateCounters(branch, 1, topic.getPostCount());
 
         JCUser user = userService.getCurrentUser();
         securityService.createAclBuilder().grant(GeneralPermission.WRITE).to(user).on(topic).flush();
@@ -327,6 +337,30 @@ public class TransactionalTopicModificationService implements TopicModificationS
         this.deleteTopicSilent(topic);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteTopicsSilent(long branchId, int maxCount) throws NotFoundException {
+        if (!branchDao.isExist(branchId)) {
+            throw new NotFoundException(String.format("Branch with id: %d not found", branchId));
+        }
+        Branch branch = branchDao.get(branchId);
+        List<Long> topicIds = dao.getTopicIds(branch, maxCount);
+        if (topicIds.isEmpty()) {
+            return 0;
+        }
+        // the last post of the branch may be deleted, it must not be flushed back before it is refreshed
+        branch.clearLastPost();
+        for (Long topicId : topicIds) {
+            securityService.deleteFromAcl(Topic.class, topicId);
+        }
+        int deletedPosts = dao.deleteTopics(topicIds);
+        branchDao.updateCounters(branch, -topicIds.size(), -deletedPosts);
+        branchLastPostService.refreshLastPostInBranch(branch);
+        return topicIds.size();
+    }
+
     /**
      * Performs actual topic deletion. Deletes all topic related data and
      * recalculates user's post count.
@@ -349,6 +383,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
 
         branch.deleteTopic(topic);
         branchDao.saveOrUpdate(branch);
+        branchDao.updateCounters(branch, -1, -topic.getPostCount());
 
         if (branchLastPostFromDeletedTopic) {
             branchLastPostService.refreshLastPostInBranch(branch);
@@ -365,9 +400,12 @@ public class TransactionalTopicModificationService implements TopicModificationS
     @Override
     public void moveTopic(Topic topic, Long branchId) throws NotFoundException {
         Branch sourceBranch = topic.getBranch();
+        branchDao.updateCounters(sourceBranch, -1, -topic.getPostCount());
+
         Branch targetBranch = branchDao.get(branchId);
         targetBranch.addTopic(topic);
         branchDao.saveOrUpdate(targetBranch);
+        branchDao.updateCounters(targetBranch, 1, topic.getPostCount());
 
         List<Post> topicPosts = topic.getPosts();
         if (topicPosts.contains(sourceBranch.getLastPost())) {
@@ -25,6 +25,7 @@ import org.jtalks.jcommune.model.dao.PostDao;
 import org.jtalks.jcommune.model.dao.UserDao;
 import org.jtalks.jcommune.model.entity.AnonymousUser;
 import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.NotificationType;
 import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.model.plugins.exceptions.NoConnectionException;
 import org.jtalks.jcommune.model.plugins.exceptions.UnexpectedErrorException;
@@ -34,14 +35,18 @@ import org.jtalks.jcommune.service.dto.UserInfoContainer;
 import org.jtalks.jcommune.service.exceptions.MailingFailedException;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.nontransactional.Base64Wrapper;
+import org.jtalks.jcommune.service.nontransactional.CurrentUserHolder;
 import org.jtalks.jcommune.service.nontransactional.EncryptionService;
 import org.jtalks.jcommune.service.nontransactional.MailService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.jtalks.jcommune.service.nontransactional.NotificationDispatcher;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -73,6 +78,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
     private EncryptionService encryptionService;
     private final PostDao postDao;
     private Authenticator authenticator;
+    private final NotificationDispatcher notificationDispatcher;
+    private final CurrentUserHolder currentUserHolder;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalUserService.class);
 
@@ -87,6 +94,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
      * @param encryptionService encodes user password before store
      * @param postDao           for operations with posts
      * @param authenticator     for authentication and registration
+     * @param notificationDispatcher to notify mentioned users asynchronously
+     * @param currentUserHolder keeps the current user for the duration of a request
      */
     public TransactionalUserService(UserDao dao,
                                     GroupDao groupDao,
@@ -96,7 +105,9 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
                                     EncryptionService encryptionService,
 
                                     PostDao postDao,
-                                    Authenticator authenticator) {
+                                    Authenticator authenticator,
+                                    NotificationDispatcher notificationDispatcher,
+                                    CurrentUserHolder currentUserHolder) {
         super(dao);
         this.groupDao = groupDao;
         this.securityService = securityService;
@@ -106,6 +117,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
 
         this.postDao = postDao;
         this.authenticator = authenticator;
+        this.notificationDispatcher = notificationDispatcher;
+        this.currentUserHolder = currentUserHolder;
     }
 
     /**
@@ -153,10 +166,33 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
         String name = securityService.getCurrentUserUsername();
         if (name == null) {
             return new AnonymousUser();
-        } else {
-            return this.getDao().getByUsername(name);
         }
+        JCUser user = currentUserHolder.get();
+        if (user == null || !name.equals(user.getUsername())) {
+            user = lookUpCurrentUser(name);
+            currentUserHolder.put(user);
+        }
+        return user;
+    }
 
+    /**
+     * Finds the authenticated user by id of the security principal, the entity is taken from the second level cache
+     * then. Looking up by username is left for principals which are not users, it's a case insensitive query which
+     * can't be cached.
+     *
+     * @param name username of the authenticated user
+     * @return the authenticated user
+     */
+    private JCUser lookUpCurrentUser(String name) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof JCUser) {
+            JCUser principal = (JCUser) authentication.getPrincipal();
+            JCUser user = this.getDao().get(principal.getId());
+            if (user != null && name.equals(user.getUsername())) {
+                return user;
+            }
+        }
+        return this.getDao().getByUsername(name);
     }
 
     /**
@@ -199,6 +235,7 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
         editedUser.setSendPmNotification(editedUserProfileInfo.isSendPmNotification());
 
         this.getDao().saveOrUpdate(editedUser);
+        currentUserHolder.invalidate();
         LOGGER.info("Updated user profile. Username: {}", editedUser.getUsername());
         return editedUser;
     }
@@ -285,6 +322,7 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
     public boolean loginUser(String username, String password, boolean rememberMe,
                              HttpServletRequest request, HttpServletResponse response)
             throws UnexpectedErrorException, NoConnectionException {
+        currentUserHolder.invalidate();
         return authenticator.authenticate(username, password, rememberMe, request, response);
     }
 
@@ -292,9 +330,9 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
      * {@inheritDoc}
      */
     @Override
-    public String processUserBbCodesInPost(String postContent) {
+    public String processUserBbCodesInPost(String postContent, String contextPath) {
         MentionedUsers mentionedUsers = MentionedUsers.parse(postContent);
-        return mentionedUsers.getTextWithProcessedUserTags(getDao());
+        return mentionedUsers.getTextWithProcessedUserTags(getDao(), contextPath);
     }
 
     /**
@@ -305,9 +343,7 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
         MentionedUsers mentionedUsers = MentionedUsers.parse(post);
         List<JCUser> usersToNotify = mentionedUsers.getNewUsersToNotify(getDao());
 
-        for (JCUser user : usersToNotify) {
-            mailService.sendUserMentionedNotification(user, post.getId());
-        }
+        notificationDispatcher.enqueue(usersToNotify, NotificationType.USER_MENTIONED, post.getId());
 
         mentionedUsers.markUsersAsAlreadyNotified(postDao);
     }
@@ -319,5 +355,6 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
     public void changeLanguage(JCUser jcUser, Language newLang) {
         jcUser.setLanguage(newLang);
         this.getDao().saveOrUpdate(jcUser);
+        currentUserHolder.invalidate();
     }
 }
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how fast {@link BBCodeListPreprocessor} processes large posts with nested lists with the regular
+ * expression based implementation it used before. Isn't run with tests, to run it execute {@link #main(String[])}
+ * with test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BBCodeListPreprocessorBenchmark {
+    /** Each list item contains a nested list with this number of items */
+    private static final int NESTED_ITEMS = 3;
+
+    @Param({"10", "100", "1000"})
+    private int items;
+
+    private final BBCodeListPreprocessor preprocessor = new BBCodeListPreprocessor();
+    private final RegexBBCodeListPreprocessor regexPreprocessor = new RegexBBCodeListPreprocessor();
+    private String post;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder("Some [b]text[/b] before the list\n[list=1]\n");
+        for (int i = 0; i < items; i++) {
+            text.append("[*]Item ").append(i).append(" with [i]formatted[/i] text\n[list]\n");
+            for (int j = 0; j < NESTED_ITEMS; j++) {
+                text.append("[*]Nested item ").append(j).append('\n');
+            }
+            text.append("[/list]\n");
+        }
+        post = text.append("[/list]\nSome text after the list").toString();
+    }
+
+    @Benchmark
+    public String process() {
+        return preprocessor.process(post);
+    }
+
+    @Benchmark
+    public String processWithRegex() {
+        return regexPreprocessor.process(post);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BBCodeListPreprocessorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
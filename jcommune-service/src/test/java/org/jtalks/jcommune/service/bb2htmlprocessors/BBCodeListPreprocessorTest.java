@@ -15,11 +15,23 @@
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
 import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class BBCodeListPreprocessorTest {
+    /** Pieces random texts are made of: list tags, tags similar to them, other tags and text */
+    private static final String[] TEXT_PIECES = {"[list]", "[list=1]", "[list=a:bcb294daef]", "[*]", "[/list]",
+            "[LIST]", "[list", "[/list", "[/*]", "[b]", "[/b]", "[", "]", "*", "text", " ", "\n", "\r\n"};
 
     private BBCodeListPreprocessor service;
     
@@ -64,6 +76,89 @@ public class BBCodeListPreprocessorTest {
         assertEquals(result.toString(), expected);         
     }
     
+    @Test(dataProvider = "textsWithFixedDefects")
+    public void testTextsWithFixedDefects(String bbCode, String expected) {
+        assertEquals(service.process(bbCode), expected);
+    }
+
+    @Test
+    public void resultShouldBeSameAsOfRegexImplementationForRandomTexts() {
+        RegexBBCodeListPreprocessor regexImplementation = new RegexBBCodeListPreprocessor();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String bbCode = randomText(random, 20);
+
+            assertEquals(service.process(bbCode), regexImplementation.process(bbCode), "Text: " + bbCode);
+        }
+    }
+
+    @Test
+    public void onlyItemCloseTagsShouldBeAddedToRandomTexts() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String bbCode = randomText(random, 20).replace("[/*]", "");
+
+            assertEquals(service.process(bbCode).replace("[/*]", ""), bbCode, "Text: " + bbCode);
+        }
+    }
+
+    @Test
+    public void processShouldBeThreadSafe() throws Exception {
+        final List<String> texts = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            String bbCode = randomText(random, 40);
+            texts.add(bbCode);
+            expected.add(service.process(bbCode));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        List<String> processed = new ArrayList<>();
+                        for (String text : texts) {
+                            processed.add(service.process(text));
+                        }
+                        return processed;
+                    }
+                }));
+            }
+            for (Future<List<String>> result : results) {
+                assertEquals(result.get(), expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String randomText(Random random, int maxPieces) {
+        StringBuilder text = new StringBuilder();
+        int pieces = random.nextInt(maxPieces);
+        for (int i = 0; i < pieces; i++) {
+            text.append(TEXT_PIECES[random.nextInt(TEXT_PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    @DataProvider
+    public Object[][] textsWithFixedDefects() {
+        return new Object[][]{
+                /* trailing line break was lost */
+                {"[list][*]aaa[/list]\n", "[list][*]aaa[/*][/list]\n"},
+                {"[list][*]aaa\r\n[/list]bbb\r\n", "[list][*]aaa\r\n[/*][/list]bbb\r\n"},
+                /* text after [list which isn't a tag was lost */
+                {"aaa[list bbb", "aaa[list bbb"},
+                {"aaa[list[b]bbb[/b][list][*]ccc[/list]", "aaa[list[b]bbb[/b][list][*]ccc[/*][/list]"},
+                /* EmptyStackException was thrown */
+                {"[/list]", "[/list]"},
+                {"[list][*]aaa[/list][/list]", "[list][*]aaa[/list][/list]"}
+        };
+    }
+
     @DataProvider
     public Object[][] badLists() {
         return new Object[][]{
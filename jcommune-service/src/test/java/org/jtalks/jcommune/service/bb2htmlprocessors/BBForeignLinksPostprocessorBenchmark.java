@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares how fast {@link BBForeignLinksPostprocessor} processes rendered posts with many links with the
+ * implementation it used before, which compiled the pattern on every call and replaced every foreign link in the whole
+ * text. Isn't run with tests, to run it execute {@link #main(String[])} with test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BBForeignLinksPostprocessorBenchmark {
+    private static final String SERVER_NAME = "jtalks.org";
+
+    @Param({"10", "100", "1000"})
+    private int links;
+
+    private final BBForeignLinksPostprocessor postprocessor = new BBForeignLinksPostprocessor();
+    private final RenderingContext context = new RenderingContext(SERVER_NAME, "/jcommune", false);
+    private String post;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder("<p>Some <span style=\"font-weight:bold;\">text</span> with links</p>");
+        for (int i = 0; i < links; i++) {
+            String host = i % 3 == 0 ? SERVER_NAME : "site" + i + ".com";
+            text.append("<a href=\"http://").append(host).append("/page/").append(i).append("\">link ").append(i)
+                    .append("</a> and some text after it<br/>");
+        }
+        post = text.toString();
+    }
+
+    @Benchmark
+    public String postProcess() {
+        return postprocessor.postProcess(post, context);
+    }
+
+    @Benchmark
+    public String postProcessWithReplace() {
+        return addPrefixToForeignLinksWithReplace(post, SERVER_NAME);
+    }
+
+    /** The implementation used before, see {@link BBForeignLinksPostprocessor#postProcess} */
+    private static String addPrefixToForeignLinksWithReplace(String decodedText, String serverName) {
+        Pattern linkPattern = Pattern.compile("<a .*?href=(\"|').*?(\"|')", Pattern.DOTALL);
+        Matcher linkMatcher = linkPattern.matcher(decodedText);
+        String href;
+
+        while (linkMatcher.find()) {
+            href = linkMatcher.group();
+            if (!href.contains(serverName) && href.split("(http|ftp|https)://", 2).length == 2) {
+                decodedText = decodedText
+                        .replace(href, href.replace("href=\"", "rel=\"nofollow\" href=\"/out?url="));
+            }
+        }
+
+        return decodedText;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BBForeignLinksPostprocessorBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
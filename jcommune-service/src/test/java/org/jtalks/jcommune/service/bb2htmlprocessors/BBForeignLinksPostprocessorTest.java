@@ -14,47 +14,61 @@
  */
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import javax.servlet.http.HttpServletRequest;
-
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 public class BBForeignLinksPostprocessorTest {
     private BBForeignLinksPostprocessor service;
-    @Mock
-    private HttpServletRequest request;
     private String prefix = "/out?url=";
     private String relAttr = "rel=\"nofollow\"";
     private String serverName = "server_name";
+    private RenderingContext context = new RenderingContext(serverName, "/forum", false);
 
     @BeforeMethod
     public void setUp() {
         service = spy(new BBForeignLinksPostprocessor());
         when(service.getHrefPrefix()).thenReturn(prefix);
-        MockitoAnnotations.initMocks(this);
-        doReturn(request).when(service).getServletRequest();
-        when(request.getServerName()).thenReturn(serverName);
     }
     
     @Test(dataProvider = "preProcessingCommonLinks")
     public void postprocessorShouldCorrectlyAddPrefix(String incomingText, String outcomingText) {
-        assertEquals(service.postProcess(incomingText), outcomingText);
+        assertEquals(service.postProcess(incomingText, context), outcomingText);
     }
 
     @Test(dataProvider = "preProcessingSubDomainLinks")
     public void postprocessorShouldCorrectlyRecognizeSubDomains(String incomingText, String outcomingText) {
-        assertEquals(service.postProcess(incomingText), outcomingText);
+        assertEquals(service.postProcess(incomingText, context), outcomingText);
     }
 
     @Test(dataProvider = "preProcessingLocalLinks")
     public void postprocessorShouldCorrectlyRecognizeLocalLinks(String incomingText, String outcomingText) {
-        assertEquals(service.postProcess(incomingText), outcomingText);
+        assertEquals(service.postProcess(incomingText, context), outcomingText);
+    }
+
+    @Test(dataProvider = "preProcessingSeveralLinks")
+    public void postprocessorShouldProcessEveryLinkOfText(String incomingText, String outcomingText) {
+        assertEquals(service.postProcess(incomingText, context), outcomingText);
+    }
+
+    @Test
+    public void textWithoutForeignLinksShouldBeReturnedAsIs() {
+        String text = "<p>text</p><a href=\"http://" + serverName + "/topics/1\">topic</a>";
+
+        assertSame(service.postProcess(text, context), text);
+    }
+
+    @Test
+    public void foreignLinkAfterTagWithoutAddressShouldBeRecognized() {
+        String incomingText = "<a name=\"" + serverName + "\">anchor</a><a href=\"http://javatalks.ru\"></a>";
+
+        assertEquals(service.postProcess(incomingText, context),
+                "<a name=\"" + serverName + "\">anchor</a><a " + relAttr + " href=\"" + prefix
+                        + "http://javatalks.ru\"></a>");
     }
 
     @DataProvider
@@ -82,6 +96,22 @@ public class BBForeignLinksPostprocessorTest {
         };
     }
 
+    @DataProvider
+    public Object[][] preProcessingSeveralLinks() {
+        return new Object[][]{  // {"incoming text (before)", "outcoming text (after)"}
+                {"<a href=\"http://javatalks.ru\">1</a> text <a href=\"ftp://javatalks.ru\">2</a>",
+                        "<a " + relAttr + " href=\"" + prefix + "http://javatalks.ru\">1</a> text <a " + relAttr
+                                + " href=\"" + prefix + "ftp://javatalks.ru\">2</a>"},
+                {"<a href=\"http://javatalks.ru\">1</a><a href=\"http://javatalks.ru\">1</a>",
+                        "<a " + relAttr + " href=\"" + prefix + "http://javatalks.ru\">1</a><a " + relAttr
+                                + " href=\"" + prefix + "http://javatalks.ru\">1</a>"},
+                {"<a href=\"http://" + serverName + "\">1</a>\n<a class=\"x\" href=\"http://javatalks.ru\">2</a>",
+                        "<a href=\"http://" + serverName + "\">1</a>\n<a class=\"x\" " + relAttr + " href=\""
+                                + prefix + "http://javatalks.ru\">2</a>"},
+                {"<a href='http://javatalks.ru'>1</a>", "<a href='http://javatalks.ru'>1</a>"}
+        };
+    }
+
     @DataProvider
     public Object[][] preProcessingLocalLinks() {
         return new Object[][]{  // {"incoming link (before)", "outcoming link (after)"}
@@ -15,76 +15,76 @@
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
 import com.google.common.collect.Lists;
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import javax.servlet.http.HttpServletRequest;
 import java.util.List;
 
-import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 public class BbCodeReviewProcessorTest {
     private BbCodeReviewProcessor service;
-    @Mock
-    private HttpServletRequest request;
+    private RenderingContext context;
+    private RenderingContext codeReviewContext;
     
     @BeforeMethod
     public void setUp() {
-        service = spy(new BbCodeReviewProcessor());
-        MockitoAnnotations.initMocks(this);
-        doReturn(request).when(service).getServletRequest();  
+        service = new BbCodeReviewProcessor();
+        context = new RenderingContext("localhost", "/forum", false);
+        codeReviewContext = new RenderingContext("localhost", "/forum", true);
     }
     
     @Test(dataProvider="preProcessingPosts")
     public void regularNoneCodeReviewPostIsReturnedAsSameText(String bbCode, String expectedResult) {
-        when(request.getAttribute("isCodeReviewPost")).thenReturn(null);
-        assertEquals(service.process(bbCode), bbCode);
+        assertEquals(service.preProcess(bbCode, context), bbCode);
     }
         
     @Test(dataProvider="preProcessingPosts")
     public void preprocessorShouldSubstituteClosingCodeTags(String bbCode, String expectedResult) {
-        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
-        assertEquals(service.process(bbCode), expectedResult);
+        assertEquals(service.preProcess(bbCode, codeReviewContext), expectedResult);
     }
     
-    @Test(dataProvider="preProcessingPosts")
-    public void preprocessorCharSequenceInterfaceShouldWorkAsString(String bbCode, String expectedResult) {
-        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
-        CharSequence charSequence = new StringBuilder(bbCode).subSequence(0, bbCode.length());
-        assertEquals(service.process(charSequence).toString(), expectedResult);
+    @Test
+    public void replaceHistoryShouldBePassedToPostprocessorInContext() {
+        String bbCode = "[code=java]int good=2;[/code][-code][/code]";
+        String preprocessed = service.preProcess(bbCode, codeReviewContext);
+
+        assertEquals(service.postProcess(preprocessed, codeReviewContext), bbCode);
+        assertNull(codeReviewContext.getAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE));
     }
     
     @Test
     public void postprocessorShouldСorrectlyReturnUserCloseTag() {
-        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
         List<Boolean> replaceHistoryList = Lists.newArrayList(true);
-        when(request.getAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE)).thenReturn(replaceHistoryList);
-        assertEquals(service.postProcess("<pre>int good=2;[-code]</pre>"), 
+        codeReviewContext.setAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
+        assertEquals(service.postProcess("<pre>int good=2;[-code]</pre>", codeReviewContext),
                                          "<pre>int good=2;[/code]</pre>");       
     }
 
     @Test
     public void postprocessorShouldСorrectlyReturnOurSubstitution() {
-        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
         List<Boolean> replaceHistoryList = Lists.newArrayList(false, false);
-        when(request.getAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE)).thenReturn(replaceHistoryList);
-        assertEquals(service.postProcess("<pre>int good=2;[-code][-code]</pre>"),
+        codeReviewContext.setAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
+        assertEquals(service.postProcess("<pre>int good=2;[-code][-code]</pre>", codeReviewContext),
                                          "<pre>int good=2;[-code][-code]</pre>");     
     }
 
     @Test
     public void postprocessorShouldСorrectlyReturnUserCloseTagAndOurSubstitution() {
-        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
         List<Boolean> replaceHistoryList = Lists.newArrayList(true, false, true);
-        when(request.getAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE)).thenReturn(replaceHistoryList);
-        assertEquals(service.postProcess("<pre>int good=2;[-code][-code][-code]</pre>"),
+        codeReviewContext.setAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
+        assertEquals(service.postProcess("<pre>int good=2;[-code][-code][-code]</pre>", codeReviewContext),
                                          "<pre>int good=2;[/code][-code][/code]</pre>");       
     }
 
+    @Test
+    public void postprocessorShouldIgnoreNoneCodeReviewPost() {
+        context.setAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE, Lists.newArrayList(true));
+        assertEquals(service.postProcess("<pre>int good=2;[-code]</pre>", context), "<pre>int good=2;[-code]</pre>");
+    }
+
     @DataProvider
     public Object[][] preProcessingPosts() {
         return new Object[][]{  // {"bb code before", "bb code after"}
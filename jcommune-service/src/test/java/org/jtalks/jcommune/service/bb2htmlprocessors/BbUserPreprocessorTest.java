@@ -46,8 +46,8 @@ public class BbUserPreprocessorTest {
     @Test
     public void processShouldReplaceUserCodesWithProfileLinks() {
         String source = "source";
-        when(userService.processUserBbCodesInPost(source)).thenReturn("my string");
-        String actualResult = userPreprocessor.process(source);
+        when(userService.processUserBbCodesInPost(source, "/forum")).thenReturn("my string");
+        String actualResult = userPreprocessor.preProcess(source, new RenderingContext("localhost", "/forum", false));
 
         assertEquals(actualResult, "my string");
     }
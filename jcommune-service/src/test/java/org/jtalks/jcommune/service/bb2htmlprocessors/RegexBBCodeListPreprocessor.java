@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regular expression based implementation {@link BBCodeListPreprocessor} had before it became single-pass, kept
+ * as a reference for comparing results and performance. It builds a tree of lists and items from the text matched
+ * by a backtracking regular expression and then concatenates it back to a string.
+ * <p/>
+ * Defects of that implementation are fixed here the same way they are fixed in the preprocessor, so that results
+ * can be compared on any text: the parse state is created for each invocation instead of being kept in fields,
+ * text after the last tag keeps its trailing line break ({@code \z} instead of {@code $}), text before the first tag
+ * is kept even if it contains {@code [list} which isn't a tag, and [/list] without an open list makes lists invalid
+ * instead of throwing {@link java.util.EmptyStackException}.
+ */
+class RegexBBCodeListPreprocessor {
+    /** Matches one of the following tags: [list],[/list],[*] */
+    private static final String TAG_PATTERN = "\\[list([^\\]\\[]+)?]|\\[\\*\\]|\\[\\/list\\]";
+    /** TAG + everything before next tag */
+    private static final Pattern LIST_PATTERN = Pattern.compile(
+            "(" + TAG_PATTERN + ")(.*?)?(?=" + TAG_PATTERN + "|\\z)", Pattern.DOTALL);
+
+    /**
+     * Process incoming text with replacing [*] tags by [*]...[/*]
+     *
+     * @param bbEncodedText BB encoded text to process
+     * @return processed text
+     */
+    String process(String bbEncodedText) {
+        Matcher matcher = LIST_PATTERN.matcher(bbEncodedText);
+        if (!matcher.find()) {
+            return bbEncodedText;
+        }
+        Element root = new Element("", bbEncodedText.substring(0, matcher.start()), "");
+        Deque<Element> lists = new ArrayDeque<>();
+        do {
+            String tag = matcher.group(1);
+            String text = matcher.group(3) == null ? "" : matcher.group(3);
+            if (tag.equals("[*]")) {
+                if (lists.isEmpty()) {
+                    return bbEncodedText;
+                }
+                lists.peek().children.add(new Element("[*]", text, "[/*]"));
+            } else if (tag.equals("[/list]")) {
+                if (lists.isEmpty()) {
+                    return bbEncodedText;
+                }
+                Element list = lists.pop();
+                list.close = "[/list]" + text;
+            } else {
+                Element parent = lists.isEmpty() ? root : lists.peek().getLastChild();
+                if (parent == null) {
+                    return bbEncodedText;
+                }
+                Element list = new Element(tag, text, null);
+                parent.children.add(list);
+                lists.push(list);
+            }
+        } while (matcher.find());
+        String result = root.toBBString();
+        return result != null ? result : bbEncodedText;
+    }
+
+    /**
+     * Element of the tags tree: the root text, a list or a list item.
+     */
+    private static final class Element {
+        private final String open;
+        private final String text;
+        /** closing tag with the text after it, {@code null} for a list which isn't closed */
+        private String close;
+        private final List<Element> children = new ArrayList<>();
+
+        private Element(String open, String text, String close) {
+            this.open = open;
+            this.text = text;
+            this.close = close;
+        }
+
+        private Element getLastChild() {
+            return children.isEmpty() ? null : children.get(children.size() - 1);
+        }
+
+        /**
+         * @return string representation of this element with tags and all children, {@code null} if any list
+         *         isn't closed
+         */
+        private String toBBString() {
+            if (close == null) {
+                return null;
+            }
+            String rs = open + text;
+            for (Element child : children) {
+                String childString = child.toBBString();
+                if (childString == null) {
+                    return null;
+                }
+                rs += childString;
+            }
+            return rs + close;
+        }
+    }
+}
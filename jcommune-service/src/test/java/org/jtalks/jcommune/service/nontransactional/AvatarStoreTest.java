@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class AvatarStoreTest {
+    private AvatarStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new AvatarStore(2);
+    }
+
+    @Test
+    public void storedAvatarShouldBeReturned() {
+        byte[] content = new byte[]{1, 2, 3};
+        store.put(1L, content, 1000);
+
+        AvatarStore.Avatar avatar = store.get(1L, 1000);
+
+        assertEquals(avatar.getContent(), content);
+        assertEquals(avatar.getLastModified(), 1000);
+        assertNotNull(avatar.getHash());
+    }
+
+    @Test
+    public void avatarShouldNotBeReturnedIfNewerVersionIsNeeded() {
+        store.put(1L, new byte[]{1, 2, 3}, 1000);
+
+        assertNull(store.get(1L, 2000));
+        assertNotNull(store.get(1L, 0));
+    }
+
+    @Test
+    public void sameAvatarsShouldShareContent() {
+        AvatarStore.Avatar first = store.put(1L, new byte[]{1, 2, 3}, 1000);
+        AvatarStore.Avatar second = store.put(2L, new byte[]{1, 2, 3}, 2000);
+
+        assertSame(second.getContent(), first.getContent());
+        assertEquals(second.getHash(), first.getHash());
+    }
+
+    @Test
+    public void differentAvatarsShouldHaveDifferentHashes() {
+        AvatarStore.Avatar first = store.put(1L, new byte[]{1, 2, 3}, 1000);
+        AvatarStore.Avatar second = store.put(2L, new byte[]{3, 2, 1}, 1000);
+
+        assertFalse(second.getHash().equals(first.getHash()));
+    }
+
+    @Test
+    public void leastRecentlyUsedAvatarShouldBeForgotten() {
+        store.put(1L, new byte[]{1}, 1000);
+        store.put(2L, new byte[]{2}, 1000);
+        store.get(1L, 0);
+
+        store.put(3L, new byte[]{3}, 1000);
+
+        assertNotNull(store.get(1L, 0));
+        assertNull(store.get(2L, 0));
+        assertNotNull(store.get(3L, 0));
+    }
+}
@@ -15,10 +15,30 @@
 package org.jtalks.jcommune.service.nontransactional;
 
 import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BBForeignLinksPostprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.RenderingContext;
+import org.jtalks.jcommune.service.bb2htmlprocessors.TextPostProcessor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
 /**
@@ -35,6 +55,94 @@ public class BBCodeServiceTest {
         service = new BBCodeService();
     }
 
+    @AfterMethod
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void renderedPostShouldBeTakenFromCache() {
+        RenderedPostCache cache = mock(RenderedPostCache.class);
+        service.setRenderedPostCache(cache);
+        Post post = new Post(USER, "[b]text[/b]");
+        startRequest();
+        when(cache.get(post, "localhost/jcommune")).thenReturn("cached");
+
+        assertEquals(service.convertBbToHtml(post), "cached");
+    }
+
+    @Test
+    public void postMissingInCacheShouldBeRenderedAndCached() {
+        RenderedPostCache cache = mock(RenderedPostCache.class);
+        service.setRenderedPostCache(cache);
+        Post post = new Post(USER, "[b]text[/b]");
+        startRequest();
+        when(cache.getConfigVersion()).thenReturn(3);
+
+        String html = service.convertBbToHtml(post);
+
+        assertEquals(html, "<span style=\"font-weight:bold;\">text</span>");
+        verify(cache).put(post, "localhost/jcommune", 3, html);
+        verify(cache).recordRenderTime(anyLong());
+    }
+
+    @Test
+    public void postShouldNotBeCachedWithoutRequest() {
+        RenderedPostCache cache = mock(RenderedPostCache.class);
+        service.setRenderedPostCache(cache);
+        Post post = new Post(USER, "[b]text[/b]");
+
+        assertEquals(service.convertBbToHtml(post), "<span style=\"font-weight:bold;\">text</span>");
+        verify(cache, never()).get(any(Post.class), anyString());
+        verify(cache, never()).put(any(Post.class), anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    public void postShouldBeRenderedInAdvanceAfterCommit() {
+        RenderedPostCache cache = mock(RenderedPostCache.class);
+        service.setRenderedPostCache(cache);
+        Post post = new Post(USER, "[b]text[/b]");
+        startRequest();
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.warmUp(post);
+
+        verify(cache, never()).put(post, "localhost/jcommune", 0, "<span style=\"font-weight:bold;\">text</span>");
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        verify(cache).put(post, "localhost/jcommune", 0, "<span style=\"font-weight:bold;\">text</span>");
+    }
+
+    @Test
+    public void postShouldBeRenderedWithGivenContextWithoutRequest() {
+        RenderedPostCache cache = mock(RenderedPostCache.class);
+        service.setRenderedPostCache(cache);
+        service.setPostprocessors(Arrays.<TextPostProcessor>asList(new BBForeignLinksPostprocessor()));
+        Post post = new Post(USER, "[url=http://localhost/a]a[/url][url=http://example.com/b]b[/url]");
+        when(cache.getConfigVersion()).thenReturn(2);
+
+        String html = service.convertBbToHtml(post, new RenderingContext("localhost", "/jcommune", false));
+
+        assertEquals(html, "<a href=\"http://localhost/a\">a</a>"
+                + "<a rel=\"nofollow\" href=\"/out?url=http://example.com/b\">b</a>");
+        verify(cache).put(post, "localhost/jcommune", 2, html);
+    }
+
+    @Test
+    public void textShouldBeRenderedWithGivenContextRegardlessOfRequest() {
+        service.setPostprocessors(Arrays.<TextPostProcessor>asList(new BBForeignLinksPostprocessor()));
+        startRequest();
+
+        String html = service.convertBbToHtml("[url=http://localhost/a]a[/url]",
+                new RenderingContext("example.com", "", false));
+
+        assertEquals(html, "<a rel=\"nofollow\" href=\"/out?url=http://localhost/a\">a</a>");
+    }
+
     @Test
     public void testQuote() {
         String result = service.quote(SOURCE, USER);
@@ -119,4 +227,11 @@ public class BBCodeServiceTest {
                 {"[offtop]Some text[/offtop]", "<div class=\"offtop\"><p>Some text</p></div>"}
         };
     }
+
+    private void startRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName("localhost");
+        request.setContextPath("/jcommune");
+        RequestContextHolder.setRequestAttributes(new ServletWebRequest(request));
+    }
 }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.apache.tika.Tika;
+import org.jtalks.jcommune.service.exceptions.ImageProcessException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how fast {@link ImageConverter} resizes and decodes uploaded images with the per-pixel resize
+ * and the type detector created for every image it used before. Isn't run with tests, to run it execute
+ * {@link #main(String[])} with test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageConverterBenchmark {
+    /** Icons can't be bigger than 256 pixels */
+    private static final int MAX_ICO_SIZE = 256;
+
+    @Param({"64", "512", "2048"})
+    private int size;
+    @Param({"jpeg", "png", "ico"})
+    private String format;
+
+    private ImageConverter converter;
+    private int imageType;
+    private byte[] uploadedImage;
+    private BufferedImage image;
+    private int resizedWidth;
+    private int resizedHeight;
+
+    @Setup
+    public void setUp() throws ImageProcessException {
+        converter = ImageConverter.createConverter(format, 100, 100);
+        imageType = format.equals("jpeg") ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        int side = format.equals("ico") ? Math.min(size, MAX_ICO_SIZE) : size;
+        BufferedImage original = new BufferedImage(side, side * 3 / 4, imageType);
+        for (int y = 0; y < original.getHeight(); y++) {
+            for (int x = 0; x < original.getWidth(); x++) {
+                original.setRGB(x, y, 0xFF000000 | (x * 255 / side) << 16 | (y * 255 / side) << 8 | (x ^ y) & 0xFF);
+            }
+        }
+        uploadedImage = new ImageConverter(format, imageType, side, side).convertImageToByteArray(original);
+        image = converter.convertByteArrayToImage(uploadedImage);
+        BufferedImage resized = converter.resizeImage(image, imageType);
+        resizedWidth = resized.getWidth();
+        resizedHeight = resized.getHeight();
+    }
+
+    @Benchmark
+    public BufferedImage resizePixelByPixel() {
+        return resizePixelByPixel(image, imageType, resizedWidth, resizedHeight);
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return converter.resizeImage(image, imageType);
+    }
+
+    @Benchmark
+    public String detectTypeWithNewTika() throws IOException {
+        return new Tika().detect(new ByteArrayInputStream(uploadedImage));
+    }
+
+    @Benchmark
+    public String detectTypeWithSharedTika() throws IOException {
+        return ImageService.TIKA.detect(new ByteArrayInputStream(uploadedImage));
+    }
+
+    @Benchmark
+    public byte[] preprocess() throws ImageProcessException {
+        return converter.preprocessImage(converter.convertByteArrayToImage(uploadedImage));
+    }
+
+    /**
+     * The resize {@link ImageConverter} used before: bilinear filtering with floating-point math
+     * that gets and sets every pixel through the color model.
+     */
+    private static BufferedImage resizePixelByPixel(BufferedImage source, int imageType, int width, int height) {
+        BufferedImage bufferedImage = new BufferedImage(width, height, imageType);
+        double scaleX = (double) width / source.getWidth();
+        double scaleY = (double) height / source.getHeight();
+        for (int y = 0; y < height; y++) {
+            int sourceY = y * source.getHeight() / bufferedImage.getHeight();
+            double yDiff = y / scaleY - sourceY;
+            for (int x = 0; x < width; x++) {
+                int sourceX = x * source.getWidth() / bufferedImage.getWidth();
+                double xDiff = x / scaleX - sourceX;
+                int x1 = Math.min(source.getWidth() - 1, sourceX + 1);
+                int y1 = Math.min(source.getHeight() - 1, sourceY + 1);
+                int rgb1 = interpolate(source.getRGB(sourceX, sourceY), source.getRGB(x1, sourceY), xDiff);
+                int rgb2 = interpolate(source.getRGB(sourceX, y1), source.getRGB(x1, y1), xDiff);
+                bufferedImage.setRGB(x, y, interpolate(rgb1, rgb2, yDiff));
+            }
+        }
+        return bufferedImage;
+    }
+
+    private static int interpolate(int value1, int value2, double distance) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel1 = (value1 >>> shift) & 0xFF;
+            int channel2 = (value2 >>> shift) & 0xFF;
+            result |= (int) (channel1 * (1.0 - distance) + channel2 * distance) << shift;
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -69,6 +69,58 @@ public class ImageConverterTest {
         assertEquals(modifiedImage.getHeight(null), expectedHeight);
     }
 
+    @Test
+    public void resizedImageShouldKeepColorAndTransparency() {
+        ImageConverter converter = new ImageConverter("png", BufferedImage.TYPE_INT_ARGB, 100, 100);
+        BufferedImage image = new BufferedImage(1000, 800, BufferedImage.TYPE_INT_ARGB);
+        fill(image, 0x80336699);
+
+        BufferedImage resized = converter.resizeImage(image, BufferedImage.TYPE_INT_ARGB);
+
+        assertEquals(resized.getWidth(), 100);
+        assertEquals(resized.getHeight(), 80);
+        assertEquals(resized.getRGB(0, 0), 0x80336699);
+        assertEquals(resized.getRGB(50, 40), 0x80336699);
+        assertEquals(resized.getRGB(99, 79), 0x80336699);
+    }
+
+    @Test
+    public void downscaledImageShouldAverageSourcePixels() {
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x + y) % 2 == 0 ? 0xFFFFFF : 0);
+            }
+        }
+
+        ImageConverter converter = new ImageConverter("jpeg", BufferedImage.TYPE_INT_RGB, 100, 100);
+
+        BufferedImage resized = converter.resizeImage(image, BufferedImage.TYPE_INT_RGB);
+
+        assertEquals(resized.getRGB(10, 10), 0xFF808080, "Black and white checkerboard should become grey");
+    }
+
+    @Test
+    public void imageWithoutIntegerPixelsShouldBeResized() {
+        BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_3BYTE_BGR);
+        fill(image, 0x336699);
+
+        ImageConverter converter = new ImageConverter("jpeg", BufferedImage.TYPE_INT_RGB, 100, 100);
+
+        BufferedImage resized = converter.resizeImage(image, BufferedImage.TYPE_INT_RGB);
+
+        assertEquals(resized.getWidth(), 100);
+        assertEquals(resized.getRGB(50, 50), 0xFF336699);
+    }
+
+    private void fill(BufferedImage image, int argb) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+    }
+
     @DataProvider(name = "parameterResizeImage")
     public Object[][] parameterResizeImage() {
         int widthWithAspectRatioOne = 4;
@@ -21,16 +21,21 @@ import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.UserService;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.springframework.security.core.session.SessionInformation;
 import org.springframework.security.core.session.SessionRegistry;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 /**
@@ -107,4 +112,121 @@ public class LocationServiceTest {
 		Map<JCUser, String> registerUserMap = mock(Map.class);
     	verify(registerUserMap, Mockito.never()).remove(Mockito.any());
     }
+
+    @Test
+    public void currentUserShouldBeViewerOfEntity() {
+        loggedIn(user);
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        List<JCUser> viewers = locationService.getUsersViewing(topic);
+
+        assertEquals(viewers, Collections.singletonList(user));
+    }
+
+    @Test
+    public void otherUsersViewingEntityShouldBeReturned() {
+        JCUser otherUser = new JCUser("other", "other@example.com", "");
+        loggedIn(user);
+        loggedIn(otherUser);
+        when(userService.getCurrentUser()).thenReturn(otherUser);
+        locationService.getUsersViewing(topic);
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        List<JCUser> viewers = locationService.getUsersViewing(topic);
+
+        assertEquals(viewers.size(), 2);
+        assertTrue(viewers.contains(user));
+        assertTrue(viewers.contains(otherUser));
+    }
+
+    @Test
+    public void userShouldNotBeViewerOfEntityHeLeft() {
+        JCUser otherUser = new JCUser("other", "other@example.com", "");
+        Topic otherTopic = new Topic(user, "");
+        otherTopic.setUuid("otherUuid");
+        loggedIn(user);
+        loggedIn(otherUser);
+        when(userService.getCurrentUser()).thenReturn(otherUser);
+        locationService.getUsersViewing(topic);
+        locationService.getUsersViewing(otherTopic);
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        List<JCUser> viewers = locationService.getUsersViewing(topic);
+
+        assertEquals(viewers, Collections.singletonList(user));
+    }
+
+    @Test
+    public void loggedOutUserShouldNotBeViewer() {
+        JCUser otherUser = new JCUser("other", "other@example.com", "");
+        loggedIn(user);
+        when(userService.getCurrentUser()).thenReturn(otherUser);
+        locationService.getUsersViewing(topic);
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        List<JCUser> viewers = locationService.getUsersViewing(topic);
+
+        assertEquals(viewers, Collections.singletonList(user));
+    }
+
+    @Test
+    public void idleUserShouldNotBeViewer() throws InterruptedException {
+        locationService = new LocationService(userService, sessionRegistry, 1);
+        JCUser otherUser = new JCUser("other", "other@example.com", "");
+        loggedIn(user);
+        loggedIn(otherUser);
+        when(userService.getCurrentUser()).thenReturn(otherUser);
+        locationService.getUsersViewing(topic);
+        Thread.sleep(10);
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        List<JCUser> viewers = locationService.getUsersViewing(topic);
+
+        assertEquals(viewers, Collections.singletonList(user));
+    }
+
+    @Test
+    public void userWithClearedLocationShouldNotBeViewer() {
+        JCUser otherUser = new JCUser("other", "other@example.com", "");
+        loggedIn(user);
+        loggedIn(otherUser);
+        when(userService.getCurrentUser()).thenReturn(otherUser);
+        locationService.getUsersViewing(topic);
+        locationService.clearUserLocation();
+        when(userService.getCurrentUser()).thenReturn(new AnonymousUser());
+
+        List<JCUser> viewers = locationService.getUsersViewing(topic);
+
+        assertTrue(viewers.isEmpty());
+    }
+
+    @Test
+    public void entityShouldBeRemovedFromIndexWhenItsLastViewerMovesElsewhere() {
+        Topic otherTopic = new Topic(user, "");
+        otherTopic.setUuid("otherUuid");
+        loggedIn(user);
+        when(userService.getCurrentUser()).thenReturn(user);
+        locationService.getUsersViewing(topic);
+
+        locationService.getUsersViewing(otherTopic);
+
+        assertEquals(locationService.getViewedEntitiesCount(), 1);
+    }
+
+    @Test
+    public void entityShouldBeRemovedFromIndexWhenLocationOfItsLastViewerIsCleared() {
+        loggedIn(user);
+        when(userService.getCurrentUser()).thenReturn(user);
+        locationService.getUsersViewing(topic);
+
+        locationService.clearUserLocation();
+
+        assertEquals(locationService.getViewedEntitiesCount(), 0);
+    }
+
+    private void loggedIn(JCUser user) {
+        List<SessionInformation> sessions = Collections.singletonList(
+                new SessionInformation(user, "sessionId", new Date()));
+        when(sessionRegistry.getAllSessions(user, false)).thenReturn(sessions);
+    }
 }
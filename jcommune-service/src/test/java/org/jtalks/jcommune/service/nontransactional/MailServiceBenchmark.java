@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.JCommuneProperty;
+import org.jtalks.jcommune.model.entity.Language;
+import org.jtalks.jcommune.service.exceptions.MailingFailedException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many subscription notifications {@link MailService} renders per second. Isn't run with tests, to run
+ * it execute {@link #main(String[])} with test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailServiceBenchmark {
+    private static final int RECIPIENTS = 100;
+    private static final String ROOT_URL = "http://jtalks.org:8080/forum";
+    private static final String ROOT_LABEL = "http://jtalks.org/forum";
+
+    private MailService notCachedTemplatesService;
+    private MailService cachedTemplatesService;
+    private List<JCUser> recipients;
+    private Branch branch;
+
+    @Setup
+    public void setUp() {
+        notCachedTemplatesService = createService(false);
+        cachedTemplatesService = createService(true);
+        branch = new Branch("branch", "description");
+        branch.setId(1L);
+        recipients = new ArrayList<JCUser>(RECIPIENTS);
+        for (int i = 0; i < RECIPIENTS; i++) {
+            JCUser recipient = new JCUser("user" + i, "user" + i + "@jtalks.org", "password");
+            recipient.setLanguage(i % 2 == 0 ? Language.ENGLISH : Language.RUSSIAN);
+            recipients.add(recipient);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public List<MimeMessage> renderForEveryRecipientWithoutTemplateCache() throws MailingFailedException {
+        return renderForEveryRecipient(notCachedTemplatesService);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public List<MimeMessage> renderForEveryRecipient() throws MailingFailedException {
+        return renderForEveryRecipient(cachedTemplatesService);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public List<MimeMessage> renderOncePerLocale() throws MailingFailedException {
+        return cachedTemplatesService.createUpdatesOnSubscriptionMails(recipients, branch, ROOT_URL, ROOT_LABEL);
+    }
+
+    private List<MimeMessage> renderForEveryRecipient(MailService service) throws MailingFailedException {
+        List<MimeMessage> messages = new ArrayList<MimeMessage>(RECIPIENTS);
+        for (JCUser recipient : recipients) {
+            messages.add(service.createUpdatesOnSubscriptionMail(recipient, branch, ROOT_URL, ROOT_LABEL));
+        }
+        return messages;
+    }
+
+    private MailService createService(boolean cacheTemplates) {
+        VelocityEngine velocityEngine = new VelocityEngine();
+        velocityEngine.setProperty("resource.loader", "class");
+        velocityEngine.setProperty("class.resource.loader.class",
+                "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+        velocityEngine.setProperty("class.resource.loader.cache", String.valueOf(cacheTemplates));
+        velocityEngine.setProperty("class.resource.loader.modificationCheckInterval", "-1");
+        velocityEngine.setProperty("runtime.log.logsystem.class", "org.apache.velocity.runtime.log.NullLogSystem");
+        velocityEngine.setProperty("eventhandler.referenceinsertion.class",
+                "org.apache.velocity.app.event.implement.EscapeHtmlReference");
+        ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
+        messageSource.setBasename("classpath:/org/jtalks/jcommune/service/bundle/TemplatesMessages");
+        messageSource.setDefaultEncoding("UTF-8");
+        return new MailService(new JavaMailSenderImpl(), "jtalks@jtalks.org", velocityEngine, messageSource,
+                JCommuneProperty.SENDING_NOTIFICATIONS_ENABLED);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MailServiceBenchmark.class.getSimpleName()).build()).run();
+    }
+}
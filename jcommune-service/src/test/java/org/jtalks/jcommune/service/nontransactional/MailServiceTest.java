@@ -24,6 +24,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.mail.MailAuthenticationException;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
@@ -40,6 +41,7 @@ import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 import java.io.IOException;
+import java.util.*;
 
 import static org.jtalks.jcommune.model.entity.JCommuneProperty.SENDING_NOTIFICATIONS_ENABLED;
 import static org.mockito.Mockito.*;
@@ -294,11 +296,21 @@ public class MailServiceTest {
     }
 
     private String getMimeMailBody() throws IOException, MessagingException {
-        return ((MimeMultipart) ((MimeMultipart) ((MimeMultipart) captor.getValue().getContent()).getBodyPart(0).
+        return getMimeMailBody(captor.getValue());
+    }
+
+    private String getMimeMailBody(MimeMessage message) throws IOException, MessagingException {
+        return ((MimeMultipart) ((MimeMultipart) ((MimeMultipart) message.getContent()).getBodyPart(0).
                 getDataHandler().getContent()).getBodyPart(0).getDataHandler().getContent()).getBodyPart(0).
                 getDataHandler().getContent().toString();//sorry
     }
 
+    private String getMimeMailHtmlBody(MimeMessage message) throws IOException, MessagingException {
+        return ((MimeMultipart) ((MimeMultipart) ((MimeMultipart) message.getContent()).getBodyPart(0).
+                getDataHandler().getContent()).getBodyPart(0).getDataHandler().getContent()).getBodyPart(1).
+                getDataHandler().getContent().toString();
+    }
+
     private String getMimeMailSubject() throws IOException, MessagingException {
         return captor.getValue().getSubject();
     }
@@ -378,4 +390,89 @@ public class MailServiceTest {
         assertTrue(this.getMimeMailBody().contains("http://coolsite.com:1234/forum/branches/" + branchId
                 + "/unsubscribe_link"));
     }
+
+    @Test
+    public void createdUpdatesMailShouldUsePassedDeploymentRootWithoutRequest() throws Exception {
+        RequestContextHolder.resetRequestAttributes();
+        branch.addTopic(topic);
+
+        MimeMessage message = service.createUpdatesOnSubscriptionMail(user, branch,
+                "http://outbox.com:8080/forum", "http://outbox.com/forum");
+
+        verify(sender, never()).send(Matchers.<MimeMessage>any());
+        assertTrue(getMimeMailBody(message).contains("http://outbox.com:8080/forum/branches/" + branchId));
+    }
+
+    @Test
+    public void updatesMailsShouldBeRenderedForEveryRecipient() throws Exception {
+        JCUser another = new JCUser("<another>", "another@jtalks.org", PASSWORD);
+        another.setLanguage(Language.RUSSIAN);
+        JCUser third = new JCUser("third", "third@jtalks.org", PASSWORD);
+        when(sender.createMimeMessage()).thenReturn(new MimeMessage((Session) null),
+                new MimeMessage((Session) null), new MimeMessage((Session) null));
+
+        List<MimeMessage> messages = service.createUpdatesOnSubscriptionMails(Arrays.asList(user, another, third),
+                branch, "http://outbox.com:8080/forum", "http://outbox.com/forum");
+
+        assertEquals(messages.size(), 3);
+        assertEquals(messages.get(1).getRecipients(Message.RecipientType.TO)[0], new InternetAddress(
+                "another@jtalks.org"));
+        assertTrue(getMimeMailBody(messages.get(0)).contains(USERNAME + "!"));
+        assertTrue(getMimeMailBody(messages.get(1)).contains("<another>!"));
+        assertTrue(getMimeMailHtmlBody(messages.get(1)).contains("&lt;another&gt;!"));
+        assertTrue(getMimeMailBody(messages.get(2)).contains("third!"));
+        assertTrue(getMimeMailBody(messages.get(2)).contains("http://outbox.com:8080/forum/branches/" + branchId));
+        assertTrue(messages.get(1).getSubject().contains("title Branch"));
+    }
+
+    @Test
+    public void topicCreationMailsShouldBeRenderedForEveryRecipient() throws Exception {
+        JCUser another = new JCUser("another", "another@jtalks.org", PASSWORD);
+        when(sender.createMimeMessage()).thenReturn(new MimeMessage((Session) null),
+                new MimeMessage((Session) null));
+
+        List<MimeMessage> messages = service.createTopicCreationMails(Arrays.asList(user, another), topic,
+                "http://outbox.com:8080/forum", "http://outbox.com/forum");
+
+        assertEquals(messages.size(), 2);
+        assertTrue(getMimeMailBody(messages.get(1)).contains("another!"));
+        assertTrue(getMimeMailBody(messages.get(1)).contains("http://outbox.com:8080/forum/topics/" + topicId));
+        assertTrue(getMimeMailBody(messages.get(1)).contains(
+                "http://outbox.com:8080/forum/branches/" + branchId + "/unsubscribe_link"));
+    }
+
+    @Test
+    public void sendAllShouldSendMessagesOverSingleConnection() {
+        MimeMessage first = new MimeMessage((Session) null);
+        MimeMessage second = new MimeMessage((Session) null);
+
+        Collection<MimeMessage> failed = service.sendAll(Arrays.asList(first, second));
+
+        verify(sender).send(first, second);
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    public void sendAllShouldReturnOnlyFailedMessages() {
+        MimeMessage first = new MimeMessage((Session) null);
+        MimeMessage second = new MimeMessage((Session) null);
+        Map<Object, Exception> failedMessages = new HashMap<Object, Exception>();
+        failedMessages.put(second, new MessagingException());
+        doThrow(new MailSendException(failedMessages)).when(sender).send(first, second);
+
+        Collection<MimeMessage> failed = service.sendAll(Arrays.asList(first, second));
+
+        assertEquals(failed, Collections.singleton(second));
+    }
+
+    @Test
+    public void sendAllShouldReturnAllMessagesWhenServerIsNotAvailable() {
+        MimeMessage first = new MimeMessage((Session) null);
+        MimeMessage second = new MimeMessage((Session) null);
+        doThrow(new MailAuthenticationException("")).when(sender).send(first, second);
+
+        Collection<MimeMessage> failed = service.sendAll(Arrays.asList(first, second));
+
+        assertEquals(failed, Arrays.asList(first, second));
+    }
 }
@@ -22,9 +22,6 @@ import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
 import org.mockito.Mock;
-import org.springframework.mock.web.MockHttpServletRequest;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletWebRequest;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -39,6 +36,7 @@ import static org.testng.Assert.assertTrue;
 
 /** @author Anuar_Nurmakanov */
 public class MentionedUsersTest {
+    private static final String CONTEXT_PATH = "/forum";
     private static final String MENTIONING_TEMPLATE = "This post contains not notified [user]%s[/user] mentioning " +
             "and notified [user notified=true]%s[/user] mentioning";
     private static final String MENTIONING_WITH_LINK_TO_PROFILE_TEMPALTE =
@@ -243,15 +241,6 @@ public class MentionedUsersTest {
         return post;
     }
 
-    private void setupRequestAttributes() {
-        MockHttpServletRequest request = new MockHttpServletRequest();
-        request.setScheme("http");
-        request.setServerName("localhost");
-        request.setServerPort(8080);
-        request.setContextPath("/forum");
-        RequestContextHolder.setRequestAttributes(new ServletWebRequest(request));
-    }
-
     public static <T> Set<T> asSet(T... values) {
         return new HashSet<T>(Arrays.asList(values));
     }
@@ -265,15 +254,14 @@ public class MentionedUsersTest {
 
     @Test
     public void processShouldAttachProfileLinkToExistCyrillicUsers() throws NotFoundException {
-        setupRequestAttributes();
 
         String cyrillicCharsUserName = "Иванов";
         String cyrillicCharsUserNameWithSpaces = "П е т р о в";
 
         JCUser cyrillicCharsUser = getUser(cyrillicCharsUserName, 100L);
-        when(userDao.getByUsername(cyrillicCharsUserName)).thenReturn(cyrillicCharsUser);
         JCUser notifiedMentionedUser = getUser(cyrillicCharsUserNameWithSpaces, 101L);
-        when(userDao.getByUsername(cyrillicCharsUserNameWithSpaces)).thenReturn(notifiedMentionedUser);
+        when(userDao.getByUsernames(asSet(cyrillicCharsUserName, cyrillicCharsUserNameWithSpaces)))
+                .thenReturn(asList(cyrillicCharsUser, notifiedMentionedUser));
         //
         String cyrillicCharsUserProfile = "/forum/users/" + cyrillicCharsUser.getId();
         String cyrillicCharsUserWithSpaceProfile = "/forum/users/" + notifiedMentionedUser.getId();
@@ -285,22 +273,21 @@ public class MentionedUsersTest {
                 cyrillicCharsUserProfile, cyrillicCharsUserName,
                 cyrillicCharsUserWithSpaceProfile, cyrillicCharsUserNameWithSpaces);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithBracketsInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithOpenBracket = "]yak";
         String userNameWithCloseBracket = "yak";
 
         JCUser userWithOpenBracketInName = getUser(userNameWithOpenBracket, 100L);
-        when(userDao.getByUsername(userNameWithOpenBracket)).thenReturn(userWithOpenBracketInName);
         JCUser userWithCloseBracketInName = getUser(userNameWithCloseBracket, 101L);
-        when(userDao.getByUsername(userNameWithCloseBracket)).thenReturn(userWithCloseBracketInName);
+        when(userDao.getByUsernames(asSet(userNameWithOpenBracket, userNameWithCloseBracket)))
+                .thenReturn(asList(userWithOpenBracketInName, userWithCloseBracketInName));
         //
         String withOpenBracketUserProfile = "/forum/users/" + userWithOpenBracketInName.getId();
         String withCloseBracketUserProfile = "/forum/users/" + userWithCloseBracketInName.getId();
@@ -312,22 +299,21 @@ public class MentionedUsersTest {
                 withOpenBracketUserProfile, userNameWithOpenBracket,
                 withCloseBracketUserProfile, userNameWithCloseBracket);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithSlashesInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithSlash = "/yak";
         String userNameWithBackSlash = "\\yak";
 
         JCUser userWithSlashInName = getUser(userNameWithSlash, 100L);
-        when(userDao.getByUsername(userNameWithSlash)).thenReturn(userWithSlashInName);
         JCUser userWithBackSlashInName = getUser(userNameWithBackSlash, 101L);
-        when(userDao.getByUsername(userNameWithBackSlash)).thenReturn(userWithBackSlashInName);
+        when(userDao.getByUsernames(asSet(userNameWithSlash, userNameWithBackSlash)))
+                .thenReturn(asList(userWithSlashInName, userWithBackSlashInName));
         //
         String withSlashUserProfile = "/forum/users/" + userWithSlashInName.getId();
         String withBackSlashUserProfile = "/forum/users/" + userWithBackSlashInName.getId();
@@ -339,22 +325,21 @@ public class MentionedUsersTest {
                 withSlashUserProfile, userNameWithSlash,
                 withBackSlashUserProfile, userNameWithBackSlash);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithLowerGreaterInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithLower = "<yak";
         String userNameWithGreater = ">yak";
 
         JCUser userWithLowerInName = getUser(userNameWithLower, 100L);
-        when(userDao.getByUsername(userNameWithLower)).thenReturn(userWithLowerInName);
         JCUser userWithGreaterInName = getUser(userNameWithGreater, 101L);
-        when(userDao.getByUsername(userNameWithGreater)).thenReturn(userWithGreaterInName);
+        when(userDao.getByUsernames(asSet(userNameWithLower, userNameWithGreater)))
+                .thenReturn(asList(userWithLowerInName, userWithGreaterInName));
         //
         String withLowerUserProfile = "/forum/users/" + userWithLowerInName.getId();
         String withGreaterUserProfile = "/forum/users/" + userWithGreaterInName.getId();
@@ -366,22 +351,21 @@ public class MentionedUsersTest {
                 withLowerUserProfile, userNameWithLower,
                 withGreaterUserProfile, userNameWithGreater);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithSpecialCharsInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithPercents = "%yak";
         String userNameWithPipeSymbol = "|yak";
 
         JCUser userWithPercentsInName = getUser(userNameWithPercents, 100L);
-        when(userDao.getByUsername(userNameWithPercents)).thenReturn(userWithPercentsInName);
         JCUser userWithPipeSymbolInName = getUser(userNameWithPipeSymbol, 101L);
-        when(userDao.getByUsername(userNameWithPipeSymbol)).thenReturn(userWithPipeSymbolInName);
+        when(userDao.getByUsernames(asSet(userNameWithPercents, userNameWithPipeSymbol)))
+                .thenReturn(asList(userWithPercentsInName, userWithPipeSymbolInName));
         //
         String withPercentsUserProfile = "/forum/users/" + userWithPercentsInName.getId();
         String withPipeSymbolUserProfile = "/forum/users/" + userWithPipeSymbolInName.getId();
@@ -393,22 +377,21 @@ public class MentionedUsersTest {
                 withPercentsUserProfile, userNameWithPercents,
                 withPipeSymbolUserProfile, userNameWithPipeSymbol);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistEncodedCyrillicUsers() throws NotFoundException {
-        setupRequestAttributes();
 
         String cyrillicCharsUserName = "%D0%98%D0%B2%D0%B0%D0%BD%D0%BE%D0%B2";
         String cyrillicCharsUserNameWithSpaces = "%D0%9F %D0%B5 %D1%82 %D1%80 %D0%BE %D0%B2";
 
         JCUser cyrillicCharsUser = getUser("Иванов", 100L);
-        when(userDao.getByUsername(cyrillicCharsUser.getUsername())).thenReturn(cyrillicCharsUser);
         JCUser cyrillicCharsWithSpacesUser = getUser("П е т р о в", 101L);
-        when(userDao.getByUsername(cyrillicCharsWithSpacesUser.getUsername())).thenReturn(cyrillicCharsWithSpacesUser);
+        when(userDao.getByUsernames(asSet(cyrillicCharsUser.getUsername(), cyrillicCharsWithSpacesUser.getUsername())))
+                .thenReturn(asList(cyrillicCharsUser, cyrillicCharsWithSpacesUser));
         //
         String cyrillicCharsUserProfile = "/forum/users/" + cyrillicCharsUser.getId();
         String cyrillicCharsUserWithSpaceProfile = "/forum/users/" + cyrillicCharsWithSpacesUser.getId();
@@ -420,22 +403,21 @@ public class MentionedUsersTest {
                 cyrillicCharsUserProfile, cyrillicCharsUserName,
                 cyrillicCharsUserWithSpaceProfile, cyrillicCharsUserNameWithSpaces);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithEncodedBracketsInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithOpenBracket = "@ywdffgg434y@yak";
         String userNameWithCloseBracket = "@w0956756wo@yak";
 
         JCUser userWithOpenBracketInName = getUser("[yak", 100L);
-        when(userDao.getByUsername("[yak")).thenReturn(userWithOpenBracketInName);
         JCUser userWithCloseBracketInName = getUser("]yak", 101L);
-        when(userDao.getByUsername("]yak")).thenReturn(userWithCloseBracketInName);
+        when(userDao.getByUsernames(asSet("[yak", "]yak")))
+                .thenReturn(asList(userWithOpenBracketInName, userWithCloseBracketInName));
         //
         String withOpenBracketUserProfile = "/forum/users/" + userWithOpenBracketInName.getId();
         String withCloseBracketUserProfile = "/forum/users/" + userWithCloseBracketInName.getId();
@@ -447,22 +429,21 @@ public class MentionedUsersTest {
                 withOpenBracketUserProfile, userNameWithOpenBracket,
                 withCloseBracketUserProfile, userNameWithCloseBracket);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithEncodedLowerGreaterInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithLower = "gertfgertgf@@@@@#4324234yak";
         String userNameWithGreater = ">yak";
 
         JCUser userWithLowerInName = getUser("<yak", 100L);
-        when(userDao.getByUsername("<yak")).thenReturn(userWithLowerInName);
         JCUser userWithGreaterInName = getUser(">yak", 101L);
-        when(userDao.getByUsername(">yak")).thenReturn(userWithGreaterInName);
+        when(userDao.getByUsernames(asSet("<yak", ">yak")))
+                .thenReturn(asList(userWithLowerInName, userWithGreaterInName));
         //
         String withLowerUserProfile = "/forum/users/" + userWithLowerInName.getId();
         String withGreaterUserProfile = "/forum/users/" + userWithGreaterInName.getId();
@@ -474,22 +455,21 @@ public class MentionedUsersTest {
                 withLowerUserProfile, userNameWithLower,
                 withGreaterUserProfile, userNameWithGreater);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
 
     @Test
     public void processShouldAttachProfileLinkToExistUsersWithEncodedSlashesInName() throws NotFoundException {
-        setupRequestAttributes();
 
         String userNameWithSlash = "/yak";
         String userNameWithBackSlash = "14@123435vggv4fyak";
 
         JCUser userWithSlashInName = getUser(userNameWithSlash, 100L);
-        when(userDao.getByUsername(userNameWithSlash)).thenReturn(userWithSlashInName);
         JCUser userWithBackSlashInName = getUser("\\yak", 101L);
-        when(userDao.getByUsername("\\yak")).thenReturn(userWithBackSlashInName);
+        when(userDao.getByUsernames(asSet(userNameWithSlash, "\\yak")))
+                .thenReturn(asList(userWithSlashInName, userWithBackSlashInName));
         //
         String withSlashUserProfile = "/forum/users/" + userWithSlashInName.getId();
         String withBackSlashUserProfile = "/forum/users/" + userWithBackSlashInName.getId();
@@ -501,8 +481,91 @@ public class MentionedUsersTest {
                 withSlashUserProfile, userNameWithSlash,
                 withBackSlashUserProfile, userNameWithBackSlash);
 
-        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao);
+        String actualAfterProcess = mentionedUsers.getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
+
+    @Test
+    public void processShouldLookUpAllMentionedUsersWithSingleQuery() {
+        JCUser shogun = getUser("Shogun", 100L);
+        when(userDao.getByUsernames(asSet("Shogun", "masyan", "jk1"))).thenReturn(asList(shogun));
+        String source = "[user]Shogun[/user], [user notified=true]masyan[/user], [user]jk1[/user] and " +
+                "[user]Shogun[/user]";
+
+        String actualAfterProcess = MentionedUsers.parse(source).getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
+
+        assertEquals(actualAfterProcess, "[user=/forum/users/100]Shogun[/user], masyan, jk1 and " +
+                "[user=/forum/users/100]Shogun[/user]");
+        verify(userDao).getByUsernames(asSet("Shogun", "masyan", "jk1"));
+        verify(userDao, never()).getByUsername(anyString());
+    }
+
+    @Test
+    public void processShouldNotAttachProfileLinkToUserWithNameInOtherCase() {
+        when(userDao.getByUsernames(asSet("Shogun"))).thenReturn(asList(getUser("shogun", 100L)));
+
+        String actualAfterProcess = MentionedUsers.parse("[user]Shogun[/user]")
+                .getTextWithProcessedUserTags(userDao, CONTEXT_PATH);
+
+        assertEquals(actualAfterProcess, "Shogun");
+    }
+
+    @Test
+    public void processShouldNotQueryUsersWhenNobodyIsMentioned() {
+        String source = "[user=/forum/users/1]Shogun[/user] is not a mentioning";
+
+        assertEquals(MentionedUsers.parse(source).getTextWithProcessedUserTags(userDao, CONTEXT_PATH), source);
+        verifyZeroInteractions(userDao);
+    }
+
+    @Test
+    public void extractMentionedUserShouldNotRecognizeBbCodesSpanningSeveralLines() {
+        String text = "[user]Sho\ngun[/user] [user]masyan[/user]";
+
+        Set<String> extractedUserNames = MentionedUsers.parse(text).extractAllMentionedUsers(text);
+
+        assertEquals(extractedUserNames, asSet("masyan"));
+    }
+
+    @Test
+    public void notifyNewlyMentionedUsersShouldMarkAllBbCodesAsNotifiedAtOnce() {
+        Post mentioningPost = getPost(1L, "[user]Shogun[/user], [user notified=true]masyan[/user], " +
+                "[user]%D0%B8%D0%B2%D0%B0%D0%BD%D0%BE%D0%B2[/user]");
+
+        MentionedUsers.parse(mentioningPost).markUsersAsAlreadyNotified(postDao);
+
+        assertEquals(mentioningPost.getPostContent(), "[user notified=true]Shogun[/user], " +
+                "[user notified=true]masyan[/user], [user notified=true]%D0%B8%D0%B2%D0%B0%D0%BD%D0%BE%D0%B2[/user]");
+        verify(postDao, times(1)).saveOrUpdate(mentioningPost);
+    }
+
+    @Test
+    public void notifyNewlyMentionedUsersShouldNotSavePostWithoutNewMentions() {
+        Post mentioningPost = getPost(1L, "[user notified=true]Shogun[/user]");
+
+        MentionedUsers.parse(mentioningPost).markUsersAsAlreadyNotified(postDao);
+
+        verify(postDao, never()).saveOrUpdate(mentioningPost);
+    }
+
+    @Test
+    public void decodeUriShouldDecodeUtf8EscapeSequences() {
+        assertEquals(MentionedUsers.decodeUri("%D0%B8%D0%B2%D0%B0%D0%BD%D0%BE%D0%B2"), "иванов");
+        assertEquals(MentionedUsers.decodeUri("%5Cyak%20%F0%9F%98%80"), "\\yak \uD83D\uDE00");
+    }
+
+    @Test
+    public void decodeUriShouldLeaveReservedCharactersEncoded() {
+        assertEquals(MentionedUsers.decodeUri("a%2Fb%3fc%23d"), "a%2Fb%3fc%23d");
+    }
+
+    @Test
+    public void decodeUriShouldReturnStringAsIsWhenItIsMalformed() {
+        assertEquals(MentionedUsers.decodeUri("%yak"), "%yak");
+        assertEquals(MentionedUsers.decodeUri("yak%"), "yak%");
+        assertEquals(MentionedUsers.decodeUri("%D0yak"), "%D0yak");
+        assertEquals(MentionedUsers.decodeUri("%C0%AF"), "%C0%AF");
+        assertEquals(MentionedUsers.decodeUri("%ED%A0%80"), "%ED%A0%80");
+    }
 }
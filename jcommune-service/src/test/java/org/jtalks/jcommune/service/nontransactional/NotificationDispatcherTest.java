@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.NotificationType;
+import org.jtalks.jcommune.service.NotificationOutboxService;
+import org.mockito.Mock;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class NotificationDispatcherTest {
+    private static final int BATCH_SIZE = 2;
+
+    @Mock
+    private NotificationOutboxService outboxService;
+
+    private NotificationDispatcher dispatcher;
+    private List<JCUser> recipients = Arrays.asList(new JCUser("username", "email@jtalks.org", "password"));
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        dispatcher = new NotificationDispatcher(outboxService, new SyncTaskExecutor(), BATCH_SIZE);
+        when(outboxService.claimDue(anyInt())).thenReturn(Collections.<Long>emptyList());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void enqueueOutsideOfTransactionShouldDispatchImmediately() {
+        dispatcher.enqueue(recipients, NotificationType.TOPIC_UPDATED, 1L);
+
+        verify(outboxService).enqueue(recipients, NotificationType.TOPIC_UPDATED, 1L);
+        verify(outboxService).claimDue(BATCH_SIZE * NotificationDispatcher.BATCHES_PER_DISPATCH);
+    }
+
+    @Test
+    public void enqueueWithinTransactionShouldDispatchAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        dispatcher.enqueue(recipients, NotificationType.TOPIC_UPDATED, 1L);
+
+        verify(outboxService).enqueue(recipients, NotificationType.TOPIC_UPDATED, 1L);
+        verify(outboxService, never()).claimDue(anyInt());
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        verify(outboxService).claimDue(BATCH_SIZE * NotificationDispatcher.BATCHES_PER_DISPATCH);
+    }
+
+    @Test
+    public void enqueueWithoutRecipientsShouldDoNothing() {
+        dispatcher.enqueue(Collections.<JCUser>emptyList(), NotificationType.TOPIC_UPDATED, 1L);
+
+        verifyZeroInteractions(outboxService);
+    }
+
+    @Test
+    public void dispatchShouldDeliverNotificationsInBatches() {
+        when(outboxService.claimDue(anyInt())).thenReturn(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+        dispatcher.dispatch();
+
+        verify(outboxService).deliver(Arrays.asList(1L, 2L));
+        verify(outboxService).deliver(Arrays.asList(3L, 4L));
+        verify(outboxService).deliver(Arrays.asList(5L));
+    }
+
+    @Test
+    public void dispatchShouldContinueWhenOutboxHasMoreNotifications() {
+        List<Long> full = new ArrayList<Long>();
+        for (long id = 0; id < BATCH_SIZE * NotificationDispatcher.BATCHES_PER_DISPATCH; id++) {
+            full.add(id);
+        }
+        when(outboxService.claimDue(anyInt())).thenReturn(full, Collections.<Long>emptyList());
+
+        dispatcher.dispatch();
+
+        verify(outboxService, times(2)).claimDue(anyInt());
+        verify(outboxService, times(NotificationDispatcher.BATCHES_PER_DISPATCH)).deliver(anyList());
+    }
+
+    @Test
+    public void failedBatchShouldNotPreventOthersFromDelivery() {
+        when(outboxService.claimDue(anyInt())).thenReturn(Arrays.asList(1L, 2L, 3L));
+        doThrow(new RuntimeException()).when(outboxService).deliver(Arrays.asList(1L, 2L));
+
+        dispatcher.dispatch();
+
+        verify(outboxService).deliver(Arrays.asList(3L));
+    }
+
+    @Test
+    public void rejectedDispatchShouldBeLeftToTimer() {
+        TaskExecutor executor = mock(TaskExecutor.class);
+        doThrow(new TaskRejectedException("busy")).when(executor).execute(any(Runnable.class));
+        dispatcher = new NotificationDispatcher(outboxService, executor, BATCH_SIZE);
+
+        dispatcher.wakeUp();
+        dispatcher.wakeUp();
+
+        verify(executor, times(2)).execute(any(Runnable.class));
+        verify(outboxService, never()).claimDue(anyInt());
+    }
+}
@@ -21,13 +21,16 @@ import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.SubscriptionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.MailingFailedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 
 import static org.jtalks.jcommune.model.entity.JCommuneProperty.SENDING_NOTIFICATIONS_ENABLED;
 import static org.mockito.Mockito.*;
@@ -49,6 +52,8 @@ public class NotificationServiceTest {
     private SubscriptionService subscriptionService;
     @Mock
     private PropertyDao propertyDao;
+    @Mock
+    private NotificationDispatcher dispatcher;
     private JCommuneProperty notificationsEnabledProperty = SENDING_NOTIFICATIONS_ENABLED;
     private NotificationService service;
     private final long TOPIC_ID = 1;
@@ -71,7 +76,8 @@ public class NotificationServiceTest {
                 userService,
                 mailService,
                 subscriptionService,
-                notificationsEnabledProperty);
+                notificationsEnabledProperty,
+                dispatcher);
         topic = new Topic(user1, "title");
         topic.setId(TOPIC_ID);
         branch = new Branch("name", "description");
@@ -93,9 +99,8 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(codeReview);
 
-        verify(mailService, times(2)).sendUpdatesOnSubscription(any(JCUser.class), eq(codeReview));
-        verify(mailService).sendUpdatesOnSubscription(user1, codeReview);
-        verify(mailService).sendUpdatesOnSubscription(user2, codeReview);
+        verifyEnqueued(NotificationType.CODE_REVIEW_UPDATED, codeReview.getId(), user1, user2);
+        verifyZeroInteractions(mailService);
         assertEquals(topic.getSubscribers().size(), 2);
     }
 
@@ -106,7 +111,7 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(codeReview);
 
-        verify(mailService, Mockito.never()).sendUpdatesOnSubscription(user1, codeReview);
+        verifyZeroInteractions(dispatcher, mailService);
     }
 
     @Test
@@ -127,9 +132,8 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(topic);
 
-        verify(mailService, times(2)).sendUpdatesOnSubscription(any(JCUser.class), eq(topic));
-        verify(mailService).sendUpdatesOnSubscription(user1, topic);
-        verify(mailService).sendUpdatesOnSubscription(user2, topic);
+        verifyEnqueued(NotificationType.TOPIC_UPDATED, TOPIC_ID, user1, user2);
+        verifyZeroInteractions(mailService);
         assertEquals(topic.getSubscribers().size(), 2);
     }
 
@@ -140,8 +144,7 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(topic);
 
-        verify(mailService, Mockito.never()).sendUpdatesOnSubscription(user1,
-                topic);
+        verifyZeroInteractions(dispatcher, mailService);
     }
 
     @Test
@@ -154,10 +157,8 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(branch);
 
-        verify(mailService, times(2)).sendUpdatesOnSubscription(
-                any(JCUser.class), eq(branch));
-        verify(mailService).sendUpdatesOnSubscription(user1, branch);
-        verify(mailService).sendUpdatesOnSubscription(user2, branch);
+        verifyEnqueued(NotificationType.BRANCH_UPDATED, branch.getId(), user1, user2);
+        verifyZeroInteractions(mailService);
         assertEquals(branch.getSubscribers().size(), 2);
     }
 
@@ -168,8 +169,7 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(branch);
 
-        verify(mailService, Mockito.never()).sendUpdatesOnSubscription(user1,
-                branch);
+        verifyZeroInteractions(dispatcher, mailService);
     }
 
     @Test
@@ -182,8 +182,8 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(topic);
 
-        verify(mailService).sendUpdatesOnSubscription(user2, topic);
-        verifyNoMoreInteractions(mailService);
+        verifyEnqueued(NotificationType.TOPIC_UPDATED, TOPIC_ID, user2);
+        verifyZeroInteractions(mailService);
     }
 
     @Test
@@ -196,8 +196,8 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(branch);
 
-        verify(mailService).sendUpdatesOnSubscription(user2, branch);
-        verifyNoMoreInteractions(mailService);
+        verifyEnqueued(NotificationType.BRANCH_UPDATED, branch.getId(), user2);
+        verifyZeroInteractions(mailService);
     }
 
     @Test
@@ -313,8 +313,7 @@ public class NotificationServiceTest {
 
         service.subscribedEntityChanged(topic, topicSubscribers);
 
-        verify(mailService, times(1)).sendUpdatesOnSubscription(any(JCUser.class), eq(topic));
-        verify(mailService).sendUpdatesOnSubscription(user1, topic);
+        verifyEnqueued(NotificationType.TOPIC_UPDATED, TOPIC_ID, user1);
         assertEquals(topic.getSubscribers().size(), 2);
     }
     
@@ -327,7 +326,14 @@ public class NotificationServiceTest {
         
         service.sendNotificationAboutTopicCreated(topic);
         
-        verify(mailService, times(1)).sendTopicCreationMail(user1, topic);
-        verifyNoMoreInteractions(mailService);
+        verifyEnqueued(NotificationType.TOPIC_CREATED, TOPIC_ID, user1);
+        verifyZeroInteractions(mailService);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void verifyEnqueued(NotificationType type, long entityId, JCUser... recipients) {
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(dispatcher).enqueue(captor.capture(), eq(type), eq(entityId));
+        assertEquals(new HashSet<JCUser>(captor.getValue()), new HashSet<JCUser>(Arrays.asList(recipients)));
     }
 }
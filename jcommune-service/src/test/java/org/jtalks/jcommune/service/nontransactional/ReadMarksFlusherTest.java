@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.service.LastReadPostService;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ReadMarksFlusherTest {
+    @Mock
+    private LastReadPostService lastReadPostService;
+
+    private ReadStateStore store;
+    private ReadMarksFlusher flusher;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        store = new ReadStateStore(10);
+        flusher = new ReadMarksFlusher(store, lastReadPostService);
+    }
+
+    @Test
+    public void marksShouldBeFlushedForEachUserSeparately() {
+        store.markRead(1L, 10L, new DateTime());
+        store.markRead(2L, 10L, new DateTime());
+
+        flusher.flushByTimer();
+
+        verify(lastReadPostService).flushReadMarks(1L);
+        verify(lastReadPostService).flushReadMarks(2L);
+    }
+
+    @Test
+    public void failureForOneUserShouldNotStopFlushingOthers() {
+        store.markRead(1L, 10L, new DateTime());
+        store.markRead(2L, 10L, new DateTime());
+        doThrow(new IllegalStateException()).when(lastReadPostService).flushReadMarks(anyLong());
+
+        flusher.flushByTimer();
+
+        verify(lastReadPostService).flushReadMarks(1L);
+        verify(lastReadPostService).flushReadMarks(2L);
+    }
+
+    @Test
+    public void nothingShouldBeFlushedWithoutMarks() {
+        flusher.flushByTimer();
+
+        verifyZeroInteractions(lastReadPostService);
+    }
+}
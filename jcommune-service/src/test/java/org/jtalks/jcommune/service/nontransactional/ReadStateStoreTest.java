@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.joda.time.DateTime;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class ReadStateStoreTest {
+    private static final long USER_ID = 1L;
+    private static final long TOPIC_ID = 10L;
+
+    private ReadStateStore store;
+    private DateTime date;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new ReadStateStore(2);
+        date = new DateTime(2013, 5, 1, 12, 0, 0, 0);
+    }
+
+    @Test
+    public void readStateShouldNotBeKeptBeforeLoading() {
+        assertNull(store.get(USER_ID));
+    }
+
+    @Test
+    public void loadedReadStateShouldContainSavedDates() {
+        ReadStateStore.UserReadState state = store.load(USER_ID, Collections.singletonMap(TOPIC_ID, date));
+
+        assertSame(store.get(USER_ID), state);
+        assertEquals(state.getLastReadPostDate(TOPIC_ID), date);
+        assertNull(state.getLastReadPostDate(TOPIC_ID + 1));
+    }
+
+    @Test
+    public void markShouldBeVisibleInLoadedReadState() {
+        ReadStateStore.UserReadState state = store.load(USER_ID, Collections.singletonMap(TOPIC_ID, date));
+
+        store.markRead(USER_ID, TOPIC_ID, date.plusDays(1));
+        store.markRead(USER_ID, TOPIC_ID + 1, date.plusDays(2));
+
+        assertEquals(state.getLastReadPostDate(TOPIC_ID), date.plusDays(1));
+        assertEquals(state.getLastReadPostDate(TOPIC_ID + 1), date.plusDays(2));
+        assertEquals(state.size(), 2);
+    }
+
+    @Test
+    public void pendingMarksShouldBeAppliedOverSavedDatesWhenLoading() {
+        store.markRead(USER_ID, TOPIC_ID, date.plusDays(1));
+
+        ReadStateStore.UserReadState state = store.load(USER_ID, Collections.singletonMap(TOPIC_ID, date));
+
+        assertEquals(state.getLastReadPostDate(TOPIC_ID), date.plusDays(1));
+    }
+
+    @Test
+    public void marksOfTheSameTopicShouldBeCoalesced() {
+        store.markRead(USER_ID, TOPIC_ID, date);
+        store.markRead(USER_ID, TOPIC_ID, date.plusDays(1));
+        store.markRead(USER_ID + 1, TOPIC_ID, date);
+
+        assertEquals(store.getUsersWithPendingMarks(), new HashSet<Long>(Arrays.asList(USER_ID, USER_ID + 1)));
+        assertEquals(store.drainPendingMarks(USER_ID), Collections.singletonMap(TOPIC_ID, date.plusDays(1)));
+        assertEquals(store.drainPendingMarks(USER_ID + 1), Collections.singletonMap(TOPIC_ID, date));
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+    }
+
+    @Test
+    public void marksOfOneUserShouldBeDrainedSeparately() {
+        store.markRead(USER_ID, TOPIC_ID, date);
+        store.markRead(USER_ID + 1, TOPIC_ID, date);
+
+        assertEquals(store.drainPendingMarks(USER_ID), Collections.singletonMap(TOPIC_ID, date));
+        assertTrue(store.drainPendingMarks(USER_ID).isEmpty());
+        assertEquals(store.getUsersWithPendingMarks(), Collections.singleton(USER_ID + 1));
+    }
+
+    @Test
+    public void restoredMarksShouldNotOverwriteNewerOnes() {
+        Map<Long, DateTime> drained = new HashMap<Long, DateTime>();
+        drained.put(TOPIC_ID, date);
+        drained.put(TOPIC_ID + 1, date);
+        store.markRead(USER_ID, TOPIC_ID, date.plusDays(1));
+
+        store.restorePendingMarks(USER_ID, drained);
+
+        Map<Long, DateTime> expected = new HashMap<Long, DateTime>();
+        expected.put(TOPIC_ID, date.plusDays(1));
+        expected.put(TOPIC_ID + 1, date);
+        assertEquals(store.drainPendingMarks(USER_ID), expected);
+    }
+
+    @Test
+    public void usersWithPendingMarksShouldBeFound() {
+        store.markRead(USER_ID, TOPIC_ID, date);
+        store.markRead(USER_ID + 1, TOPIC_ID, date);
+        store.drainPendingMarks(USER_ID + 1);
+
+        assertEquals(store.getUsersWithPendingMarks(), Collections.singleton(USER_ID));
+    }
+
+    @Test
+    public void evictionShouldForgetReadStateAndPendingMarks() {
+        store.load(USER_ID, Collections.<Long, DateTime>emptyMap());
+        store.markRead(USER_ID, TOPIC_ID, date);
+
+        store.evict(USER_ID);
+
+        assertNull(store.get(USER_ID));
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+    }
+
+    @Test
+    public void leastRecentlyUsedReadStateShouldBeForgottenWhenLimitIsReached() {
+        store.load(1L, Collections.<Long, DateTime>emptyMap());
+        store.load(2L, Collections.<Long, DateTime>emptyMap());
+        store.get(1L);
+
+        store.load(3L, Collections.<Long, DateTime>emptyMap());
+
+        assertNotNull(store.get(1L));
+        assertNull(store.get(2L));
+        assertNotNull(store.get(3L));
+    }
+
+    @Test
+    public void readStateShouldKeepManyTopics() {
+        Map<Long, DateTime> saved = new HashMap<Long, DateTime>();
+        for (long topicId = 1; topicId <= 1000; topicId++) {
+            saved.put(topicId, date.plusMinutes((int) topicId));
+        }
+        ReadStateStore.UserReadState state = store.load(USER_ID, saved);
+        for (long topicId = 1001; topicId <= 3000; topicId++) {
+            store.markRead(USER_ID, topicId, date.plusMinutes((int) topicId));
+        }
+
+        assertEquals(state.size(), 3000);
+        for (long topicId = 1; topicId <= 3000; topicId++) {
+            assertEquals(state.getLastReadPostDate(topicId), date.plusMinutes((int) topicId));
+        }
+        assertNull(state.getLastReadPostDate(3001));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class RenderedPostCacheTest {
+    private static final String CONTEXT = "localhost/jcommune";
+    private static final String HTML = "<span>html</span>";
+
+    private Ehcache ehcache;
+    private RenderedPostCache cache;
+    private Post post;
+
+    @BeforeMethod
+    public void setUp() {
+        ehcache = mock(Ehcache.class);
+        cache = new RenderedPostCache(ehcache, 1);
+        post = new Post(new JCUser("username", "email@mail.com", "password"), "[b]content[/b]");
+        post.setId(1L);
+    }
+
+    @Test
+    public void renderedPostShouldBeReturnedIfPostIsNotChanged() {
+        putAndStore(HTML);
+
+        assertEquals(cache.get(post, CONTEXT), HTML);
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getMissCount(), 0);
+    }
+
+    @Test
+    public void renderedPostShouldNotBeReturnedIfPostIsModified() {
+        putAndStore(HTML);
+
+        post.updateModificationDate();
+
+        assertNull(cache.get(post, CONTEXT));
+        assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test
+    public void renderedPostShouldNotBeReturnedIfContentIsChangedWithoutModificationDate() {
+        putAndStore(HTML);
+
+        post.setPostContent("[b]other content[/b]");
+
+        assertNull(cache.get(post, CONTEXT));
+    }
+
+    @Test
+    public void renderedPostShouldNotBeReturnedForOtherRenderingContext() {
+        putAndStore(HTML);
+
+        assertNull(cache.get(post, "otherhost/jcommune"));
+    }
+
+    @Test
+    public void renderedPostShouldNotBeReturnedAfterInvalidation() {
+        putAndStore(HTML);
+
+        cache.invalidate();
+
+        assertNull(cache.get(post, CONTEXT));
+        assertEquals(cache.getConfigVersion(), 2);
+        verify(ehcache).removeAll();
+    }
+
+    @Test
+    public void postRenderedBeforeInvalidationShouldNotBeStored() {
+        int versionBeforeRendering = cache.getConfigVersion();
+        cache.invalidate();
+
+        cache.put(post, CONTEXT, versionBeforeRendering, HTML);
+
+        verify(ehcache, never()).put(any(Element.class));
+    }
+
+    @Test
+    public void missingPostShouldBeCountedAsMiss() {
+        assertNull(cache.get(post, CONTEXT));
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitRatio(), 0.0);
+    }
+
+    @Test
+    public void hitRatioShouldBeCalculatedFromHitsAndMisses() {
+        putAndStore(HTML);
+
+        cache.get(post, CONTEXT);
+        cache.get(post, CONTEXT);
+        cache.get(post, CONTEXT);
+        cache.get(post, "otherhost/jcommune");
+
+        assertEquals(cache.getHitRatio(), 0.75);
+    }
+
+    @Test
+    public void renderTimesShouldBeCountedInBuckets() {
+        cache.recordRenderTime(TimeUnit.MICROSECONDS.toNanos(300));
+        cache.recordRenderTime(TimeUnit.MILLISECONDS.toNanos(3));
+        cache.recordRenderTime(TimeUnit.MILLISECONDS.toNanos(5));
+        cache.recordRenderTime(TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(cache.getRenderTimeHistogram(), new long[]{1, 1, 1, 0, 0, 1});
+        assertEquals(cache.getRenderTimeBucketBoundsMillis().length + 1, cache.getRenderTimeHistogram().length);
+    }
+
+    @Test
+    public void averageRenderTimeShouldBeCalculatedInMillis() {
+        cache.recordRenderTime(TimeUnit.MILLISECONDS.toNanos(2));
+        cache.recordRenderTime(TimeUnit.MILLISECONDS.toNanos(4));
+
+        assertEquals(cache.getAverageRenderTimeMillis(), 3.0);
+    }
+
+    private void putAndStore(String html) {
+        cache.put(post, CONTEXT, cache.getConfigVersion(), html);
+        ArgumentCaptor<Element> element = ArgumentCaptor.forClass(Element.class);
+        verify(ehcache).put(element.capture());
+        when(ehcache.get(post.getId())).thenReturn(element.getValue());
+    }
+}
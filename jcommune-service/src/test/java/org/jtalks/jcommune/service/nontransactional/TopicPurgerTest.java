@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.common.model.entity.Section;
+import org.jtalks.jcommune.service.SectionService;
+import org.jtalks.jcommune.service.TopicModificationService;
+import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.testng.Assert.assertEquals;
+
+public class TopicPurgerTest {
+    private static final int CHUNK_SIZE = 2;
+    private static final long BRANCH_ID = 1L;
+    private static final long SECTION_ID = 2L;
+
+    @Mock
+    private TopicModificationService topicService;
+    @Mock
+    private SectionService sectionService;
+
+    private TopicPurger purger;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        purger = new TopicPurger(topicService, sectionService, CHUNK_SIZE);
+    }
+
+    @Test
+    public void purgeBranchShouldDeleteChunksUntilChunkIsNotFull() throws NotFoundException {
+        when(topicService.deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE)).thenReturn(2, 2, 1);
+
+        int deleted = purger.purgeBranch(BRANCH_ID);
+
+        assertEquals(deleted, 5);
+        verify(topicService, times(3)).deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE);
+    }
+
+    @Test
+    public void purgeBranchShouldStopWhenNothingIsLeft() throws NotFoundException {
+        when(topicService.deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE)).thenReturn(2, 0);
+
+        int deleted = purger.purgeBranch(BRANCH_ID);
+
+        assertEquals(deleted, 2);
+        verify(topicService, times(2)).deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE);
+    }
+
+    @Test(expectedExceptions = NotFoundException.class)
+    public void purgeBranchShouldFailIfBranchNotFound() throws NotFoundException {
+        when(topicService.deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE)).thenThrow(new NotFoundException());
+
+        purger.purgeBranch(BRANCH_ID);
+    }
+
+    @Test
+    public void purgeSectionShouldPurgeAllBranchesOfSection() throws NotFoundException {
+        when(sectionService.getBranchIds(SECTION_ID)).thenReturn(Arrays.asList(BRANCH_ID, 3L));
+        when(topicService.deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE)).thenReturn(1);
+        when(topicService.deleteTopicsSilent(3L, CHUNK_SIZE)).thenReturn(0);
+
+        int deleted = purger.purgeSection(SECTION_ID);
+
+        assertEquals(deleted, 1);
+        verify(topicService).deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE);
+        verify(topicService).deleteTopicsSilent(3L, CHUNK_SIZE);
+    }
+
+    @Test(expectedExceptions = NotFoundException.class)
+    public void purgeSectionShouldFailIfSectionNotFound() throws NotFoundException {
+        when(sectionService.getBranchIds(SECTION_ID)).thenThrow(new NotFoundException());
+
+        purger.purgeSection(SECTION_ID);
+    }
+
+    @Test
+    public void purgeForumShouldPurgeAllSections() throws NotFoundException {
+        Section section = new Section("section");
+        section.setId(SECTION_ID);
+        when(sectionService.getAll()).thenReturn(Collections.singletonList(section));
+        when(sectionService.getBranchIds(SECTION_ID)).thenReturn(Collections.singletonList(BRANCH_ID));
+        when(topicService.deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE)).thenReturn(1);
+
+        int deleted = purger.purgeForum();
+
+        assertEquals(deleted, 1);
+        verify(topicService).deleteTopicsSilent(BRANCH_ID, CHUNK_SIZE);
+    }
+}
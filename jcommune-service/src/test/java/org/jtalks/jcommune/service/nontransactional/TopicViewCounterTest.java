@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TopicViewCounterTest {
+
+    @Test
+    public void viewsShouldBeCountedPerTopic() {
+        TopicViewCounter counter = new TopicViewCounter();
+
+        counter.countView(1L);
+        counter.countView(1L);
+        counter.countView(2L);
+
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        expected.put(1L, 2);
+        expected.put(2L, 1);
+        assertEquals(counter.drain(), expected);
+    }
+
+    @Test
+    public void drainedViewsShouldNotBeTakenAgain() {
+        TopicViewCounter counter = new TopicViewCounter();
+        counter.countView(1L);
+        counter.drain();
+
+        assertTrue(counter.drain().isEmpty());
+        counter.countView(1L);
+        assertEquals(counter.drain(), Collections.singletonMap(1L, 1));
+    }
+
+    @Test
+    public void restoredViewsShouldBeAddedToCountedOnes() {
+        TopicViewCounter counter = new TopicViewCounter();
+        counter.countView(1L);
+        Map<Long, Integer> drained = counter.drain();
+        counter.countView(1L);
+        counter.countView(2L);
+
+        counter.restore(drained);
+
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        expected.put(1L, 2);
+        expected.put(2L, 1);
+        assertEquals(counter.drain(), expected);
+    }
+
+    @Test
+    public void noViewShouldBeLostWhenCountedConcurrentlyWithDraining() throws Exception {
+        final TopicViewCounter counter = new TopicViewCounter();
+        final int threads = 4;
+        final int viewsPerThread = 20000;
+        final CountDownLatch finished = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int view = 0; view < viewsPerThread; view++) {
+                        counter.countView(view % 3);
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+        long total = 0;
+        while (finished.getCount() > 0) {
+            total += sum(counter.drain());
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        total += sum(counter.drain());
+
+        assertEquals(total, threads * viewsPerThread);
+    }
+
+    private static long sum(Map<Long, Integer> views) {
+        long sum = 0;
+        for (int count : views.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+}
@@ -88,7 +88,7 @@ public class AclGroupPermissionEvaluatorTest {
     public void init() throws NotFoundException {
         MockitoAnnotations.initMocks(this);
         evaluator = new AclGroupPermissionEvaluator(aclManager, aclUtil, groupDao,
-                sidFactory, mutableAclService, userDao);
+                sidFactory, mutableAclService, userDao, new PermissionDecisionCache());
         objectIdentity = new ObjectIdentityImpl(targetType, targetId);
         Mockito.when(aclUtil.createIdentity(targetId, targetType)).thenReturn(objectIdentity);
         user = new JCUser("username", "email", "password");
@@ -232,6 +232,36 @@ public class AclGroupPermissionEvaluatorTest {
         Assert.assertFalse(evaluator.hasPermission(authentication, targetId, targetType, "123"));
     }
 
+    @Test
+    public void testHasPermissionShouldReturnCachedDecisionWithoutReadingAcl() throws Exception {
+        PermissionDecisionCache decisionCache = Mockito.mock(PermissionDecisionCache.class);
+        evaluator = new AclGroupPermissionEvaluator(aclManager, aclUtil, groupDao,
+                sidFactory, mutableAclService, userDao, decisionCache);
+        when(decisionCache.get(Mockito.any(PermissionDecisionCache.Key.class))).thenReturn(true);
+
+        Assert.assertTrue(evaluator.hasPermission(authentication, targetId, targetType, permission));
+        Mockito.verify(mutableAclService, Mockito.never()).readAclById(Mockito.any(ObjectIdentity.class));
+        Mockito.verify(aclManager, Mockito.never()).getGroupPermissionsOn(Mockito.any(ObjectIdentity.class));
+    }
+
+    @Test
+    public void testHasPermissionShouldCacheEvaluatedDecision() throws Exception {
+        List<AccessControlEntry> aces = new ArrayList<AccessControlEntry>();
+        aces.add(createAccessControlEntry(generalPermission, true, userSid));
+        Mockito.when(acl.getEntries()).thenReturn(aces);
+        Mockito.when(aclManager.getGroupPermissionsOn(objectIdentity)).thenReturn(new ArrayList<GroupAce>());
+        PermissionDecisionCache decisionCache = Mockito.mock(PermissionDecisionCache.class);
+        evaluator = new AclGroupPermissionEvaluator(aclManager, aclUtil, groupDao,
+                sidFactory, mutableAclService, userDao, decisionCache);
+        when(decisionCache.get(Mockito.any(PermissionDecisionCache.Key.class))).thenReturn(null);
+        when(decisionCache.getGeneration()).thenReturn(7L);
+
+        Assert.assertTrue(evaluator.hasPermission(authentication, targetId, targetType, permission));
+        PermissionDecisionCache.Key expectedKey = new PermissionDecisionCache.Key(
+                userSid.getSidId(), new ArrayList<Long>(), objectIdentity, generalPermission);
+        Mockito.verify(decisionCache).put(expectedKey, true, 7L);
+    }
+
     @SuppressWarnings("deprecation")
     @Test(expectedExceptions = UnsupportedOperationException.class)
     public void testHasPermission() throws Exception {
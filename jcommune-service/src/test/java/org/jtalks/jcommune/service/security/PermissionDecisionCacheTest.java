@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.security;
+
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+public class PermissionDecisionCacheTest {
+    private final PermissionDecisionCache.Key branchKey = new PermissionDecisionCache.Key(
+            "user:1", Arrays.asList(2L, 1L), new ObjectIdentityImpl("BRANCH", 1L), BranchPermission.CREATE_POSTS);
+    private final PermissionDecisionCache.Key topicKey = new PermissionDecisionCache.Key(
+            "user:1", Arrays.asList(1L, 2L), new ObjectIdentityImpl("TOPIC", 1L), BranchPermission.CREATE_POSTS);
+
+    @AfterMethod
+    public void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void decisionShouldBeRememberedTillEndOfRequest() {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        startRequest();
+
+        cache.put(topicKey, true, cache.getGeneration());
+
+        assertEquals(cache.get(topicKey), Boolean.TRUE);
+        startRequest();
+        assertNull(cache.get(topicKey));
+    }
+
+    @Test
+    public void decisionShouldNotBeRememberedWithoutRequest() {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+
+        cache.put(topicKey, true, cache.getGeneration());
+
+        assertNull(cache.get(topicKey));
+    }
+
+    @Test
+    public void keysShouldNotDependOnOrderOfGroups() {
+        PermissionDecisionCache.Key sameGroupsInOtherOrder = new PermissionDecisionCache.Key(
+                "user:1", Arrays.asList(1L, 2L), new ObjectIdentityImpl("BRANCH", 1L), BranchPermission.CREATE_POSTS);
+
+        assertEquals(sameGroupsInOtherOrder, branchKey);
+        assertEquals(sameGroupsInOtherOrder.hashCode(), branchKey.hashCode());
+    }
+
+    @Test
+    public void decisionOnBranchShouldNotBeSharedBetweenRequests() {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        startRequest();
+
+        cache.put(branchKey, false, cache.getGeneration());
+        startRequest();
+
+        assertNull(cache.get(branchKey));
+    }
+
+    @Test
+    public void invalidationShouldDropRequestDecisions() {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        startRequest();
+        cache.put(branchKey, true, cache.getGeneration());
+        cache.put(topicKey, true, cache.getGeneration());
+
+        cache.invalidate();
+
+        assertNull(cache.get(branchKey));
+        assertNull(cache.get(topicKey));
+        assertEquals(cache.getInvalidationCount(), 1);
+    }
+
+    @Test
+    public void decisionEvaluatedBeforeInvalidationShouldNotBeRemembered() {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        startRequest();
+        long generation = cache.getGeneration();
+
+        cache.invalidate();
+        cache.put(branchKey, true, generation);
+
+        assertNull(cache.get(branchKey));
+    }
+
+    @Test
+    public void statisticsShouldCountHitsAndMisses() {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        startRequest();
+
+        cache.get(topicKey);
+        cache.put(topicKey, true, cache.getGeneration());
+        cache.get(topicKey);
+        cache.get(topicKey);
+
+        assertEquals(cache.getHitCount(), 2);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitRatio(), 2.0 / 3, 0.0001);
+    }
+
+    private void startRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletWebRequest(new MockHttpServletRequest()));
+    }
+}
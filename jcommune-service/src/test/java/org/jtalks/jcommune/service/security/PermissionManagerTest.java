@@ -31,6 +31,7 @@ import org.jtalks.common.security.acl.ExtendedMutableAcl;
 import org.jtalks.common.security.acl.GroupAce;
 import org.jtalks.common.security.acl.sids.UserGroupSid;
 import org.jtalks.common.security.acl.sids.UserSid;
+import org.jtalks.jcommune.model.dao.BranchVisibilityCache;
 import org.jtalks.jcommune.model.dto.GroupsPermissions;
 import org.jtalks.jcommune.model.dto.PermissionChanges;
 import org.jtalks.jcommune.model.entity.AnonymousGroup;
@@ -80,6 +81,10 @@ public class PermissionManagerTest extends AbstractTransactionalTestNGSpringCont
     @Mock
     private AclUtil aclUtil;
     @Mock
+    private PermissionDecisionCache decisionCache;
+    @Mock
+    private BranchVisibilityCache visibilityCache;
+    @Mock
     private PermissionManager manager;
     @Autowired
     private SessionFactory sessionFactory;
@@ -150,7 +155,7 @@ public class PermissionManagerTest extends AbstractTransactionalTestNGSpringCont
         when(mutableAcl.getEntries()).thenReturn(controlEntries);
         when(aclUtil.getAclFor(objectIdentity)).thenReturn(mutableAcl);
 
-        manager = new PermissionManager(aclManager, groupDao, aclUtil);
+        manager = new PermissionManager(aclManager, groupDao, aclUtil, decisionCache, visibilityCache);
     }
 
     @Test(dataProvider = "accessChanges")
@@ -164,6 +169,8 @@ public class PermissionManagerTest extends AbstractTransactionalTestNGSpringCont
 
         verify(aclManager, times(changes.getNewlyAddedGroupsAsArray().length)).
                 grant(anyListOf(Sid.class), eq(listFromArray(changes.getPermission())), eq(branch));
+        verify(decisionCache).invalidate();
+        verify(visibilityCache).invalidate();
     }
 
     @Test(dataProvider = "accessChanges")
@@ -177,6 +184,8 @@ public class PermissionManagerTest extends AbstractTransactionalTestNGSpringCont
 
         verify(aclManager, times(changes.getNewlyAddedGroupsAsArray().length)).
                 restrict(anyListOf(Sid.class), eq(listFromArray(changes.getPermission())), eq(branch));
+        verify(decisionCache).invalidate();
+        verify(visibilityCache).invalidate();
     }
 
     @Test
@@ -24,8 +24,7 @@ import org.jtalks.jcommune.model.dto.PermissionChanges;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.service.BranchService;
-import org.jtalks.jcommune.service.TopicModificationService;
-import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.jtalks.jcommune.service.security.PermissionService;
@@ -35,12 +34,10 @@ import org.testng.annotations.Test;
 
 import java.util.*;
 
-import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
-import static org.testng.Assert.assertTrue;
 
 /**
  * This test class is intended to test all topic-related forum branch facilities
@@ -66,11 +63,9 @@ public class TransactionalBranchServiceTest {
     @Mock
     private BranchService branchService;
     @Mock
-    private TopicModificationService topicService;
-    @Mock
-    private UserService userService;
-    @Mock
     private PermissionService permissionService;
+    @Mock
+    private LastReadPostService lastReadPostService;
 
     private Topic topic;
     private Section section;
@@ -83,8 +78,8 @@ public class TransactionalBranchServiceTest {
                 sectionDao,
                 topicDao,
                 groupDao,
-                topicService,
-                permissionService);
+                permissionService,
+                lastReadPostService);
         topic = null;
         section = null;
     }
@@ -165,52 +160,25 @@ public class TransactionalBranchServiceTest {
     }
 
     @Test
-    public void testFillStatisticInfoToRegisteredUser() {
+    public void testFillStatisticInfo() {
         int expectedPostsCount = 10;
         int expectedTopicsCount = 20;
-        boolean expectedUnreadPostsCount = true;
-        JCUser user = new JCUser("username", "email", "password");
         Branch branch = new Branch(BRANCH_NAME, BRANCH_DESCRIPTION);
-        org.jtalks.common.model.entity.Branch commonBranch = branch;
-
-        when(branchDao.getCountPostsInBranch(branch)).thenReturn(expectedPostsCount);
-        when(topicDao.countTopics(branch)).thenReturn(expectedTopicsCount);
-        when(userService.getCurrentUser()).thenReturn(user);
-        //TODO Was removed till milestone 2 due to performance issues
-//        when(branchDao.isUnreadPostsInBranch(branch, user)).thenReturn(expectedUnreadPostsCount);
+        branch.setPostsCount(expectedPostsCount);
+        branch.setTopicsCount(expectedTopicsCount);
+        List<org.jtalks.common.model.entity.Branch> commonBranches =
+                Arrays.<org.jtalks.common.model.entity.Branch>asList(branch);
 
-        branchService.fillStatisticInfo(Arrays.asList(commonBranch));
+        branchService.fillStatisticInfo(commonBranches);
 
         assertEquals(branch.getTopicCount(), expectedTopicsCount,
                 "Incorrect count of topics");
         assertEquals(branch.getPostCount(), expectedPostsCount,
                 "Incorrect count of posts");
-//        assertEquals(branch.isUnreadPosts(), expectedUnreadPostsCount,
-//                "Incorrect unread posts state");
-    }
-
-    @Test
-    public void testFillStatisticInfoToAnnonumous() {
-        int expectedPostsCount = 10;
-        int expectedTopicsCount = 20;
-        boolean expectedUnreadPostsCount = true;
-        JCUser user = new AnonymousUser();
-        Branch branch = new Branch(BRANCH_NAME, BRANCH_DESCRIPTION);
-        org.jtalks.common.model.entity.Branch commonBranch = branch;
-
-        when(branchDao.getCountPostsInBranch(branch)).thenReturn(expectedPostsCount);
-        when(topicDao.countTopics(branch)).thenReturn(expectedTopicsCount);
-        when(userService.getCurrentUser()).thenReturn(user);
-        //TODO fWas removed till milestone 2 due to performance issues
-//        when(branchDao.isUnreadPostsInBranch(branch, user)).thenReturn(expectedUnreadPostsCount);
-
-        branchService.fillStatisticInfo(Arrays.asList(commonBranch));
-
-        assertEquals(branch.getTopicCount(), expectedTopicsCount,
-                "Incorrect count of topics");
-        assertEquals(branch.getPostCount(), expectedPostsCount,
-                "Incorrect count of posts");
-//        verify(branchDao, times(0)).isUnreadPostsInBranch(branch, user);
+        verify(branchDao).loadLastPosts(Arrays.asList(branch));
+        verify(branchDao, never()).getCountPostsInBranch(branch);
+        verify(topicDao, never()).countTopics(branch);
+        verify(lastReadPostService).fillUnreadPostsForBranches(Arrays.asList(branch));
     }
 
     @Test
@@ -233,46 +201,6 @@ public class TransactionalBranchServiceTest {
         branchService.get(BRANCH_ID);
     }
 
-    @Test
-    public void testDeleteAllTopics() throws NotFoundException {
-        Branch expectedBranch = new Branch(BRANCH_NAME, BRANCH_DESCRIPTION);
-        expectedBranch.addTopic(new Topic());
-        expectedBranch.addTopic(new Topic());
-
-        when(branchDao.isExist(BRANCH_ID)).thenReturn(true);
-        when(branchDao.get(BRANCH_ID)).thenReturn(expectedBranch);
-
-        Branch actualBranch = branchService.deleteAllTopics(BRANCH_ID);
-
-        assertEquals(actualBranch, expectedBranch, "Branches aren't equal");
-        verify(branchDao).isExist(BRANCH_ID);
-        verify(branchDao).get(BRANCH_ID);
-        verify(topicService, times(2)).deleteTopicSilent(anyLong());
-    }
-
-    @Test
-    public void testDeleteAllTopicsInEmptyBranch() throws NotFoundException {
-        Branch expectedBranch = new Branch(BRANCH_NAME, BRANCH_DESCRIPTION);
-        when(branchDao.isExist(BRANCH_ID)).thenReturn(true);
-        when(branchDao.get(BRANCH_ID)).thenReturn(expectedBranch);
-
-        Branch actualBranch = branchService.deleteAllTopics(BRANCH_ID);
-
-        assertEquals(actualBranch, expectedBranch, "Branches aren't equal");
-        verify(branchDao).isExist(BRANCH_ID);
-        verify(branchDao).get(BRANCH_ID);
-        verify(topicService, times(0)).deleteTopicSilent(anyLong());
-    }
-
-    @Test(expectedExceptions = NotFoundException.class)
-    public void testDeleteAllTopicsWithIncorrectId() throws NotFoundException {
-        when(branchDao.isExist(BRANCH_ID)).thenReturn(false);
-
-        branchService.deleteAllTopics(BRANCH_ID);
-
-        assertTrue(false);
-    }
-
     @Test(expectedExceptions = NotFoundException.class)
     public void changeBranchInfoRequestShouldThrowExceptionWhenBranchDoesNotExist() throws NotFoundException {
         long branchId = 42;
@@ -281,4 +209,11 @@ public class TransactionalBranchServiceTest {
         branchService.changeBranchInfo(0, branchId, "", "");
     }
 
+    @Test
+    public void recalculateCountersByTimerShouldDelegateToDao() {
+        branchService.recalculateCountersByTimer();
+
+        verify(branchDao).recalculateCounters();
+    }
+
 }
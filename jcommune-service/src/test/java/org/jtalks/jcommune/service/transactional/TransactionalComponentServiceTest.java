@@ -105,6 +105,7 @@ public class TransactionalComponentServiceTest {
         verify(component).setProperty(TransactionalComponentService.LOGO_PROPERTY, LOGO);
 
         verify(component).setProperty(eq(TransactionalComponentService.COMPONENT_INFO_CHANGE_DATE_PROPERTY), anyString());
+        verify(componentDao).saveOrUpdate(component);
     }
 
     @Test(dataProvider = "emptyValues")
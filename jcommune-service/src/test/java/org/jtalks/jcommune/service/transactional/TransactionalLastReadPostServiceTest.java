@@ -19,15 +19,22 @@ import org.jtalks.jcommune.model.dao.LastReadPostDao;
 import org.jtalks.jcommune.model.dao.UserDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.ReadStateStore;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
@@ -261,6 +268,211 @@ public class TransactionalLastReadPostServiceTest {
 
     }
 
+    @Test
+    public void readStateShouldBeLoadedOnceWhenKeptInMemory() {
+        TransactionalLastReadPostService service = createServiceWithStore(new ReadStateStore(10));
+        List<Topic> topics = ObjectsFactory.topics(user, 2);
+        topics.get(0).setId(1L);
+        topics.get(1).setId(2L);
+        when(userService.getCurrentUser()).thenReturn(user);
+        Map<Long, DateTime> saved = new HashMap<Long, DateTime>();
+        saved.put(1L, topics.get(0).getLastPost().getCreationDate());
+        when(lastReadPostDao.getLastReadPostDates(user)).thenReturn(saved);
+
+        service.fillLastReadPostForTopics(topics);
+        service.fillLastReadPostForTopics(topics);
+
+        assertFalse(topics.get(0).isHasUpdates());
+        assertTrue(topics.get(1).isHasUpdates());
+        verify(lastReadPostDao).getLastReadPostDates(user);
+        verify(lastReadPostDao, never()).getLastReadPosts(Matchers.<JCUser>any(), Matchers.<List<Topic>>any());
+    }
+
+    @Test
+    public void markTopicAsReadShouldBeWrittenByTimerWhenReadStateIsKeptInMemory() {
+        TransactionalLastReadPostService service = createServiceWithStore(new ReadStateStore(10));
+        Topic topic = this.createTestTopic();
+        topic.setId(1L);
+        user.setId(5L);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(userDao.get(5L)).thenReturn(user);
+
+        service.markTopicPageAsRead(topic, 1);
+        service.markTopicAsRead(topic);
+        verify(lastReadPostDao, never()).saveOrUpdate(Matchers.<LastReadPost>any());
+        service.flushReadMarks(5L);
+
+        verify(lastReadPostDao).saveLastReadPostDates(user,
+                Collections.singletonMap(1L, topic.getLastPost().getCreationDate()));
+    }
+
+    @Test
+    public void markedTopicShouldBeReadBeforeItIsWritten() {
+        TransactionalLastReadPostService service = createServiceWithStore(new ReadStateStore(10));
+        List<Topic> topics = ObjectsFactory.topics(user, 1);
+        topics.get(0).setId(1L);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(lastReadPostDao.getLastReadPostDates(user)).thenReturn(new HashMap<Long, DateTime>());
+
+        service.markTopicAsRead(topics.get(0));
+        service.fillLastReadPostForTopics(topics);
+
+        assertFalse(topics.get(0).isHasUpdates());
+    }
+
+    @Test
+    public void markAllTopicsInBranchAsReadShouldWritePendingMarksAndForgetReadState() {
+        ReadStateStore store = new ReadStateStore(10);
+        TransactionalLastReadPostService service = createServiceWithStore(store);
+        Branch branch = new Branch("branch name", "branch description");
+        Topic topic = this.createTestTopic();
+        topic.setId(1L);
+        when(userService.getCurrentUser()).thenReturn(user);
+        store.load(user.getId(), Collections.<Long, DateTime>emptyMap());
+        service.markTopicAsRead(topic);
+
+        service.markAllTopicsAsRead(branch);
+
+        verify(lastReadPostDao).saveLastReadPostDates(user,
+                Collections.singletonMap(1L, topic.getLastPost().getCreationDate()));
+        verify(lastReadPostDao).markAllRead(user, branch);
+        assertNull(store.get(user.getId()));
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+    }
+
+    @Test
+    public void markAllForumAsReadShouldForgetReadStateKeptInMemory() {
+        ReadStateStore store = new ReadStateStore(10);
+        TransactionalLastReadPostService service = createServiceWithStore(store);
+        Topic topic = this.createTestTopic();
+        topic.setId(1L);
+        when(userService.getCurrentUser()).thenReturn(user);
+        store.load(user.getId(), Collections.<Long, DateTime>emptyMap());
+        service.markTopicAsRead(topic);
+
+        service.markAllForumAsReadForCurrentUser();
+
+        verify(lastReadPostDao).deleteLastReadPostsFor(user);
+        assertNull(store.get(user.getId()));
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+    }
+
+    @Test
+    public void branchesWithUnreadPostsShouldBeMarkedByOneQuery() {
+        Branch unread = new Branch("unread", "branch description");
+        unread.setId(1L);
+        Branch read = new Branch("read", "branch description");
+        read.setId(2L);
+        read.setUnreadPosts(true);
+        List<Branch> branches = Arrays.asList(unread, read);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(lastReadPostDao.getBranchesWithUnreadPosts(user, branches)).thenReturn(Collections.singleton(1L));
+
+        lastReadPostService.fillUnreadPostsForBranches(branches);
+
+        assertTrue(unread.isUnreadPosts());
+        assertFalse(read.isUnreadPosts());
+        verify(lastReadPostDao).getBranchesWithUnreadPosts(user, branches);
+    }
+
+    @Test
+    public void anonymousUserShouldNotLookForUnreadPostsInBranches() {
+        when(userService.getCurrentUser()).thenReturn(new AnonymousUser());
+
+        lastReadPostService.fillUnreadPostsForBranches(Arrays.asList(new Branch("branch name", "description")));
+
+        verifyZeroInteractions(lastReadPostDao);
+    }
+
+    @Test
+    public void pendingMarksShouldBeWrittenBeforeLookingForUnreadPostsInBranches() {
+        ReadStateStore store = new ReadStateStore(10);
+        TransactionalLastReadPostService service = createServiceWithStore(store);
+        Topic topic = this.createTestTopic();
+        topic.setId(1L);
+        List<Branch> branches = Arrays.asList(new Branch("branch name", "branch description"));
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(lastReadPostDao.getBranchesWithUnreadPosts(user, branches)).thenReturn(Collections.<Long>emptySet());
+        service.markTopicAsRead(topic);
+
+        service.fillUnreadPostsForBranches(branches);
+
+        InOrder inOrder = inOrder(lastReadPostDao);
+        inOrder.verify(lastReadPostDao).saveLastReadPostDates(user,
+                Collections.singletonMap(1L, topic.getLastPost().getCreationDate()));
+        inOrder.verify(lastReadPostDao).getBranchesWithUnreadPosts(user, branches);
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+    }
+
+    @Test
+    public void pendingMarksShouldBeKeptWhenTransactionIsRolledBack() {
+        ReadStateStore store = new ReadStateStore(10);
+        TransactionalLastReadPostService service = createServiceWithStore(store);
+        Topic topic = this.createTestTopic();
+        topic.setId(1L);
+        user.setId(5L);
+        List<Branch> branches = Arrays.asList(new Branch("branch name", "branch description"));
+        when(userService.getCurrentUser()).thenReturn(user);
+        service.markTopicAsRead(topic);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.fillUnreadPostsForBranches(branches);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(store.drainPendingMarks(5L), Collections.singletonMap(1L, topic.getLastPost().getCreationDate()));
+    }
+
+    @Test
+    public void pendingMarksShouldBeForgottenWhenTransactionIsCommitted() {
+        ReadStateStore store = new ReadStateStore(10);
+        TransactionalLastReadPostService service = createServiceWithStore(store);
+        Topic topic = this.createTestTopic();
+        topic.setId(1L);
+        user.setId(5L);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(userDao.get(5L)).thenReturn(user);
+        service.markTopicAsRead(topic);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.flushReadMarks(5L);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+    }
+
+    @Test
+    public void pendingMarksOfRemovedUserShouldBeForgotten() {
+        ReadStateStore store = new ReadStateStore(10);
+        TransactionalLastReadPostService service = createServiceWithStore(store);
+        store.markRead(5L, 1L, new DateTime());
+
+        service.flushReadMarks(5L);
+
+        assertTrue(store.getUsersWithPendingMarks().isEmpty());
+        verifyZeroInteractions(lastReadPostDao);
+    }
+
+    @Test
+    public void flushShouldDoNothingWhenReadStateIsNotKeptInMemory() {
+        lastReadPostService.flushReadMarks(5L);
+
+        verifyZeroInteractions(lastReadPostDao, userDao);
+    }
+
+    private TransactionalLastReadPostService createServiceWithStore(ReadStateStore store) {
+        return new TransactionalLastReadPostService(userService, lastReadPostDao, userDao, store);
+    }
+
     private Topic createTestTopic() {
         Topic topic = new Topic(user, "title");
         for (int i = 0; i < 10; i++) {
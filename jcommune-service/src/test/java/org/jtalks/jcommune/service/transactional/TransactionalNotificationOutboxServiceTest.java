@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.Crud;
+import org.jtalks.jcommune.model.dao.BranchDao;
+import org.jtalks.jcommune.model.dao.PendingNotificationDao;
+import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.entity.*;
+import org.jtalks.jcommune.service.exceptions.MailingFailedException;
+import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TransactionalNotificationOutboxServiceTest {
+    private static final String ROOT_URL = "http://jtalks.org:8080/forum";
+    private static final String ROOT_LABEL = "http://jtalks.org/forum";
+    private static final int LEASE_SECONDS = 600;
+    private static final int RETRY_DELAY_SECONDS = 60;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private PendingNotificationDao dao;
+    @Mock
+    private MailService mailService;
+    @Mock
+    private TopicDao topicDao;
+    @Mock
+    private BranchDao branchDao;
+    @Mock
+    private Crud<CodeReview> codeReviewDao;
+
+    private TransactionalNotificationOutboxService service;
+    private JCUser user;
+    private Topic topic;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        service = new TransactionalNotificationOutboxService(dao, mailService, topicDao, branchDao, codeReviewDao,
+                LEASE_SECONDS, RETRY_DELAY_SECONDS, MAX_ATTEMPTS);
+        user = new JCUser("username", "email@jtalks.org", "password");
+        user.setId(1L);
+        topic = new Topic(user, "title");
+        topic.setId(2L);
+        when(mailService.getDeploymentRootUrl()).thenReturn(ROOT_URL);
+        when(mailService.getDeploymentRootUrlWithoutPort()).thenReturn(ROOT_LABEL);
+        when(topicDao.get(topic.getId())).thenReturn(topic);
+        when(mailService.sendAll(anyList())).thenReturn(Collections.<MimeMessage>emptyList());
+    }
+
+    @Test
+    public void enqueueShouldStoreNotificationWithDeploymentRoot() {
+        when(dao.getPendingRecipientIds(NotificationType.TOPIC_UPDATED, topic.getId()))
+                .thenReturn(Collections.<Long>emptyList());
+
+        service.enqueue(Arrays.asList(user), NotificationType.TOPIC_UPDATED, topic.getId());
+
+        verify(dao).saveOrUpdate(argThat(new NotificationMatcher(user, NotificationType.TOPIC_UPDATED)));
+    }
+
+    @Test
+    public void enqueueShouldMergeWithAlreadyPendingNotifications() {
+        JCUser another = new JCUser("another", "another@jtalks.org", "password");
+        another.setId(3L);
+        when(dao.getPendingRecipientIds(NotificationType.TOPIC_UPDATED, topic.getId()))
+                .thenReturn(Arrays.asList(user.getId()));
+
+        service.enqueue(Arrays.asList(user, another), NotificationType.TOPIC_UPDATED, topic.getId());
+
+        verify(dao).saveOrUpdate(argThat(new NotificationMatcher(another, NotificationType.TOPIC_UPDATED)));
+        verify(dao, never()).saveOrUpdate(argThat(new NotificationMatcher(user, NotificationType.TOPIC_UPDATED)));
+    }
+
+    @Test
+    public void enqueueShouldDoNothingWithoutRecipients() {
+        service.enqueue(Collections.<JCUser>emptyList(), NotificationType.TOPIC_UPDATED, topic.getId());
+
+        verifyZeroInteractions(dao);
+    }
+
+    @Test
+    public void claimDueShouldLeaseNotifications() {
+        PendingNotification notification = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        when(dao.getDue(any(DateTime.class), eq(5))).thenReturn(Arrays.asList(notification));
+        when(dao.claim(eq(notification), any(DateTime.class))).thenReturn(true);
+
+        List<Long> ids = service.claimDue(5);
+
+        assertEquals(ids, Arrays.asList(10L));
+        verify(dao).claim(eq(notification), argThat(new ArgumentMatcher<DateTime>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((DateTime) argument).isAfter(new DateTime().plusSeconds(LEASE_SECONDS - 10));
+            }
+        }));
+    }
+
+    @Test
+    public void claimDueShouldSkipNotificationsTakenByOthers() {
+        PendingNotification taken = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        PendingNotification free = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 11L);
+        when(dao.getDue(any(DateTime.class), eq(5))).thenReturn(Arrays.asList(taken, free));
+        when(dao.claim(eq(taken), any(DateTime.class))).thenReturn(false);
+        when(dao.claim(eq(free), any(DateTime.class))).thenReturn(true);
+
+        List<Long> ids = service.claimDue(5);
+
+        assertEquals(ids, Arrays.asList(11L));
+    }
+
+    @Test
+    public void deliverShouldDeleteSentNotifications() throws MailingFailedException {
+        PendingNotification notification = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        MimeMessage message = new MimeMessage((Session) null);
+        when(mailService.createUpdatesOnSubscriptionMails(Arrays.asList(user), topic, ROOT_URL, ROOT_LABEL))
+                .thenReturn(Arrays.asList(message));
+
+        service.deliver(Arrays.asList(10L));
+
+        verify(mailService).sendAll(Arrays.asList(message));
+        verify(dao).delete(notification);
+    }
+
+    @Test
+    public void deliverShouldRenderNotificationsAboutTheSameEntityTogether() throws MailingFailedException {
+        JCUser another = new JCUser("another", "another@jtalks.org", "password");
+        PendingNotification first = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        PendingNotification second = new PendingNotification(another, NotificationType.TOPIC_UPDATED, topic.getId(),
+                ROOT_URL, ROOT_LABEL);
+        second.setId(11L);
+        when(dao.get(11L)).thenReturn(second);
+        MimeMessage firstMessage = new MimeMessage((Session) null);
+        MimeMessage secondMessage = new MimeMessage((Session) null);
+        when(mailService.createUpdatesOnSubscriptionMails(Arrays.asList(user, another), topic, ROOT_URL, ROOT_LABEL))
+                .thenReturn(Arrays.asList(firstMessage, secondMessage));
+
+        service.deliver(Arrays.asList(10L, 11L));
+
+        verify(mailService).sendAll(Arrays.asList(firstMessage, secondMessage));
+        verify(dao).delete(first);
+        verify(dao).delete(second);
+    }
+
+    @Test
+    public void deliverShouldPostponeFailedNotifications() throws MailingFailedException {
+        PendingNotification notification = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        MimeMessage message = new MimeMessage((Session) null);
+        when(mailService.createUpdatesOnSubscriptionMails(Arrays.asList(user), topic, ROOT_URL, ROOT_LABEL))
+                .thenReturn(Arrays.asList(message));
+        when(mailService.sendAll(Arrays.asList(message))).thenReturn(Arrays.asList(message));
+
+        service.deliver(Arrays.asList(10L));
+
+        assertEquals(notification.getAttempts(), 1);
+        assertTrue(notification.getNextAttemptDate().isAfter(new DateTime().plusSeconds(RETRY_DELAY_SECONDS - 10)));
+        verify(dao).saveOrUpdate(notification);
+        verify(dao, never()).delete(notification);
+    }
+
+    @Test
+    public void deliverShouldDropNotificationAfterMaxAttempts() throws MailingFailedException {
+        PendingNotification notification = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        notification.setAttempts(MAX_ATTEMPTS - 1);
+        when(mailService.createUpdatesOnSubscriptionMails(Arrays.asList(user), topic, ROOT_URL, ROOT_LABEL))
+                .thenThrow(new MailingFailedException(new RuntimeException()));
+
+        service.deliver(Arrays.asList(10L));
+
+        verify(dao).delete(notification);
+        verify(dao, never()).saveOrUpdate(notification);
+    }
+
+    @Test
+    public void deliverShouldPostponeOnlyNotificationsWhichMailsCantBeCreated() throws MailingFailedException {
+        PendingNotification broken = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        PendingNotification mention = notification(NotificationType.USER_MENTIONED, 5L, 11L);
+        MimeMessage message = new MimeMessage((Session) null);
+        when(mailService.createUpdatesOnSubscriptionMails(Arrays.asList(user), topic, ROOT_URL, ROOT_LABEL))
+                .thenThrow(new IllegalStateException("template error"));
+        when(mailService.isNotificationsEnabled()).thenReturn(true);
+        when(mailService.createUserMentionedMail(user, 5L, ROOT_URL, ROOT_LABEL)).thenReturn(message);
+
+        service.deliver(Arrays.asList(10L, 11L));
+
+        assertEquals(broken.getAttempts(), 1);
+        verify(dao).saveOrUpdate(broken);
+        verify(mailService).sendAll(Arrays.asList(message));
+        verify(dao).delete(mention);
+    }
+
+    @Test
+    public void deliverShouldPostponeNotificationsWhenSendingFails() throws MailingFailedException {
+        PendingNotification notification = notification(NotificationType.TOPIC_UPDATED, topic.getId(), 10L);
+        MimeMessage message = new MimeMessage((Session) null);
+        when(mailService.createUpdatesOnSubscriptionMails(Arrays.asList(user), topic, ROOT_URL, ROOT_LABEL))
+                .thenReturn(Arrays.asList(message));
+        when(mailService.sendAll(Arrays.asList(message))).thenThrow(new IllegalArgumentException("bad address"));
+
+        service.deliver(Arrays.asList(10L));
+
+        assertEquals(notification.getAttempts(), 1);
+        verify(dao).saveOrUpdate(notification);
+        verify(dao, never()).delete(notification);
+    }
+
+    @Test
+    public void deliverShouldDropNotificationAboutRemovedEntity() throws MailingFailedException {
+        PendingNotification notification = notification(NotificationType.BRANCH_UPDATED, 42L, 10L);
+
+        service.deliver(Arrays.asList(10L));
+
+        verify(dao).delete(notification);
+        verify(mailService, never()).createUpdatesOnSubscriptionMails(anyList(),
+                any(SubscriptionAwareEntity.class), anyString(), anyString());
+    }
+
+    @Test
+    public void deliverShouldDropMentionsWhenNotificationsAreDisabled() throws MailingFailedException {
+        PendingNotification notification = notification(NotificationType.USER_MENTIONED, 5L, 10L);
+        when(mailService.isNotificationsEnabled()).thenReturn(false);
+
+        service.deliver(Arrays.asList(10L));
+
+        verify(dao).delete(notification);
+        verify(mailService, never()).createUserMentionedMail(any(JCUser.class), anyLong(), anyString(), anyString());
+    }
+
+    private PendingNotification notification(NotificationType type, long entityId, long id) {
+        PendingNotification notification = new PendingNotification(user, type, entityId, ROOT_URL, ROOT_LABEL);
+        notification.setId(id);
+        when(dao.get(id)).thenReturn(notification);
+        return notification;
+    }
+
+    private static class NotificationMatcher extends ArgumentMatcher<PendingNotification> {
+        private final JCUser recipient;
+        private final NotificationType type;
+
+        private NotificationMatcher(JCUser recipient, NotificationType type) {
+            this.recipient = recipient;
+            this.type = type;
+        }
+
+        @Override
+        public boolean matches(Object argument) {
+            PendingNotification notification = (PendingNotification) argument;
+            return notification.getRecipient() == recipient && notification.getType() == type
+                    && ROOT_URL.equals(notification.getDeploymentRootUrl())
+                    && ROOT_LABEL.equals(notification.getDeploymentRootLabel());
+        }
+    }
+}
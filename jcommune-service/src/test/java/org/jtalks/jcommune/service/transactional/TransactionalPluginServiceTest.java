@@ -25,6 +25,7 @@ import org.jtalks.jcommune.model.plugins.exceptions.UnexpectedErrorException;
 import org.jtalks.jcommune.service.dto.PluginActivatingDto;
 import org.jtalks.jcommune.service.plugins.PluginLoader;
 import org.jtalks.jcommune.service.plugins.TypeFilter;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -102,7 +103,7 @@ public class TransactionalPluginServiceTest {
     }
 
     @Test
-    public void updateConfigurationShouldApplyConfigurationForPlugin()
+    public void updateConfigurationShouldValidateConfigurationAndPublishItThroughLoader()
             throws NotFoundException, UnexpectedErrorException {
         //GIVEN
         String pluginName = "Should be configured";
@@ -113,10 +114,33 @@ public class TransactionalPluginServiceTest {
         //WHEN
         pluginService.updateConfiguration(configuration, FAKE_COMPONENT_ID);
         //THEN
-        assertNotNull(shouldBeConfiguredPlugin.configuration, "Plugin should be found by name and reconfigured.");
+        InOrder inOrder = inOrder(pluginLoader, pluginConfigurationDao);
+        inOrder.verify(pluginLoader).validateConfiguration(shouldBeConfiguredPlugin, configuration);
+        inOrder.verify(pluginConfigurationDao).updateProperties(configuration.getProperties());
+        inOrder.verify(pluginLoader).reloadConfiguration();
+        assertNull(shouldBeConfiguredPlugin.configuration, "Loaded plugin shouldn't be configured in place.");
         assertNull(shouldNotBeConfiguredPlugin.configuration, "All others plugins shouldn't be reconfigured.");
     }
 
+    @Test
+    public void updateConfigurationShouldNotSaveInvalidConfiguration()
+            throws NotFoundException, UnexpectedErrorException {
+        //GIVEN
+        PluginConfiguration configuration = new PluginConfiguration("Dummy", true, Collections.EMPTY_LIST);
+        DummyPlugin plugin = new DummyPlugin("Dummy");
+        when(pluginLoader.getPlugins()).thenReturn(Arrays.asList((Plugin) plugin));
+        doThrow(new UnexpectedErrorException()).when(pluginLoader).validateConfiguration(plugin, configuration);
+        //WHEN
+        try {
+            pluginService.updateConfiguration(configuration, FAKE_COMPONENT_ID);
+            fail("Invalid configuration should be rejected.");
+        } catch (UnexpectedErrorException e) {
+            //THEN
+            verify(pluginConfigurationDao, never()).updateProperties(anyList());
+            verify(pluginLoader, never()).reloadConfiguration();
+        }
+    }
+
     @Test(expectedExceptions = NotFoundException.class)
     public void updateConfigurationWhenPluginsNotLoadedShouldShowNotFoundError()
             throws NotFoundException, UnexpectedErrorException {
@@ -164,6 +188,18 @@ public class TransactionalPluginServiceTest {
         verify(pluginConfigurationDao, times(pluginsCount)).saveOrUpdate(pluginConfiguration);
     }
 
+    @Test
+    public void updatePluginsEnablingShouldReconfigureLoadedPlugins() throws NotFoundException {
+        String pluginName = "plugin";
+        when(pluginConfigurationDao.get(pluginName)).thenReturn(new PluginConfiguration());
+        List<PluginActivatingDto> pluginsActivatingDtoList = new ArrayList<>();
+        pluginsActivatingDtoList.add(new PluginActivatingDto(pluginName, true));
+
+        pluginService.updatePluginsActivating(pluginsActivatingDtoList, FAKE_COMPONENT_ID);
+
+        verify(pluginLoader).reloadConfiguration();
+    }
+
     @Test
     public void getPluginByIdIfPluginExistsAndEnabledShouldBeSuccessful() throws NotFoundException {
         String pluginId = "1";
@@ -24,6 +24,7 @@ import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.PostService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
 import org.mockito.Matchers;
@@ -77,6 +78,8 @@ public class TransactionalPostServiceTest {
     private BranchLastPostService branchLastPostService;
     @Mock
     private MentionedUsers mentionedUsers;
+    @Mock
+    private BBCodeService bbCodeService;
 
     private PostService postService;
 
@@ -99,7 +102,8 @@ public class TransactionalPostServiceTest {
                 notificationService,
                 lastReadPostService,
                 userService,
-                branchLastPostService);
+                branchLastPostService,
+                bbCodeService);
     }
 
     @Test
@@ -140,6 +144,7 @@ public class TransactionalPostServiceTest {
         verify(postDao).saveOrUpdate(post);
 
         verify(userService).notifyAndMarkNewlyMentionedUsers(post);
+        verify(bbCodeService).warmUp(post);
     }
 
     @Test
@@ -193,14 +198,16 @@ public class TransactionalPostServiceTest {
         topic.addPost(postForDelete);
         topic.recalculateModificationDate();
         Branch branch = new Branch("branch", "branch description");
-        topic.setBranch(branch);
+        branch.addTopic(topic);
         user.setPostCount(2);
 
         postService.deletePost(postForDelete);
 
         assertEquals(user.getPostCount(), 1);
+        assertEquals(topic.getPostCount(), 1);
         assertEquals(topic.getModificationDate(), topic.getFirstPost().getCreationDate());
         verify(topicDao).saveOrUpdate(topic);
+        verify(topicDao).updatePostCount(topic, -1);
         verify(securityService).deleteFromAcl(postForDelete);
         verify(notificationService).subscribedEntityChanged(topic);
     }
@@ -313,25 +320,18 @@ public class TransactionalPostServiceTest {
 
     @Test
     public void testLastPostInTopicPageCalculation() {
-        int pageSize = 2;
-        currentUser.setPageSize(pageSize);
-
-        Topic topic = new Topic(null, "");
+        currentUser.setPageSize(2);
         Post post = new Post(null, "");
-        topic.addPost(new Post(null, null));
-        topic.addPost(new Post(null, null));
-        topic.addPost(post);
+        when(postDao.countPostsBefore(post)).thenReturn(2);
 
         assertEquals(postService.calculatePageForPost(post), 2);
     }
 
     @Test
     public void testFirstPostInTopicPageCalculation() {
-        int pageSize = 2;
-        currentUser.setPageSize(pageSize);
-        Topic topic = new Topic(null, "");
+        currentUser.setPageSize(2);
         Post post = new Post(null, "");
-        topic.addPost(post);
+        when(postDao.countPostsBefore(post)).thenReturn(0);
 
         assertEquals(postService.calculatePageForPost(post), 1);
     }
@@ -339,56 +339,51 @@ public class TransactionalPostServiceTest {
     @Test
     public void testFirstPostInTopicPageCalculationWithNoUser() {
         currentUser.setPageSize(JCUser.DEFAULT_PAGE_SIZE);
-
-        Topic topic = new Topic(user, "");
         Post post = new Post(user, "");
-        topic.addPost(post);
+        when(postDao.countPostsBefore(post)).thenReturn(0);
 
         assertEquals(postService.calculatePageForPost(post), 1);
     }
 
     @Test
     public void testLastPostOnFirstPagePageCalculation() {
-        int pageSize = 2;
-        currentUser.setPageSize(pageSize);
-
-        Topic topic = new Topic(user, "");
+        currentUser.setPageSize(2);
         Post post = new Post(user, "");
-        topic.addPost(new Post(null, null));
-        topic.addPost(post);
+        when(postDao.countPostsBefore(post)).thenReturn(1);
 
         assertEquals(postService.calculatePageForPost(post), 1);
     }
 
     @Test
     public void testLastPostOnPagePageCalculation() {
-        int pageSize = 2;
-        currentUser.setPageSize(pageSize);
-
-        Topic topic = new Topic(null, "");
+        currentUser.setPageSize(2);
         Post post = new Post(null, "");
-        topic.addPost(new Post(null, null));
-        topic.addPost(new Post(null, null));
-        topic.addPost(new Post(null, null));
-        topic.addPost(post);
+        when(postDao.countPostsBefore(post)).thenReturn(3);
 
         assertEquals(postService.calculatePageForPost(post), 2);
     }
 
     @Test
     public void testPostInCenterOfTopicPageCalculation() {
-        int pageSize = 2;
-        currentUser.setPageSize(pageSize);
-
-        Topic topic = new Topic(null, "");
+        currentUser.setPageSize(2);
         Post post = new Post(null, "");
-        topic.addPost(new Post(null, null));
-        topic.addPost(post);
-        topic.addPost(new Post(null, null));
+        when(postDao.countPostsBefore(post)).thenReturn(1);
 
         assertEquals(postService.calculatePageForPost(post), 1);
     }
 
+    @Test
+    public void testPageCalculationDoesNotLoadPostsOfTopic() {
+        currentUser.setPageSize(2);
+        Topic topic = mock(Topic.class);
+        Post post = new Post(null, "");
+        post.setTopic(topic);
+        when(postDao.countPostsBefore(post)).thenReturn(4);
+
+        assertEquals(postService.calculatePageForPost(post), 3);
+        verify(topic, never()).getPosts();
+    }
+
     @Test
     public void testGetPosts() {
         String pageNumber = "50";
@@ -401,7 +396,7 @@ public class TransactionalPostServiceTest {
                 Matchers.any(Topic.class), Matchers.any(PageRequest.class)))
                 .thenReturn(expectedPage);
 
-        Page<Post> actualPage = postService.getPosts(topic, pageNumber);
+        Page<Post> actualPage = postService.getPosts(topic, pageNumber, null);
 
         assertEquals(actualPage, expectedPage, "Service returned incorrect data for one page of posts");
         verify(postDao).getPosts(Matchers.any(Topic.class), Matchers.any(PageRequest.class));
@@ -25,7 +25,6 @@ import org.jtalks.jcommune.service.SectionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.springframework.security.access.AccessDeniedException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -132,75 +131,49 @@ public class TransactionalSectionServiceTest {
     
     @Test
     public void testPrepareSectionsForView() {
-        List<Section> sections = Arrays.asList(new Section(SECTION_NAME), new Section(SECTION_NAME));
-        int sectionSize = sections.size();
-        
+        Section first = new Section(SECTION_NAME);
+        Branch firstBranch = new Branch(null, null);
+        first.addOrUpdateBranch(firstBranch);
+        Section second = new Section(SECTION_NAME);
+        Branch secondBranch = new Branch(null, null);
+        second.addOrUpdateBranch(secondBranch);
+        List<Section> sections = Arrays.asList(first, second);
+
         sectionService.prepareSectionsForView(sections);
 
-        verify(branchService, Mockito.times(sectionSize))
-            .fillStatisticInfo(Mockito.anyListOf(Branch.class));
-    }
-    
-    @Test
-    public void testDeleteAllBranches() throws NotFoundException {
-        Section expectedSection = new Section(SECTION_NAME);
-        expectedSection.addOrUpdateBranch(new Branch(null, null));
-        expectedSection.addOrUpdateBranch(new Branch(null, null));
-        
-        when(sectionDao.isExist(SECTION_ID)).thenReturn(true);
-        when(sectionDao.get(SECTION_ID)).thenReturn(expectedSection);
-        
-        Section actualSection = sectionService.deleteAllTopicsInSection(SECTION_ID);
-        
-        assertEquals(actualSection, expectedSection, "Sections aren't equals");
-        verify(sectionDao).isExist(SECTION_ID);
-        verify(sectionDao).get(SECTION_ID);
+        verify(branchService).fillStatisticInfo(Arrays.asList(firstBranch, secondBranch));
     }
     
     @Test
-    public void testDeleteAllBranchesInEmptySection() throws NotFoundException {
-        Section expectedSection = new Section(SECTION_NAME);
-        
+    public void testGetBranchIds() throws NotFoundException {
+        Section section = new Section(SECTION_NAME);
+        Branch first = new Branch(null, null);
+        first.setId(1L);
+        Branch second = new Branch(null, null);
+        second.setId(2L);
+        section.addOrUpdateBranch(first);
+        section.addOrUpdateBranch(second);
         when(sectionDao.isExist(SECTION_ID)).thenReturn(true);
-        when(sectionDao.get(SECTION_ID)).thenReturn(expectedSection);
-        
-        Section actualSection = sectionService.deleteAllTopicsInSection(SECTION_ID);
-        
-        assertEquals(actualSection, expectedSection, "Sections aren't equals");
-        verify(sectionDao).isExist(SECTION_ID);
-        verify(sectionDao).get(SECTION_ID);
-    }
-    
-    @Test(expectedExceptions=NotFoundException.class)
-    public void testDeleteAllBranchesWithIncorrectId() throws NotFoundException {
-        when(sectionDao.isExist(SECTION_ID)).thenReturn(false);
+        when(sectionDao.get(SECTION_ID)).thenReturn(section);
+
+        List<Long> branchIds = sectionService.getBranchIds(SECTION_ID);
 
-        sectionService.deleteAllTopicsInSection(SECTION_ID);
-        assertTrue(false);
+        assertEquals(branchIds, Arrays.asList(1L, 2L));
     }
 
     @Test
-    public void testDeleteAllTopics() throws NotFoundException {
-        Section expectedSection = new Section(SECTION_NAME);
-        expectedSection.setId(SECTION_ID);
-        when(sectionDao.getAll()).thenReturn(Collections.singletonList(expectedSection));
+    public void testGetBranchIdsOfEmptySection() throws NotFoundException {
         when(sectionDao.isExist(SECTION_ID)).thenReturn(true);
-        when(sectionDao.get(SECTION_ID)).thenReturn(expectedSection);
-
-        sectionService.deleteAllTopicsInForum();
+        when(sectionDao.get(SECTION_ID)).thenReturn(new Section(SECTION_NAME));
 
-        verify(sectionDao).isExist(SECTION_ID);
-        verify(sectionDao).get(SECTION_ID);
+        assertTrue(sectionService.getBranchIds(SECTION_ID).isEmpty());
     }
 
-    @Test(expectedExceptions=NotFoundException.class)
-    public void testDeleteAllTopicsWithIncorrectId() throws NotFoundException {
-        Section section = new Section(SECTION_NAME);
-        section.setId(SECTION_ID);
+    @Test(expectedExceptions = NotFoundException.class)
+    public void testGetBranchIdsWithIncorrectId() throws NotFoundException {
         when(sectionDao.isExist(SECTION_ID)).thenReturn(false);
-        when(sectionDao.getAll()).thenReturn(Collections.singletonList(section));
 
-        sectionService.deleteAllTopicsInForum();
+        sectionService.getBranchIds(SECTION_ID);
     }
 
     @Test(expectedExceptions = AccessDeniedException.class)
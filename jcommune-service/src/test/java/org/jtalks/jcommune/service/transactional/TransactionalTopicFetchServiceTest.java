@@ -25,25 +25,32 @@ import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.TopicFetchService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.TopicViewCounter;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 
 public class TransactionalTopicFetchServiceTest {
 
@@ -54,6 +61,8 @@ public class TransactionalTopicFetchServiceTest {
     @Mock
     private TopicSearchDao searchDao;
 
+    private TopicViewCounter viewCounter;
+
     private TopicFetchService topicFetchService;
 
     private JCUser user;
@@ -61,7 +70,8 @@ public class TransactionalTopicFetchServiceTest {
     @BeforeMethod
     public void init(){
         initMocks(this);
-        topicFetchService = new TransactionalTopicFetchService(topicDao, userService, searchDao);
+        viewCounter = new TopicViewCounter();
+        topicFetchService = new TransactionalTopicFetchService(topicDao, userService, searchDao, viewCounter);
         user = new JCUser("username", "email@mail.com", "password");
         when(userService.getCurrentUser()).thenReturn(user);
     }
@@ -72,14 +82,64 @@ public class TransactionalTopicFetchServiceTest {
         when(topicDao.isExist(999L)).thenReturn(true);
         when(topicDao.get(999L)).thenReturn(expectedTopic);
 
-        int viewsCount = expectedTopic.getViews();
-
         Topic actualTopic = topicFetchService.get(999L);
 
-        assertEquals(actualTopic.getViews(), viewsCount + 1);
         assertEquals(actualTopic, expectedTopic, "Topics aren't equal");
         verify(topicDao).isExist(999L);
         verify(topicDao).get(999L);
+        verify(topicDao, never()).saveOrUpdate(expectedTopic);
+    }
+
+    @Test
+    public void viewsShouldBeAddedToTopicsByTimer() {
+        Topic viewed = new Topic(user, "title");
+        viewed.setId(1L);
+        Topic other = new Topic(user, "title");
+        other.setId(2L);
+
+        topicFetchService.countView(viewed);
+        topicFetchService.countView(viewed);
+        topicFetchService.countView(other);
+        topicFetchService.flushViewsByTimer();
+
+        Map<Long, Integer> expectedViews = new HashMap<Long, Integer>();
+        expectedViews.put(1L, 2);
+        expectedViews.put(2L, 1);
+        verify(topicDao).addViews(expectedViews);
+        verify(topicDao, never()).saveOrUpdate(Matchers.<Topic>any());
+    }
+
+    @Test
+    public void viewsShouldBeKeptWhenFlushIsRolledBack() {
+        viewCounter.countView(1L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            topicFetchService.flushViewsByTimer();
+            viewCounter.countView(1L);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(viewCounter.drain(), Collections.singletonMap(1L, 2));
+    }
+
+    @Test
+    public void viewsShouldBeForgottenWhenFlushIsCommitted() {
+        viewCounter.countView(1L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            topicFetchService.flushViewsByTimer();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertTrue(viewCounter.drain().isEmpty());
     }
 
     @Test(expectedExceptions = {NotFoundException.class})
@@ -137,7 +197,7 @@ public class TransactionalTopicFetchServiceTest {
                 Matchers.any(Branch.class), Matchers.any(PageRequest.class)))
                 .thenReturn(expectedPage);
 
-        Page<Topic> actualPage = topicFetchService.getTopics(branch, pageNumber);
+        Page<Topic> actualPage = topicFetchService.getTopics(branch, pageNumber, null);
 
         assertEquals(actualPage, expectedPage, "Service returned incorrect data for one page of topics");
         verify(topicDao).getTopics(
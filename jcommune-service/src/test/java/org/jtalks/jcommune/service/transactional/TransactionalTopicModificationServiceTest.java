@@ -25,6 +25,7 @@ import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.*;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
 import org.mockito.Matchers;
@@ -93,6 +94,8 @@ public class TransactionalTopicModificationServiceTest {
     @Mock
     private MentionedUsers mentionedUsers;
     @Mock
+    private BBCodeService bbCodeService;
+    @Mock
     private PostDao postDao;
 
     private CompoundAclBuilder<User> aclBuilder;
@@ -112,7 +115,8 @@ public class TransactionalTopicModificationServiceTest {
                 topicFetchService,
                 securityContextFacade,
                 permissionEvaluator,
-                branchLastPostService);
+                branchLastPostService,
+                bbCodeService);
 
         user = new JCUser("username", "email@mail.com", "password");
         when(securityContextFacade.getContext()).thenReturn(securityContext);
@@ -131,11 +135,14 @@ public class TransactionalTopicModificationServiceTest {
         assertEquals(createdPost.getPostContent(), ANSWER_BODY);
         assertEquals(createdPost.getUserCreated(), user);
         assertEquals(user.getPostCount(), 1);
+        assertEquals(answeredTopic.getPostCount(), 1);
 
+        verify(topicDao).updatePostCount(answeredTopic, 1);
         verify(aclBuilder).grant(GeneralPermission.WRITE);
         verify(aclBuilder).to(user);
         verify(aclBuilder).on(createdPost);
         verify(notificationService).subscribedEntityChanged(answeredTopic);
+        verify(bbCodeService).warmUp(createdPost);
     }
 
     @Test
@@ -338,6 +345,7 @@ public class TransactionalTopicModificationServiceTest {
     private void createCodeReviewVerifications(Branch branch)
             throws NotFoundException {
         verify(branchDao).saveOrUpdate(branch);
+        verify(branchDao).updateCounters(branch, 1, 1);
         verify(aclBuilder, times(2)).grant(GeneralPermission.WRITE);
         verify(notificationService).subscribedEntityChanged(branch);
     }
@@ -345,6 +353,7 @@ public class TransactionalTopicModificationServiceTest {
     private void createTopicVerifications(Topic topic)
             throws NotFoundException {
         verify(branchDao).saveOrUpdate(topic.getBranch());
+        verify(branchDao).updateCounters(topic.getBranch(), 1, 1);
         verify(aclBuilder, times(2)).grant(GeneralPermission.WRITE);
         verify(notificationService).sendNotificationAboutTopicCreated(topic);
     }    
@@ -365,8 +374,10 @@ public class TransactionalTopicModificationServiceTest {
         topicService.deleteTopic(topic);
 
         assertEquals(branch.getTopicCount(), 0);
+        assertEquals(branch.getPostCount(), 0);
         assertEquals(user.getPostCount(), 0);
         verify(branchDao).saveOrUpdate(branch);
+        verify(branchDao).updateCounters(branch, -1, -1);
         verify(securityService).deleteFromAcl(Topic.class, TOPIC_ID);
         verify(notificationService).subscribedEntityChanged(branch, new ArrayList());
         verify(notificationService).sendNotificationAboutRemovingTopic(topic, subscribers);
@@ -388,8 +399,10 @@ public class TransactionalTopicModificationServiceTest {
         topicService.deleteTopicSilent(TOPIC_ID);
 
         assertEquals(branch.getTopicCount(), 0);
+        assertEquals(branch.getPostCount(), 0);
         assertEquals(user.getPostCount(), 0);
         verify(branchDao).saveOrUpdate(branch);
+        verify(branchDao).updateCounters(branch, -1, -1);
         verify(securityService).deleteFromAcl(Topic.class, TOPIC_ID);
     }
 
@@ -449,6 +462,56 @@ public class TransactionalTopicModificationServiceTest {
         topicService.deleteTopicSilent(TOPIC_ID);
     }
 
+    @Test
+    public void testDeleteTopicsSilent() throws NotFoundException {
+        Branch branch = createBranch();
+        branch.setLastPost(new Post(user, ANSWER_BODY));
+        final Post newLastPostInBranch = new Post(user, ANSWER_BODY);
+        final List<Long> topicIds = Arrays.asList(1L, 2L);
+        when(branchDao.isExist(BRANCH_ID)).thenReturn(true);
+        when(branchDao.get(BRANCH_ID)).thenReturn(branch);
+        when(topicDao.getTopicIds(branch, 2)).thenReturn(topicIds);
+        when(topicDao.deleteTopics(topicIds)).thenReturn(7);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) {
+                ((Branch) invocation.getArguments()[0]).setLastPost(newLastPostInBranch);
+                return null;
+            }
+        }).when(branchLastPostService).refreshLastPostInBranch(branch);
+
+        int deleted = topicService.deleteTopicsSilent(BRANCH_ID, 2);
+
+        assertEquals(deleted, 2);
+        verify(branchDao).updateCounters(branch, -2, -7);
+        assertEquals(branch.getLastPost(), newLastPostInBranch);
+        verify(securityService).deleteFromAcl(Topic.class, 1L);
+        verify(securityService).deleteFromAcl(Topic.class, 2L);
+    }
+
+    @Test
+    public void testDeleteTopicsSilentInEmptyBranch() throws NotFoundException {
+        Branch branch = createBranch();
+        Post lastPostInBranch = new Post(user, ANSWER_BODY);
+        branch.setLastPost(lastPostInBranch);
+        when(branchDao.isExist(BRANCH_ID)).thenReturn(true);
+        when(branchDao.get(BRANCH_ID)).thenReturn(branch);
+        when(topicDao.getTopicIds(branch, 2)).thenReturn(Collections.<Long>emptyList());
+
+        int deleted = topicService.deleteTopicsSilent(BRANCH_ID, 2);
+
+        assertEquals(deleted, 0);
+        assertEquals(branch.getLastPost(), lastPostInBranch);
+        verify(topicDao, never()).deleteTopics(Matchers.<List<Long>>any());
+        verify(branchLastPostService, never()).refreshLastPostInBranch(branch);
+    }
+
+    @Test(expectedExceptions = NotFoundException.class)
+    public void testDeleteTopicsSilentInNonExistentBranch() throws NotFoundException {
+        when(branchDao.isExist(BRANCH_ID)).thenReturn(false);
+
+        topicService.deleteTopicsSilent(BRANCH_ID, 2);
+    }
+
     @Test
     void testUpdateTopicWithSubscribe() throws NotFoundException {
         user.setAutosubscribe(true);
@@ -615,7 +678,10 @@ public class TransactionalTopicModificationServiceTest {
         topicService.moveTopic(topic, BRANCH_ID);
 
         assertEquals(targetBranch.getTopicCount(), 1);
+        assertEquals(targetBranch.getPostCount(), 1);
+        verify(branchDao).updateCounters(currentBranch, -1, -1);
         verify(branchDao).saveOrUpdate(targetBranch);
+        verify(branchDao).updateCounters(targetBranch, 1, 1);
         verify(notificationService).sendNotificationAboutTopicMoved(topic);
     }
 
@@ -33,17 +33,22 @@ import org.jtalks.jcommune.service.dto.UserInfoContainer;
 import org.jtalks.jcommune.service.exceptions.MailingFailedException;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.nontransactional.Base64Wrapper;
+import org.jtalks.jcommune.service.nontransactional.CurrentUserHolder;
 import org.jtalks.jcommune.service.nontransactional.EncryptionService;
 import org.jtalks.jcommune.service.nontransactional.MailService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.jtalks.jcommune.service.nontransactional.NotificationDispatcher;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletWebRequest;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -110,11 +115,15 @@ public class TransactionalUserServiceTest {
     private PostDao postDao;
     @Mock
     private Authenticator authenticator;
-
+    @Mock
+    private NotificationDispatcher notificationDispatcher;
+    private CurrentUserHolder currentUserHolder;
 
     @BeforeMethod
     public void setUp() throws Exception {
         initMocks(this);
+        RequestContextHolder.resetRequestAttributes();
+        currentUserHolder = new CurrentUserHolder();
         when(encryptionService.encryptPassword(PASSWORD))
                 .thenReturn(PASSWORD_MD5_HASH);
         CompoundAclBuilder<User> aclBuilder = mockAclBuilder();
@@ -127,7 +136,15 @@ public class TransactionalUserServiceTest {
                 base64Wrapper,
                 encryptionService,
                 postDao,
-                authenticator);
+                authenticator,
+                notificationDispatcher,
+                currentUserHolder);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
     }
 
     @Test
@@ -366,6 +383,65 @@ public class TransactionalUserServiceTest {
         assertEquals(actual, expected);
     }
 
+    @Test
+    public void currentUserShouldBeLookedUpOncePerRequest() {
+        boundMockHttpRequestToThread("/forum");
+        JCUser expected = user(USERNAME);
+        when(securityService.getCurrentUserUsername()).thenReturn(USERNAME);
+        when(userDao.getByUsername(USERNAME)).thenReturn(expected);
+
+        userService.getCurrentUser();
+        JCUser actual = userService.getCurrentUser();
+
+        assertSame(actual, expected);
+        verify(userDao).getByUsername(USERNAME);
+        assertEquals(currentUserHolder.getLookupCount(), 1);
+        assertEquals(currentUserHolder.getMaxLookupsPerRequest(), 1);
+    }
+
+    @Test
+    public void currentUserShouldBeLookedUpEveryTimeOutsideOfRequest() {
+        JCUser expected = user(USERNAME);
+        when(securityService.getCurrentUserUsername()).thenReturn(USERNAME);
+        when(userDao.getByUsername(USERNAME)).thenReturn(expected);
+
+        userService.getCurrentUser();
+        userService.getCurrentUser();
+
+        verify(userDao, times(2)).getByUsername(USERNAME);
+    }
+
+    @Test
+    public void currentUserShouldBeLookedUpByIdOfPrincipal() {
+        JCUser principal = user(USERNAME);
+        principal.setId(USER_ID);
+        JCUser expected = user(USERNAME);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, PASSWORD));
+        when(securityService.getCurrentUserUsername()).thenReturn(USERNAME);
+        when(userDao.get(USER_ID)).thenReturn(expected);
+
+        JCUser actual = userService.getCurrentUser();
+
+        assertSame(actual, expected);
+        verify(userDao, never()).getByUsername(anyString());
+    }
+
+    @Test
+    public void currentUserShouldBeLookedUpAgainAfterProfileIsChanged() throws NotFoundException {
+        boundMockHttpRequestToThread("/forum");
+        JCUser user = user(USERNAME);
+        when(securityService.getCurrentUserUsername()).thenReturn(USERNAME);
+        when(userDao.getByUsername(USERNAME)).thenReturn(user);
+        userService.getCurrentUser();
+
+        userService.changeLanguage(user, Language.ENGLISH);
+        userService.getCurrentUser();
+
+        verify(userDao, times(2)).getByUsername(USERNAME);
+        assertEquals(currentUserHolder.getMaxLookupsPerRequest(), 2);
+    }
+
     @Test
     public void testGetCurrentUserForAnonymous() {
         when(securityService.getCurrentUserUsername()).thenReturn(null);
@@ -410,7 +486,7 @@ public class TransactionalUserServiceTest {
         Post post = post(toBeNotified, "[user]to-be-notified[/user]");
         userService.notifyAndMarkNewlyMentionedUsers(post);
 
-        verify(mailService).sendUserMentionedNotification(toBeNotified, post.getId());
+        verify(notificationDispatcher).enqueue(asList(toBeNotified), NotificationType.USER_MENTIONED, post.getId());
     }
 
     @Test
@@ -425,7 +501,7 @@ public class TransactionalUserServiceTest {
         when(mentionedUsers.extractAllMentionedUsers(notProcessedSource))
                 .thenReturn(asSet(firstMentionedUserName, secondMentionedUserName));
 
-        String actualAfterProcess = userService.processUserBbCodesInPost(notProcessedSource);
+        String actualAfterProcess = userService.processUserBbCodesInPost(notProcessedSource, "/forum");
 
         String msgWithNotFoundUsers = format(MENTIONING_MESSAGE_WHEN_USER_NOT_FOUND, firstMentionedUserName,
                 secondMentionedUserName);
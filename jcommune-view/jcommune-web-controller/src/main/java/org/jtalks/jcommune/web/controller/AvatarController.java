@@ -15,10 +15,12 @@
 
 package org.jtalks.jcommune.web.controller;
 
+import org.apache.commons.lang.time.DateFormatUtils;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.ImageProcessException;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.AvatarStore;
 import org.jtalks.jcommune.web.util.ImageControllerUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -33,7 +35,9 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller for processing avatar related request.
@@ -45,9 +49,13 @@ import java.util.Map;
 
 @Controller
 public class AvatarController extends ImageUploadController {
+    static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    /** Avatar urls with a version never change their content, so they are cached by browsers for a year */
+    private static final String IMMUTABLE_AVATAR_MAX_AGE = "max-age=31536000";
 
     private UserService userService;
     private ImageControllerUtils avatarControllerUtils;
+    private AvatarStore avatarStore;
 
     /**
      * Constructor for controller instantiating, dependencies injected via autowiring.
@@ -55,17 +63,20 @@ public class AvatarController extends ImageUploadController {
      * @param userService           to manipulate user-related data
      * @param avatarControllerUtils utility object for image-related functions
      * @param messageSource         to resolve locale-dependent messages
+     * @param avatarStore           to render avatars without loading users
      */
     @Autowired
     public AvatarController(
             UserService userService,
             @Qualifier("avatarControllerUtils")
             ImageControllerUtils avatarControllerUtils,
-            MessageSource messageSource) {
+            MessageSource messageSource,
+            AvatarStore avatarStore) {
         super(messageSource);
 
         this.userService = userService;
         this.avatarControllerUtils = avatarControllerUtils;
+        this.avatarStore = avatarStore;
     }
 
     /**
@@ -103,10 +114,15 @@ public class AvatarController extends ImageUploadController {
 
     /**
      * Write user avatar in response for rendering it on html pages.
+     * <p/>
+     * Pages refer to avatars with their last modification time as a version. Such urls never change
+     * their content, so avatars for them are taken from the {@link AvatarStore} and cached by browsers
+     * for a long time. Avatars requested without a version are always loaded from the database.
      *
      * @param request  servlet request
      * @param response servlet response
      * @param id       user database identifier
+     * @param version  last modification time of the avatar in millis, if known
      * @throws NotFoundException if user with given encodedUsername not found
      * @throws IOException       throws if an output exception occurred
      */
@@ -114,23 +130,41 @@ public class AvatarController extends ImageUploadController {
     public void renderAvatar(
             HttpServletRequest request,
             HttpServletResponse response,
-            @PathVariable Long id)
+            @PathVariable Long id,
+            @RequestParam(value = "v", required = false) Long version)
             throws NotFoundException, IOException {
-        JCUser user = userService.get(id);
+        AvatarStore.Avatar avatar = version == null ? null : avatarStore.get(id, version);
+        if (avatar == null) {
+            JCUser user = userService.get(id);
+            avatar = avatarStore.put(id, user.getAvatar(), user.getAvatarLastModificationTime().getMillis());
+        }
 
-        Date ifModifiedDate = getIfModifiedSineDate(request.getHeader(IF_MODIFIED_SINCE_HEADER));
-        if (!user.getAvatarLastModificationTime().isAfter(ifModifiedDate.getTime())) {
+        String etag = "\"" + avatar.getHash() + "\"";
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = ifNoneMatch.contains(etag);
+        } else {
+            Date ifModifiedDate = getIfModifiedSineDate(request.getHeader(IF_MODIFIED_SINCE_HEADER));
+            notModified = avatar.getLastModified() <= ifModifiedDate.getTime();
+        }
+        // headers are set before the content, they are dropped once a big avatar commits the response
+        setupAvatarHeaders(response, new Date(avatar.getLastModified()));
+        response.setHeader("ETag", etag);
+        if (version != null) {
+            response.setHeader("Cache-Control", "public");
+            response.addHeader("Cache-Control", IMMUTABLE_AVATAR_MAX_AGE);
+            response.setHeader("Expires", DateFormatUtils.format(
+                    System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365), HTTP_HEADER_DATETIME_PATTERN, Locale.US));
+        }
+        if (notModified) {
             response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
         } else {
-            byte[] avatar = user.getAvatar();
+            byte[] content = avatar.getContent();
             response.setContentType("image/jpeg");
-            response.setContentLength(avatar.length);
-            response.getOutputStream().write(avatar);
+            response.setContentLength(content.length);
+            response.getOutputStream().write(content);
         }
-
-        Date avatarLastModificationDate = new Date(
-                user.getAvatarLastModificationTime().getMillis());
-        setupAvatarHeaders(response, avatarLastModificationDate);
     }
 
     /**
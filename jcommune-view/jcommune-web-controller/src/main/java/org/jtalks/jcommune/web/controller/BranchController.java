@@ -15,6 +15,7 @@
 
 package org.jtalks.jcommune.web.controller;
 
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Post;
@@ -48,6 +49,7 @@ import static ch.lambdaj.Lambda.project;
 public class BranchController {
 
     public static final String PAGE = "page";
+    public static final String AFTER = "after";
     private BranchService branchService;
     private PostService postService;
     private TopicFetchService topicFetchService;
@@ -95,27 +97,34 @@ public class BranchController {
      *
      * @param branchId branch for display
      * @param page     page
+     * @param after    cursor of the last topic of the previous page, lets to find the page
+     *                 without skipping all the preceding topics
      * @return {@code ModelAndView} with topics list and vars for pagination
      * @throws org.jtalks.jcommune.service.exceptions.NotFoundException
      *          when branch not found
      */
     @RequestMapping(value = "/branches/{branchId}", method = RequestMethod.GET)
     public ModelAndView showPage(@PathVariable("branchId") long branchId,
-                                 @RequestParam(value = PAGE, defaultValue = "1", required = false) String page
+                                 @RequestParam(value = PAGE, defaultValue = "1", required = false) String page,
+                                 @RequestParam(value = AFTER, required = false) String after
     ) throws NotFoundException {
 
         branchService.checkIfBranchExists(branchId);
         Branch branch = branchService.get(branchId);
-        Page<Topic> topicsPage = topicFetchService.getTopics(branch, page);
+        Page<Topic> topicsPage = topicFetchService.getTopics(branch, page, after);
         lastReadPostService.fillLastReadPostForTopics(topicsPage.getContent());
 
         JCUser currentUser = userService.getCurrentUser();
         List<Breadcrumb> breadcrumbs = breadcrumbBuilder.getForumBreadcrumb(branch);
+        List<Topic> topics = topicsPage.getContent();
+        String nextCursor = topicsPage.hasNextPage() && topicsPage.hasContent()
+                ? PageCursor.after(topics.get(topics.size() - 1)) : null;
 
         return new ModelAndView("topic/topicList")
                 .addObject("viewList", locationService.getUsersViewing(branch))
                 .addObject("branch", branch)
                 .addObject("topicsPage", topicsPage)
+                .addObject("nextCursor", nextCursor)
                 .addObject("breadcrumbList", breadcrumbs)
                 .addObject("subscribed", branch.getSubscribers().contains(currentUser));
     }
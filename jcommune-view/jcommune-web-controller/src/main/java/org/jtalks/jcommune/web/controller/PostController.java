@@ -272,7 +272,7 @@ public class PostController {
         JCUser currentUser = userService.getCurrentUser();
         Topic topic = topicFetchService.get(topicId);
         postDto.setTopicId(topicId);
-        Page<Post> postsPage = postService.getPosts(topic, page);
+        Page<Post> postsPage = postService.getPosts(topic, page, null);
 
         if (result.hasErrors()) {
             return new ModelAndView("topic/postList")
@@ -14,6 +14,7 @@
  */
 package org.jtalks.jcommune.web.controller;
 
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.*;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
@@ -37,6 +38,7 @@ import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.validation.Valid;
+import java.util.List;
 
 /**
  * Serves topic management web requests
@@ -205,28 +207,36 @@ public class TopicController {
      *
      * @param topicId the id of selected Topic
      * @param page    page
+     * @param after   cursor of the last post of the previous page, lets to find the page
+     *                without skipping all the preceding posts
      * @return {@code ModelAndView}
      * @throws NotFoundException when topic or branch not found
      */
     @RequestMapping(value = "/topics/{topicId}", method = RequestMethod.GET)
     public ModelAndView showTopicPage(WebRequest request, @PathVariable(TOPIC_ID) Long topicId,
-                                      @RequestParam(value = "page", defaultValue = "1", required = false) String page)
+                                      @RequestParam(value = "page", defaultValue = "1", required = false) String page,
+                                      @RequestParam(value = "after", required = false) String after)
             throws NotFoundException {
         JCUser currentUser = userService.getCurrentUser();
         Topic topic = topicFetchService.get(topicId);
 
         topicFetchService.checkViewTopicPermission(topic.getBranch().getId());
-        Page<Post> postsPage = postService.getPosts(topic, page);
+        topicFetchService.countView(topic);
+        Page<Post> postsPage = postService.getPosts(topic, page, after);
 
         if (request.checkNotModified(topic.getLastModificationPostDate().getMillis())) {
             return null;
         }
 
         lastReadPostService.markTopicPageAsRead(topic, postsPage.getNumber());
+        List<Post> posts = postsPage.getContent();
+        String nextCursor = postsPage.hasNextPage() && postsPage.hasContent()
+                ? PageCursor.after(posts.get(posts.size() - 1)) : null;
         return new ModelAndView("topic/postList")
                 .addObject("viewList", locationService.getUsersViewing(topic))
                 .addObject("usersOnline", sessionRegistry.getAllPrincipals())
                 .addObject("postsPage", postsPage)
+                .addObject("nextCursor", nextCursor)
                 .addObject("topic", topic)
                 .addObject(POST_DTO, new PostDto())
                 .addObject("subscribed", topic.getSubscribers().contains(currentUser))
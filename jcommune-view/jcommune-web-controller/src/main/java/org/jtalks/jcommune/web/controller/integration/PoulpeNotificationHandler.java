@@ -16,10 +16,9 @@
 package org.jtalks.jcommune.web.controller.integration;
 
 import org.jtalks.common.model.entity.User;
-import org.jtalks.jcommune.service.BranchService;
-import org.jtalks.jcommune.service.SectionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.TopicPurger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
@@ -50,15 +49,12 @@ public class PoulpeNotificationHandler {
      */
     private static final String ADMIN_USERNAME = "admin";
 
-    private final BranchService branchService;
-    private final SectionService sectionService;
+    private final TopicPurger topicPurger;
     private final UserService userService;
 
     @Autowired
-    public PoulpeNotificationHandler(BranchService branchService, SectionService sectionService,
-                                     UserService userService) {
-        this.branchService = branchService;
-        this.sectionService = sectionService;
+    public PoulpeNotificationHandler(TopicPurger topicPurger, UserService userService) {
+        this.topicPurger = topicPurger;
         this.userService = userService;
     }
 
@@ -75,7 +71,7 @@ public class PoulpeNotificationHandler {
     public void deleteBranch(@PathVariable("branchId") long branchId,
                              @RequestParam(value = "password") String adminPassword) throws NotFoundException {
         assertAdminPasswordCorrect(adminPassword);
-        branchService.deleteAllTopics(branchId);
+        topicPurger.purgeBranch(branchId);
     }
 
     /**
@@ -91,7 +87,7 @@ public class PoulpeNotificationHandler {
     public void deleteSection(@PathVariable("sectionId") long sectionId,
                               @RequestParam(value = "password") String adminPassword) throws NotFoundException {
         assertAdminPasswordCorrect(adminPassword);
-        sectionService.deleteAllTopicsInSection(sectionId);
+        topicPurger.purgeSection(sectionId);
     }
 
     /**
@@ -105,7 +101,7 @@ public class PoulpeNotificationHandler {
     @ResponseBody
     public void deleteComponent(@RequestParam(value = "password") String adminPassword) throws NotFoundException {
         assertAdminPasswordCorrect(adminPassword);
-        sectionService.deleteAllTopicsInForum();
+        topicPurger.purgeForum();
     }
 
     /**
@@ -19,6 +19,7 @@ import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.ImageProcessException;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.AvatarStore;
 import org.jtalks.jcommune.service.nontransactional.ImageService;
 import org.jtalks.jcommune.web.util.ImageControllerUtils;
 import org.mockito.Matchers;
@@ -80,7 +81,7 @@ public class AvatarControllerTest {
     @BeforeMethod
     public void setUp() throws Exception {
         initMocks(this);
-        avatarController = new AvatarController(userService, imageControllerUtils, messageSource);
+        avatarController = new AvatarController(userService, imageControllerUtils, messageSource, new AvatarStore(10));
     }
 
     @Test
@@ -113,7 +114,7 @@ public class AvatarControllerTest {
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader(avatarController.IF_MODIFIED_SINCE_HEADER, new Date(0));
 
-        avatarController.renderAvatar(request, response, 0L);
+        avatarController.renderAvatar(request, response, 0L, null);
 
         assertEquals(response.getContentType(), "image/jpeg");
         assertEquals(response.getContentLength(), validAvatar.length);
@@ -138,7 +139,7 @@ public class AvatarControllerTest {
         request.addHeader(avatarController.IF_MODIFIED_SINCE_HEADER, new Date(1000));
 
 
-        avatarController.renderAvatar(request, response, 0L);
+        avatarController.renderAvatar(request, response, 0L, null);
 
         assertEquals(response.getStatus(), HttpServletResponse.SC_NOT_MODIFIED);
         assertNotSame(response.getContentAsByteArray(), validAvatar);
@@ -151,6 +152,111 @@ public class AvatarControllerTest {
         assertNotNull(response.getHeader("Last-Modified"));// depends on current timezone
     }
     
+    @Test
+    public void renderAvatarShouldNotReturnAvatarWithMatchingETag() throws IOException, NotFoundException {
+        JCUser user = getUser();
+        user.setAvatar(validAvatar);
+        user.setAvatarLastModificationTime(new DateTime(1000));
+        when(userService.get(anyLong())).thenReturn(user);
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        avatarController.renderAvatar(new MockHttpServletRequest(), firstResponse, 0L, null);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(AvatarController.IF_NONE_MATCH_HEADER, firstResponse.getHeader("ETag"));
+
+        avatarController.renderAvatar(request, response, 0L, null);
+
+        assertEquals(response.getStatus(), HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(response.getContentLength(), 0);
+    }
+
+    @Test
+    public void renderAvatarOfKnownVersionShouldNotLoadUser() throws IOException, NotFoundException {
+        JCUser user = getUser();
+        user.setAvatar(validAvatar);
+        user.setAvatarLastModificationTime(new DateTime(1000));
+        when(userService.get(anyLong())).thenReturn(user);
+        avatarController.renderAvatar(new MockHttpServletRequest(), new MockHttpServletResponse(), 0L, 1000L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        avatarController.renderAvatar(new MockHttpServletRequest(), response, 0L, 1000L);
+
+        verify(userService).get(anyLong());
+        assertEquals(response.getContentAsByteArray(), validAvatar);
+        assertTrue(response.getHeaders("Cache-Control").contains("max-age=31536000"));
+        assertNotNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    public void renderAvatarShouldSetHeadersOfAvatarCommittingResponse() throws IOException, NotFoundException {
+        JCUser user = getUser();
+        user.setAvatar(validAvatar);
+        user.setAvatarLastModificationTime(new DateTime(1000));
+        when(userService.get(anyLong())).thenReturn(user);
+        MockHttpServletResponse response = new CommittedHeadersIgnoringResponse();
+        response.setBufferSize(validAvatar.length / 2);
+
+        avatarController.renderAvatar(new MockHttpServletRequest(), response, 0L, 1000L);
+
+        assertTrue(response.isCommitted());
+        assertEquals(response.getContentAsByteArray(), validAvatar);
+        assertEquals(response.getContentType(), "image/jpeg");
+        assertTrue(response.getHeaders("Cache-Control").contains("max-age=31536000"));
+        assertNotNull(response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Expires"));
+        assertNotNull(response.getHeader("Last-Modified"));
+    }
+
+    @Test
+    public void renderAvatarOfNewerVersionShouldLoadUser() throws IOException, NotFoundException {
+        JCUser user = getUser();
+        user.setAvatar(validAvatar);
+        user.setAvatarLastModificationTime(new DateTime(1000));
+        when(userService.get(anyLong())).thenReturn(user);
+        avatarController.renderAvatar(new MockHttpServletRequest(), new MockHttpServletResponse(), 0L, 1000L);
+        byte[] newAvatar = new byte[]{1, 2, 3};
+        user.setAvatar(newAvatar);
+        user.setAvatarLastModificationTime(new DateTime(2000));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        avatarController.renderAvatar(new MockHttpServletRequest(), response, 0L, 2000L);
+
+        assertEquals(response.getContentAsByteArray(), newAvatar);
+    }
+
+    /**
+     * Ignores headers set after the response is committed, as servlet containers do.
+     */
+    private static class CommittedHeadersIgnoringResponse extends MockHttpServletResponse {
+        @Override
+        public void setHeader(String name, String value) {
+            if (!isCommitted()) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!isCommitted()) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setContentType(String contentType) {
+            if (!isCommitted()) {
+                super.setContentType(contentType);
+            }
+        }
+
+        @Override
+        public void setStatus(int status) {
+            if (!isCommitted()) {
+                super.setStatus(status);
+            }
+        }
+    }
+
     private JCUser getUser() {
         JCUser newUser = new JCUser(USER_NAME, EMAIL, PASSWORD);
         newUser.setFirstName(FIRST_NAME);
@@ -93,13 +93,13 @@ public class BranchControllerTest {
         Page<Topic> topicsPage = new PageImpl<Topic>(Collections.<Topic> emptyList(), pageRequest, 0);
         //set expectations
         when(branchService.get(branchId)).thenReturn(branch);
-        when(topicFetchService.getTopics(branch, page)).thenReturn(topicsPage);
+        when(topicFetchService.getTopics(branch, page, null)).thenReturn(topicsPage);
         when(breadcrumbBuilder.getForumBreadcrumb(branchService.get(branchId)))
                 .thenReturn(new ArrayList<Breadcrumb>());
         when(forumStatisticsProvider.getOnlineRegisteredUsers()).thenReturn(new ArrayList<Object>());
 
         //invoke the object under test
-        ModelAndView mav = controller.showPage(branchId, page);
+        ModelAndView mav = controller.showPage(branchId, page, null);
 
         //check expectations
         verify(breadcrumbBuilder).getForumBreadcrumb(branchService.get(branchId));
@@ -168,9 +168,9 @@ public class BranchControllerTest {
         when(breadcrumbBuilder.getForumBreadcrumb(branchService.get(branchId)))
                 .thenReturn(new ArrayList<Breadcrumb>());
         when(forumStatisticsProvider.getOnlineRegisteredUsers()).thenReturn(new ArrayList<Object>());
-        when(topicFetchService.getTopics(branch, page)).thenReturn(topicsPage);
+        when(topicFetchService.getTopics(branch, page, null)).thenReturn(topicsPage);
 
-        ModelAndView mav = controller.showPage(branchId, page);
+        ModelAndView mav = controller.showPage(branchId, page, null);
 
         List<?> actualViewList = assertAndReturnModelAttributeOfType(mav, "viewList", List.class);
         assertEquals(actualViewList, new ArrayList<String>());
@@ -14,6 +14,7 @@
  */
 package org.jtalks.jcommune.web.controller;
 
+import org.jtalks.jcommune.model.dto.PageCursor;
 import org.jtalks.jcommune.model.dto.PageRequest;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.*;
@@ -130,9 +131,10 @@ public class TopicControllerTest {
 
         WebRequest request = mock(WebRequest.class);
 
-        ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page);
+        ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page, null);
 
         verify(topicFetchService).checkViewTopicPermission(topic.getBranch().getId());
+        verify(topicFetchService).countView(topic);
         verify(lastReadPostService).markTopicPageAsRead(topic, Integer.valueOf(page));
         //
         assertViewName(mav, "topic/postList");
@@ -143,6 +145,17 @@ public class TopicControllerTest {
         assertModelAttributeAvailable(mav, "breadcrumbList");
     }
 
+    @Test
+    public void showTopicPageShouldPassCursorOfLastPostForNextPage() throws NotFoundException {
+        String page = "1";
+        Topic topic = createTopic();
+        prepareViewTopicMocks(topic, page);
+
+        ModelAndView mav = controller.showTopicPage(mock(WebRequest.class), TOPIC_ID, page, null);
+
+        assertModelAttributeValue(mav, "nextCursor", PageCursor.after(topic.getPosts().get(0)));
+    }
+
     @Test
     public void showTopicPageShouldReturnNullIfIfModifiedSinceOlderThenLastUpdate() throws NotFoundException {
         String page = "1";
@@ -152,7 +165,7 @@ public class TopicControllerTest {
         WebRequest request = mock(WebRequest.class);
         when(request.checkNotModified(topic.getModificationDate().getMillis())).thenReturn(true);
 
-        ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page);
+        ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page, null);
 
         assertNull(mav);
     }
@@ -166,7 +179,7 @@ public class TopicControllerTest {
         WebRequest request = mock(WebRequest.class);
         when(request.checkNotModified(topic.getModificationDate().getMillis())).thenReturn(false);
 
-        ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page);
+        ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page, null);
 
         assertNotNull(mav);
     }
@@ -391,6 +404,6 @@ public class TopicControllerTest {
         when(userService.getCurrentUser()).thenReturn(topic.getTopicStarter());
         when(topicFetchService.get(TOPIC_ID)).thenReturn(topic);
         when(breadcrumbBuilder.getForumBreadcrumb(topic)).thenReturn(new ArrayList<Breadcrumb>());
-        when(postService.getPosts(topic, page)).thenReturn(postsPage);
+        when(postService.getPosts(topic, page, null)).thenReturn(postsPage);
     }
 }
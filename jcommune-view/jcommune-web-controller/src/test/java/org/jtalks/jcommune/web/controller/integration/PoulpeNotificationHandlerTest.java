@@ -21,10 +21,9 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertEquals;
 
 import org.jtalks.common.model.entity.User;
-import org.jtalks.jcommune.service.BranchService;
-import org.jtalks.jcommune.service.SectionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.service.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.TopicPurger;
 import org.mockito.Mock;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.view.json.MappingJacksonJsonView;
@@ -36,9 +35,7 @@ public class PoulpeNotificationHandlerTest {
     private static final long SECTION_ID = 1L;
 
     @Mock
-    private BranchService branchService;
-    @Mock
-    private SectionService sectionService;
+    private TopicPurger topicPurger;
     @Mock
     private UserService userService;
 
@@ -47,7 +44,7 @@ public class PoulpeNotificationHandlerTest {
     @BeforeMethod
     public void setUp() throws Exception {
         initMocks(this);
-        controller = new PoulpeNotificationHandler(branchService, sectionService, userService);
+        controller = new PoulpeNotificationHandler(topicPurger, userService);
     }
 
     @Test
@@ -55,7 +52,7 @@ public class PoulpeNotificationHandlerTest {
         doReturn(userWithPassword("password")).when(userService).getCommonUserByUsername("admin");
         controller.deleteBranch(BRANCH_ID, "password");
 
-        verify(branchService).deleteAllTopics(BRANCH_ID);
+        verify(topicPurger).purgeBranch(BRANCH_ID);
     }
 
     @Test(expectedExceptions = IllegalArgumentException.class)
@@ -77,7 +74,7 @@ public class PoulpeNotificationHandlerTest {
     @Test(expectedExceptions = NotFoundException.class)
     public void testDeleteBranchIncorrectId() throws NotFoundException {
         doReturn(userWithPassword("password")).when(userService).getCommonUserByUsername("admin");
-        when(branchService.deleteAllTopics(anyLong())).thenThrow(new NotFoundException());
+        when(topicPurger.purgeBranch(anyLong())).thenThrow(new NotFoundException());
         controller.deleteBranch(BRANCH_ID, "password");
     }
 
@@ -86,13 +83,13 @@ public class PoulpeNotificationHandlerTest {
         doReturn(userWithPassword("password")).when(userService).getCommonUserByUsername("admin");
         controller.deleteSection(SECTION_ID, "password");
 
-        verify(sectionService).deleteAllTopicsInSection(SECTION_ID);
+        verify(topicPurger).purgeSection(SECTION_ID);
     }
 
     @Test(expectedExceptions = NotFoundException.class)
     public void testDeleteSectionIncorrectId() throws NotFoundException {
         doReturn(userWithPassword("password")).when(userService).getCommonUserByUsername("admin");
-        when(sectionService.deleteAllTopicsInSection(anyLong())).thenThrow(new NotFoundException());
+        when(topicPurger.purgeSection(anyLong())).thenThrow(new NotFoundException());
         controller.deleteSection(SECTION_ID, "password");
 
         assertTrue(false);
@@ -103,13 +100,13 @@ public class PoulpeNotificationHandlerTest {
         doReturn(userWithPassword("password")).when(userService).getCommonUserByUsername("admin");
         controller.deleteComponent("password");
 
-        verify(sectionService).deleteAllTopicsInForum();
+        verify(topicPurger).purgeForum();
     }
 
     @Test(expectedExceptions = NotFoundException.class)
     public void testDeleteComponentFail() throws NotFoundException {
         doReturn(userWithPassword("password")).when(userService).getCommonUserByUsername("admin");
-        doThrow(new NotFoundException()).when(sectionService).deleteAllTopicsInForum();
+        doThrow(new NotFoundException()).when(topicPurger).purgeForum();
 
         controller.deleteComponent("password");
     }
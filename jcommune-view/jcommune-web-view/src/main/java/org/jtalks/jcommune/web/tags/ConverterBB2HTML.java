@@ -15,6 +15,7 @@
 
 package org.jtalks.jcommune.web.tags;
 
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
@@ -34,6 +35,7 @@ import java.io.IOException;
  */
 public class ConverterBB2HTML extends TagSupport {
     private String bbCode;
+    private Post post;
     /** We get this from Spring App Context in {@link #setPageContext(PageContext)}. */
     private BBCodeService service;
 
@@ -42,7 +44,7 @@ public class ConverterBB2HTML extends TagSupport {
     @Override
     public int doStartTag() throws JspException {
         try {
-            String html = service.convertBbToHtml(bbCode);
+            String html = (post == null) ? service.convertBbToHtml(bbCode) : service.convertBbToHtml(post);
             pageContext.getOut().print(html);
             return SKIP_BODY;
         } catch (IOException e) {
@@ -59,6 +61,16 @@ public class ConverterBB2HTML extends TagSupport {
         this.bbCode = bbCode;
     }
 
+    /**
+     * Sets the post which content is given as {@link #setBbCode(String)}, so that the previously rendered content of
+     * the post can be shown without rendering it again.
+     *
+     * @param post post which content is shown or {@code null} if bb-encoded text doesn't belong to a post
+     */
+    public void setPost(Post post) {
+        this.post = post;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void setPageContext(PageContext pageContext) {
@@ -16,9 +16,11 @@
 package org.jtalks.jcommune.web.tags;
 
 import org.jtalks.jcommune.service.bb2htmlprocessors.BBForeignLinksPostprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.RenderingContext;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.PageContext;
 import javax.servlet.jsp.tagext.TagSupport;
@@ -41,7 +43,9 @@ public class LinksPreparer extends TagSupport {
     @Override
     public int doStartTag() throws JspException {
         try {
-            String html = bbForeignLinksPostprocessor.postProcess(incomingLink);
+            HttpServletRequest request = (HttpServletRequest) pageContext.getRequest();
+            RenderingContext context = new RenderingContext(request.getServerName(), request.getContextPath(), false);
+            String html = bbForeignLinksPostprocessor.postProcess(incomingLink, context);
             pageContext.getOut().print(html);
             return SKIP_BODY;
         } catch (IOException e) {
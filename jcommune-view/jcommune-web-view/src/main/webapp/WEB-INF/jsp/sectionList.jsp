@@ -67,8 +67,7 @@
     <tbody>
     <c:set var="colspanOfSectionName" value="3"/>
     <sec:authorize access="isAuthenticated()">
-      <%-- TODO: change to 4 during below fix about unread posts --%>
-      <c:set var="colspanOfSectionName" value="3"/>
+      <c:set var="colspanOfSectionName" value="4"/>
     </sec:authorize>
 
     <c:forEach var="section" items="${sectionList}">
@@ -83,23 +82,22 @@
         <c:forEach var="branch" items="${section.branches}" varStatus="i">
           <jtalks:hasPermission targetId='${branch.id}' targetType='BRANCH' permission='BranchPermission.VIEW_TOPICS'>
             <tr>
-                <%--TODO: fix in milstone 2--%>
-                <%--<sec:authorize access="isAuthenticated()">--%>
-                <%--<td class="status-col">--%>
-                <%--<c:choose>--%>
-                <%--<c:when test="${branch.unreadPosts}">--%>
-                <%--<img class="status-img"--%>
-                <%--src="${pageContext.request.contextPath}/resources/images/new-posts.png"--%>
-                <%--title="<spring:message code="label.topic.new_posts"/>"/>--%>
-                <%--</c:when>--%>
-                <%--<c:otherwise>--%>
-                <%--<img class="status-img"--%>
-                <%--src="${pageContext.request.contextPath}/resources/images/no-new-posts.png"--%>
-                <%--title="<spring:message code="label.topic.no_new_posts"/>"/>--%>
-                <%--</c:otherwise>--%>
-                <%--</c:choose>--%>
-                <%--</td>--%>
-                <%--</sec:authorize>--%>
+              <sec:authorize access="isAuthenticated()">
+                <td class="status-col">
+                  <c:choose>
+                    <c:when test="${branch.unreadPosts}">
+                      <img class="status-img"
+                           src="${pageContext.request.contextPath}/resources/images/new-posts.png"
+                           title="<spring:message code="label.topic.new_posts"/>"/>
+                    </c:when>
+                    <c:otherwise>
+                      <img class="status-img"
+                           src="${pageContext.request.contextPath}/resources/images/no-new-posts.png"
+                           title="<spring:message code="label.topic.no_new_posts"/>"/>
+                    </c:otherwise>
+                  </c:choose>
+                </td>
+              </sec:authorize>
               <td class="title-col">
                 <h3 class="h-nostyle">
                   <c:if test="${sessionScope.adminMode == true}">
@@ -146,7 +144,7 @@
         </c:forEach>
         <c:if test="${sessionScope.adminMode == true}">
           <tr>
-            <td colspan="3">
+            <td colspan="${colspanOfSectionName}">
               <div id='newBranch${section.id}' class="add-branch-button"> +
                 <spring:message code="label.branch.add"/>
               </div>
@@ -81,7 +81,7 @@
   <div class="span9">
     <div class="pagination pull-right forum-pagination">
       <ul>
-        <jtalks:pagination uri="${topicId}" page="${postsPage}"/>
+        <jtalks:pagination uri="${topicId}" page="${postsPage}" nextCursor="${nextCursor}"/>
       </ul>
     </div>
   </div>
@@ -125,11 +125,6 @@
   <c:set var="postClass" value="script-first-post"/>
 </c:if>
 
-<%--We need different logic for code review and other posts because CR uses differnet phpBB processing--%>
-<c:remove var="isCodeReviewPost" scope="request"/>
-<c:if test="${isFirstPost && (topic.codeReview != null)}">
-  <c:set var="isCodeReviewPost" value="true" scope="request"/>
-</c:if>
 
 <div class="post ${postClass}">
 <div class="anchor">
@@ -282,7 +277,7 @@
       </div>
              
                    <span class="thumbnail post-userinfo-avatal wraptocenter">
-                        <img src="${pageContext.request.contextPath}/users/${post.userCreated.id}/avatar" alt=""/>
+                        <img src="${pageContext.request.contextPath}/users/${post.userCreated.id}/avatar?v=${post.userCreated.avatarLastModificationTime.millis}" alt=""/>
                    </span>
 
       <div>
@@ -321,7 +316,7 @@
       </div>
     </td>
     <td class='post-content-td'>
-      <jtalks:postContent text="${post.postContent}"
+      <jtalks:postContent text="${post.postContent}" post="${post}"
                           signature="${post.userCreated.signature}"/>
     </td>
   </tr>
@@ -348,7 +343,7 @@
   <div class="span9">
     <div class="pagination pull-right forum-pagination">
       <ul>
-        <jtalks:pagination uri="${topicId}" page="${postsPage}"/>
+        <jtalks:pagination uri="${topicId}" page="${postsPage}" nextCursor="${nextCursor}"/>
       </ul>
     </div>
   </div>
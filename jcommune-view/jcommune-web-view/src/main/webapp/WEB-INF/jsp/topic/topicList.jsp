@@ -114,7 +114,7 @@
     <div class="span8">
       <div class="pagination pull-right forum-pagination">
         <ul>
-          <jtalks:pagination uri="${branch.id}" page="${topicsPage}"/>
+          <jtalks:pagination uri="${branch.id}" page="${topicsPage}" nextCursor="${nextCursor}"/>
         </ul>
       </div>
     </div>
@@ -149,7 +149,7 @@
 
     <div class="span8">
       <div class="pagination pull-right forum-pagination">
-        <ul><jtalks:pagination uri="${branch.id}" page="${topicsPage}"/></ul>
+        <ul><jtalks:pagination uri="${branch.id}" page="${topicsPage}" nextCursor="${nextCursor}"/></ul>
       </div>
     </div>
 
@@ -38,7 +38,7 @@
 <div class="user-profile-header">
                 <span class="pull-left thumbnail">
                     <span class="wraptocenter">
-                        <img src="${pageContext.request.contextPath}/users/${user.id}/avatar" alt=""/>
+                        <img src="${pageContext.request.contextPath}/users/${user.id}/avatar?v=${user.avatarLastModificationTime.millis}" alt=""/>
                     </span>
                 </span>
 
@@ -87,7 +87,7 @@
                 <br/>
               </td>
               <td class='post-content-td'>
-                <jtalks:postContent text="${post.postContent}"/>
+                <jtalks:postContent text="${post.postContent}" post="${post}"/>
                 <br/>
               </td>
             </tr>
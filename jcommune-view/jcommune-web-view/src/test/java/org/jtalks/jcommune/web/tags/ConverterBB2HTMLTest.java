@@ -14,6 +14,8 @@
  */
 package org.jtalks.jcommune.web.tags;
 
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -68,6 +70,21 @@ public class ConverterBB2HTMLTest {
         assertEquals(output, expected);
     }
 
+    @Test
+    public void postShouldBeConvertedWithItsRenderedContent() throws JspException, UnsupportedEncodingException {
+        Post post = new Post(new JCUser("username", "email@mail.com", "password"), "source");
+        when(bbCodeService.convertBbToHtml(post)).thenReturn("rendered");
+
+        tag.setPageContext(pageContext);
+        tag.setBbCode(post.getPostContent());
+        tag.setPost(post);
+
+        tag.doStartTag();
+
+        String output = ((MockHttpServletResponse) pageContext.getResponse()).getContentAsString();
+        assertEquals(output, "rendered");
+    }
+
 
 
 }
@@ -15,6 +15,7 @@
 package org.jtalks.jcommune.web.tags;
 
 import org.jtalks.jcommune.service.bb2htmlprocessors.BBForeignLinksPostprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.RenderingContext;
 import org.springframework.beans.BeanUtils;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockPageContext;
@@ -28,6 +29,8 @@ import javax.servlet.ServletContext;
 import javax.servlet.jsp.JspException;
 import java.io.UnsupportedEncodingException;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
@@ -55,7 +58,7 @@ public class LinksPreparerTest {
     public void testConverterTag() throws JspException, UnsupportedEncodingException {
         String expected = "result";
         String source = "incomingLink";
-        when(bbForeignLinksPostprocessor.postProcess(source)).thenReturn(expected);
+        when(bbForeignLinksPostprocessor.postProcess(eq(source), any(RenderingContext.class))).thenReturn(expected);
 
         tag.setPageContext(pageContext);
         tag.setIncomingLink(source);